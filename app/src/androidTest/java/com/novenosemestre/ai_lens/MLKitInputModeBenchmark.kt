@@ -0,0 +1,96 @@
+package com.novenosemestre.ai_lens
+
+import android.graphics.ImageFormat
+import android.media.Image
+import android.media.ImageReader
+import android.media.ImageWriter
+import android.os.Debug
+import android.os.SystemClock
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.google.ar.core.examples.java.ml.classification.MLKitObjectDetector
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Compares the per-scan latency and caller-thread allocation of the [MLKitObjectDetector] input modes.
+ *
+ * Results are written to logcat under the `MLKitInputModeBenchmark` tag.
+ */
+@RunWith(AndroidJUnit4::class)
+class MLKitInputModeBenchmark {
+    companion object {
+        private const val TAG = "MLKitInputModeBenchmark"
+        private const val WIDTH = 1920
+        private const val HEIGHT = 1080
+        private const val WARMUP_SCANS = 3
+        private const val MEASURED_SCANS = 20
+    }
+
+    private lateinit var reader: ImageReader
+    private lateinit var writer: ImageWriter
+    private lateinit var image: Image
+    private lateinit var detector: MLKitObjectDetector
+
+    @Before
+    fun setUp() {
+        reader = ImageReader.newInstance(WIDTH, HEIGHT, ImageFormat.YUV_420_888, 2)
+        writer = ImageWriter.newInstance(reader.surface, 2)
+
+        // Fill a synthetic frame with gradients so the detector has something to look at.
+        writer.dequeueInputImage().also { input ->
+            input.planes.forEachIndexed { index, plane ->
+                val buffer = plane.buffer
+                for (i in 0 until buffer.capacity()) {
+                    buffer.put(i, (if (index == 0) i % 251 else 128 + (i / 97) % 64).toByte())
+                }
+            }
+            writer.queueInputImage(input)
+        }
+        val deadline = SystemClock.uptimeMillis() + 2_000
+        var acquired: Image? = null
+        while (acquired == null && SystemClock.uptimeMillis() < deadline) {
+            acquired = reader.acquireLatestImage() ?: run { SystemClock.sleep(10); null }
+        }
+        image = checkNotNull(acquired) { "No image received from the ImageWriter" }
+
+        detector = MLKitObjectDetector(InstrumentationRegistry.getInstrumentation().targetContext)
+    }
+
+    @After
+    fun tearDown() {
+        image.close()
+        writer.close()
+        reader.close()
+    }
+
+    @Test
+    fun compareInputModes() {
+        for (mode in MLKitObjectDetector.InputMode.values()) {
+            detector.inputMode = mode
+            runBlocking { repeat(WARMUP_SCANS) { detector.analyze(image, 90) } }
+
+            @Suppress("DEPRECATION")
+            Debug.startAllocCounting()
+            @Suppress("DEPRECATION")
+            Debug.resetThreadAllocSize()
+            val startNanos = SystemClock.elapsedRealtimeNanos()
+            runBlocking { repeat(MEASURED_SCANS) { detector.analyze(image, 90) } }
+            val elapsedNanos = SystemClock.elapsedRealtimeNanos() - startNanos
+            @Suppress("DEPRECATION")
+            val allocatedBytes = Debug.getThreadAllocSize()
+            @Suppress("DEPRECATION")
+            Debug.stopAllocCounting()
+
+            Log.i(
+                TAG,
+                "$mode: ${elapsedNanos / MEASURED_SCANS / 1_000} us/scan, " +
+                    "${allocatedBytes / MEASURED_SCANS} caller-thread bytes/scan"
+            )
+        }
+    }
+}
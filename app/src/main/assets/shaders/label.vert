@@ -15,19 +15,25 @@
  * limitations under the License.
  */
 
+// One instance per label: the quad corners and texture positions are shared, the rest comes from the instance.
 layout(location = 0) in vec2 aPosition;
 layout(location = 1) in vec2 aTexPos;
+layout(location = 2) in vec3 aOrigin;
+// u0, v0, u1, v1 of the label in the atlas page, v0 being the top row of its bitmap.
+layout(location = 3) in vec4 aRegion;
+// Half width and half height of the label, in meters.
+layout(location = 4) in vec2 aHalfSize;
 
 out vec2 vTexPos;
 
 uniform mat4 u_ViewProjection;
 uniform vec3 u_CameraPos;
-uniform vec3 u_LabelOrigin;
 
 void main() {
-  vTexPos = aTexPos;
-  vec3 labelNormal = normalize(u_CameraPos - u_LabelOrigin);
+  // The top of the quad shows the top row of the bitmap
+  vTexPos = vec2(mix(aRegion.x, aRegion.z, aTexPos.x), mix(aRegion.w, aRegion.y, aTexPos.y));
+  vec3 labelNormal = normalize(u_CameraPos - aOrigin);
   vec3 labelSide = -cross(labelNormal, vec3(0.0, 1.0, 0.0));
-  vec3 modelPosition = u_LabelOrigin + aPosition.x*0.1 * labelSide + aPosition.y * vec3(0.0, 1.0, 0.0)*0.1;
+  vec3 modelPosition = aOrigin + aPosition.x * aHalfSize.x * labelSide + aPosition.y * aHalfSize.y * vec3(0.0, 1.0, 0.0);
   gl_Position = u_ViewProjection * vec4(modelPosition, 1.0);
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+#version 300 es
+precision mediump float;
+
+// Signed distance fields of the glyphs: 0.5 on the edges, more inside.
+uniform sampler2D uTexture;
+uniform vec4 u_Color;
+uniform vec4 u_OutlineColor;
+// Width of the outline outside of the edges, in distance field units.
+uniform float u_OutlineWidth;
+in vec2 vTexPos;
+
+layout(location = 0) out vec4 o_FragColor;
+
+void main(void) {
+  float distance = texture(uTexture, vTexPos).r;
+  // Antialias over about one screen pixel, whatever the distance to the label
+  float smoothing = fwidth(distance);
+  float fill = smoothstep(0.5 - smoothing, 0.5 + smoothing, distance);
+  float ink = smoothstep(0.5 - u_OutlineWidth - smoothing, 0.5 - u_OutlineWidth + smoothing, distance);
+  vec4 color = mix(u_OutlineColor, u_Color, fill);
+  // Premultiplied alpha
+  o_FragColor = vec4(color.rgb * color.a, color.a) * ink;
+}
\ No newline at end of file
@@ -0,0 +1,23 @@
+#version 300 es
+// One instance per glyph: the quad corners are shared, the rest comes from the instance.
+layout(location = 0) in vec2 aCorner;
+layout(location = 1) in vec3 aOrigin;
+// Left, bottom, right and top of the glyph quad from the label origin, in meters.
+layout(location = 2) in vec4 aRect;
+// u0, v0, u1, v1 of the glyph in the font atlas, v0 being the top row of its distance field.
+layout(location = 3) in vec4 aRegion;
+
+out vec2 vTexPos;
+
+uniform mat4 u_ViewProjection;
+uniform vec3 u_CameraPos;
+
+void main() {
+  // The top of the quad shows the top row of the distance field
+  vTexPos = vec2(mix(aRegion.x, aRegion.z, aCorner.x), mix(aRegion.w, aRegion.y, aCorner.y));
+  vec3 labelNormal = normalize(u_CameraPos - aOrigin);
+  vec3 labelSide = -cross(labelNormal, vec3(0.0, 1.0, 0.0));
+  vec2 offset = mix(aRect.xy, aRect.zw, aCorner);
+  vec3 modelPosition = aOrigin + offset.x * labelSide + offset.y * vec3(0.0, 1.0, 0.0);
+  gl_Position = u_ViewProjection * vec4(modelPosition, 1.0);
+}
\ No newline at end of file
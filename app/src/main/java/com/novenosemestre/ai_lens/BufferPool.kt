@@ -0,0 +1,91 @@
+package com.novenosemestre.ai_lens
+
+/**
+ * Identifies a conversion buffer by the frame it was sized for.
+ *
+ * @property width The width of the frame in pixels.
+ * @property height The height of the frame in pixels.
+ * @property format The pixel format of the buffer, e.g. an [android.graphics.ImageFormat] constant.
+ */
+data class BufferKey(val width: Int, val height: Int, val format: Int)
+
+/**
+ * A bounded pool of reusable buffers keyed by frame size and format.
+ *
+ * Buffers are created on demand by [factory] and kept until more than [capacity] keys are in use, at which point the
+ * least recently used buffer is dropped. This lets one converter serve frames of several sizes (camera, preview,
+ * gallery) without reallocating on every frame or keeping buffers for sizes that are no longer seen.
+ *
+ * The pool does not lease buffers: callers that share a pool must serialize the use of the returned buffers.
+ *
+ * @param capacity The maximum number of buffers kept in the pool.
+ * @param factory Creates a new buffer for a key.
+ */
+class BufferPool<T : Any>(
+  val capacity: Int,
+  private val factory: (BufferKey) -> T
+) {
+  init {
+    require(capacity >= 1) { "capacity must be at least 1, got $capacity" }
+  }
+
+  private val buffers = object : LinkedHashMap<BufferKey, T>(capacity + 1, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<BufferKey, T>): Boolean {
+      val evict = size > capacity
+      if (evict) evictions++
+      return evict
+    }
+  }
+
+  /**
+   * The number of times an existing buffer was returned.
+   */
+  var reuses = 0L
+    private set
+
+  /**
+   * The number of buffers created by the pool.
+   */
+  var allocations = 0L
+    private set
+
+  /**
+   * The number of buffers dropped to stay within [capacity].
+   */
+  var evictions = 0L
+    private set
+
+  /**
+   * Returns the buffer for a key, creating it if the pool doesn't hold one yet.
+   *
+   * @param key The size and format of the frame.
+   * @return The buffer associated with the key.
+   */
+  @Synchronized
+  fun acquire(key: BufferKey): T {
+    val existing = buffers[key]
+    if (existing != null) {
+      reuses++
+      return existing
+    }
+    allocations++
+    return factory(key).also { buffers[key] = it }
+  }
+
+  /**
+   * Drops all the buffers held by the pool. The counters are kept.
+   */
+  @Synchronized
+  fun clear() {
+    buffers.clear()
+  }
+
+  /**
+   * The number of buffers currently held by the pool.
+   */
+  val size: Int
+    @Synchronized get() = buffers.size
+
+  override fun toString(): String =
+    "BufferPool(size=$size/$capacity, reuses=$reuses, allocations=$allocations, evictions=$evictions)"
+}
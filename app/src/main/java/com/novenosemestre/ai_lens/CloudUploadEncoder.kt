@@ -0,0 +1,110 @@
+package com.novenosemestre.ai_lens
+
+import android.graphics.ImageFormat
+import android.graphics.Rect
+import android.graphics.YuvImage
+import android.media.Image
+import android.os.SystemClock
+import java.io.ByteArrayOutputStream
+
+/**
+ * A JPEG ready to be uploaded, and how it was made.
+ *
+ * @property bytes The JPEG.
+ * @property width The width of the JPEG.
+ * @property height The height of the JPEG.
+ * @property quality The JPEG quality of the last attempt.
+ * @property attempts The number of times the image was encoded to fit the budget.
+ * @property encodeMillis The time spent resampling and encoding.
+ */
+class EncodedUpload(
+  val bytes: ByteArray,
+  val width: Int,
+  val height: Int,
+  val quality: Int,
+  val attempts: Int,
+  val encodeMillis: Long
+) {
+  override fun toString(): String =
+    "${width}x$height q$quality, ${bytes.size} bytes in $encodeMillis ms ($attempts attempts)"
+}
+
+/**
+ * Encodes camera images for Cloud Vision: YUV straight to JPEG, upright, downscaled and within a byte budget.
+ *
+ * The image is rotated and downscaled in YUV by [Nv21Resampler] and compressed by [YuvImage], so no ARGB bitmap is
+ * created. The quality is picked by a [JpegQualityController].
+ *
+ * @param maxDimension The maximum width or height of the JPEG. Cloud Vision works well from about 640 pixels; larger
+ * images mostly cost upload time.
+ * @param budgetBytes The target maximum size of a JPEG.
+ * @param maxAttempts The maximum number of encodings per image when lowering the quality.
+ */
+class CloudUploadEncoder(
+  val maxDimension: Int = 1024,
+  budgetBytes: Int = 200 * 1024,
+  private val maxAttempts: Int = 3
+) {
+  private val resampler = Nv21Resampler()
+  private val qualityController = JpegQualityController(budgetBytes)
+  private val stream = ByteArrayOutputStream(budgetBytes)
+
+  /**
+   * Encodes an image.
+   *
+   * @param image The camera image, in YUV_420_888 format. It is only read during the call.
+   * @param imageRotation The clockwise rotation that makes the image upright, in degrees.
+   * @return The JPEG. Its coordinates relate to the image through the rotation and a uniform scale.
+   */
+  @Synchronized
+  fun encode(image: Image, imageRotation: Int): EncodedUpload {
+    val startMillis = SystemClock.elapsedRealtime()
+    resampler.resample(image.toYuvFrame(), imageRotation, maxDimension)
+    return compress(startMillis)
+  }
+
+  /**
+   * Encodes a region of an upright image, e.g. the box of a detection sent to the cloud on its own. The region is
+   * sampled from the full resolution frame, and shares the quality of the whole images.
+   *
+   * @param frame The camera frame. It is only read during the call.
+   * @param imageRotation The clockwise rotation that makes the frame upright, in degrees.
+   * @param left The left of the region, in upright full resolution coordinates.
+   * @param top The top of the region, in upright full resolution coordinates.
+   * @param right The right of the region, exclusive.
+   * @param bottom The bottom of the region, exclusive.
+   * @return The JPEG of the region.
+   */
+  @Synchronized
+  fun encodeRegion(frame: YuvFrame, imageRotation: Int, left: Int, top: Int, right: Int, bottom: Int): EncodedUpload {
+    val startMillis = SystemClock.elapsedRealtime()
+    resampler.resampleRegion(frame, imageRotation, left, top, right, bottom, maxDimension)
+    return compress(startMillis)
+  }
+
+  // Compresses the output of the resampler, lowering the quality until it fits the budget.
+  private fun compress(startMillis: Long): EncodedUpload {
+    val width = resampler.width
+    val height = resampler.height
+    val yuvImage = YuvImage(resampler.data, ImageFormat.NV21, width, height, null)
+    val bounds = Rect(0, 0, width, height)
+
+    var attempts = 0
+    var quality: Int
+    do {
+      quality = qualityController.quality
+      stream.reset()
+      yuvImage.compressToJpeg(bounds, quality, stream)
+      attempts++
+    } while (qualityController.onEncoded(stream.size()) && attempts < maxAttempts)
+
+    return EncodedUpload(
+      stream.toByteArray(),
+      width,
+      height,
+      quality,
+      attempts,
+      SystemClock.elapsedRealtime() - startMillis
+    )
+  }
+}
@@ -0,0 +1,127 @@
+package com.novenosemestre.ai_lens
+
+/**
+ * The results of one analysis, as parallel primitive arrays: one box, center, score and class id per detection.
+ *
+ * A batch is meant to be cleared and refilled for every analysis, so reading and transforming detections allocates
+ * nothing once the arrays have grown to the usual number of detections. Labels are interned into class ids by a
+ * [LabelRegistry], so ids stay valid across [clear] and can be passed on to anchors and renderers. Entries past [count]
+ * are stale.
+ *
+ * @param initialCapacity The number of detections the arrays hold before they need to grow.
+ * @param labels Interns the labels of the detections.
+ */
+class DetectionBatch(initialCapacity: Int = 16, val labels: LabelRegistry = LabelRegistry.shared) {
+  init {
+    require(initialCapacity >= 1) { "Invalid initialCapacity $initialCapacity" }
+  }
+
+  var left = IntArray(initialCapacity)
+    private set
+  var top = IntArray(initialCapacity)
+    private set
+  var right = IntArray(initialCapacity)
+    private set
+  var bottom = IntArray(initialCapacity)
+    private set
+  var centerX = IntArray(initialCapacity)
+    private set
+  var centerY = IntArray(initialCapacity)
+    private set
+  var scores = FloatArray(initialCapacity)
+    private set
+  var classIds = IntArray(initialCapacity)
+    private set
+
+  /** The number of detections. */
+  var count = 0
+    private set
+
+  /**
+   * Removes every detection. The arrays are kept.
+   */
+  fun clear() {
+    count = 0
+  }
+
+  /**
+   * Returns the class id of a label, interning it on first use.
+   */
+  fun classId(label: String): Int = labels.id(label)
+
+  /**
+   * Returns the label of a class id returned by [classId].
+   */
+  fun label(classId: Int): String = labels.label(classId)
+
+  /**
+   * Returns the label of a detection.
+   */
+  fun labelAt(index: Int): String = labels.label(classIds[index])
+
+  /**
+   * Adds a detection whose center is the center of its box.
+   *
+   * @return The index of the detection.
+   */
+  fun add(left: Int, top: Int, right: Int, bottom: Int, score: Float, classId: Int): Int =
+    add(left, top, right, bottom, (left + right) / 2, (top + bottom) / 2, score, classId)
+
+  /**
+   * Adds a detection.
+   *
+   * @return The index of the detection.
+   */
+  fun add(
+    left: Int,
+    top: Int,
+    right: Int,
+    bottom: Int,
+    centerX: Int,
+    centerY: Int,
+    score: Float,
+    classId: Int
+  ): Int {
+    if (count == scores.size) grow()
+    val index = count++
+    this.left[index] = left
+    this.top[index] = top
+    this.right[index] = right
+    this.bottom[index] = bottom
+    this.centerX[index] = centerX
+    this.centerY[index] = centerY
+    scores[index] = score
+    classIds[index] = classId
+    return index
+  }
+
+  /**
+   * Replaces the box and center of a detection, e.g. to map it to other coordinates.
+   */
+  fun setGeometry(index: Int, left: Int, top: Int, right: Int, bottom: Int, centerX: Int, centerY: Int) {
+    require(index in 0 until count) { "Invalid index $index, count is $count" }
+    this.left[index] = left
+    this.top[index] = top
+    this.right[index] = right
+    this.bottom[index] = bottom
+    this.centerX[index] = centerX
+    this.centerY[index] = centerY
+  }
+
+  private fun grow() {
+    val capacity = scores.size * 2
+    left = left.copyOf(capacity)
+    top = top.copyOf(capacity)
+    right = right.copyOf(capacity)
+    bottom = bottom.copyOf(capacity)
+    centerX = centerX.copyOf(capacity)
+    centerY = centerY.copyOf(capacity)
+    scores = scores.copyOf(capacity)
+    classIds = classIds.copyOf(capacity)
+  }
+
+  override fun toString(): String =
+    (0 until count).joinToString(prefix = "DetectionBatch[", postfix = "]") { i ->
+      "${labelAt(i)} ${scores[i]} (${centerX[i]}, ${centerY[i]})"
+    }
+}
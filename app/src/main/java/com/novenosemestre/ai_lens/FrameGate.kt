@@ -0,0 +1,182 @@
+package com.novenosemestre.ai_lens
+
+import kotlin.math.abs
+
+/**
+ * Reads the luma of a frame at a given pixel, 0-255.
+ */
+fun interface LumaSource {
+  fun luma(x: Int, y: Int): Int
+}
+
+/**
+ * A cheap pre-inference check that skips frames which are not worth analyzing.
+ *
+ * Only a sparse grid of luma samples is read. A frame is skipped when:
+ * - it is too blurred to classify, measured as the variance of the Laplacian over the sample grid, or
+ * - it looks the same as the last accepted frame, measured as the mean absolute difference of a downsampled luma
+ *   signature.
+ *
+ * @property config The thresholds used by the gate.
+ */
+class FrameGate(val config: Config = Config()) {
+
+  /**
+   * Thresholds of a [FrameGate].
+   *
+   * @property signatureSize The signature is a [signatureSize] x [signatureSize] grid of mean luma values.
+   * @property samplesPerCell Luma samples read per signature cell, in each direction.
+   * @property sharpnessGridSize The Laplacian is evaluated on a [sharpnessGridSize] x [sharpnessGridSize] grid.
+   * @property minChange Frames whose signature differs from the last accepted one by less than this, on average,
+   * are skipped. Set to 0 to never skip unchanged frames.
+   * @property minSharpness Frames whose variance of the Laplacian is below this are skipped.
+   * Set to 0 to never skip blurry frames.
+   */
+  data class Config(
+    val signatureSize: Int = 16,
+    val samplesPerCell: Int = 4,
+    val sharpnessGridSize: Int = 64,
+    val minChange: Float = 6f,
+    val minSharpness: Float = 30f
+  )
+
+  /**
+   * The outcome of [evaluate].
+   */
+  enum class Decision {
+    ACCEPT,
+    SKIP_UNCHANGED,
+    SKIP_BLURRY
+  }
+
+  private val signature = FloatArray(config.signatureSize * config.signatureSize)
+  private val lastSignature = FloatArray(signature.size)
+  private var hasLastSignature = false
+
+  /** The number of frames accepted for analysis. */
+  var accepted = 0L
+    private set
+
+  /** The number of frames skipped because they matched the last accepted frame. */
+  var skippedUnchanged = 0L
+    private set
+
+  /** The number of frames skipped because they were too blurred. */
+  var skippedBlurry = 0L
+    private set
+
+  /** The signature difference measured on the last evaluated frame. */
+  var lastChange = 0f
+    private set
+
+  /** The variance of the Laplacian measured on the last evaluated frame. */
+  var lastSharpness = 0f
+    private set
+
+  /**
+   * Evaluates a frame given its luma plane.
+   *
+   * @param plane The luma (Y) plane of the frame.
+   * @param width The width of the frame.
+   * @param height The height of the frame.
+   * @return Whether the frame should be analyzed.
+   */
+  fun evaluate(plane: YuvPlane, width: Int, height: Int): Decision {
+    val buffer = plane.buffer
+    val rowStride = plane.rowStride
+    val pixelStride = plane.pixelStride
+    return evaluate(width, height) { x, y -> buffer.get(y * rowStride + x * pixelStride).toInt() and 0xff }
+  }
+
+  /**
+   * Evaluates a frame. Accepted frames become the reference for the next change check.
+   *
+   * @param width The width of the frame.
+   * @param height The height of the frame.
+   * @param source Reads the luma of the frame.
+   * @return Whether the frame should be analyzed.
+   */
+  @Synchronized
+  fun evaluate(width: Int, height: Int, source: LumaSource): Decision {
+    lastSharpness = sharpness(width, height, source)
+    if (lastSharpness < config.minSharpness) {
+      skippedBlurry++
+      return Decision.SKIP_BLURRY
+    }
+
+    computeSignature(width, height, source)
+    lastChange = if (hasLastSignature) {
+      var sum = 0f
+      for (i in signature.indices) sum += abs(signature[i] - lastSignature[i])
+      sum / signature.size
+    } else {
+      Float.MAX_VALUE
+    }
+    if (lastChange < config.minChange) {
+      skippedUnchanged++
+      return Decision.SKIP_UNCHANGED
+    }
+
+    signature.copyInto(lastSignature)
+    hasLastSignature = true
+    accepted++
+    return Decision.ACCEPT
+  }
+
+  /**
+   * Forgets the last accepted frame, so that the next sharp frame is accepted.
+   */
+  @Synchronized
+  fun reset() {
+    hasLastSignature = false
+  }
+
+  /**
+   * Computes the mean luma of every signature cell from a few samples per cell.
+   */
+  private fun computeSignature(width: Int, height: Int, source: LumaSource) {
+    val size = config.signatureSize
+    val samples = config.samplesPerCell
+    for (cellY in 0 until size) {
+      for (cellX in 0 until size) {
+        var sum = 0
+        for (sy in 0 until samples) {
+          val y = ((cellY * samples + sy) * 2 + 1) * height / (2 * size * samples)
+          for (sx in 0 until samples) {
+            val x = ((cellX * samples + sx) * 2 + 1) * width / (2 * size * samples)
+            sum += source.luma(x, y)
+          }
+        }
+        signature[cellY * size + cellX] = sum.toFloat() / (samples * samples)
+      }
+    }
+  }
+
+  /**
+   * Computes the variance of the 4-neighbour Laplacian on a sparse grid of pixels.
+   */
+  private fun sharpness(width: Int, height: Int, source: LumaSource): Float {
+    if (width < 3 || height < 3) return 0f
+    val grid = config.sharpnessGridSize
+    var sum = 0.0
+    var sumOfSquares = 0.0
+    var count = 0
+    for (gy in 0 until grid) {
+      val y = 1 + gy * (height - 3) / maxOf(1, grid - 1)
+      for (gx in 0 until grid) {
+        val x = 1 + gx * (width - 3) / maxOf(1, grid - 1)
+        val laplacian = 4 * source.luma(x, y) -
+          source.luma(x - 1, y) - source.luma(x + 1, y) -
+          source.luma(x, y - 1) - source.luma(x, y + 1)
+        sum += laplacian
+        sumOfSquares += laplacian.toDouble() * laplacian
+        count++
+      }
+    }
+    val mean = sum / count
+    return (sumOfSquares / count - mean * mean).toFloat()
+  }
+
+  override fun toString(): String =
+    "FrameGate(accepted=$accepted, skippedUnchanged=$skippedUnchanged, skippedBlurry=$skippedBlurry)"
+}
@@ -4,7 +4,6 @@ import android.content.Context
 import com.android.volley.Request
 import com.android.volley.toolbox.JsonObjectRequest
 import com.android.volley.toolbox.Volley
-import org.json.JSONObject
 class ImageSearchHandler(private val cx: String, private val apiKey: String, private val context: Context) {
 
    /**
@@ -44,7 +43,7 @@ class ImageSearchHandler(private val cx: String, private val apiKey: String, pri
                 val jsonObjectRequest = JsonObjectRequest(
                     Request.Method.GET, url, null,
                     { response ->
-                        val results = parseResults(response)
+                        val results = SearchResultParser.parse(response)
                         allResults.addAll(results)
                         receivedResults += results.size
                         if (receivedResults >= totalExpectedResults) {
@@ -60,46 +59,4 @@ class ImageSearchHandler(private val cx: String, private val apiKey: String, pri
             }
         }
     }
-
-   /**
-     * This function is used to parse the results from the Google Custom Search API response.
-     * It takes a JSONObject as an argument, which is the response from the API.
-     *
-     * The function initializes a mutable list to store the search results.
-     * It then gets the "items" JSONArray from the response.
-     *
-     * If the "items" JSONArray is not null, the function iterates over each item in the array.
-     * For each item, it gets the title, image URL, page URL, and snippet.
-     * The image URL is retrieved from the "pagemap" JSONObject, the "cse_thumbnail" JSONArray, and the first object in the array.
-     * If the image URL is null, an empty string is used as a fallback.
-     *
-     * The function then creates a SearchResult with the title, image URL, page URL, and snippet, and adds it to the results list.
-     *
-     * The function returns the results list.
-     */
-    private fun parseResults(response: JSONObject): List<SearchResult> {
-        val results = mutableListOf<SearchResult>()
-        val items = response.optJSONArray("items")
-        items?.let {
-            for (i in 0 until items.length()) {
-                val item = items.getJSONObject(i)
-                val title = item.getString("title")
-                val imageUrl = item.optJSONObject("pagemap")?.optJSONArray("cse_thumbnail")?.optJSONObject(0)?.optString("src") ?: ""
-                val pageUrl = item.getString("link")
-                val snippet = item.getString("snippet")
-                results.add(SearchResult(title, imageUrl, pageUrl, snippet))
-            }
-        }
-        return results
-    }
-
-   /**
-     * Data class representing a search result from the Google Custom Search API.
-     *
-     * @property title The title of the search result, typically the title of the webpage.
-     * @property imageUrl The URL of an image from the search result. This is typically a thumbnail image.
-     * @property pageUrl The URL of the webpage of the search result.
-     * @property snippet A short snippet of text from the webpage of the search result.
-     */
-    data class SearchResult(val title: String, val imageUrl: String, val pageUrl: String, val snippet: String)
-}
\ No newline at end of file
+}
@@ -12,7 +12,7 @@ import androidx.recyclerview.widget.RecyclerView
 import com.bumptech.glide.Glide
 import com.novenosemestre.ai_lens.R
 
-class ResultAdapter(private var results: MutableList<ImageSearchHandler.SearchResult>) : RecyclerView.Adapter<ResultAdapter.ResultViewHolder>() {
+class ResultAdapter(private var results: MutableList<SearchResult>) : RecyclerView.Adapter<ResultAdapter.ResultViewHolder>() {
 
     /**
      * A ViewHolder provides a direct reference to the views that make up an item in the RecyclerView.
@@ -96,7 +96,7 @@ class ResultAdapter(private var results: MutableList<ImageSearchHandler.SearchRe
     * notifyDataSetChanged() is a method in the RecyclerView.Adapter class. It signals that the data has changed and any View reflecting the data set should refresh itself.
     */
    @SuppressLint("NotifyDataSetChanged")
-   fun updateResults(newResults: List<ImageSearchHandler.SearchResult>) {
+   fun updateResults(newResults: List<SearchResult>) {
        println("Updating results with: $newResults")
        results.clear()
        results.addAll(newResults)
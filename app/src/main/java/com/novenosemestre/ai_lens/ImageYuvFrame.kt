@@ -0,0 +1,14 @@
+package com.novenosemestre.ai_lens
+
+import android.media.Image
+
+/**
+ * Wraps the planes of a YUV_420_888 image into a [YuvFrame] without copying them.
+ *
+ * @receiver The image to wrap.
+ * @return A [YuvFrame] backed by the image plane buffers.
+ */
+fun Image.toYuvFrame(): YuvFrame {
+  val (y, u, v) = planes.map { YuvPlane(it.buffer, it.rowStride, it.pixelStride) }
+  return YuvFrame(width, height, y, u, v)
+}
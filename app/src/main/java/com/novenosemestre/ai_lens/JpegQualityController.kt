@@ -0,0 +1,49 @@
+package com.novenosemestre.ai_lens
+
+/**
+ * Chooses the JPEG quality of uploads so that they stay within a byte budget.
+ *
+ * The quality is remembered from one upload to the next, since consecutive camera frames compress alike. When an
+ * encoded image is over budget the quality is lowered and the image encoded again; when images come out well under
+ * budget the quality is raised for the next ones.
+ *
+ * @param budgetBytes The maximum size of an upload.
+ * @param minQuality The lowest quality used. An image still over budget at this quality is sent as is.
+ * @param maxQuality The highest quality used.
+ * @param step The quality change applied per adjustment.
+ */
+class JpegQualityController(
+  val budgetBytes: Int,
+  val minQuality: Int = 40,
+  val maxQuality: Int = 90,
+  val step: Int = 10
+) {
+  init {
+    require(budgetBytes > 0) { "Invalid budget $budgetBytes" }
+    require(minQuality in 1..maxQuality && maxQuality <= 100) { "Invalid quality range $minQuality..$maxQuality" }
+  }
+
+  /** The quality to encode the next image with. */
+  var quality = maxQuality
+    private set
+
+  /**
+   * Records the size of an image encoded at [quality].
+   *
+   * @param sizeBytes The size of the encoded image.
+   * @return True if the image must be encoded again at the new [quality], false if it can be sent.
+   */
+  fun onEncoded(sizeBytes: Int): Boolean {
+    if (sizeBytes > budgetBytes) {
+      if (quality == minQuality) return false
+      // Far over budget: take a bigger step so the retry is likely to fit.
+      val steps = if (sizeBytes > 2 * budgetBytes) 2 else 1
+      quality = (quality - steps * step).coerceAtLeast(minQuality)
+      return true
+    }
+    if (sizeBytes < budgetBytes / 2) {
+      quality = (quality + step / 2).coerceAtMost(maxQuality)
+    }
+    return false
+  }
+}
@@ -0,0 +1,75 @@
+package com.novenosemestre.ai_lens
+
+import java.io.InputStream
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Interns labels to compact int ids, shared by every detector and renderer of the process.
+ *
+ * The labels of the model files are registered once, see [load], and the free labels returned by ML Kit and Cloud
+ * Vision are added as they show up, see [id]. A label keeps its id for the life of the process, so ids can be stored
+ * and compared instead of strings, and used as array indices (e.g. by texture caches).
+ *
+ * Looking up an id hashes the string once; looking up the label of an id is a plain array read. Both are lock-free
+ * once the label is registered.
+ */
+class LabelRegistry {
+  companion object {
+    /** The registry used by the detectors, batches and renderers of the app. */
+    val shared = LabelRegistry()
+  }
+
+  private val ids = ConcurrentHashMap<String, Int>()
+
+  // Copied when a label is added, so readers never lock. The array is larger than size to make adding cheap.
+  @Volatile
+  private var labels = arrayOfNulls<String>(64)
+
+  /** The number of registered labels. Ids are in `0 until size`. */
+  @Volatile
+  var size = 0
+    private set
+
+  // The ids of the labels loaded from each file, by path.
+  private val files = ConcurrentHashMap<String, IntArray>()
+
+  /**
+   * Returns the id of a label, registering it on first use.
+   */
+  fun id(label: String): Int = ids[label] ?: register(label)
+
+  @Synchronized
+  private fun register(label: String): Int {
+    ids[label]?.let { return it }
+    val id = size
+    if (id == labels.size) labels = labels.copyOf(id * 2)
+    labels[id] = label
+    // Publish the label before its id, so a reader that finds the id also finds the label
+    size = id + 1
+    ids[label] = id
+    return id
+  }
+
+  /**
+   * Returns the label of an id returned by [id].
+   */
+  fun label(id: Int): String {
+    require(id in 0 until size) { "Unknown label id $id, size is $size" }
+    return checkNotNull(labels[id])
+  }
+
+  /**
+   * Registers the labels of a model, one per line, blank lines skipped. Each file is read once per process; later
+   * calls with the same path return the ids of the first one.
+   *
+   * @param path Identifies the file, e.g. its asset path.
+   * @param open Opens the file. Only called the first time.
+   * @return The id of each class of the model: the label id of class `i` is at index `i`.
+   */
+  fun load(path: String, open: () -> InputStream): IntArray = files.getOrPut(path) {
+    open().bufferedReader().useLines { lines -> lines.filter { it.isNotBlank() }.map { id(it) }.toList() }
+      .toIntArray()
+  }
+
+  override fun toString(): String = "LabelRegistry(size=$size, files=${files.keys})"
+}
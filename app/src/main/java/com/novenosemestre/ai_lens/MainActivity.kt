@@ -17,6 +17,7 @@ import com.google.ar.core.ArCoreApk
 import com.novenosemestre.ai_lens.ImageHandler.ImageHandler
 import com.novenosemestre.ai_lens.ImageSearchHandler.ImageSearchHandler
 import com.novenosemestre.ai_lens.ImageSearchHandler.ResultAdapter
+import com.novenosemestre.ai_lens.ImageSearchHandler.SearchResult
 import com.novenosemestre.ai_lens.PlacesMaps.PlacesMapsActivity2
 import com.novenosemestre.ai_lens.RA_Objects2.MainActivity2
 
@@ -165,7 +166,7 @@ class MainActivity : AppCompatActivity() {
      *
      * @param results The search results to update.
      */
-    fun updateSearchResults(results: List<ImageSearchHandler.SearchResult>) {
+    fun updateSearchResults(results: List<SearchResult>) {
         runOnUiThread {
             resultAdapter.updateResults(results)
         }
@@ -0,0 +1,89 @@
+package com.novenosemestre.ai_lens
+
+/**
+ * Class-aware non-maximum suppression over [SsdDetections]: of several boxes of the same class covering the same
+ * object, only the one with the highest score is kept. Boxes of different classes never suppress each other.
+ *
+ * Two boxes are duplicates when their intersection over union reaches [iouThreshold], or when the intersection covers
+ * [containmentThreshold] of the smaller box. The second test catches the partial boxes produced when an object is cut
+ * by a tile edge, whose IoU with the whole box is low. Scratch arrays grow to the largest input and are reused, so
+ * nothing is allocated in steady state.
+ *
+ * @param iouThreshold The intersection over union from which two boxes are duplicates.
+ * @param containmentThreshold The fraction of the smaller box covered by the other one from which they are duplicates.
+ */
+class NonMaxSuppression(
+  val iouThreshold: Float = 0.5f,
+  val containmentThreshold: Float = 0.8f
+) {
+  private var order = IntArray(0)
+  private var kept = IntArray(0)
+
+  /**
+   * Copies the detections that survive suppression from [input] to [output], highest score first.
+   *
+   * @return The number of detections in [output]. It is at most `output.capacity`; the lowest scores are dropped
+   * beyond that.
+   */
+  fun apply(input: SsdDetections, output: SsdDetections): Int {
+    val count = input.count
+    if (order.size < count) {
+      order = IntArray(count)
+      kept = IntArray(count)
+    }
+    sortByScore(input, count)
+
+    var keptCount = 0
+    for (i in 0 until count) {
+      if (keptCount == output.capacity) break
+      val candidate = order[i]
+      var duplicate = false
+      for (k in 0 until keptCount) {
+        if (isDuplicate(input, kept[k], candidate)) {
+          duplicate = true
+          break
+        }
+      }
+      if (duplicate) continue
+      kept[keptCount] = candidate
+      output.left[keptCount] = input.left[candidate]
+      output.top[keptCount] = input.top[candidate]
+      output.right[keptCount] = input.right[candidate]
+      output.bottom[keptCount] = input.bottom[candidate]
+      output.classIds[keptCount] = input.classIds[candidate]
+      output.scores[keptCount] = input.scores[candidate]
+      keptCount++
+    }
+    output.count = keptCount
+    return keptCount
+  }
+
+  // Insertion sort of the indices, highest score first; inputs are a few dozen boxes at most.
+  private fun sortByScore(input: SsdDetections, count: Int) {
+    for (i in 0 until count) {
+      val score = input.scores[i]
+      var j = i - 1
+      while (j >= 0 && input.scores[order[j]] < score) {
+        order[j + 1] = order[j]
+        j--
+      }
+      order[j + 1] = i
+    }
+  }
+
+  private fun isDuplicate(detections: SsdDetections, a: Int, b: Int): Boolean {
+    if (detections.classIds[a] != detections.classIds[b]) return false
+    val left = detections.left
+    val top = detections.top
+    val right = detections.right
+    val bottom = detections.bottom
+    val intersectionWidth = minOf(right[a], right[b]) - maxOf(left[a], left[b])
+    val intersectionHeight = minOf(bottom[a], bottom[b]) - maxOf(top[a], top[b])
+    if (intersectionWidth <= 0f || intersectionHeight <= 0f) return false
+    val intersection = intersectionWidth * intersectionHeight
+    val areaA = (right[a] - left[a]) * (bottom[a] - top[a])
+    val areaB = (right[b] - left[b]) * (bottom[b] - top[b])
+    return intersection >= iouThreshold * (areaA + areaB - intersection) ||
+      intersection >= containmentThreshold * minOf(areaA, areaB)
+  }
+}
@@ -0,0 +1,129 @@
+package com.novenosemestre.ai_lens
+
+import kotlin.math.max
+import kotlin.math.roundToInt
+
+/**
+ * Rotates and downscales a [YuvFrame] into a NV21 image in a single pass, staying in YUV.
+ *
+ * This is the input of the JPEG encoder used for cloud uploads: the frame never goes through ARGB, and neither the
+ * full resolution frame nor a rotated copy of it is created. Sampling is nearest neighbour at the pixel centers, like
+ * [YuvTensorConverter]. The output array is reused while the output size doesn't change.
+ */
+class Nv21Resampler {
+  /** The width of the last output, always even. */
+  var width = 0
+    private set
+
+  /** The height of the last output, always even. */
+  var height = 0
+    private set
+
+  /** The last output, NV21. It may be larger than `width * height * 3 / 2`. */
+  var data = ByteArray(0)
+    private set
+
+  private var sampleX = IntArray(0)
+  private var sampleY = IntArray(0)
+
+  /**
+   * Rotates the frame and scales it so that its largest side is at most [maxDimension], keeping its aspect ratio.
+   *
+   * @param frame The frame to resample.
+   * @param rotation The clockwise rotation to apply, in degrees. One of 0, 90, 180, 270.
+   * @param maxDimension The maximum width or height of the output.
+   * @return The transform that maps output coordinates back to the frame.
+   */
+  fun resample(frame: YuvFrame, rotation: Int, maxDimension: Int): TensorTransform {
+    val swapsAxes = swapsAxes(rotation)
+    val rotatedWidth = if (swapsAxes) frame.height else frame.width
+    val rotatedHeight = if (swapsAxes) frame.width else frame.height
+    resample(frame, rotation, 0, 0, rotatedWidth, rotatedHeight, maxDimension)
+    return TensorTransform(rotation, rotatedWidth, rotatedHeight, width, height)
+  }
+
+  /**
+   * Rotates the frame and resamples a region of the rotated frame, e.g. the box of a detection, so that its largest
+   * side is at most [maxDimension], keeping its aspect ratio.
+   *
+   * @param frame The frame to resample.
+   * @param rotation The clockwise rotation to apply, in degrees. One of 0, 90, 180, 270.
+   * @param left The left of the region, in rotated frame coordinates.
+   * @param top The top of the region, in rotated frame coordinates.
+   * @param right The right of the region, exclusive.
+   * @param bottom The bottom of the region, exclusive.
+   * @param maxDimension The maximum width or height of the output.
+   */
+  fun resampleRegion(frame: YuvFrame, rotation: Int, left: Int, top: Int, right: Int, bottom: Int, maxDimension: Int) {
+    val swapsAxes = swapsAxes(rotation)
+    val rotatedWidth = if (swapsAxes) frame.height else frame.width
+    val rotatedHeight = if (swapsAxes) frame.width else frame.height
+    require(left in 0 until right && right <= rotatedWidth && top in 0 until bottom && bottom <= rotatedHeight) {
+      "Invalid region [$left, $top, $right, $bottom] of a ${rotatedWidth}x$rotatedHeight image"
+    }
+    resample(frame, rotation, left, top, right, bottom, maxDimension)
+  }
+
+  private fun resample(
+    frame: YuvFrame,
+    rotation: Int,
+    left: Int,
+    top: Int,
+    right: Int,
+    bottom: Int,
+    maxDimension: Int
+  ) {
+    val regionWidth = right - left
+    val regionHeight = bottom - top
+    val scale = minOf(1f, maxDimension.toFloat() / max(regionWidth, regionHeight))
+    // NV21 stores one chroma sample per 2x2 block, so both sides must be even.
+    val outWidth = max(2, (regionWidth * scale).roundToInt() and 1.inv())
+    val outHeight = max(2, (regionHeight * scale).roundToInt() and 1.inv())
+    prepare(outWidth, outHeight, left, top, regionWidth, regionHeight)
+
+    val y = frame.y
+    val u = frame.u
+    val v = frame.v
+    var lumaOffset = 0
+    var chromaOffset = outWidth * outHeight
+    for (oy in 0 until outHeight) {
+      val ry = sampleY[oy]
+      val chromaRow = oy and 1 == 0
+      for (ox in 0 until outWidth) {
+        val rx = sampleX[ox]
+        // Rotated image -> source frame, the inverse of rotating the frame clockwise.
+        val sx: Int
+        val sy: Int
+        when (rotation) {
+          0 -> { sx = rx; sy = ry }
+          90 -> { sx = ry; sy = frame.height - 1 - rx }
+          180 -> { sx = frame.width - 1 - rx; sy = frame.height - 1 - ry }
+          else -> { sx = frame.width - 1 - ry; sy = rx }
+        }
+        data[lumaOffset++] = y.buffer.get(sy * y.rowStride + sx * y.pixelStride)
+        // One chroma pair per 2x2 block, taken at its top left pixel.
+        if (chromaRow && ox and 1 == 0) {
+          data[chromaOffset++] = v.buffer.get((sy shr 1) * v.rowStride + (sx shr 1) * v.pixelStride)
+          data[chromaOffset++] = u.buffer.get((sy shr 1) * u.rowStride + (sx shr 1) * u.pixelStride)
+        }
+      }
+    }
+  }
+
+  private fun swapsAxes(rotation: Int): Boolean = when (rotation) {
+    0, 180 -> false
+    90, 270 -> true
+    else -> error("Invalid imageRotation $rotation")
+  }
+
+  private fun prepare(outWidth: Int, outHeight: Int, left: Int, top: Int, regionWidth: Int, regionHeight: Int) {
+    val size = outWidth * outHeight * 3 / 2
+    if (data.size < size) data = ByteArray(size)
+    if (sampleX.size != outWidth) sampleX = IntArray(outWidth)
+    if (sampleY.size != outHeight) sampleY = IntArray(outHeight)
+    for (x in 0 until outWidth) sampleX[x] = left + ((2 * x + 1) * regionWidth) / (2 * outWidth)
+    for (y in 0 until outHeight) sampleY[y] = top + ((2 * y + 1) * regionHeight) / (2 * outHeight)
+    width = outWidth
+    height = outHeight
+  }
+}
@@ -0,0 +1,219 @@
+package com.novenosemestre.ai_lens
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+
+/**
+ * A cache of analysis results keyed by the [PerceptualHash] of the analyzed frame.
+ *
+ * A lookup returns the entry whose hash is closest to the requested one, within [maxDistance] bits, so a frame that
+ * looks like an already analyzed one gets its results without running the analysis again. Entries expire after
+ * [ttlMillis]. The memory tier keeps the [capacity] most recently used entries; the optional [diskTier] keeps
+ * entries across app restarts and receives everything put in the cache.
+ *
+ * Entries also carry a tag, which must match for a hit. Use it for whatever the results depend on besides the
+ * frame content, e.g. the frame size and rotation.
+ *
+ * @param capacity The maximum number of entries in memory.
+ * @param maxDistance The maximum Hamming distance between the hashes of a lookup and of the entry it returns.
+ * @param ttlMillis The lifetime of an entry.
+ * @param diskTier Where entries are also stored on disk, or null to keep them in memory only.
+ * @param clock Returns the current time, in milliseconds.
+ */
+class PerceptualCache<V : Any>(
+  val capacity: Int = 32,
+  val maxDistance: Int = 6,
+  val ttlMillis: Long = 60_000,
+  private val diskTier: DiskTier<V>? = null,
+  private val clock: () -> Long = System::currentTimeMillis
+) {
+  init {
+    require(capacity >= 1) { "capacity must be at least 1, got $capacity" }
+    require(maxDistance in 0..64) { "Invalid maxDistance $maxDistance" }
+  }
+
+  /**
+   * Converts cached values to bytes and back, for the disk tier.
+   */
+  interface Codec<V> {
+    fun encode(value: V, output: DataOutputStream)
+    fun decode(input: DataInputStream): V
+  }
+
+  /**
+   * Stores entries as one file each in [directory].
+   *
+   * @param directory The directory of the files. It is created if needed and must not be used for anything else.
+   * @param codec Converts the values.
+   * @param maxEntries The maximum number of files; the oldest ones are deleted beyond that.
+   */
+  class DiskTier<V>(val directory: File, val codec: Codec<V>, val maxEntries: Int = 256)
+
+  private data class Key(val hash: Long, val tag: Int)
+
+  private class CachedValue<V>(val value: V, val createdMillis: Long, val costMillis: Long)
+
+  private val memory = object : LinkedHashMap<Key, CachedValue<V>>(capacity + 1, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, CachedValue<V>>) = size > capacity
+  }
+
+  // The files of the disk tier by key, with their creation time, oldest first.
+  private val diskIndex = LinkedHashMap<Key, Long>()
+
+  /** The number of lookups answered from memory. */
+  var memoryHits = 0L
+    private set
+
+  /** The number of lookups answered from disk. */
+  var diskHits = 0L
+    private set
+
+  /** The number of lookups that found nothing. */
+  var misses = 0L
+    private set
+
+  /** The sum of the analysis time of the entries returned by lookups: the time saved by the cache. */
+  var savedMillis = 0L
+    private set
+
+  /** The fraction of lookups that found an entry, 0 before the first lookup. */
+  val hitRate: Float
+    @Synchronized get() {
+      val lookups = memoryHits + diskHits + misses
+      return if (lookups == 0L) 0f else (memoryHits + diskHits).toFloat() / lookups
+    }
+
+  init {
+    diskTier?.let { loadDiskIndex(it) }
+  }
+
+  /**
+   * Looks up the entry closest to a hash.
+   *
+   * @param hash The hash of the frame.
+   * @param tag The tag the entry must have.
+   * @return The cached value, or null.
+   */
+  @Synchronized
+  fun get(hash: Long, tag: Int): V? {
+    val now = clock()
+    memory.entries.removeAll { now - it.value.createdMillis >= ttlMillis }
+    val memoryKey = closest(memory.keys, hash, tag)
+    if (memoryKey != null) {
+      // Touch the entry so it becomes the most recently used one.
+      val entry = memory.getValue(memoryKey)
+      memoryHits++
+      savedMillis += entry.costMillis
+      return entry.value
+    }
+
+    val tier = diskTier ?: return miss()
+    diskIndex.entries.removeAll { (key, createdMillis) ->
+      (now - createdMillis >= ttlMillis).also { expired -> if (expired) file(tier, key).delete() }
+    }
+    val diskKey = closest(diskIndex.keys, hash, tag) ?: return miss()
+    val entry = read(tier, diskKey) ?: return miss()
+    memory[diskKey] = entry
+    diskHits++
+    savedMillis += entry.costMillis
+    return entry.value
+  }
+
+  /**
+   * Stores the results of an analysis.
+   *
+   * @param hash The hash of the analyzed frame.
+   * @param tag The tag of the entry.
+   * @param value The results.
+   * @param costMillis How long the analysis took, counted in [savedMillis] by every hit on this entry.
+   */
+  @Synchronized
+  fun put(hash: Long, tag: Int, value: V, costMillis: Long) {
+    val key = Key(hash, tag)
+    val entry = CachedValue(value, clock(), costMillis)
+    memory[key] = entry
+    diskTier?.let { write(it, key, entry) }
+  }
+
+  /**
+   * Drops every entry, in memory and on disk. The counters are kept.
+   */
+  @Synchronized
+  fun clear() {
+    memory.clear()
+    diskTier?.let { tier -> diskIndex.keys.forEach { file(tier, it).delete() } }
+    diskIndex.clear()
+  }
+
+  private fun miss(): V? {
+    misses++
+    return null
+  }
+
+  private fun closest(keys: Collection<Key>, hash: Long, tag: Int): Key? {
+    var best: Key? = null
+    var bestDistance = maxDistance + 1
+    for (key in keys) {
+      if (key.tag != tag) continue
+      val distance = PerceptualHash.distance(key.hash, hash)
+      if (distance < bestDistance) {
+        best = key
+        bestDistance = distance
+      }
+    }
+    return best
+  }
+
+  private fun file(tier: DiskTier<V>, key: Key) =
+    File(tier.directory, "%016x_%08x.bin".format(key.hash, key.tag))
+
+  private fun loadDiskIndex(tier: DiskTier<V>) {
+    val files = tier.directory.listFiles() ?: return
+    files.sortedBy { it.lastModified() }.forEach { file ->
+      val parts = file.name.removeSuffix(".bin").split('_')
+      if (parts.size != 2) return@forEach
+      val hash = java.lang.Long.parseUnsignedLong(parts[0], 16)
+      val tag = java.lang.Integer.parseUnsignedInt(parts[1], 16)
+      diskIndex[Key(hash, tag)] = file.lastModified()
+    }
+  }
+
+  private fun read(tier: DiskTier<V>, key: Key): CachedValue<V>? = try {
+    DataInputStream(file(tier, key).inputStream().buffered()).use { input ->
+      val createdMillis = input.readLong()
+      val costMillis = input.readLong()
+      CachedValue(tier.codec.decode(input), createdMillis, costMillis)
+    }
+  } catch (e: IOException) {
+    diskIndex.remove(key)
+    null
+  }
+
+  private fun write(tier: DiskTier<V>, key: Key, entry: CachedValue<V>) {
+    try {
+      tier.directory.mkdirs()
+      val file = file(tier, key)
+      DataOutputStream(file.outputStream().buffered()).use { output ->
+        output.writeLong(entry.createdMillis)
+        output.writeLong(entry.costMillis)
+        tier.codec.encode(entry.value, output)
+      }
+      file.setLastModified(entry.createdMillis)
+      diskIndex.remove(key)
+      diskIndex[key] = entry.createdMillis
+    } catch (e: IOException) {
+      return
+    }
+    while (diskIndex.size > tier.maxEntries) {
+      val oldest = diskIndex.keys.first()
+      diskIndex.remove(oldest)
+      file(tier, oldest).delete()
+    }
+  }
+
+  override fun toString(): String =
+    "PerceptualCache(memoryHits=$memoryHits, diskHits=$diskHits, misses=$misses, hitRate=$hitRate, " +
+      "saved=${savedMillis}ms)"
+}
@@ -0,0 +1,56 @@
+package com.novenosemestre.ai_lens
+
+/**
+ * Perceptual hashes of camera frames: frames that look alike get hashes that differ in few bits.
+ */
+object PerceptualHash {
+  // The dHash compares each cell of a 9x8 grid with its right neighbour, giving 64 bits.
+  private const val GRID_WIDTH = 9
+  private const val GRID_HEIGHT = 8
+
+  // Luma samples averaged per grid cell, in each direction.
+  private const val SAMPLES_PER_CELL = 4
+
+  /**
+   * Computes the difference hash (dHash) of a frame from its luma plane.
+   *
+   * The frame is reduced to a 9x8 grid of mean luma values and each bit tells whether a cell is darker than its right
+   * neighbour. The hash ignores the frame size, uniform brightness changes and most sensor noise, but changes when the
+   * content moves or changes. Only `9 * 8 * 16` luma samples are read.
+   *
+   * @param plane The luma (Y) plane of the frame.
+   * @param width The width of the frame.
+   * @param height The height of the frame.
+   * @return The 64-bit hash.
+   */
+  fun dHash(plane: YuvPlane, width: Int, height: Int): Long {
+    val buffer = plane.buffer
+    val cells = IntArray(GRID_WIDTH * GRID_HEIGHT)
+    val samplesPerRow = GRID_WIDTH * SAMPLES_PER_CELL
+    val samplesPerColumn = GRID_HEIGHT * SAMPLES_PER_CELL
+    for (sy in 0 until samplesPerColumn) {
+      val y = ((2 * sy + 1) * height) / (2 * samplesPerColumn)
+      val rowStart = y * plane.rowStride
+      val cellRow = (sy / SAMPLES_PER_CELL) * GRID_WIDTH
+      for (sx in 0 until samplesPerRow) {
+        val x = ((2 * sx + 1) * width) / (2 * samplesPerRow)
+        cells[cellRow + sx / SAMPLES_PER_CELL] += buffer.get(rowStart + x * plane.pixelStride).toInt() and 0xff
+      }
+    }
+
+    var hash = 0L
+    for (row in 0 until GRID_HEIGHT) {
+      for (column in 0 until GRID_WIDTH - 1) {
+        val cell = row * GRID_WIDTH + column
+        hash = hash shl 1
+        if (cells[cell] < cells[cell + 1]) hash = hash or 1L
+      }
+    }
+    return hash
+  }
+
+  /**
+   * The number of bits that differ between two hashes.
+   */
+  fun distance(a: Long, b: Long): Int = java.lang.Long.bitCount(a xor b)
+}
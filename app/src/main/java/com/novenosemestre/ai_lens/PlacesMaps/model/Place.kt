@@ -2,9 +2,6 @@ package com.novenosemestre.ai_lens.PlacesMaps.model
 
 import com.google.android.gms.maps.model.LatLng
 import com.google.ar.sceneform.math.Vector3
-import com.google.maps.android.ktx.utils.sphericalHeading
-import kotlin.math.cos
-import kotlin.math.sin
 
 /**
  * A model describing details about a Place (location, name, type, etc.).
@@ -59,12 +56,10 @@ import kotlin.math.sin
      */
     fun Place.getPositionVector(azimuth: Float, latLng: LatLng): Vector3 {
         val placeLatLng = this.geometry.location.latLng
-        val heading = latLng.sphericalHeading(placeLatLng)
-        val r = -2f
-        val x = r * sin(azimuth + heading).toFloat()
-        val y = 1f
-        val z = r * cos(azimuth + heading).toFloat()
-        return Vector3(x, y, z)
+        val heading = PlaceGeometry.heading(latLng.latitude, latLng.longitude, placeLatLng.latitude, placeLatLng.longitude)
+        val position = FloatArray(3)
+        PlaceGeometry.position(azimuth, heading, position)
+        return Vector3(position[0], position[1], position[2])
     }
 
     /**
@@ -0,0 +1,49 @@
+package com.novenosemestre.ai_lens.PlacesMaps.model
+
+import kotlin.math.atan2
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * Plain math behind [getPositionVector], kept free of Android and Maps types.
+ */
+object PlaceGeometry {
+
+    // Distance of the place nodes from the camera.
+    private const val RADIUS = -2f
+
+    /**
+     * Computes the heading from one point to another, in degrees clockwise from north, in the range [-180, 180).
+     * This is the same computation as `SphericalUtil.computeHeading`.
+     *
+     * @param fromLat The latitude of the start point, in degrees.
+     * @param fromLng The longitude of the start point, in degrees.
+     * @param toLat The latitude of the end point, in degrees.
+     * @param toLng The longitude of the end point, in degrees.
+     * @return The heading in degrees.
+     */
+    fun heading(fromLat: Double, fromLng: Double, toLat: Double, toLng: Double): Double {
+        val fromLatRad = Math.toRadians(fromLat)
+        val toLatRad = Math.toRadians(toLat)
+        val dLng = Math.toRadians(toLng) - Math.toRadians(fromLng)
+        val heading = atan2(
+            sin(dLng) * cos(toLatRad),
+            cos(fromLatRad) * sin(toLatRad) - sin(fromLatRad) * cos(toLatRad) * cos(dLng)
+        )
+        val degrees = Math.toDegrees(heading)
+        return if (degrees >= -180 && degrees < 180) degrees else ((degrees + 180) % 360 + 360) % 360 - 180
+    }
+
+    /**
+     * Computes the position of a place node around the camera.
+     *
+     * @param azimuth The azimuth of the device.
+     * @param heading The heading from the device to the place, see [heading].
+     * @param out Receives the x, y and z coordinates.
+     */
+    fun position(azimuth: Float, heading: Double, out: FloatArray) {
+        out[0] = RADIUS * sin(azimuth + heading).toFloat()
+        out[1] = 1f
+        out[2] = RADIUS * cos(azimuth + heading).toFloat()
+    }
+}
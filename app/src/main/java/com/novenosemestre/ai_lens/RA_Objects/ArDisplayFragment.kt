@@ -135,22 +135,22 @@ class ArDisplayFragment : Fragment(R.layout.ar_fragment), Scene.OnUpdateListener
         arFragment?.onDetach()
     }
 
-    /*  private fun onUpdateFrame(frameTime: FrameTime?) {
+    /*  // One detector for the whole fragment, so the model and client are reused across frames.
+    private val detector = ObjectDetector { detection: DetectedObject ->
+        Toast.makeText(
+            requireContext(),
+            "Tracking ${detection.trackingId} ${detection.labels[0].text}",
+            Toast.LENGTH_SHORT
+        ).show()
+        arFragment?.arSceneView?.scene?.removeOnUpdateListener(this)
+        loadModels(detection.labels[0].text, detection.boundingBox)
+    }
+
+    private fun onUpdateFrame(frameTime: FrameTime?) {
         val arFrame = arFragment?.arSceneView?.arFrame ?: return
         copyPixelFromView(arFragment!!.arSceneView) { bitmap ->
-            val targetBitmap = Bitmap.createBitmap(bitmap)
-            val detector = ObjectDetector(image = targetBitmap) { detections ->
-                detections.forEach { detection: DetectedObject ->
-                    Toast.makeText(
-                        requireContext(),
-                        "Tracking ${detection.trackingId} ${detection.labels[0].text}",
-                        Toast.LENGTH_SHORT
-                    ).show()
-                    arFragment?.arSceneView?.scene?.removeOnUpdateListener(this)
-                    loadModels(detection.labels[0].text, detection.boundingBox)
-                }
-            }
-            detector.useCustomObjectDetector()
+            // Only the latest copied frame is processed, older pending frames are dropped.
+            detector.submit(bitmap)
         }
     }*/
 
@@ -1,17 +0,0 @@
-package com.novenosemestre.ai_lens.RA_Objects
-
-class Constants {
-
-    /**
-     * Companion object for the Constants class.
-     * This object contains static members that can be accessed directly from the class name.
-     */
-    companion object{
-
-        /**
-         * Boolean variable to check if the isc is running.
-         * This variable is initially set to false.
-         */
-        var iscRunning= false
-    }
-}
\ No newline at end of file
@@ -0,0 +1,248 @@
+package com.novenosemestre.ai_lens.RA_Objects
+
+import java.io.Closeable
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * A pooled object travelling through a [DetectionPipeline], stamped with the capture time of its frame.
+ *
+ * @property value The pooled object.
+ */
+class Packet<T : Any>(val value: T) {
+    /** The [System.nanoTime] at which the frame carried by this packet was captured. */
+    @Volatile
+    var captureNanos = 0L
+}
+
+/**
+ * Runs object detection as three stages on separate threads: capture, inference and overlay.
+ *
+ * The capture stage runs on the caller's thread (e.g. the camera callback thread): it takes a free frame packet with
+ * [acquireFrame], fills it and hands it over with [submit]. The inference stage runs [infer] on its own thread and
+ * the overlay stage runs [draw] on another one, so a slow model never blocks the camera and a slow overlay never
+ * blocks the model.
+ *
+ * Each hand-off holds a single packet. When a stage produces a packet before the next stage took the previous one, the
+ * previous one is dropped and recycled: the pipeline always works on the newest frame and never builds a backlog.
+ * Frames and detections are pooled, so nothing is allocated per frame.
+ *
+ * @param frames The frame buffers. At least three are needed so capture always finds a free one.
+ * @param detections The detection buffers. At least three are needed so inference always finds a free one.
+ * @param infer Runs the model on a frame and writes the result into a detection buffer.
+ * @param draw Renders a detection result. The buffer is recycled when it returns.
+ * @param onError Called on the stage thread when [infer] or [draw] throws. The packet is recycled and the stage goes on
+ * with the next one.
+ */
+class DetectionPipeline<F : Any, D : Any>(
+    frames: List<F>,
+    detections: List<D>,
+    private val infer: (F, D) -> Unit,
+    private val draw: (D) -> Unit,
+    private val onError: (Throwable) -> Unit
+) : Closeable {
+
+    init {
+        require(frames.size >= 3) { "At least 3 frame buffers are needed, got ${frames.size}" }
+        require(detections.size >= 3) { "At least 3 detection buffers are needed, got ${detections.size}" }
+    }
+
+    private val freeFrames = ArrayBlockingQueue<Packet<F>>(frames.size).apply { frames.forEach { add(Packet(it)) } }
+    private val freeDetections =
+        ArrayBlockingQueue<Packet<D>>(detections.size).apply { detections.forEach { add(Packet(it)) } }
+
+    private val pendingFrame = Handoff<F>()
+    private val pendingDetection = Handoff<D>()
+
+    /** The counters and timings of the pipeline. */
+    val stats = Stats()
+
+    @Volatile
+    private var closed = false
+
+    private val inferenceThread = Thread({ runInference() }, "inferenceThread")
+    private val overlayThread = Thread({ runOverlay() }, "overlayThread")
+
+    init {
+        inferenceThread.start()
+        overlayThread.start()
+    }
+
+    /**
+     * Takes a free frame packet for the capture stage.
+     *
+     * @return A packet to fill and pass to [submit] or [recycle], or null if the pipeline is closed or every buffer
+     * is in use, in which case the frame must be dropped.
+     */
+    fun acquireFrame(): Packet<F>? {
+        if (closed) return null
+        val packet = freeFrames.poll()
+        if (packet == null) stats.droppedFrames.incrementAndGet()
+        return packet
+    }
+
+    /**
+     * Hands a filled frame over to the inference stage, replacing the frame that is still waiting, if any.
+     *
+     * @param packet The packet from [acquireFrame].
+     * @param captureNanos The [System.nanoTime] at which the frame was captured.
+     */
+    fun submit(packet: Packet<F>, captureNanos: Long = System.nanoTime()) {
+        packet.captureNanos = captureNanos
+        stats.capturedFrames.incrementAndGet()
+        val dropped = pendingFrame.offer(packet)
+        if (dropped != null) {
+            stats.droppedFrames.incrementAndGet()
+            freeFrames.offer(dropped)
+        }
+    }
+
+    /**
+     * Returns a frame packet that won't be submitted, e.g. because the frame was rejected by a gate.
+     */
+    fun recycle(packet: Packet<F>) {
+        freeFrames.offer(packet)
+    }
+
+    private fun runInference() {
+        while (!closed) {
+            val frame = pendingFrame.take() ?: break
+            val detection = freeDetections.poll()
+            if (detection == null) {
+                stats.droppedFrames.incrementAndGet()
+                freeFrames.offer(frame)
+                continue
+            }
+            val startNanos = System.nanoTime()
+            try {
+                infer(frame.value, detection.value)
+            } catch (e: Exception) {
+                onError(e)
+                freeFrames.offer(frame)
+                freeDetections.offer(detection)
+                continue
+            }
+            stats.inferenceNanos.record(System.nanoTime() - startNanos)
+            detection.captureNanos = frame.captureNanos
+            freeFrames.offer(frame)
+            val dropped = pendingDetection.offer(detection)
+            if (dropped != null) {
+                stats.droppedFrames.incrementAndGet()
+                freeDetections.offer(dropped)
+            }
+        }
+    }
+
+    private fun runOverlay() {
+        while (!closed) {
+            val detection = pendingDetection.take() ?: break
+            try {
+                draw(detection.value)
+                stats.renderedFrames.incrementAndGet()
+                stats.frameLatencyNanos.record(System.nanoTime() - detection.captureNanos)
+            } catch (e: Exception) {
+                onError(e)
+            } finally {
+                freeDetections.offer(detection)
+            }
+        }
+    }
+
+    /**
+     * Stops both stage threads and waits for them to finish their current packet.
+     */
+    override fun close() {
+        closed = true
+        pendingFrame.close()
+        pendingDetection.close()
+        inferenceThread.join(TimeUnit.SECONDS.toMillis(1))
+        overlayThread.join(TimeUnit.SECONDS.toMillis(1))
+    }
+
+    /**
+     * A single slot hand-off between two stages, where the newest packet wins.
+     */
+    private class Handoff<T : Any> {
+        private val slot = AtomicReference<Packet<T>?>(null)
+
+        @Volatile
+        private var waiter: Thread? = null
+
+        @Volatile
+        private var closed = false
+
+        /**
+         * Puts a packet in the slot.
+         *
+         * @return The packet it replaced, which the caller must recycle, or null.
+         */
+        fun offer(packet: Packet<T>): Packet<T>? {
+            val previous = slot.getAndSet(packet)
+            LockSupport.unpark(waiter)
+            return previous
+        }
+
+        /**
+         * Waits for a packet and takes it out of the slot. Only one thread may call this.
+         *
+         * @return The packet, or null once [close] was called.
+         */
+        fun take(): Packet<T>? {
+            waiter = Thread.currentThread()
+            while (!closed) {
+                val packet = slot.getAndSet(null)
+                if (packet != null) return packet
+                LockSupport.park(this)
+            }
+            return null
+        }
+
+        fun close() {
+            closed = true
+            LockSupport.unpark(waiter)
+        }
+    }
+
+    /**
+     * The counters and timings reported by a [DetectionPipeline].
+     */
+    class Stats {
+        /** The number of frames submitted by the capture stage. */
+        val capturedFrames = AtomicLong()
+
+        /** The number of frames dropped because a newer frame replaced them or no buffer was free. */
+        val droppedFrames = AtomicLong()
+
+        /** The number of detection results drawn by the overlay stage. */
+        val renderedFrames = AtomicLong()
+
+        /** The time spent in the model. */
+        val inferenceNanos = Timing()
+
+        /** The time from capture to the end of the overlay stage. */
+        val frameLatencyNanos = Timing()
+
+        override fun toString(): String =
+            "captured=$capturedFrames, dropped=$droppedFrames, rendered=$renderedFrames, " +
+                "inference=${inferenceNanos.averageMillis}ms, latency=${frameLatencyNanos.averageMillis}ms"
+    }
+
+    /**
+     * An exponential moving average of a duration.
+     */
+    class Timing {
+        @Volatile
+        var averageNanos = 0f
+            private set
+
+        val averageMillis: Float
+            get() = averageNanos / 1_000_000f
+
+        internal fun record(nanos: Long) {
+            averageNanos = if (averageNanos == 0f) nanos.toFloat() else averageNanos * 0.9f + nanos * 0.1f
+        }
+    }
+}
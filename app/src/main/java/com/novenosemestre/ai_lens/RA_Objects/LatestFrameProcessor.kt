@@ -0,0 +1,110 @@
+package com.novenosemestre.ai_lens.RA_Objects
+
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Feeds a stream of frames to an asynchronous processor, one frame at a time, newest first.
+ *
+ * At most one frame is processed at a time. Frames submitted meanwhile wait in a single slot where the latest frame
+ * replaces the previous one, so the processor always works on the most recent frame and never builds a backlog.
+ *
+ * @param clock Returns the time in milliseconds, from a monotonic clock.
+ * @param process Starts processing a frame. It must call `done` exactly once when the frame is finished, failed or
+ * not, possibly from another thread.
+ */
+class LatestFrameProcessor<T : Any>(
+    private val clock: () -> Long = { System.nanoTime() / 1_000_000 },
+    private val process: (frame: T, done: () -> Unit) -> Unit
+) {
+    // The frame waiting to be processed. A newer frame replaces it.
+    private val pendingFrame = AtomicReference<T?>(null)
+
+    // Whether a frame is being processed.
+    private val running = AtomicBoolean(false)
+
+    /** The number of frames passed to [submit]. */
+    val submittedFrames = AtomicLong()
+
+    /** The number of frames the processor finished. */
+    val processedFrames = AtomicLong()
+
+    /** The number of frames replaced by a newer frame before being processed. */
+    val droppedFrames = AtomicLong()
+
+    /** The processing time of the last frame, in milliseconds. */
+    @Volatile
+    var lastLatencyMillis = 0L
+        private set
+
+    /** The exponential moving average of the processing time, in milliseconds. */
+    @Volatile
+    var averageLatencyMillis = 0f
+        private set
+
+    /** Whether a frame is being processed. */
+    val isRunning: Boolean
+        get() = running.get()
+
+    /**
+     * Submits a frame.
+     *
+     * If the processor is idle, the frame is processed right away. Otherwise it waits until the current frame is
+     * done, unless a newer frame is submitted before that, in which case it is dropped.
+     *
+     * @param frame The frame to process. It must not be modified until it has been processed or dropped.
+     */
+    fun submit(frame: T) {
+        submittedFrames.incrementAndGet()
+        if (pendingFrame.getAndSet(frame) != null) {
+            droppedFrames.incrementAndGet()
+        }
+        processNext()
+    }
+
+    /**
+     * Drops the pending frame, if any. The frame being processed, if any, is finished.
+     */
+    fun clear() {
+        pendingFrame.set(null)
+    }
+
+    /**
+     * Processes the pending frame if no other frame is being processed.
+     * When a frame is done, the next pending frame, if any, is processed.
+     */
+    private fun processNext() {
+        if (!running.compareAndSet(false, true)) return
+
+        val frame = pendingFrame.getAndSet(null)
+        if (frame == null) {
+            running.set(false)
+            // A frame may have been submitted after the slot was read but before the flag was cleared.
+            if (pendingFrame.get() != null) processNext()
+            return
+        }
+
+        val startMillis = clock()
+        process(frame) { onFrameDone(startMillis) }
+    }
+
+    /**
+     * Records the latency of a frame and moves on to the next pending frame.
+     */
+    private fun onFrameDone(startMillis: Long) {
+        val latency = clock() - startMillis
+        lastLatencyMillis = latency
+        averageLatencyMillis = if (processedFrames.getAndIncrement() == 0L) {
+            latency.toFloat()
+        } else {
+            averageLatencyMillis * 0.9f + latency * 0.1f
+        }
+        running.set(false)
+        processNext()
+    }
+
+    override fun toString(): String =
+        "submitted=$submittedFrames, processed=$processedFrames, dropped=$droppedFrames, " +
+            "averageLatency=${averageLatencyMillis}ms"
+}
@@ -1,13 +1,29 @@
 package com.novenosemestre.ai_lens.RA_Objects
 
 import android.graphics.Bitmap
+import android.os.SystemClock
 import android.util.Log
 import com.google.mlkit.common.model.LocalModel
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.objects.ObjectDetection
 import com.google.mlkit.vision.objects.custom.CustomObjectDetectorOptions
-
-class ObjectDetector(private val image: Bitmap, private val idAnalyxer: IdAnalyzer) {
+import java.io.Closeable
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A long-lived detector that processes a stream of frames with the custom model.
+ *
+ * The model, the options and the ML Kit client are built once and reused for every frame.
+ * At most one frame is processed at a time. Frames submitted meanwhile wait in a single slot where the latest frame
+ * replaces the previous one, so the detector always works on the most recent frame and never builds a backlog; see
+ * [LatestFrameProcessor].
+ *
+ * @param idAnalyxer Called for every detected object that has at least one label.
+ */
+class ObjectDetector(private val idAnalyxer: IdAnalyzer) : Closeable {
+    companion object {
+        private const val TAG = "ObjectDetector"
+    }
 
     /**
      * A lazy property that builds a LocalModel.
@@ -50,55 +66,69 @@ class ObjectDetector(private val image: Bitmap, private val idAnalyxer: IdAnalyz
     */
    private val objectDetector by lazy { ObjectDetection.getClient(options) }
 
-    /**
-     * A variable to keep track of the count. Initially set to 0.
-     */
-    private var count = 0
-
-    /**
-     * Function to use the custom object detector.
-     * This function first checks if the isc is not running. If it is not, it processes an InputImage created from the image property with rotation set to 0.
-     * It adds a success listener, a failure listener, and a complete listener to the process.
-     * The success listener sets iscRunning to true, logs the size of the results, and calls the idAnalyxer function for each result with labels.
-     * The failure listener sets iscRunning to false and prints the stack trace of the exception.
-     * The complete listener sets iscRunning to false.
-     * If an exception is thrown during the process, the function catches it and prints its stack trace.
-     */
-    fun useCustomObjectDetector() {
-
+    // Feeds the frames to ML Kit one at a time, newest first. Replaces the former global Constants.iscRunning flag.
+    private val frames = LatestFrameProcessor<Bitmap>(SystemClock::elapsedRealtime) { image, done ->
         try {
+            objectDetector.process(InputImage.fromBitmap(image, 0))
+                .addOnSuccessListener { results ->
+                    Log.d(TAG, "${results.size} objects")
+                    results?.forEach {
+                        if (it.labels.size > 0) {
+                            idAnalyxer(it)
+                        }
+                    }
+                }
+                .addOnFailureListener { e ->
+                    e.printStackTrace()
+                }
+                .addOnCompleteListener {
+                    done()
+                }
+        } catch (e: Exception) {
+            e.printStackTrace()
+            done()
+        }
+    }
 
-            if (!Constants.iscRunning) {
-                objectDetector.process(InputImage.fromBitmap(image, 0))
-                    .addOnSuccessListener { results ->
+    /** The number of frames passed to [submit]. */
+    val submittedFrames: AtomicLong
+        get() = frames.submittedFrames
 
-                        Constants.iscRunning = true
-                        Log.e("labels", "${results.size}")
-                        results?.forEach {
-                            if (it.labels.size > 0) {
-                                idAnalyxer(it)
-                            }
+    /** The number of frames the detector finished processing. */
+    val processedFrames: AtomicLong
+        get() = frames.processedFrames
 
-                        }
+    /** The number of frames replaced by a newer frame before being processed. */
+    val droppedFrames: AtomicLong
+        get() = frames.droppedFrames
 
-                    }
-                    .addOnFailureListener { e ->
+    /** The processing time of the last frame, in milliseconds. */
+    val lastLatencyMillis: Long
+        get() = frames.lastLatencyMillis
 
-                        Constants.iscRunning = false
-                        e.printStackTrace()
-
-                    }.addOnCompleteListener {
-                        Constants.iscRunning = false
-                    }
-            }
-        }   catch (e: Exception) {
-            e.printStackTrace()
-        }
+    /** The exponential moving average of the processing time, in milliseconds. */
+    val averageLatencyMillis: Float
+        get() = frames.averageLatencyMillis
 
+    /**
+     * Submits a frame for detection.
+     *
+     * If the detector is idle, the frame is processed right away. Otherwise it waits until the current frame is
+     * done, unless a newer frame is submitted before that, in which case it is dropped.
+     *
+     * @param image The frame to process. It must not be modified until it has been processed or dropped.
+     */
+    fun submit(image: Bitmap) {
+        frames.submit(image)
     }
-    // [END process_image]
 
+    /**
+     * Drops the pending frame and releases the ML Kit client.
+     */
+    override fun close() {
+        frames.clear()
+        objectDetector.close()
+    }
 
-    // [END read_results_custom]
+    override fun toString(): String = "ObjectDetector($frames)"
 }
-
@@ -5,46 +5,127 @@ import android.content.Context
 import android.graphics.Bitmap
 import android.graphics.Canvas
 import android.graphics.Color
+import android.graphics.ImageFormat
 import android.graphics.Paint
-import android.graphics.RectF
 import android.graphics.SurfaceTexture
 import android.hardware.camera2.CameraCaptureSession
+import android.hardware.camera2.CameraCharacteristics
 import android.hardware.camera2.CameraDevice
 import android.hardware.camera2.CameraManager
+import android.media.ImageReader
 import android.os.Bundle
 import android.os.Handler
 import android.os.HandlerThread
+import android.util.Log
 import android.view.Surface
 import android.view.TextureView
 import android.widget.ImageView
 import androidx.appcompat.app.AppCompatActivity
+import com.novenosemestre.ai_lens.FrameGate
+import com.novenosemestre.ai_lens.LabelRegistry
 import com.novenosemestre.ai_lens.R
-import com.novenosemestre.ai_lens.ml.SsdMobilenetV11Metadata1
-import org.tensorflow.lite.support.common.FileUtil
-import org.tensorflow.lite.support.image.ImageProcessor
-import org.tensorflow.lite.support.image.TensorImage
-import org.tensorflow.lite.support.image.ops.ResizeOp
+import com.novenosemestre.ai_lens.SsdDetections
+import com.novenosemestre.ai_lens.SsdPostProcessor
+import com.novenosemestre.ai_lens.TensorLayout
+import com.novenosemestre.ai_lens.TfLiteDetectorSession
+import com.novenosemestre.ai_lens.Tile
+import com.novenosemestre.ai_lens.TileGrid
+import com.novenosemestre.ai_lens.TiledDetector
+import com.novenosemestre.ai_lens.YuvFrame
+import com.novenosemestre.ai_lens.YuvTensorConverter
+import com.novenosemestre.ai_lens.toYuvFrame
+import java.util.concurrent.ArrayBlockingQueue
 
 
 class TextureViewActivity : AppCompatActivity() {
 
+    companion object {
+        private const val TAG = "TextureViewActivity"
+
+        /** Boolean intent extra: detect on overlapping tiles of a high resolution frame, for small objects. */
+        const val EXTRA_TILED_DETECTION = "tiled_detection"
+
+        // Size of the frames read by the capture stage.
+        private const val CAPTURE_WIDTH = 640
+        private const val CAPTURE_HEIGHT = 480
+
+        // Size of the frames read by the capture stage in tiled mode.
+        private const val TILED_CAPTURE_WIDTH = 1280
+        private const val TILED_CAPTURE_HEIGHT = 960
+
+        // Three buffers per hand-off: one being written, one waiting, one being read.
+        private const val BUFFER_COUNT = 3
+
+        private const val STATS_INTERVAL_NANOS = 1_000_000_000L
+    }
+
     var colors = listOf<Int>(
         Color.BLUE, Color.GREEN, Color.RED, Color.CYAN, Color.GRAY, Color.BLACK,
         Color.DKGRAY, Color.MAGENTA, Color.YELLOW, Color.RED)
     val paint = Paint()
-    lateinit var labels:List<String>
-    private lateinit var imageProcessor: ImageProcessor
+    // The label id of each class of the model, see LabelRegistry
+    lateinit var labelIds: IntArray
     private lateinit var cameraManager: CameraManager
-    private lateinit var cameraDevice: CameraDevice
+    // The camera and its capture session, opened and configured on the camera handler thread.
+    @Volatile
+    private var cameraDevice: CameraDevice? = null
+    @Volatile
+    private var captureSession: CameraCaptureSession? = null
+    private lateinit var handlerThread: HandlerThread
     private lateinit var handler: Handler
-    private lateinit var bitmap: Bitmap
-    private lateinit var model: SsdMobilenetV11Metadata1
+    private lateinit var session: TfLiteDetectorSession
+    private lateinit var postProcessor: SsdPostProcessor
+    private lateinit var imageReader: ImageReader
+    private lateinit var pipeline: DetectionPipeline<CapturedFrame, SsdDetections>
+    private lateinit var imageView: ImageView
+
+    // Skips inference on blurred frames or when the scene hasn't changed.
+    val frameGate = FrameGate()
+
+    // Whether the model runs on tiles of the frame, see EXTRA_TILED_DETECTION.
+    private var tiled = false
+
+    // The tiled detector and its model sessions, one per tile worker. Only in tiled mode.
+    @Volatile
+    private var tiledDetector: TiledDetector<TileWorker>? = null
+    private val tileSessions = mutableListOf<TfLiteDetectorSession>()
+
+    // Clockwise rotation from the camera sensor to the display, in degrees.
+    private var frameRotation = 0
+
+    // Transparent overlay bitmaps the overlay stage draws into. The one on screen is not in the queue.
+    private val freeOverlays = ArrayBlockingQueue<Bitmap>(BUFFER_COUNT)
+    private var displayedOverlay: Bitmap? = null
+    private var lastStatsNanos = 0L
+
+    /**
+     * A frame buffer of the pipeline: the model input, written straight from the camera YUV planes.
+     * In tiled mode the whole frame is copied instead, and the tiles are converted by the tile workers.
+     */
+    class CapturedFrame(session: TfLiteDetectorSession, tiled: Boolean) {
+        val converter = YuvTensorConverter(session.inputWidth, session.inputHeight, TensorLayout.RGB_UINT8)
+        val output = session.newOutput()
+        val nv21 = if (tiled) ByteArray(TILED_CAPTURE_WIDTH * TILED_CAPTURE_HEIGHT * 3 / 2) else null
+        val frame = nv21?.let { YuvFrame.fromNv21(it, TILED_CAPTURE_WIDTH, TILED_CAPTURE_HEIGHT) }
+    }
+
+    /**
+     * What one tile inference needs for itself: a model session, its input and its output.
+     */
+    class TileWorker(val session: TfLiteDetectorSession) {
+        val converter = YuvTensorConverter(session.inputWidth, session.inputHeight, TensorLayout.RGB_UINT8)
+        val output = session.newOutput()
+    }
 
    /**
     * Called when the activity is starting.
     * This method is a part of the Android activity lifecycle and it's the first method to be called when the activity is created.
     * It's where most initialization happens: calling the super class's onCreate method, setting the user interface layout for this activity,
-    * loading labels from a file, building an image processor, creating a new instance of the model, starting a handler thread, and setting up a texture view.
+    * loading labels from a file, acquiring the shared model session, starting the camera handler thread and the detection pipeline, and setting up a texture view.
+    *
+    * The texture view only shows the camera preview. Frames for detection are read from an [ImageReader] on the camera
+    * handler thread, inference and overlay drawing run on the pipeline threads, and the UI thread only swaps in the
+    * finished overlay.
     *
     * @param savedInstanceState If the activity is being re-initialized after previously being shut down then this Bundle contains the data it most recently supplied in onSaveInstanceState(Bundle). Note: Otherwise it is null.
     */
@@ -52,28 +133,52 @@ class TextureViewActivity : AppCompatActivity() {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.detection_object)
 
-        // Load labels from a file
-        labels = FileUtil.loadLabels(this, "labels.txt")
+        // Load labels from a file, once per process
+        labelIds = LabelRegistry.shared.load("labels.txt") { assets.open("labels.txt") }
 
-        // Build an image processor
-        imageProcessor = ImageProcessor.Builder().add(ResizeOp(300, 300, ResizeOp.ResizeMethod.BILINEAR)).build()
+        // Get the model, shared with the other screens that use it
+        session = TfLiteDetectorSession.acquire(this)
+        postProcessor = SsdPostProcessor(scoreThreshold = 0.5f, classCount = labelIds.size)
 
-        // Create a new instance of the model
-        model = SsdMobilenetV11Metadata1.newInstance(this)
+        // In tiled mode, one single-threaded model session per tile worker: the parallelism comes from the tiles
+        tiled = intent.getBooleanExtra(EXTRA_TILED_DETECTION, false)
+        if (tiled) {
+            repeat(TileGrid.defaultTileCount()) { slot ->
+                tileSessions.add(TfLiteDetectorSession.acquire(this, threadCount = 1, slot = slot + 1))
+            }
+        }
 
-        // Start a handler thread
-        val handlerThread = HandlerThread("videoThread")
+        // Start a handler thread, it also runs the capture stage
+        handlerThread = HandlerThread("videoThread")
         handlerThread.start()
         handler = Handler(handlerThread.looper)
 
+        // Start the inference and overlay stages
+        pipeline = DetectionPipeline(
+            List(BUFFER_COUNT) { CapturedFrame(session, tiled) },
+            List(BUFFER_COUNT) { SsdDetections(session.maxDetections) },
+            ::runModel,
+            ::drawOverlay,
+            { e -> Log.e(TAG, "Detection pipeline stage failed", e) }
+        )
+
+        // Read camera frames for the capture stage
+        imageReader = if (tiled) {
+            ImageReader.newInstance(TILED_CAPTURE_WIDTH, TILED_CAPTURE_HEIGHT, ImageFormat.YUV_420_888, 2)
+        } else {
+            ImageReader.newInstance(CAPTURE_WIDTH, CAPTURE_HEIGHT, ImageFormat.YUV_420_888, 2)
+        }
+        imageReader.setOnImageAvailableListener({ reader -> captureFrame(reader) }, handler)
+
         // Set up a texture view
         val textureView = findViewById<TextureView>(R.id.textureView)
-        val imageView = findViewById<ImageView>(R.id.imageView)
+        imageView = findViewById(R.id.imageView)
 
         // Set a listener for the texture view's surface texture
         textureView.surfaceTextureListener = object : TextureView.SurfaceTextureListener {
-            // Open the camera when the surface texture is available
+            // Create the overlays and open the camera when the surface texture is available
             override fun onSurfaceTextureAvailable(surface: SurfaceTexture, width: Int, height: Int) {
+                repeat(BUFFER_COUNT) { freeOverlays.offer(Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)) }
                 open_camera()
             }
 
@@ -86,42 +191,8 @@ class TextureViewActivity : AppCompatActivity() {
                 return false
             }
 
-            // Process the image and draw the results on the image view when the surface texture is updated
+            // Do nothing when the surface texture is updated, frames are analyzed from the image reader
             override fun onSurfaceTextureUpdated(surface: SurfaceTexture) {
-                // Process the image
-                bitmap = textureView.bitmap!!
-                var image = TensorImage.fromBitmap(bitmap)
-                image = imageProcessor.process(image)
-
-                // Get the results of the model
-                val outputs = model.process(image)
-                val locations = outputs.locationsAsTensorBuffer.floatArray
-                val classes = outputs.classesAsTensorBuffer.floatArray
-                val scores = outputs.scoresAsTensorBuffer.floatArray
-                val numberOfDetections = outputs.numberOfDetectionsAsTensorBuffer.floatArray
-
-                // Draw the results on the image view
-                var mutable = bitmap.copy(Bitmap.Config.ARGB_8888, true)
-                var canvas = Canvas(mutable)
-                val h = mutable.height
-                val w = mutable.width
-                paint.textSize = h/15f
-                paint.strokeWidth = h/85f
-                var x = 0
-                scores.forEachIndexed { index, fl ->
-                    x = index
-                    x *= 4
-                    if(fl > 0.5){
-                        paint.setColor(colors.get(index))
-                        paint.style = Paint.Style.STROKE
-                        canvas.drawRect(RectF(locations.get(x+1)*w, locations.get(x)*h, locations.get(x+3)*w, locations.get(x+2)*h), paint)
-                        paint.style = Paint.Style.FILL
-                        canvas.drawText(labels.get(classes.get(index).toInt())+" "+fl.toString(), locations.get(x+1)*w, locations.get(x)*h, paint)
-                    }
-                }
-
-                // Set the image view's bitmap
-                imageView.setImageBitmap(mutable)
             }
         }
 
@@ -129,14 +200,129 @@ class TextureViewActivity : AppCompatActivity() {
         cameraManager = getSystemService(Context.CAMERA_SERVICE) as CameraManager
     }
 
+    /**
+     * Capture stage, on the camera handler thread.
+     * Takes the newest camera image, skips it if it's blurry or unchanged, and converts it into a free model input.
+     */
+    private fun captureFrame(reader: ImageReader) {
+        val image = reader.acquireLatestImage() ?: return
+        val captureNanos = System.nanoTime()
+        try {
+            val frame = image.toYuvFrame()
+            if (frameGate.evaluate(frame.y, frame.width, frame.height) != FrameGate.Decision.ACCEPT) {
+                // Keep the last overlay
+                return
+            }
+            val packet = pipeline.acquireFrame() ?: return
+            val input = packet.value
+            if (input.nv21 != null) {
+                frame.toNv21(input.nv21)
+            } else {
+                input.converter.convert(frame, frameRotation)
+            }
+            pipeline.submit(packet, captureNanos)
+        } finally {
+            image.close()
+        }
+    }
+
+    /**
+     * Inference stage, on the pipeline's inference thread.
+     */
+    private fun runModel(frame: CapturedFrame, detections: SsdDetections) {
+        val tiledDetector = tiledDetector
+        if (frame.frame != null && tiledDetector != null) {
+            tiledDetector.detect(frame.frame, frameRotation, detections)
+            return
+        }
+        session.run(frame.converter.buffer, frame.output)
+        // Boxes stay normalized, the overlay stage scales them to its bitmap
+        postProcessor.process(frame.output, 1f, 1f, detections)
+    }
+
+    /**
+     * Runs the model on one tile, on a tiled detector thread. Boxes are normalized to the tile.
+     */
+    private fun detectTile(worker: TileWorker, frame: YuvFrame, rotation: Int, tile: Tile, detections: SsdDetections) {
+        worker.converter.convertRegion(frame, rotation, tile.left, tile.top, tile.width, tile.height)
+        worker.session.run(worker.converter.buffer, worker.output)
+        postProcessor.process(worker.output, 1f, 1f, detections)
+    }
+
+    /**
+     * Creates the tiled detector once the frame rotation is known, since the tiles are cut from the upright frame.
+     */
+    private fun createTiledDetector() {
+        if (!tiled || tiledDetector != null) return
+        val swapsAxes = frameRotation == 90 || frameRotation == 270
+        val grid = TileGrid.forTileCount(
+            tileSessions.size,
+            if (swapsAxes) TILED_CAPTURE_HEIGHT else TILED_CAPTURE_WIDTH,
+            if (swapsAxes) TILED_CAPTURE_WIDTH else TILED_CAPTURE_HEIGHT
+        )
+        tiledDetector = TiledDetector(grid, tileSessions.map { TileWorker(it) }, session.maxDetections, ::detectTile)
+        Log.i(TAG, "Tiled detection: $tiledDetector")
+    }
+
+    /**
+     * Overlay stage, on the pipeline's overlay thread.
+     * Draws the boxes into a free transparent overlay and posts it to the UI thread.
+     */
+    private fun drawOverlay(detections: SsdDetections) {
+        val overlay = freeOverlays.poll() ?: return
+        overlay.eraseColor(Color.TRANSPARENT)
+        val canvas = Canvas(overlay)
+        val h = overlay.height
+        val w = overlay.width
+        paint.textSize = h/15f
+        paint.strokeWidth = h/85f
+        for (index in 0 until detections.count) {
+            val left = detections.left[index]*w
+            val top = detections.top[index]*h
+            paint.setColor(colors.get(index % colors.size))
+            paint.style = Paint.Style.STROKE
+            canvas.drawRect(left, top, detections.right[index]*w, detections.bottom[index]*h, paint)
+            paint.style = Paint.Style.FILL
+            val label = LabelRegistry.shared.label(labelIds[detections.classIds[index]])
+            canvas.drawText(label+" "+detections.scores[index].toString(), left, top, paint)
+        }
+
+        // Swap the overlay in and give the previous one back to this stage
+        imageView.post {
+            displayedOverlay?.let { freeOverlays.offer(it) }
+            displayedOverlay = overlay
+            imageView.setImageBitmap(overlay)
+        }
+
+        val now = System.nanoTime()
+        if (now - lastStatsNanos >= STATS_INTERVAL_NANOS) {
+            lastStatsNanos = now
+            val model = tiledDetector?.let { "${it.lastDetectNanos / 1_000_000}ms tiled" }
+                ?: "${session.lastInferenceMillis}ms"
+            Log.i(TAG, "Detection pipeline: ${pipeline.stats}, model: $model, gate: $frameGate")
+        }
+    }
+
     /**
      * Called before the activity is destroyed.
      * This method is a part of the Android activity lifecycle and it's the last method to be called before the activity is destroyed.
-     * It's where most cleanup happens: calling the super class's onDestroy method and closing the model.
+     * It's where most cleanup happens: calling the super class's onDestroy method, closing the camera, stopping the
+     * pipeline and releasing the model.
+     *
+     * The camera is closed and its handler thread drained before the image reader is closed, since the capture stage may
+     * still be reading the planes of a camera image.
      */
     override fun onDestroy() {
         super.onDestroy()
-        model.close()
+        captureSession?.close()
+        cameraDevice?.close()
+        handlerThread.quitSafely()
+        handlerThread.join()
+        imageReader.close()
+        pipeline.close()
+        tiledDetector?.close()
+        tileSessions.forEach { it.close() }
+        session.close()
     }
 
     /**
@@ -158,12 +344,16 @@ class TextureViewActivity : AppCompatActivity() {
 
                 var surfaceTexture = findViewById<TextureView>(R.id.textureView).surfaceTexture
                 var surface = Surface(surfaceTexture)
+                frameRotation = sensorToDisplayRotation(p0.id)
+                createTiledDetector()
 
-                var captureRequest = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW)
+                var captureRequest = p0.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW)
                 captureRequest.addTarget(surface)
+                captureRequest.addTarget(imageReader.surface)
 
-                cameraDevice.createCaptureSession(listOf(surface), object: CameraCaptureSession.StateCallback(){
+                p0.createCaptureSession(listOf(surface, imageReader.surface), object: CameraCaptureSession.StateCallback(){
                     override fun onConfigured(p0: CameraCaptureSession) {
+                        captureSession = p0
                         p0.setRepeatingRequest(captureRequest.build(), null, null)
                     }
                     override fun onConfigureFailed(p0: CameraCaptureSession) {
@@ -180,4 +370,22 @@ class TextureViewActivity : AppCompatActivity() {
             }
         }, handler)
     }
-}
\ No newline at end of file
+
+    /**
+     * Computes the clockwise rotation that turns a camera frame upright on the current display.
+     *
+     * @param cameraId The ID of the camera.
+     * @return The rotation in degrees, one of 0, 90, 180, 270.
+     */
+    private fun sensorToDisplayRotation(cameraId: String): Int {
+        val sensorOrientation = cameraManager.getCameraCharacteristics(cameraId)
+            .get(CameraCharacteristics.SENSOR_ORIENTATION) ?: 0
+        val displayRotation = when (windowManager.defaultDisplay.rotation) {
+            Surface.ROTATION_90 -> 90
+            Surface.ROTATION_180 -> 180
+            Surface.ROTATION_270 -> 270
+            else -> 0
+        }
+        return (sensorOrientation - displayRotation + 360) % 360
+    }
+}
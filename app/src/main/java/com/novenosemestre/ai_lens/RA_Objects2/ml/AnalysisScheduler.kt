@@ -0,0 +1,117 @@
+package com.google.ar.core.examples.java.ml
+
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Decides when the renderer may start a new analysis.
+ *
+ * At most one analysis is in flight at a time. In continuous mode the pause between two analyses follows the
+ * measured analyzer latency: slow analyzers (e.g. Cloud Vision) are polled less often than fast ones (ML Kit), so the
+ * analyzer never falls behind and the renderer always analyzes the newest camera frame.
+ *
+ * All times are in milliseconds, from the same monotonic clock.
+ *
+ * @param minIntervalMillis The shortest pause between the end of an analysis and the start of the next one.
+ * @param maxIntervalMillis The longest pause between the end of an analysis and the start of the next one.
+ * @param idleRatio The pause as a fraction of the average analyzer latency, before clamping.
+ */
+class AnalysisScheduler(
+  val minIntervalMillis: Long = 100,
+  val maxIntervalMillis: Long = 2000,
+  val idleRatio: Float = 0.5f
+) {
+  companion object {
+    // Weight of the newest sample in the moving averages.
+    private const val SMOOTHING = 0.2f
+  }
+
+  private val inFlight = AtomicBoolean(false)
+
+  @Volatile
+  private var startMillis = 0L
+
+  @Volatile
+  private var lastStartMillis = -1L
+
+  @Volatile
+  private var lastFinishMillis = Long.MIN_VALUE / 2
+
+  // When a continuous analysis may be tried again after a cancelled one.
+  @Volatile
+  private var retryAtMillis = Long.MIN_VALUE
+
+  /** The moving average of the analyzer latency. */
+  @Volatile
+  var averageLatencyMillis = 0f
+    private set
+
+  // The moving average of the time between the start of two analyses.
+  @Volatile
+  private var averagePeriodMillis = 0f
+
+  /**
+   * The shortest pause currently allowed between two analyses, on top of [minIntervalMillis], e.g. set by the
+   * [LatencyGovernor] to leave the CPU to the renderer. Not clamped to [maxIntervalMillis].
+   */
+  @Volatile
+  var throttleMillis = 0L
+
+  /** Whether an analysis is currently running. */
+  val isBusy: Boolean
+    get() = inFlight.get()
+
+  /** The pause currently applied between two analyses in continuous mode. */
+  val intervalMillis: Long
+    get() = maxOf(
+      (averageLatencyMillis * idleRatio).toLong().coerceIn(minIntervalMillis, maxIntervalMillis),
+      throttleMillis
+    )
+
+  /** The effective number of analyses started per second, or 0 before the second analysis. */
+  val analysisFps: Float
+    get() = if (averagePeriodMillis > 0f) 1000f / averagePeriodMillis else 0f
+
+  /**
+   * Checks whether a continuous analysis is due, without starting it.
+   */
+  fun isDue(nowMillis: Long): Boolean =
+    !isBusy && nowMillis - lastFinishMillis >= intervalMillis && nowMillis >= retryAtMillis
+
+  /**
+   * Marks an analysis as started, unless one is already in flight.
+   *
+   * @return True if the caller may start an analysis; it must then call [finish] or [cancel].
+   */
+  fun tryStart(nowMillis: Long): Boolean {
+    if (!inFlight.compareAndSet(false, true)) return false
+    startMillis = nowMillis
+    return true
+  }
+
+  /**
+   * Marks the analysis started by [tryStart] as done and records its latency.
+   */
+  fun finish(nowMillis: Long) {
+    val latency = (nowMillis - startMillis).toFloat()
+    averageLatencyMillis = if (averageLatencyMillis == 0f) latency else average(averageLatencyMillis, latency)
+    if (lastStartMillis >= 0) {
+      val period = (startMillis - lastStartMillis).toFloat()
+      averagePeriodMillis = if (averagePeriodMillis == 0f) period else average(averagePeriodMillis, period)
+    }
+    lastStartMillis = startMillis
+    lastFinishMillis = nowMillis
+    inFlight.set(false)
+  }
+
+  /**
+   * Releases the slot taken by [tryStart] when no analysis was actually run, e.g. no camera image was available or
+   * the frame was skipped. The next continuous analysis is due [minIntervalMillis] later at the earliest, so skipped
+   * frames aren't retried on every rendered frame.
+   */
+  fun cancel(nowMillis: Long) {
+    retryAtMillis = nowMillis + minIntervalMillis
+    inFlight.set(false)
+  }
+
+  private fun average(current: Float, sample: Float) = current + SMOOTHING * (sample - current)
+}
@@ -0,0 +1,171 @@
+package com.google.ar.core.examples.java.ml
+
+import com.novenosemestre.ai_lens.LabelRegistry
+
+/**
+ * Keeps one anchor per detected object across scans.
+ *
+ * Each detection is matched with the existing tracks by the 3D distance between its hit position and the current
+ * position of their anchors, which ARCore refines as it learns the scene, and by label. Labels are compared by their
+ * [LabelRegistry] id. A match updates the track instead of creating another anchor: the confidence of the label is an
+ * exponential moving average of the detections, and a track takes another label only once [relabelAfter] detections
+ * in a row agree on it and it beats the lowered confidence of the current label. Only a detection that matches no track
+ * creates an anchor.
+ *
+ * Tracks whose confidence reaches [confidentThreshold] are labeled well enough that their objects don't need to be
+ * sent to the cloud again, see [confidentTracks].
+ *
+ * @param matchDistance The maximum distance between a detection and a track it matches, in meters.
+ * @param smoothing The weight of a new detection in the moving average of the confidence.
+ * @param confidentThreshold The confidence from which a track is considered reliably labeled.
+ * @param relabelAfter The number of consecutive detections with the same other label needed to relabel a track.
+ * @param position Writes the current world position of an anchor into the array, e.g.
+ * `{ anchor, out -> anchor.pose.getTranslation(out, 0) }`.
+ * @param release Releases the anchor of a removed track, e.g. `Anchor::detach`.
+ */
+class AnchorTracker<A : Any>(
+  val matchDistance: Float = 0.2f,
+  val smoothing: Float = 0.3f,
+  val confidentThreshold: Float = 0.8f,
+  val relabelAfter: Int = 2,
+  private val position: (A, FloatArray) -> Unit,
+  private val release: (A) -> Unit = {}
+) {
+  init {
+    require(matchDistance > 0f) { "Invalid matchDistance $matchDistance" }
+    require(smoothing > 0f && smoothing <= 1f) { "Invalid smoothing $smoothing" }
+    require(relabelAfter >= 1) { "Invalid relabelAfter $relabelAfter" }
+  }
+
+  /**
+   * An object followed across scans.
+   *
+   * @property anchor The anchor created for the first detection of the object.
+   */
+  class Track<A>(val anchor: A, labelId: Int, confidence: Float) {
+    /** The id of the current label in the [LabelRegistry] of the detections. */
+    var labelId = labelId
+      internal set
+
+    /** The moving average of the confidence of [labelId]. */
+    var confidence = confidence
+      internal set
+
+    /** The number of detections matched with this track, including the first one. */
+    var detections = 1
+      internal set
+
+    // The other label of the latest contradicting detections, and how many of them there were in a row.
+    internal var challengerId = -1
+    internal var challenges = 0
+
+    override fun toString(): String = "Track(label=$labelId, confidence=$confidence, detections=$detections)"
+  }
+
+  private val tracks = ArrayList<Track<A>>()
+
+  // The position of the anchor being compared, written by [position].
+  private val anchorPosition = FloatArray(3)
+
+  /** The number of detections that updated an existing track. */
+  var matchedDetections = 0L
+    private set
+
+  /** The number of detections that created a track. */
+  var createdTracks = 0L
+    private set
+
+  /** The number of tracks. */
+  val size: Int
+    @Synchronized get() = tracks.size
+
+  /**
+   * Records a detection.
+   *
+   * The closest track with the same label within [matchDistance] is updated; failing that, the closest track with
+   * another label within [matchDistance]. Otherwise [createAnchor] is called and a track is created.
+   *
+   * @param labelId The label id of the detection.
+   * @param confidence The confidence of the label, 0 to 1.
+   * @param x The x coordinate of the detection, in world space.
+   * @param y The y coordinate of the detection, in world space.
+   * @param z The z coordinate of the detection, in world space.
+   * @param createAnchor Creates the anchor of a new track, or returns null if none can be created.
+   * @return The track of the detection, or null if it matched no track and no anchor could be created.
+   */
+  @Synchronized
+  fun observe(labelId: Int, confidence: Float, x: Float, y: Float, z: Float, createAnchor: () -> A?): Track<A>? {
+    val track = closest(labelId, x, y, z, sameLabel = true) ?: closest(labelId, x, y, z, sameLabel = false)
+    if (track == null) {
+      val anchor = createAnchor() ?: return null
+      createdTracks++
+      return Track(anchor, labelId, confidence).also { tracks.add(it) }
+    }
+
+    matchedDetections++
+    track.detections++
+    if (track.labelId == labelId) {
+      track.confidence += smoothing * (confidence - track.confidence)
+      track.challenges = 0
+    } else {
+      // A detection with another label counts as a detection of confidence 0 for the current label
+      track.confidence -= smoothing * track.confidence
+      if (track.challengerId == labelId) {
+        track.challenges++
+      } else {
+        track.challengerId = labelId
+        track.challenges = 1
+      }
+      if (track.challenges >= relabelAfter && confidence > track.confidence) {
+        track.labelId = labelId
+        track.confidence = confidence
+        track.challenges = 0
+      }
+    }
+    return track
+  }
+
+  /**
+   * Returns the tracks whose label is reliable enough to skip another classification of their object.
+   */
+  @Synchronized
+  fun confidentTracks(): List<Track<A>> = tracks.filter { it.confidence >= confidentThreshold }
+
+  /**
+   * Calls [action] on each track, under the tracker lock.
+   */
+  @Synchronized
+  fun forEach(action: (Track<A>) -> Unit) {
+    for (index in tracks.indices) action(tracks[index])
+  }
+
+  /**
+   * Removes every track and releases its anchor.
+   */
+  @Synchronized
+  fun clear() {
+    tracks.forEach { release(it.anchor) }
+    tracks.clear()
+  }
+
+  private fun closest(labelId: Int, x: Float, y: Float, z: Float, sameLabel: Boolean): Track<A>? {
+    var best: Track<A>? = null
+    var bestDistanceSquared = matchDistance * matchDistance
+    for (track in tracks) {
+      if ((track.labelId == labelId) != sameLabel) continue
+      position(track.anchor, anchorPosition)
+      val dx = anchorPosition[0] - x
+      val dy = anchorPosition[1] - y
+      val dz = anchorPosition[2] - z
+      val distanceSquared = dx * dx + dy * dy + dz * dz
+      if (distanceSquared <= bestDistanceSquared) {
+        best = track
+        bestDistanceSquared = distanceSquared
+      }
+    }
+    return best
+  }
+
+  override fun toString(): String =
+    "AnchorTracker(tracks=$size, matched=$matchedDetections, created=$createdTracks)"
+}
@@ -1,30 +1,40 @@
 package com.google.ar.core.examples.java.ml
 
 import android.opengl.Matrix
+import android.os.SystemClock
 import android.util.Log
 import androidx.lifecycle.DefaultLifecycleObserver
 import androidx.lifecycle.LifecycleOwner
 import com.google.ar.core.Anchor
 import com.google.ar.core.Coordinates2d
 import com.google.ar.core.Frame
+import com.google.ar.core.HitResult
 import com.google.ar.core.TrackingState
+import com.google.ar.core.examples.java.ml.classification.CachingObjectDetector
+import com.google.ar.core.examples.java.ml.classification.CascadeObjectDetector
 import com.google.ar.core.examples.java.ml.classification.DetectedObjectResult
 import com.google.ar.core.examples.java.ml.classification.GoogleCloudVisionDetector
 import com.google.ar.core.examples.java.ml.classification.MLKitObjectDetector
 import com.google.ar.core.examples.java.ml.classification.ObjectDetector
 import com.google.ar.core.examples.java.ml.render.LabelRender
 import com.google.ar.core.examples.java.ml.render.PointCloudRender
+import com.google.ar.core.examples.java.ml.render.SdfLabelRender
 import com.google.ar.core.exceptions.CameraNotAvailableException
 import com.google.ar.core.exceptions.NotYetAvailableException
+import com.novenosemestre.ai_lens.DetectionBatch
+import com.novenosemestre.ai_lens.FrameGate
+import com.novenosemestre.ai_lens.LabelRegistry
+import com.novenosemestre.ai_lens.PerceptualCache
 import com.novenosemestre.ai_lens.RA_Objects2.MainActivity2
 import com.novenosemestre.ai_lens.RA_Objects2.ml.common.helpers.DisplayRotationHelper
 import com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender.SampleRender
 import com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender.arcore.BackgroundRenderer
+import com.novenosemestre.ai_lens.toYuvFrame
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.MainScope
 import kotlinx.coroutines.launch
-import java.util.Collections
 
 class AppRenderer(val activity: MainActivity2) : DefaultLifecycleObserver, SampleRender.Renderer, CoroutineScope by MainScope() {
   companion object {
@@ -36,19 +46,74 @@ class AppRenderer(val activity: MainActivity2) : DefaultLifecycleObserver, Sampl
   val displayRotationHelper = DisplayRotationHelper(activity)
   lateinit var backgroundRenderer: BackgroundRenderer
   val pointCloudRender = PointCloudRender()
-  val labelRenderer = LabelRender()
+  val labelRenderer = LabelRender(this)
+  val sdfLabelRenderer = SdfLabelRender()
 
   val viewMatrix = FloatArray(16)
   val projectionMatrix = FloatArray(16)
   val viewProjectionMatrix = FloatArray(16)
 
-  val arLabeledAnchors = Collections.synchronizedList(mutableListOf<ARLabeledAnchor>())
+  // One anchor per detected object: detections of an object that already has an anchor update it instead
+  val anchorTracker = AnchorTracker<Anchor>(
+    position = { anchor, out -> anchor.pose.getTranslation(out, 0) },
+    release = Anchor::detach
+  )
   var scanButtonWasPressed = false
 
   val mlKitAnalyzer = MLKitObjectDetector(activity)
   val gcpAnalyzer = GoogleCloudVisionDetector(activity)
 
-  var currentAnalyzer: ObjectDetector = gcpAnalyzer
+  // Cloud mode: ML Kit first, Cloud Vision only for the objects ML Kit isn't sure about
+  val cascadeAnalyzer = CascadeObjectDetector(
+    activity,
+    mlKitAnalyzer,
+    gcpAnalyzer.batcher.takeIf { gcpAnalyzer.credentials != null },
+    gcpAnalyzer.uploadEncoder
+  )
+
+  // Repeated scans of the same scene are answered from a cache instead of the cloud. Results found while the cloud
+  // was disabled by the LatencyGovernor aren't cached, so a later scan may still ask the cloud.
+  val cloudAnalyzer = CachingObjectDetector(
+    activity,
+    cascadeAnalyzer,
+    PerceptualCache(diskTier = CachingObjectDetector.diskTier(activity)),
+    cacheable = { cascadeAnalyzer.escalation.cloudEnabled }
+  )
+
+  var currentAnalyzer: ObjectDetector = cloudAnalyzer
+
+  // Skips scans of blurred frames, and continuous scans of the scene that was already analyzed.
+  val frameGate = FrameGate()
+
+  // Paces the analyses and keeps at most one of them in flight.
+  val analysisScheduler = AnalysisScheduler()
+
+  // Lowers the analysis rate, size and cloud use while the renderer misses its frame rate.
+  val latencyGovernor = LatencyGovernor()
+
+  // The cost of the first scan after the activity start, apart from the steady state.
+  val coldStartStats = ColdStartStats(SystemClock.elapsedRealtime())
+
+  // Whether frames are analyzed continuously instead of on each press of the scan button.
+  @Volatile
+  var continuousScanning = false
+
+  // The analyses write into these batches in turn, so an analysis never overwrites results not yet processed.
+  private val detectionBatches = arrayOf(DetectionBatch(), DetectionBatch())
+  private var nextDetectionBatch = 0
+
+ /**
+   * Called when the activity is created.
+   * It starts warming the detectors up in the background, so the first scan doesn't pay for their initialization.
+   *
+   * @param owner The LifecycleOwner whose lifecycle is being observed.
+   */
+  override fun onCreate(owner: LifecycleOwner) {
+    DetectorWarmUp(coldStartStats).start(
+      this,
+      mapOf("ML Kit" to mlKitAnalyzer, "Cascade" to cascadeAnalyzer, "Cloud Vision" to gcpAnalyzer)
+    )
+  }
 
  /**
    * Called when the activity is resumed.
@@ -88,23 +153,30 @@ class AppRenderer(val activity: MainActivity2) : DefaultLifecycleObserver, Sampl
 
     // Set up the checked change listener for the Cloud ML switch
     view.useCloudMlSwitch.setOnCheckedChangeListener { _, isChecked ->
-      currentAnalyzer = if (isChecked) gcpAnalyzer else mlKitAnalyzer
+      currentAnalyzer = if (isChecked) cloudAnalyzer else mlKitAnalyzer
     }
 
     // Check if Google Cloud Vision is configured
     val gcpConfigured = gcpAnalyzer.credentials != null
     view.useCloudMlSwitch.isChecked = gcpConfigured
     view.useCloudMlSwitch.isEnabled = gcpConfigured
-    currentAnalyzer = if (gcpConfigured) gcpAnalyzer else mlKitAnalyzer
+    currentAnalyzer = if (gcpConfigured) cloudAnalyzer else mlKitAnalyzer
 
     // Show a snackbar if Google Cloud Vision isn't configured
     if (!gcpConfigured) {
       showSnackbar("Google Cloud Vision isn't configured (see README). The Cloud ML switch will be disabled.")
     }
 
+    // Set up the checked change listener for the continuous scan switch
+    view.continuousScanSwitch.setOnCheckedChangeListener { _, isChecked ->
+      continuousScanning = isChecked
+      hideSnackbar()
+    }
+
     // Set up the click listener for the reset button
     view.resetButton.setOnClickListener {
-      arLabeledAnchors.clear()
+      anchorTracker.clear()
+      frameGate.reset()
       view.resetButton.isEnabled = false
       hideSnackbar()
     }
@@ -122,6 +194,7 @@ class AppRenderer(val activity: MainActivity2) : DefaultLifecycleObserver, Sampl
     }
     pointCloudRender.onSurfaceCreated(render)
     labelRenderer.onSurfaceCreated(render)
+    sdfLabelRenderer.onSurfaceCreated(render)
   }
 
   /**
@@ -137,7 +210,8 @@ class AppRenderer(val activity: MainActivity2) : DefaultLifecycleObserver, Sampl
   }
 
   // The results of the object detection
-  var objectResults: List<DetectedObjectResult>? = null
+  @Volatile
+  var objectResults: AnalysisResults? = null
 
 
  /**
@@ -151,6 +225,9 @@ class AppRenderer(val activity: MainActivity2) : DefaultLifecycleObserver, Sampl
     // Get the AR session or return if it's null
     val session = activity.arCoreSessionHelper.sessionCache ?: return
 
+    // Let the governor see every frame, including the ones that return early
+    latencyGovernor.onFrame(SystemClock.elapsedRealtime())
+
     // Set the texture names for the camera
     session.setCameraTextureNames(intArrayOf(backgroundRenderer.cameraColorTexture.textureId))
 
@@ -186,60 +263,123 @@ class AppRenderer(val activity: MainActivity2) : DefaultLifecycleObserver, Sampl
       pointCloudRender.drawPointCloud(render, pointCloud, viewProjectionMatrix)
     }
 
-    // If the scan button was pressed, perform object detection
-    if (scanButtonWasPressed) {
+    // Start an analysis when the scan button was pressed, or when the next continuous analysis is due.
+    // At most one analysis is in flight; frames rendered meanwhile are not queued, so the next analysis always
+    // gets the newest camera frame.
+    val now = SystemClock.elapsedRealtime()
+    val manualScan = scanButtonWasPressed
+    analysisScheduler.throttleMillis = latencyGovernor.intervalMillis
+    if ((manualScan || (continuousScanning && analysisScheduler.isDue(now))) && analysisScheduler.tryStart(now)) {
       scanButtonWasPressed = false
+      // A manual scan is only refused for blur: a scene that hasn't changed is answered by the analyzer, from the
+      // cache of the cloud analyzer when it was scanned already, rather than skipped by the gate.
+      if (manualScan) frameGate.reset()
       val cameraImage = frame.tryAcquireCameraImage()
-      if (cameraImage != null) {
+      val decision = cameraImage?.let { frameGate.evaluate(it.toYuvFrame().y, it.width, it.height) }
+      if (cameraImage == null) {
+        analysisScheduler.cancel(now)
+        if (manualScan) view.post { view.setScanningActive(false) }
+      } else if (decision != FrameGate.Decision.ACCEPT) {
+        // Don't run the detector on a frame that can't give new results
+        cameraImage.close()
+        analysisScheduler.cancel(now)
+        Log.i(TAG, "Scan skipped ($decision): $frameGate")
+        if (manualScan) {
+          view.post {
+            view.setScanningActive(false)
+            showSnackbar("The camera image is too blurry. Hold the device steady and try again.")
+          }
+        }
+      } else {
+        val analyzer = currentAnalyzer
+        // Analyze at the quality the renderer can afford. A manual scan may still ask the cloud, the user waits for it
+        val level = latencyGovernor.level
+        mlKitAnalyzer.analysisMaxDimension = level.maxDimension
+        cascadeAnalyzer.analysisMaxDimension = level.maxDimension
+        cascadeAnalyzer.escalation.cloudEnabled = manualScan || level.cloudAllowed
+        // Objects labeled with confidence by earlier scans don't need to be sent to the cloud again
+        cascadeAnalyzer.knownObjects = projectConfidentTracks(frame)
+        val cameraId = session.cameraConfig.cameraId
+        val imageRotation = displayRotationHelper.getCameraSensorToDisplayRotation(cameraId)
+        val batch = detectionBatches[nextDetectionBatch]
+        nextDetectionBatch = (nextDetectionBatch + 1) % detectionBatches.size
         launch(Dispatchers.IO) {
-          val cameraId = session.cameraConfig.cameraId
-          val imageRotation = displayRotationHelper.getCameraSensorToDisplayRotation(cameraId)
-          objectResults = currentAnalyzer.analyze(cameraImage, imageRotation)
-          cameraImage.close()
+          var detectionCount = 0
+          try {
+            analyzer.analyze(cameraImage, imageRotation, batch)
+            detectionCount = batch.count
+            objectResults = AnalysisResults(batch, analyzer, manualScan)
+          } catch (e: CancellationException) {
+            throw e
+          } catch (e: Exception) {
+            // Network and detector failures must not take the app down, continuous scans happen with no user action
+            Log.e(TAG, "$analyzer failed to analyze the camera image", e)
+            if (manualScan) {
+              view.post {
+                view.setScanningActive(false)
+                showSnackbar("Unable to analyze the camera image. Check your connection and try again.")
+              }
+            }
+          } finally {
+            cameraImage.close()
+            val finishMillis = SystemClock.elapsedRealtime()
+            analysisScheduler.finish(finishMillis)
+            latencyGovernor.onAnalysis(finishMillis - now)
+            if (coldStartStats.onAnalysis(now, finishMillis, detectionCount)) Log.i(TAG, "$coldStartStats")
+            Log.d(TAG, "Analysis latency ${analysisScheduler.averageLatencyMillis}ms, " +
+              "${analysisScheduler.analysisFps} analyses/s, $latencyGovernor")
+          }
         }
       }
     }
 
     // If there are object detection results, process them
-    val objects = objectResults
-    if (objects != null) {
+    val results = objectResults
+    if (results != null) {
       objectResults = null
-      Log.i(TAG, "$currentAnalyzer got objects: $objects")
-      val anchors = objects.mapNotNull { obj ->
-        val (atX, atY) = obj.centerCoordinate
-        val anchor = createAnchor(atX.toFloat(), atY.toFloat(), frame) ?: return@mapNotNull null
-        Log.i(TAG, "Created anchor ${anchor.pose} from hit test")
-        ARLabeledAnchor(anchor, obj.label)
+      val detections = results.detections
+      Log.i(TAG, "${results.analyzer} got objects: $detections")
+      var tracked = 0
+      for (i in 0 until detections.count) {
+        val hit = hitTest(detections.centerX[i].toFloat(), detections.centerY[i].toFloat(), frame) ?: continue
+        val pose = hit.hitPose
+        val labelId = detections.classIds[i]
+        val track = anchorTracker.observe(labelId, detections.scores[i], pose.tx(), pose.ty(), pose.tz()) {
+          hit.trackable.createAnchor(pose).also { Log.i(TAG, "Created anchor ${it.pose} from hit test") }
+        }
+        if (track != null) tracked++
       }
-      arLabeledAnchors.addAll(anchors)
+      Log.d(TAG, "$anchorTracker")
+      // The batch is reused by later analyses, so the UI only gets the counts
+      val detectionCount = detections.count
+      val allTracked = tracked == detectionCount
+      val hasTracks = anchorTracker.size > 0
       view.post {
-        view.resetButton.isEnabled = arLabeledAnchors.isNotEmpty()
+        view.resetButton.isEnabled = hasTracks
+        // Continuous analyses run silently; only a manual scan reports its outcome.
+        if (!results.manual) return@post
         view.setScanningActive(false)
         when {
-          objects.isEmpty() && currentAnalyzer == mlKitAnalyzer && !mlKitAnalyzer.hasCustomModel() ->
+          detectionCount == 0 && results.analyzer == mlKitAnalyzer && !mlKitAnalyzer.hasCustomModel() ->
             showSnackbar("Default ML Kit classification model returned no results. " +
               "For better classification performance, see the README to configure a custom model.")
-          objects.isEmpty() ->
+          detectionCount == 0 ->
             showSnackbar("Classification model returned no results.")
-          anchors.size != objects.size ->
+          !allTracked ->
             showSnackbar("Objects were classified, but could not be attached to an anchor. " +
               "Try moving your device around to obtain a better understanding of the environment.")
         }
       }
     }
 
-    // Draw labels at their anchor position.
-    for (arDetectedObject in arLabeledAnchors) {
-      val anchor = arDetectedObject.anchor
-      if (anchor.trackingState != TrackingState.TRACKING) continue
-      labelRenderer.draw(
-        render,
-        viewProjectionMatrix,
-        anchor.pose,
-        camera.pose,
-        arDetectedObject.label
-      )
+    // Draw labels at their anchor position, all of them at once. Text the SDF font can't draw falls back to bitmaps.
+    anchorTracker.forEach { track ->
+      val anchor = track.anchor
+      if (anchor.trackingState != TrackingState.TRACKING) return@forEach
+      if (!sdfLabelRenderer.add(anchor.pose, track.labelId)) labelRenderer.add(anchor.pose, track.labelId)
     }
+    sdfLabelRenderer.draw(render, viewProjectionMatrix, camera.pose)
+    labelRenderer.draw(render, viewProjectionMatrix, camera.pose)
   }
 
   /**
@@ -259,13 +399,46 @@ class AppRenderer(val activity: MainActivity2) : DefaultLifecycleObserver, Sampl
   private fun hideSnackbar() = activity.view.snackbarHelper.hide(activity)
 
   /**
-   * Temporary arrays to prevent allocations in [createAnchor].
+   * Temporary arrays to prevent allocations in [hitTest] and [projectConfidentTracks].
    */
   private val convertFloats = FloatArray(4)
   private val convertFloatsOut = FloatArray(4)
 
-  /** Create an anchor using (x, y) coordinates in the [Coordinates2d.IMAGE_PIXELS] coordinate space. */
-  fun createAnchor(xImage: Float, yImage: Float, frame: Frame): Anchor? {
+  /**
+   * Finds where the confidently labeled tracks appear in the camera image of a frame.
+   *
+   * @return The tracks in front of the camera and inside its view, with their centers in
+   * [Coordinates2d.IMAGE_PIXELS] coordinates.
+   */
+  fun projectConfidentTracks(frame: Frame): List<DetectedObjectResult> =
+    anchorTracker.confidentTracks().mapNotNull { track ->
+      if (track.anchor.trackingState != TrackingState.TRACKING) return@mapNotNull null
+      // WORLD -> OPENGL_NORMALIZED_DEVICE_COORDINATES
+      val pose = track.anchor.pose
+      convertFloats[0] = pose.tx()
+      convertFloats[1] = pose.ty()
+      convertFloats[2] = pose.tz()
+      convertFloats[3] = 1f
+      Matrix.multiplyMV(convertFloatsOut, 0, viewProjectionMatrix, 0, convertFloats, 0)
+      val w = convertFloatsOut[3]
+      if (w <= 0f) return@mapNotNull null
+      convertFloats[0] = convertFloatsOut[0] / w
+      convertFloats[1] = convertFloatsOut[1] / w
+      if (convertFloats[0] !in -1f..1f || convertFloats[1] !in -1f..1f) return@mapNotNull null
+
+      // OPENGL_NORMALIZED_DEVICE_COORDINATES -> IMAGE_PIXELS
+      frame.transformCoordinates2d(
+        Coordinates2d.OPENGL_NORMALIZED_DEVICE_COORDINATES,
+        convertFloats,
+        Coordinates2d.IMAGE_PIXELS,
+        convertFloatsOut
+      )
+      val label = LabelRegistry.shared.label(track.labelId)
+      DetectedObjectResult(track.confidence, label, convertFloatsOut[0].toInt() to convertFloatsOut[1].toInt())
+    }
+
+  /** Hit test using (x, y) coordinates in the [Coordinates2d.IMAGE_PIXELS] coordinate space. */
+  fun hitTest(xImage: Float, yImage: Float, frame: Frame): HitResult? {
     // IMAGE_PIXELS -> VIEW
     convertFloats[0] = xImage
     convertFloats[1] = yImage
@@ -277,10 +450,15 @@ class AppRenderer(val activity: MainActivity2) : DefaultLifecycleObserver, Sampl
     )
 
     // Conduct a hit test using the VIEW coordinates
-    val hits = frame.hitTest(convertFloatsOut[0], convertFloatsOut[1])
-    val result = hits.getOrNull(0) ?: return null
-    return result.trackable.createAnchor(result.hitPose)
+    return frame.hitTest(convertFloatsOut[0], convertFloatsOut[1]).getOrNull(0)
   }
 }
 
-data class ARLabeledAnchor(val anchor: Anchor, val label: String)
\ No newline at end of file
+/**
+ * The outcome of one analysis.
+ *
+ * @property detections The detected objects, in camera image coordinates.
+ * @property analyzer The analyzer that produced them.
+ * @property manual Whether the analysis was started with the scan button rather than by the continuous mode.
+ */
+data class AnalysisResults(val detections: DetectionBatch, val analyzer: ObjectDetector, val manual: Boolean)
\ No newline at end of file
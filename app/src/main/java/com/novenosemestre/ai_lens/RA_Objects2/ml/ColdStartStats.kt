@@ -0,0 +1,110 @@
+package com.google.ar.core.examples.java.ml
+
+/**
+ * Records how long the detectors take to become useful after the activity is created, apart from their steady-state
+ * latency.
+ *
+ * The first analysis of a process pays for whatever the warm-up hasn't prepared yet (model loading, connections,
+ * class loading), so it is kept out of the steady-state average, and the time from the activity start to the first
+ * analysis that found something is recorded as the time to first detection.
+ *
+ * All times are in milliseconds, from the same monotonic clock.
+ *
+ * @param startMillis When the activity was created.
+ */
+class ColdStartStats(val startMillis: Long) {
+  companion object {
+    // Weight of the newest sample in the steady-state moving average.
+    private const val SMOOTHING = 0.2f
+  }
+
+  private val warmUpTasks = LinkedHashMap<String, Long>()
+
+  /** The time from the activity start to the end of the warm-up, or -1 while it is running. */
+  @Volatile
+  var warmUpMillis = -1L
+    private set
+
+  /** Whether the first analysis started after the end of the warm-up. */
+  @Volatile
+  var warmBeforeFirstAnalysis = false
+    private set
+
+  /** The latency of the first analysis, or -1 before it finished. */
+  @Volatile
+  var firstAnalysisMillis = -1L
+    private set
+
+  /** The time from the activity start to the end of the first analysis with detections, or -1 before. */
+  @Volatile
+  var timeToFirstDetectionMillis = -1L
+    private set
+
+  /** The moving average of the latency of the analyses after the first one, or 0 before the second one. */
+  @Volatile
+  var steadyStateMillis = 0f
+    private set
+
+  /** The number of finished analyses. */
+  @Volatile
+  var analyses = 0
+    private set
+
+  /**
+   * Records the duration of a warm-up task.
+   */
+  @Synchronized
+  fun onWarmUpTask(name: String, durationMillis: Long) {
+    warmUpTasks[name] = durationMillis
+  }
+
+  /**
+   * Returns the duration of each warm-up task that completed, in completion order.
+   */
+  @Synchronized
+  fun warmUpTasks(): Map<String, Long> = LinkedHashMap(warmUpTasks)
+
+  /**
+   * Records the end of the warm-up.
+   */
+  @Synchronized
+  fun onWarmUpFinished(nowMillis: Long) {
+    warmUpMillis = nowMillis - startMillis
+  }
+
+  /**
+   * Records a finished analysis.
+   *
+   * @param startMillis When the analysis started.
+   * @param finishMillis When the analysis finished.
+   * @param detections The number of objects found, 0 if the analysis failed.
+   * @return True if it was the first analysis or the first one with detections, i.e. the cold start figures changed.
+   */
+  @Synchronized
+  fun onAnalysis(startMillis: Long, finishMillis: Long, detections: Int): Boolean {
+    val latency = finishMillis - startMillis
+    val first = analyses == 0
+    if (first) {
+      firstAnalysisMillis = latency
+      warmBeforeFirstAnalysis = warmUpMillis >= 0 && this.startMillis + warmUpMillis <= startMillis
+    } else {
+      steadyStateMillis = if (steadyStateMillis == 0f) {
+        latency.toFloat()
+      } else {
+        steadyStateMillis + SMOOTHING * (latency - steadyStateMillis)
+      }
+    }
+    analyses++
+    if (detections > 0 && timeToFirstDetectionMillis < 0) {
+      timeToFirstDetectionMillis = finishMillis - this.startMillis
+      return true
+    }
+    return first
+  }
+
+  @Synchronized
+  override fun toString(): String =
+    "ColdStartStats(warmUp=${warmUpMillis}ms $warmUpTasks, firstAnalysis=${firstAnalysisMillis}ms " +
+      "(warm=$warmBeforeFirstAnalysis), timeToFirstDetection=${timeToFirstDetectionMillis}ms, " +
+      "steadyState=${steadyStateMillis}ms, analyses=$analyses)"
+}
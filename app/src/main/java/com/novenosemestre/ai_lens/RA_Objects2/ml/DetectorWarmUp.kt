@@ -0,0 +1,52 @@
+package com.google.ar.core.examples.java.ml
+
+import android.os.SystemClock
+import android.util.Log
+import com.google.ar.core.examples.java.ml.classification.ObjectDetector
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.joinAll
+import kotlinx.coroutines.launch
+
+/**
+ * Warms the detectors up in the background while the AR session starts, so the first scan costs about as much as
+ * the following ones.
+ *
+ * Each detector's [ObjectDetector.warmUp] runs in parallel on the IO dispatcher, since some of them block on the
+ * network. A detector that fails to warm up is only logged: its first analysis pays for the initialization instead.
+ * The durations are recorded in [stats].
+ *
+ * @param stats Receives the duration of each warm-up and the end of the warm-up.
+ */
+class DetectorWarmUp(private val stats: ColdStartStats) {
+  companion object {
+    private const val TAG = "DetectorWarmUp"
+  }
+
+  /**
+   * Starts warming up the detectors.
+   *
+   * @param scope The scope the warm-up runs in; cancelling it stops the warm-up.
+   * @param detectors The detectors, by name.
+   * @return The warm-up job, done when every detector is warmed up or failed.
+   */
+  fun start(scope: CoroutineScope, detectors: Map<String, ObjectDetector>): Job = scope.launch(Dispatchers.IO) {
+    detectors.map { (name, detector) ->
+      launch {
+        val startMillis = SystemClock.elapsedRealtime()
+        try {
+          detector.warmUp()
+          stats.onWarmUpTask(name, SystemClock.elapsedRealtime() - startMillis)
+        } catch (e: CancellationException) {
+          throw e
+        } catch (e: Exception) {
+          Log.w(TAG, "Unable to warm up $name, its first scan will initialize it", e)
+        }
+      }
+    }.joinAll()
+    stats.onWarmUpFinished(SystemClock.elapsedRealtime())
+    Log.i(TAG, "Warm-up done: $stats")
+  }
+}
@@ -0,0 +1,176 @@
+package com.google.ar.core.examples.java.ml
+
+/**
+ * Trades detection work for render smoothness: watches the render frame time and lowers the analysis quality while
+ * the renderer misses its target frame rate, then raises it again once frames are back on time.
+ *
+ * An analysis competes with the GL thread for the CPU, the memory bandwidth and the camera images. The governor
+ * steps through [levels], from the best quality to the cheapest: each level limits the share of time an analysis may
+ * be in flight, the size of the image handed to the detectors, and whether uncertain objects may be escalated to the
+ * cloud. The pause between two analyses follows from that share and the measured analyzer latency, so a slow
+ * analyzer is polled less often than a fast one at the same level.
+ *
+ * Degrading is quick and recovering is slow, so the level doesn't oscillate around the limit: the frame time must be
+ * over budget for [degradeAfterMillis] to step down a level, and comfortably within budget for [recoverAfterMillis]
+ * to step up a level.
+ *
+ * All times are in milliseconds, from the same monotonic clock.
+ *
+ * @param targetFps The render frame rate to hold.
+ * @param levels The quality levels, best first.
+ * @param tolerance How far the average frame time may exceed the target frame time before it is over budget, as a
+ * fraction of the target frame time.
+ * @param degradeAfterMillis How long the frame time must stay over budget to step down a level.
+ * @param recoverAfterMillis How long the frame time must stay within half the tolerance to step up a level.
+ */
+class LatencyGovernor(
+  val targetFps: Float = 30f,
+  val levels: List<Level> = DEFAULT_LEVELS,
+  val tolerance: Float = 0.15f,
+  val degradeAfterMillis: Long = 500,
+  val recoverAfterMillis: Long = 3000
+) {
+  /**
+   * The analysis settings of a quality level.
+   *
+   * @property dutyCycle The largest fraction of time an analysis may be in flight, in (0, 1]. 1 adds no pause.
+   * @property maxDimension The largest side of the image handed to the detectors, in pixels.
+   * @property cloudAllowed Whether uncertain objects may be escalated to the cloud.
+   */
+  data class Level(val dutyCycle: Float, val maxDimension: Int, val cloudAllowed: Boolean) {
+    init {
+      require(dutyCycle > 0f && dutyCycle <= 1f) { "Invalid dutyCycle $dutyCycle" }
+      require(maxDimension > 0) { "Invalid maxDimension $maxDimension" }
+    }
+  }
+
+  companion object {
+    /**
+     * From analyses back to back at full size down to an analysis in flight a tenth of the time at half size,
+     * on-device only, i.e. a pause of nine analysis latencies, at most [MAX_INTERVAL_MILLIS], after each analysis.
+     */
+    val DEFAULT_LEVELS = listOf(
+      Level(dutyCycle = 1f, maxDimension = 640, cloudAllowed = true),
+      Level(dutyCycle = 0.5f, maxDimension = 640, cloudAllowed = true),
+      Level(dutyCycle = 0.33f, maxDimension = 480, cloudAllowed = true),
+      Level(dutyCycle = 0.2f, maxDimension = 480, cloudAllowed = false),
+      Level(dutyCycle = 0.1f, maxDimension = 320, cloudAllowed = false)
+    )
+
+    /** The longest pause the governor asks for between two analyses. */
+    const val MAX_INTERVAL_MILLIS = 5000L
+
+    // Weight of the newest sample in the moving averages.
+    private const val SMOOTHING = 0.1f
+
+    // A longer gap between two frames is a pause of the renderer (e.g. the activity was paused), not a slow frame.
+    private const val MAX_FRAME_GAP_MILLIS = 500L
+  }
+
+  init {
+    require(targetFps > 0f) { "Invalid targetFps $targetFps" }
+    require(levels.isNotEmpty()) { "At least one level is needed" }
+    require(tolerance >= 0f) { "Invalid tolerance $tolerance" }
+  }
+
+  private val targetFrameMillis = 1000f / targetFps
+
+  private var lastFrameMillis = -1L
+
+  // When the frame time went over budget, or within budget, or -1 while it isn't.
+  private var overBudgetSinceMillis = -1L
+  private var withinBudgetSinceMillis = -1L
+
+  /** The index of the current level in [levels]. 0 is the best quality. */
+  @Volatile
+  var levelIndex = 0
+    private set
+
+  /** The moving average of the time between two rendered frames, or 0 before the second frame. */
+  @Volatile
+  var averageFrameMillis = 0f
+    private set
+
+  /** The moving average of the analyzer latency, or 0 before the first analysis. */
+  @Volatile
+  var averageAnalysisMillis = 0f
+    private set
+
+  /** The number of times the level changed. */
+  @Volatile
+  var levelChanges = 0L
+    private set
+
+  /** The settings of the current level. */
+  val level: Level
+    get() = levels[levelIndex]
+
+  /** The pause the current level asks for between the end of an analysis and the start of the next one. */
+  val intervalMillis: Long
+    get() {
+      // An analysis of latency L followed by a pause P is in flight L / (L + P) of the time
+      val dutyCycle = level.dutyCycle
+      return (averageAnalysisMillis * (1f - dutyCycle) / dutyCycle).toLong().coerceIn(0L, MAX_INTERVAL_MILLIS)
+    }
+
+  /**
+   * Records a rendered frame and adjusts the level. Called once per frame by the render thread.
+   *
+   * @param nowMillis The time the frame started.
+   */
+  @Synchronized
+  fun onFrame(nowMillis: Long) {
+    val frameMillis = nowMillis - lastFrameMillis
+    val first = lastFrameMillis < 0
+    lastFrameMillis = nowMillis
+    if (first || frameMillis > MAX_FRAME_GAP_MILLIS) {
+      // Start over after a pause, the frame times from before no longer say anything
+      overBudgetSinceMillis = -1L
+      withinBudgetSinceMillis = -1L
+      return
+    }
+    averageFrameMillis = average(averageFrameMillis, frameMillis.toFloat())
+
+    when {
+      averageFrameMillis > targetFrameMillis * (1f + tolerance) -> {
+        withinBudgetSinceMillis = -1L
+        if (overBudgetSinceMillis < 0) overBudgetSinceMillis = nowMillis
+        if (nowMillis - overBudgetSinceMillis >= degradeAfterMillis && levelIndex < levels.lastIndex) {
+          levelIndex++
+          levelChanges++
+          // Give the new level time to show its effect before degrading further
+          overBudgetSinceMillis = nowMillis
+        }
+      }
+      averageFrameMillis <= targetFrameMillis * (1f + tolerance / 2) -> {
+        overBudgetSinceMillis = -1L
+        if (withinBudgetSinceMillis < 0) withinBudgetSinceMillis = nowMillis
+        if (nowMillis - withinBudgetSinceMillis >= recoverAfterMillis && levelIndex > 0) {
+          levelIndex--
+          levelChanges++
+          withinBudgetSinceMillis = nowMillis
+        }
+      }
+      else -> {
+        // Close to the limit: neither degrade nor recover
+        overBudgetSinceMillis = -1L
+        withinBudgetSinceMillis = -1L
+      }
+    }
+  }
+
+  /**
+   * Records the latency of a finished analysis. May be called from any thread.
+   */
+  @Synchronized
+  fun onAnalysis(latencyMillis: Long) {
+    averageAnalysisMillis = average(averageAnalysisMillis, latencyMillis.toFloat())
+  }
+
+  private fun average(current: Float, sample: Float) =
+    if (current == 0f) sample else current + SMOOTHING * (sample - current)
+
+  override fun toString(): String =
+    "LatencyGovernor(level=$levelIndex $level, frame=${averageFrameMillis}ms, " +
+      "analysis=${averageAnalysisMillis}ms, interval=${intervalMillis}ms, changes=$levelChanges)"
+}
@@ -17,6 +17,7 @@ class MainActivityView(val activity: MainActivity2, renderer: AppRenderer) : Def
     SampleRender(this, renderer, activity.assets)
   }
   val useCloudMlSwitch = root.findViewById<SwitchCompat>(R.id.useCloudMlSwitch)
+  val continuousScanSwitch = root.findViewById<SwitchCompat>(R.id.continuousScanSwitch)
   val scanButton = root.findViewById<AppCompatButton>(R.id.scanButton)
   val resetButton = root.findViewById<AppCompatButton>(R.id.clearButton)
   val snackbarHelper = SnackbarHelper().apply {
@@ -0,0 +1,188 @@
+package com.google.ar.core.examples.java.ml.classification
+
+import com.google.cloud.vision.v1.AnnotateImageRequest
+import com.google.cloud.vision.v1.AnnotateImageResponse
+import com.google.cloud.vision.v1.BatchAnnotateImagesResponse
+import kotlinx.coroutines.future.await
+import java.io.Closeable
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Groups the annotation requests of concurrent callers into shared `batchAnnotateImages` calls.
+ *
+ * A request waits at most [windowMillis] for other requests to join it; a batch is sent as soon as it holds
+ * [maxBatchSize] images. Each caller gets back its own response. Requests submitted with a key (e.g. the camera frame
+ * timestamp) are coalesced while in flight: a second request for the same key shares the first one's call and its
+ * request isn't even built.
+ *
+ * It is an [ImageAnnotator] itself, so it can be put in front of any other annotator.
+ *
+ * @param delegate Sends the batches, e.g. [GoogleCloudVisionDetector.annotator].
+ * @param windowMillis How long the first request of a batch waits for others.
+ * @param maxBatchSize The maximum number of images per call.
+ * @param executor Runs the calls. Owned by this object when not given.
+ */
+class BatchingImageAnnotator(
+  private val delegate: ImageAnnotator,
+  val windowMillis: Long = 50,
+  val maxBatchSize: Int = ImageAnnotator.MAX_IMAGES_PER_CALL,
+  executor: ScheduledExecutorService? = null
+) : ImageAnnotator, Closeable {
+  init {
+    require(maxBatchSize in 1..ImageAnnotator.MAX_IMAGES_PER_CALL) { "Invalid maxBatchSize $maxBatchSize" }
+  }
+
+  private class Entry(
+    val request: AnnotateImageRequest,
+    val key: Any?,
+    val response: CompletableFuture<AnnotateImageResponse>
+  )
+
+  private val ownsExecutor = executor == null
+  // Two threads, so a batch can be sent while the previous call is still waiting for its response.
+  private val executor = executor ?: Executors.newScheduledThreadPool(2) { runnable ->
+    Thread(runnable, "visionBatcher").apply { isDaemon = true }
+  }
+
+  private val lock = Any()
+
+  // The batch being collected, guarded by lock.
+  private var pending = ArrayList<Entry>()
+  private var flushTask: ScheduledFuture<*>? = null
+
+  // The responses of keyed requests that are not answered yet, guarded by lock.
+  private val inFlight = HashMap<Any, CompletableFuture<AnnotateImageResponse>>()
+
+  /** The number of requests submitted, coalesced ones included. */
+  val requests = AtomicLong()
+
+  /** The number of requests that shared the call of an identical in-flight request. */
+  val coalescedRequests = AtomicLong()
+
+  /** The number of calls sent to the delegate. */
+  val calls = AtomicLong()
+
+  /**
+   * Submits one request.
+   *
+   * @param key Identifies the image, or null to never coalesce this request.
+   * @param createRequest Builds the request. Not called when an in-flight request has the same key.
+   * @return The response, completed exceptionally if the call fails.
+   */
+  fun submit(key: Any?, createRequest: () -> AnnotateImageRequest): CompletableFuture<AnnotateImageResponse> {
+    requests.incrementAndGet()
+    val response = CompletableFuture<AnnotateImageResponse>()
+    if (key != null) {
+      synchronized(lock) {
+        inFlight[key]?.let {
+          coalescedRequests.incrementAndGet()
+          return it
+        }
+        inFlight[key] = response
+      }
+    }
+
+    val request = try {
+      createRequest()
+    } catch (e: Exception) {
+      complete(listOf(Entry(AnnotateImageRequest.getDefaultInstance(), key, response)), null, e)
+      return response
+    }
+    enqueue(Entry(request, key, response))
+    return response
+  }
+
+  /**
+   * Submits one request and waits for its response without blocking the calling thread.
+   *
+   * @see submit
+   */
+  suspend fun annotate(key: Any?, createRequest: () -> AnnotateImageRequest): AnnotateImageResponse =
+    submit(key, createRequest).await()
+
+  /**
+   * Submits the requests without keys and blocks until all of them are answered. They may be sent together with
+   * other callers' requests, or split over several calls.
+   */
+  override fun batchAnnotate(requests: List<AnnotateImageRequest>): BatchAnnotateImagesResponse {
+    val responses = requests.map { request -> submit(null) { request } }
+    return try {
+      BatchAnnotateImagesResponse.newBuilder().addAllResponses(responses.map { it.get() }).build()
+    } catch (e: ExecutionException) {
+      throw e.cause ?: e
+    }
+  }
+
+  private fun enqueue(entry: Entry) {
+    val fullBatch = synchronized(lock) {
+      pending.add(entry)
+      if (pending.size >= maxBatchSize) {
+        takeBatch()
+      } else {
+        if (flushTask == null) flushTask = executor.schedule(Runnable { flush() }, windowMillis, TimeUnit.MILLISECONDS)
+        null
+      }
+    }
+    fullBatch?.let { batch -> executor.execute { send(batch) } }
+  }
+
+  /**
+   * Sends whatever was collected when the window closes.
+   */
+  private fun flush() {
+    val batch = synchronized(lock) { takeBatch() }
+    if (batch.isNotEmpty()) send(batch)
+  }
+
+  // Called with lock held.
+  private fun takeBatch(): List<Entry> {
+    flushTask?.cancel(false)
+    flushTask = null
+    val batch = pending
+    pending = ArrayList()
+    return batch
+  }
+
+  private fun send(batch: List<Entry>) {
+    calls.incrementAndGet()
+    try {
+      val responses = delegate.batchAnnotate(batch.map { it.request }).responsesList
+      complete(batch, responses, null)
+    } catch (e: Exception) {
+      complete(batch, null, e)
+    }
+  }
+
+  /**
+   * Answers every entry of a batch, with its response or with the failure, and forgets their keys.
+   */
+  private fun complete(batch: List<Entry>, responses: List<AnnotateImageResponse>?, failure: Exception?) {
+    synchronized(lock) {
+      batch.forEach { entry -> entry.key?.let { inFlight.remove(it) } }
+    }
+    batch.forEachIndexed { index, entry ->
+      when {
+        failure != null -> entry.response.completeExceptionally(failure)
+        else -> entry.response.complete(responses?.getOrNull(index) ?: AnnotateImageResponse.getDefaultInstance())
+      }
+    }
+  }
+
+  /**
+   * Sends the pending requests and stops the executor if this object created it.
+   */
+  override fun close() {
+    val batch = synchronized(lock) { takeBatch() }
+    if (batch.isNotEmpty()) executor.execute { send(batch) }
+    if (ownsExecutor) executor.shutdown()
+  }
+
+  override fun toString(): String =
+    "BatchingImageAnnotator(requests=$requests, coalesced=$coalescedRequests, calls=$calls)"
+}
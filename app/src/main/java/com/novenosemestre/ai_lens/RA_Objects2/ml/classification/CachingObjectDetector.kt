@@ -0,0 +1,94 @@
+package com.google.ar.core.examples.java.ml.classification
+
+import android.content.Context
+import android.media.Image
+import android.os.SystemClock
+import android.util.Log
+import com.novenosemestre.ai_lens.PerceptualCache
+import com.novenosemestre.ai_lens.PerceptualHash
+import com.novenosemestre.ai_lens.toYuvFrame
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+
+/**
+ * Answers scans of near-identical frames from a cache instead of running [delegate] again.
+ *
+ * Frames are keyed by the [PerceptualHash] of their luma plane, together with their size and rotation, so pressing
+ * scan again at the same object returns the previous results immediately and without a cloud request. This relies on
+ * the caller handing such frames over: the renderer's FrameGate only refuses blurred frames for manual scans, and
+ * leaves unchanged scenes to this cache.
+ * Empty results aren't cached, since they may come from a failed request, and neither are the results of a degraded
+ * analysis, e.g. one that wasn't allowed to ask the cloud, so that a later full analysis isn't answered with them.
+ *
+ * @param delegate The detector whose results are cached, e.g. the Cloud Vision or cascade detector.
+ * @param cache The cache. See [diskTier] to keep results across app restarts.
+ * @param cacheable Whether the delegate currently runs at full quality, so its results may be cached. Read before
+ * each analysis.
+ */
+class CachingObjectDetector(
+  context: Context,
+  private val delegate: ObjectDetector,
+  val cache: PerceptualCache<List<DetectedObjectResult>> = PerceptualCache(),
+  private val cacheable: () -> Boolean = { true }
+) : ObjectDetector(context) {
+  companion object {
+    private const val TAG = "CachingObjectDetector"
+
+    /**
+     * Creates a disk tier for a [PerceptualCache] of detection results, in the app's cache directory.
+     */
+    fun diskTier(context: Context) =
+      PerceptualCache.DiskTier(File(context.cacheDir, "detections"), DetectedObjectResultCodec)
+  }
+
+  /**
+   * Analyzes an image, or returns the results of a near-identical image analyzed before.
+   *
+   * @param image The image to analyze. The image is in YUV format.
+   * @param imageRotation The rotation of the image in degrees.
+   * @return A list of DetectedObjectResult representing the detected objects.
+   */
+  override suspend fun analyze(image: Image, imageRotation: Int): List<DetectedObjectResult> {
+    val hash = PerceptualHash.dHash(image.toYuvFrame().y, image.width, image.height)
+    // The results are in image coordinates, so they only apply to images of the same size and rotation
+    val tag = (image.width * 31 + image.height) * 31 + imageRotation
+
+    cache.get(hash, tag)?.let { results ->
+      Log.d(TAG, "Cache hit for ${java.lang.Long.toHexString(hash)}: $cache")
+      return results
+    }
+
+    val fullQuality = cacheable()
+    val startMillis = SystemClock.elapsedRealtime()
+    val results = delegate.analyze(image, imageRotation)
+    if (fullQuality && results.isNotEmpty()) {
+      cache.put(hash, tag, results, SystemClock.elapsedRealtime() - startMillis)
+    }
+    return results
+  }
+
+  override fun toString(): String = "CachingObjectDetector($delegate)"
+}
+
+/**
+ * Stores lists of [DetectedObjectResult] in the disk tier of a [PerceptualCache].
+ */
+object DetectedObjectResultCodec : PerceptualCache.Codec<List<DetectedObjectResult>> {
+  override fun encode(value: List<DetectedObjectResult>, output: DataOutputStream) {
+    output.writeInt(value.size)
+    value.forEach { result ->
+      output.writeFloat(result.confidence)
+      output.writeUTF(result.label)
+      output.writeInt(result.centerCoordinate.first)
+      output.writeInt(result.centerCoordinate.second)
+    }
+  }
+
+  override fun decode(input: DataInputStream): List<DetectedObjectResult> =
+    List(input.readInt()) {
+      val confidence = input.readFloat()
+      val label = input.readUTF()
+      DetectedObjectResult(confidence, label, input.readInt() to input.readInt())
+    }
+}
@@ -0,0 +1,132 @@
+package com.google.ar.core.examples.java.ml.classification
+
+import android.content.Context
+import android.media.Image
+import android.os.SystemClock
+import android.util.Log
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.toImageCoordinates
+import com.google.mlkit.vision.common.InputImage
+import com.novenosemestre.ai_lens.CloudUploadEncoder
+import com.novenosemestre.ai_lens.EncodedUpload
+import com.novenosemestre.ai_lens.TensorTransform
+import com.novenosemestre.ai_lens.YuvFrame
+import com.novenosemestre.ai_lens.toYuvFrame
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+
+/**
+ * Runs ML Kit first and asks Cloud Vision only about the objects ML Kit couldn't classify with confidence.
+ *
+ * Objects the local model recognizes cost no network round trip and no quota. The uncertain ones are cropped from the
+ * camera image and sent together in a single call, see [CloudEscalation]. Both answers are merged into one list.
+ *
+ * @param local The on-device detector.
+ * @param annotator Sends the crops to Cloud Vision, or null to run on-device only (e.g. no credentials).
+ * @param uploadEncoder Encodes the crops, e.g. the encoder of the Cloud Vision detector so that both share one JPEG
+ * quality.
+ * @param confidenceThreshold The ML Kit confidence from which an object is not sent to the cloud.
+ */
+class CascadeObjectDetector(
+  context: Context,
+  private val local: MLKitObjectDetector,
+  annotator: ImageAnnotator?,
+  private val uploadEncoder: CloudUploadEncoder = CloudUploadEncoder(),
+  confidenceThreshold: Float = 0.6f
+) : ObjectDetector(context) {
+  companion object {
+    private const val TAG = "CascadeObjectDetector"
+
+    // Margin added around an object before cropping, as a fraction of its size, so the cloud sees some context.
+    private const val CROP_MARGIN = 0.1f
+  }
+
+  // Decides which objects go to the cloud and merges the answers.
+  val escalation = CloudEscalation(annotator, confidenceThreshold)
+
+  /**
+   * Objects already labeled with confidence, with their centers in camera image coordinates. A detection whose box
+   * contains one of these centers takes its label instead of going to the cloud. Set before each analysis.
+   */
+  @Volatile
+  var knownObjects: List<DetectedObjectResult> = emptyList()
+
+  // The last crop sent to Cloud Vision, with its size and encode time
+  @Volatile
+  var lastUpload: EncodedUpload? = null
+    private set
+
+  // Largest side of the image both stages work on, e.g. lowered by the LatencyGovernor.
+  @Volatile
+  var analysisMaxDimension = MLKitObjectDetector.ANALYSIS_MAX_DIMENSION
+
+  // Guards the analysis bitmap returned by convertYuvScaled while it is read and cropped.
+  private val analysisLock = Mutex()
+
+  /**
+   * Converts a blank frame once, so the first scan doesn't pay for the first use of the converter. The local detector
+   * is warmed up on its own.
+   */
+  override suspend fun warmUp() {
+    analysisLock.withLock {
+      convertYuvScaled(blankCameraFrame(), WARM_UP_ROTATION, analysisMaxDimension)
+    }
+  }
+
+  /**
+   * Analyzes an image and returns a list of detected objects.
+   *
+   * @param image The image to analyze. The image is in YUV format.
+   * @param imageRotation The rotation of the image in degrees.
+   * @return A list of DetectedObjectResult representing the detected objects.
+   */
+  override suspend fun analyze(image: Image, imageRotation: Int): List<DetectedObjectResult> =
+    analysisLock.withLock {
+      val startNanos = SystemClock.elapsedRealtimeNanos()
+
+      // ML Kit works on an upright, downscaled image; the crops are encoded from the full resolution frame
+      val frame = image.toYuvFrame()
+      val (analysisBitmap, transform) = convertYuvScaled(frame, imageRotation, analysisMaxDimension)
+
+      // Find the objects on-device, then name the uncertain ones from the known objects or in the cloud
+      val detections = local.detectRegions(InputImage.fromBitmap(analysisBitmap, 0))
+      val known = knownObjects
+      val results = escalation.resolve(
+        detections,
+        encodeCrop = { detection -> encodeCrop(frame, detection, transform) },
+        known = { detection ->
+          known.find { detection.contains(it.centerCoordinate, transform) }?.let { it.label to it.confidence }
+        }
+      )
+
+      Log.d(TAG, "Scan took ${(SystemClock.elapsedRealtimeNanos() - startNanos) / 1_000_000} ms, $escalation")
+      // Map the centers back to the camera image
+      results.map { it.copy(centerCoordinate = it.centerCoordinate.toImageCoordinates(transform)) }
+    }
+
+  /**
+   * Checks whether a point in camera image coordinates lies in the box of a detection.
+   */
+  private fun LocalDetection.contains(point: Pair<Int, Int>, transform: TensorTransform): Boolean {
+    val (x1, y1) = (left to top).toImageCoordinates(transform)
+    val (x2, y2) = (right to bottom).toImageCoordinates(transform)
+    val (x, y) = point
+    return x in minOf(x1, x2)..maxOf(x1, x2) && y in minOf(y1, y2)..maxOf(y1, y2)
+  }
+
+  /**
+   * Encodes the region of a detection, with a margin, clamped to the image, straight from the YUV frame.
+   */
+  private fun encodeCrop(frame: YuvFrame, detection: LocalDetection, transform: TensorTransform): ByteArray {
+    val marginX = (detection.right - detection.left) * CROP_MARGIN
+    val marginY = (detection.bottom - detection.top) * CROP_MARGIN
+    // Analysis image -> upright full resolution image
+    val left = ((detection.left - marginX) * transform.scaleX).toInt().coerceIn(0, transform.rotatedWidth - 1)
+    val top = ((detection.top - marginY) * transform.scaleY).toInt().coerceIn(0, transform.rotatedHeight - 1)
+    val right = ((detection.right + marginX) * transform.scaleX).toInt().coerceIn(left + 1, transform.rotatedWidth)
+    val bottom = ((detection.bottom + marginY) * transform.scaleY).toInt().coerceIn(top + 1, transform.rotatedHeight)
+    val upload = uploadEncoder.encodeRegion(frame, transform.rotation, left, top, right, bottom)
+    lastUpload = upload
+    Log.d(TAG, "Crop upload: $upload")
+    return upload.bytes
+  }
+}
@@ -0,0 +1,171 @@
+package com.google.ar.core.examples.java.ml.classification
+
+import com.google.cloud.vision.v1.AnnotateImageRequest
+import com.google.cloud.vision.v1.AnnotateImageResponse
+import com.google.cloud.vision.v1.Feature
+import com.google.protobuf.ByteString
+import java.util.IdentityHashMap
+import java.util.concurrent.atomic.AtomicLong
+import com.google.cloud.vision.v1.Image as GCVImage
+
+/**
+ * An object found by the on-device detector, in the coordinates of the image it analyzed.
+ *
+ * @property left The left edge of the bounding box.
+ * @property top The top edge of the bounding box.
+ * @property right The right edge of the bounding box.
+ * @property bottom The bottom edge of the bounding box.
+ * @property label The best label, or null if the detector found the object but couldn't classify it.
+ * @property confidence The confidence of [label], 0 when there is no label.
+ */
+data class LocalDetection(
+  val left: Int,
+  val top: Int,
+  val right: Int,
+  val bottom: Int,
+  val label: String?,
+  val confidence: Float
+) {
+  /** The center of the bounding box. */
+  val center: Pair<Int, Int>
+    get() = (left + right) / 2 to (top + bottom) / 2
+}
+
+/**
+ * The cloud half of [CascadeObjectDetector].
+ *
+ * Local detections that are confident enough are kept as they are. The others (unlabeled, or labeled below
+ * [confidenceThreshold]) are cropped and sent to Cloud Vision, all in a single `batchAnnotateImages` call, and the
+ * cloud answer replaces the local one. If the cloud can't name an object, or the call fails, the local label is kept
+ * when there is one and the object is dropped otherwise. Objects that are already known, e.g. tracked from earlier
+ * scans, are named from what is known instead of being escalated.
+ *
+ * @param annotator Sends the requests to Cloud Vision, or null to run on-device only.
+ * @param confidenceThreshold The local confidence from which an object is not escalated.
+ * @param maxEscalations The maximum number of objects escalated per image, at most one call's worth.
+ */
+class CloudEscalation(
+  private val annotator: ImageAnnotator?,
+  val confidenceThreshold: Float = 0.6f,
+  val maxEscalations: Int = ImageAnnotator.MAX_IMAGES_PER_CALL
+) {
+  init {
+    require(maxEscalations in 1..ImageAnnotator.MAX_IMAGES_PER_CALL) { "Invalid maxEscalations $maxEscalations" }
+  }
+
+  /**
+   * Whether uncertain objects are sent to the cloud. While false, they are named from what is known or keep their
+   * local answer, as without an annotator.
+   */
+  @Volatile
+  var cloudEnabled = true
+
+  /** The number of objects sent to the cloud. */
+  val escalatedObjects = AtomicLong()
+
+  /** The number of objects answered on-device only. */
+  val localObjects = AtomicLong()
+
+  /** The number of uncertain objects named from what was already known instead of the cloud. */
+  val knownObjects = AtomicLong()
+
+  /** The number of `batchAnnotateImages` calls. */
+  val cloudCalls = AtomicLong()
+
+  /** The number of failed calls, after which the local answers were used. */
+  val failedCalls = AtomicLong()
+
+  /**
+   * Checks whether an object must be sent to the cloud.
+   */
+  fun needsCloud(detection: LocalDetection): Boolean =
+    detection.label == null || detection.confidence < confidenceThreshold
+
+  /**
+   * Merges the local detections with the cloud answers for the uncertain ones.
+   *
+   * @param detections The local detections.
+   * @param encodeCrop Returns the JPEG bytes of the region of a detection. Only called for escalated detections.
+   * @param known Returns the name and confidence already known for the object of a detection, or null. Only called
+   * for detections that would be escalated.
+   * @return The results, with centers in the coordinates of [detections], in the order of [detections].
+   */
+  fun resolve(
+    detections: List<LocalDetection>,
+    encodeCrop: (LocalDetection) -> ByteArray,
+    known: (LocalDetection) -> Pair<String, Float>? = { null }
+  ): List<DetectedObjectResult> {
+    val knownAnswers = IdentityHashMap<LocalDetection, Pair<String, Float>>()
+    detections.forEach { detection ->
+      if (needsCloud(detection)) known(detection)?.let { knownAnswers[detection] = it }
+    }
+    val escalated = if (annotator == null || !cloudEnabled) {
+      emptyList()
+    } else {
+      detections.filter { needsCloud(it) && it !in knownAnswers }.take(maxEscalations)
+    }
+    val cloudAnswers = if (escalated.isEmpty()) emptyMap() else annotate(escalated, encodeCrop)
+    knownObjects.addAndGet(knownAnswers.size.toLong())
+    localObjects.addAndGet((detections.size - escalated.size - knownAnswers.size).toLong())
+
+    return detections.mapNotNull { detection ->
+      val answer = cloudAnswers[detection] ?: knownAnswers[detection]
+      when {
+        answer != null -> DetectedObjectResult(answer.second, answer.first, detection.center)
+        detection.label != null -> DetectedObjectResult(detection.confidence, detection.label, detection.center)
+        else -> null
+      }
+    }
+  }
+
+  /**
+   * Sends the crops of the escalated detections in one call.
+   *
+   * @return The name and score found for each detection. Detections the cloud couldn't name are missing.
+   */
+  private fun annotate(
+    escalated: List<LocalDetection>,
+    encodeCrop: (LocalDetection) -> ByteArray
+  ): Map<LocalDetection, Pair<String, Float>> {
+    val requests = escalated.map { createRequest(encodeCrop(it)) }
+    escalatedObjects.addAndGet(escalated.size.toLong())
+    cloudCalls.incrementAndGet()
+    val responses = try {
+      checkNotNull(annotator).batchAnnotate(requests).responsesList
+    } catch (e: Exception) {
+      failedCalls.incrementAndGet()
+      return emptyMap()
+    }
+
+    val answers = IdentityHashMap<LocalDetection, Pair<String, Float>>()
+    escalated.forEachIndexed { index, detection ->
+      val answer = responses.getOrNull(index)?.bestAnswer() ?: return@forEachIndexed
+      answers[detection] = answer
+    }
+    return answers
+  }
+
+  /**
+   * Picks the best name for a crop: the most likely localized object, else the most likely label.
+   */
+  private fun AnnotateImageResponse.bestAnswer(): Pair<String, Float>? {
+    if (hasError()) return null
+    localizedObjectAnnotationsList.maxByOrNull { it.score }?.let { return it.name to it.score }
+    labelAnnotationsList.maxByOrNull { it.score }?.let { return it.description to it.score }
+    return null
+  }
+
+  /**
+   * Creates the request for one crop. The crop holds a single object, so one answer of each kind is enough.
+   */
+  private fun createRequest(imageBytes: ByteArray): AnnotateImageRequest =
+    AnnotateImageRequest.newBuilder()
+      .setImage(GCVImage.newBuilder().setContent(ByteString.copyFrom(imageBytes)))
+      .addFeatures(Feature.newBuilder().setType(Feature.Type.OBJECT_LOCALIZATION).setMaxResults(1))
+      .addFeatures(Feature.newBuilder().setType(Feature.Type.LABEL_DETECTION).setMaxResults(1))
+      .build()
+
+  override fun toString(): String =
+    "CloudEscalation(local=$localObjects, known=$knownObjects, escalated=$escalatedObjects, calls=$cloudCalls, " +
+      "failed=$failedCalls)"
+}
@@ -1,5 +1,7 @@
 package com.google.ar.core.examples.java.ml.classification
 
+import com.novenosemestre.ai_lens.DetectionBatch
+
 /**
  * Data class representing a detected object result.
  *
@@ -11,4 +13,20 @@ data class DetectedObjectResult(
   val confidence: Float,
   val label: String,
   val centerCoordinate: Pair<Int, Int>
-)
\ No newline at end of file
+)
+
+/**
+ * Converts the detections of a batch to a list of DetectedObjectResult.
+ */
+fun DetectionBatch.toDetectedObjectResults(): List<DetectedObjectResult> =
+  List(count) { i -> DetectedObjectResult(scores[i], labelAt(i), centerX[i] to centerY[i]) }
+
+/**
+ * Adds a DetectedObjectResult to a batch. The result has no box, so its box is its center.
+ *
+ * @return The index of the detection.
+ */
+fun DetectionBatch.add(result: DetectedObjectResult): Int {
+  val (x, y) = result.centerCoordinate
+  return add(x, y, x, y, x, y, result.confidence, classId(result.label))
+}
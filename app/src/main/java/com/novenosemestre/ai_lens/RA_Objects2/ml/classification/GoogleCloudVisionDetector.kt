@@ -3,17 +3,17 @@ package com.google.ar.core.examples.java.ml.classification
 import android.annotation.SuppressLint
 import android.media.Image
 import android.util.Log
-import com.google.ar.core.examples.java.ml.classification.utils.ImageUtils
-import com.google.ar.core.examples.java.ml.classification.utils.ImageUtils.toByteArray
-import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.calculateAverage
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.addTo
 import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.rotateCoordinates
-import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.toAbsoluteCoordinates
 import com.google.auth.oauth2.GoogleCredentials
 import com.google.cloud.vision.v1.AnnotateImageRequest
 import com.google.cloud.vision.v1.Feature
 import com.google.cloud.vision.v1.ImageAnnotatorClient
 import com.google.cloud.vision.v1.ImageAnnotatorSettings
 import com.google.protobuf.ByteString
+import com.novenosemestre.ai_lens.CloudUploadEncoder
+import com.novenosemestre.ai_lens.DetectionBatch
+import com.novenosemestre.ai_lens.EncodedUpload
 import com.novenosemestre.ai_lens.RA_Objects2.MainActivity2
 import com.google.cloud.vision.v1.Image as GCVImage
 
@@ -51,8 +51,33 @@ class GoogleCloudVisionDetector(val activity: MainActivity2) : ObjectDetector(ac
 
   // Create ImageAnnotatorSettings with the Google Cloud Vision credentials
   val settings = ImageAnnotatorSettings.newBuilder().setCredentialsProvider { credentials }.build()
-  // Create an ImageAnnotatorClient with the settings
-  val vision = ImageAnnotatorClient.create(settings)
+  // Create an ImageAnnotatorClient with the settings. Building its channel is slow, so it is done by warmUp, off the
+  // main thread, or else by the first call.
+  val vision: ImageAnnotatorClient by lazy { ImageAnnotatorClient.create(settings) }
+
+  // Sends batches of requests through the client, for detectors that build their own requests
+  val annotator = ImageAnnotator { requests -> vision.batchAnnotateImages(requests) }
+
+  // Groups the requests of concurrent scans into shared calls, and lets scans of the same frame share one request
+  val batcher = BatchingImageAnnotator(annotator)
+
+  // Encodes the camera images sent to Cloud Vision
+  val uploadEncoder = CloudUploadEncoder()
+
+  // The last image sent to Cloud Vision, with its size and encode time
+  @Volatile
+  var lastUpload: EncodedUpload? = null
+    private set
+
+  /**
+   * Builds the client and fetches an access token, so the first scan doesn't pay for the channel and the OAuth round
+   * trip. No image is sent, the warm-up costs no quota. Blocks, so it must run on an IO thread.
+   */
+  override suspend fun warmUp() {
+    val credentials = credentials ?: return
+    vision
+    credentials.refreshIfExpired()
+  }
 
   /**
    * Analyzes an image and returns a list of detected objects.
@@ -61,30 +86,43 @@ class GoogleCloudVisionDetector(val activity: MainActivity2) : ObjectDetector(ac
    * @param imageRotation The rotation of the image in degrees.
    * @return A list of DetectedObjectResult representing the detected objects.
    */
-  override suspend fun analyze(image: Image, imageRotation: Int): List<DetectedObjectResult> {
-    // Convert the image to YUV format
-    val convertYuv = convertYuv(image)
+  override suspend fun analyze(image: Image, imageRotation: Int): List<DetectedObjectResult> =
+    DetectionBatch().also { analyze(image, imageRotation, it) }.toDetectedObjectResults()
 
-    // Rotate the image
-    val rotatedImage = ImageUtils.rotateBitmap(convertYuv, imageRotation)
+  /**
+   * Analyzes an image into a batch, without allocating per detection once the response is parsed.
+   *
+   * @param image The image to analyze.
+   * @param imageRotation The rotation of the image in degrees.
+   * @param batch Receives the detected objects, in the coordinates of [image].
+   */
+  override suspend fun analyze(image: Image, imageRotation: Int, batch: DetectionBatch) {
+    // The size of the rotated image, needed to map the results back even when the request of another scan is reused
+    val swapsAxes = imageRotation == 90 || imageRotation == 270
+    val rotatedWidth = if (swapsAxes) image.height else image.width
+    val rotatedHeight = if (swapsAxes) image.width else image.height
+
+    // Send the request, batched with other scans. A scan of the same frame already in flight shares its response.
+    val response = batcher.annotate(image.timestamp to imageRotation) {
+      // Encode the image straight from YUV to an upright, downscaled JPEG within the upload budget
+      val upload = uploadEncoder.encode(image, imageRotation)
+      lastUpload = upload
+      Log.d(TAG, "Upload: $upload")
 
-    // Create a request for the Google Cloud Vision APIs
-    val request = createAnnotateImageRequest(rotatedImage.toByteArray())
-    // Send the request and get the response
-    val response = vision.batchAnnotateImages(listOf(request))
+      // Create a request for the Google Cloud Vision APIs
+      createAnnotateImageRequest(upload.bytes)
+    }
 
-    // Process the response and map it to DetectedObjectResult
-    val objectAnnotationsResult = response.responsesList.first().localizedObjectAnnotationsList
-    return objectAnnotationsResult.map {
-      // Calculate the center of the bounding polygon
-      val center = it.boundingPoly.normalizedVerticesList.calculateAverage()
-      // Convert the center's coordinates from relative to absolute
-      val absoluteCoordinates = center.toAbsoluteCoordinates(rotatedImage.width, rotatedImage.height)
-      // Rotate the coordinates
-      val rotatedCoordinates = absoluteCoordinates.rotateCoordinates(rotatedImage.width, rotatedImage.height, imageRotation)
-      // Create a DetectedObjectResult
-      DetectedObjectResult(it.score, it.name, rotatedCoordinates)
+    // Add the bounding polygons, in absolute coordinates of the rotated image
+    val objectAnnotationsResult = response.localizedObjectAnnotationsList
+    batch.clear()
+    for (index in objectAnnotationsResult.indices) {
+      val annotation = objectAnnotationsResult[index]
+      annotation.boundingPoly.normalizedVerticesList
+        .addTo(batch, rotatedWidth, rotatedHeight, annotation.score, batch.classId(annotation.name))
     }
+    // Rotate the boxes and centers back to the camera image
+    batch.rotateCoordinates(rotatedWidth, rotatedHeight, imageRotation)
   }
 
   /**
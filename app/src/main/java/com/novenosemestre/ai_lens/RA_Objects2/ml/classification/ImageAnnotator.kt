@@ -0,0 +1,24 @@
+package com.google.ar.core.examples.java.ml.classification
+
+import com.google.cloud.vision.v1.AnnotateImageRequest
+import com.google.cloud.vision.v1.BatchAnnotateImagesResponse
+
+/**
+ * Sends image annotation requests to Cloud Vision, or to anything that answers like it.
+ *
+ * [GoogleCloudVisionDetector.annotator] goes through the gRPC `ImageAnnotatorClient`. Tests plug in a local stand-in.
+ */
+fun interface ImageAnnotator {
+  /**
+   * Annotates a batch of images in one call.
+   *
+   * @param requests The requests, at most [MAX_IMAGES_PER_CALL].
+   * @return The responses, in the order of [requests].
+   */
+  fun batchAnnotate(requests: List<AnnotateImageRequest>): BatchAnnotateImagesResponse
+
+  companion object {
+    /** The maximum number of images Cloud Vision accepts in a single `batchAnnotateImages` call. */
+    const val MAX_IMAGES_PER_CALL = 16
+  }
+}
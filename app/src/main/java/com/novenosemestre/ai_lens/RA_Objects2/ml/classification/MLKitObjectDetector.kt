@@ -1,18 +1,31 @@
 package com.google.ar.core.examples.java.ml.classification
 
-import android.app.Activity
+import android.content.Context
 import android.media.Image
-import com.google.ar.core.examples.java.ml.classification.utils.ImageUtils
-import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.rotateCoordinates
+import android.os.SystemClock
+import android.util.Log
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.toImageCoordinates
+import com.novenosemestre.ai_lens.DetectionBatch
+import com.novenosemestre.ai_lens.TensorTransform
 import com.google.mlkit.vision.common.InputImage
+import com.google.mlkit.vision.objects.DetectedObject
 import com.google.mlkit.vision.objects.ObjectDetection
 import com.google.mlkit.vision.objects.custom.CustomObjectDetectorOptions
 import com.google.mlkit.vision.objects.defaults.ObjectDetectorOptions
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import kotlinx.coroutines.tasks.asDeferred
 /**
  * Analyzes an image using ML Kit.
  */
-class MLKitObjectDetector(context: Activity) : ObjectDetector(context) {
+class MLKitObjectDetector(context: Context) : ObjectDetector(context) {
+  companion object {
+    private const val TAG = "MLKitObjectDetector"
+
+    // Largest side of the bitmap handed to ML Kit. The detector downscales its input further internally.
+    const val ANALYSIS_MAX_DIMENSION = 640
+  }
+
   val builder = ObjectDetectorOptions.Builder()
 
   // Options for the object detector.
@@ -28,6 +41,38 @@ class MLKitObjectDetector(context: Activity) : ObjectDetector(context) {
   // The object detector client, which is used to process the images.
   private val detector = ObjectDetection.getClient(options)
 
+  // Guards the analysis bitmap returned by convertYuvScaled while ML Kit reads it.
+  private val analysisLock = Mutex()
+
+  /**
+   * How camera images are handed to ML Kit.
+   */
+  enum class InputMode {
+    /** The YUV planes and rotation are passed to ML Kit as is, without any RGB conversion. */
+    MEDIA_IMAGE,
+
+    /** The image is converted to an upright, downscaled RGB bitmap first. See [convertYuvScaled]. */
+    FUSED_BITMAP
+  }
+
+  // The input mode used by analyze.
+  var inputMode = InputMode.MEDIA_IMAGE
+
+  // Largest side of the bitmap handed to ML Kit in FUSED_BITMAP mode, e.g. lowered by the LatencyGovernor.
+  @Volatile
+  var analysisMaxDimension = ANALYSIS_MAX_DIMENSION
+
+  /**
+   * Converts a blank frame and runs one inference on it, so the first scan doesn't pay for loading the model and
+   * for the first use of the converter.
+   */
+  override suspend fun warmUp() {
+    analysisLock.withLock {
+      val (analysisBitmap, _) = convertYuvScaled(blankCameraFrame(), WARM_UP_ROTATION, analysisMaxDimension)
+      detector.process(InputImage.fromBitmap(analysisBitmap, 0)).asDeferred().await()
+    }
+  }
+
   /**
    * Analyzes an image and returns a list of detected objects.
    *
@@ -35,27 +80,111 @@ class MLKitObjectDetector(context: Activity) : ObjectDetector(context) {
    * @param imageRotation The rotation of the image in degrees.
    * @return A list of DetectedObjectResult representing the detected objects.
    */
-  override suspend fun analyze(image: Image, imageRotation: Int): List<DetectedObjectResult> {
-    // Convert the image from YUV to RGB format
-    val convertYuv = convertYuv(image)
-    // Rotate the image
-    val rotatedImage = ImageUtils.rotateBitmap(convertYuv, imageRotation)
+  override suspend fun analyze(image: Image, imageRotation: Int): List<DetectedObjectResult> =
+    DetectionBatch().also { analyze(image, imageRotation, it) }.toDetectedObjectResults()
+
+  /**
+   * Analyzes an image into a batch, without allocating per detection.
+   *
+   * @param image The image to analyze. The image is in YUV format.
+   * @param imageRotation The rotation of the image in degrees.
+   * @param batch Receives the classified objects, in the coordinates of [image].
+   */
+  override suspend fun analyze(image: Image, imageRotation: Int, batch: DetectionBatch) {
+    val startNanos = SystemClock.elapsedRealtimeNanos()
+    val mode = inputMode
+    batch.clear()
+    when (mode) {
+      InputMode.MEDIA_IMAGE -> analyzeMediaImage(image, imageRotation, batch)
+      InputMode.FUSED_BITMAP -> analyzeFusedBitmap(image, imageRotation, batch)
+    }
+    Log.d(TAG, "$mode scan took ${(SystemClock.elapsedRealtimeNanos() - startNanos) / 1_000_000} ms")
+  }
+
+  /**
+   * Analyzes an image by handing its YUV planes to ML Kit together with the rotation.
+   *
+   * ML Kit reports the bounding boxes in the upright image, so they are only rotated back to the camera image.
+   * The image must stay open until this function returns.
+   *
+   * @param image The image to analyze. The image is in YUV format.
+   * @param imageRotation The rotation of the image in degrees.
+   * @param batch Receives the detected objects.
+   */
+  private suspend fun analyzeMediaImage(image: Image, imageRotation: Int, batch: DetectionBatch) {
+    val swapsAxes = imageRotation == 90 || imageRotation == 270
+    val rotatedWidth = if (swapsAxes) image.height else image.width
+    val rotatedHeight = if (swapsAxes) image.width else image.height
+    val transform = TensorTransform(imageRotation, rotatedWidth, rotatedHeight, rotatedWidth, rotatedHeight)
+
+    val inputImage = InputImage.fromMediaImage(image, imageRotation)
+    detect(inputImage, transform, batch)
+  }
+
+  /**
+   * Analyzes an image by converting it to an upright, downscaled bitmap first.
+   *
+   * @param image The image to analyze. The image is in YUV format.
+   * @param imageRotation The rotation of the image in degrees.
+   * @param batch Receives the detected objects.
+   */
+  private suspend fun analyzeFusedBitmap(image: Image, imageRotation: Int, batch: DetectionBatch) {
+    // The analysis bitmap is reused between calls, so only one image is processed at a time.
+    analysisLock.withLock {
+      // Convert, rotate and downscale the image in a single pass
+      val (analysisBitmap, transform) = convertYuvScaled(image, imageRotation, analysisMaxDimension)
+
+      // Create an input image from the upright bitmap
+      detect(InputImage.fromBitmap(analysisBitmap, 0), transform, batch)
+    }
+  }
+
+  /**
+   * Runs the detector and maps its results back to the camera image.
+   *
+   * @param inputImage The image handed to ML Kit.
+   * @param transform The transform from the upright image seen by ML Kit to the camera image.
+   * @param batch Receives the classified objects.
+   */
+  private suspend fun detect(inputImage: InputImage, transform: TensorTransform, batch: DetectionBatch) {
+    val mlKitDetectedObjects = detector.process(inputImage).asDeferred().await()
+    for (index in mlKitDetectedObjects.indices) {
+      val obj = mlKitDetectedObjects[index]
+      // Skip the objects that couldn't be classified
+      val label = obj.bestLabel() ?: continue
+      val box = obj.boundingBox
+      batch.add(box.left, box.top, box.right, box.bottom, label.confidence, batch.classId(label.text))
+    }
+    // Map the boxes and centers back to the camera image
+    batch.toImageCoordinates(transform)
+  }
 
-    // Create an input image from the rotated bitmap
-    val inputImage = InputImage.fromBitmap(rotatedImage, 0)
+  /**
+   * Returns the label with the highest confidence, or null if the object wasn't classified.
+   */
+  private fun DetectedObject.bestLabel(): DetectedObject.Label? {
+    val labels = this.labels
+    var best: DetectedObject.Label? = null
+    for (index in labels.indices) {
+      if (best == null || labels[index].confidence > best.confidence) best = labels[index]
+    }
+    return best
+  }
 
+  /**
+   * Runs the detector and returns every object it found, including the ones it couldn't classify.
+   *
+   * @param inputImage The image handed to ML Kit.
+   * @return The objects, with bounding boxes in the coordinates of the upright [inputImage].
+   */
+  suspend fun detectRegions(inputImage: InputImage): List<LocalDetection> {
     // Process the image with the detector and get the detected objects
     val mlKitDetectedObjects = detector.process(inputImage).asDeferred().await()
-    // Map the detected objects to DetectedObjectResult
-    return mlKitDetectedObjects.mapNotNull { obj ->
+    return mlKitDetectedObjects.map { obj ->
       // Get the label with the highest confidence
-      val bestLabel = obj.labels.maxByOrNull { label -> label.confidence } ?: return@mapNotNull null
-      // Get the center coordinates of the bounding box of the detected object
-      val coords = obj.boundingBox.exactCenterX().toInt() to obj.boundingBox.exactCenterY().toInt()
-      // Rotate the coordinates
-      val rotatedCoordinates = coords.rotateCoordinates(rotatedImage.width, rotatedImage.height, imageRotation)
-      // Create a DetectedObjectResult
-      DetectedObjectResult(bestLabel.confidence, bestLabel.text, rotatedCoordinates)
+      val bestLabel = obj.bestLabel()
+      val box = obj.boundingBox
+      LocalDetection(box.left, box.top, box.right, box.bottom, bestLabel?.text, bestLabel?.confidence ?: 0f)
     }
   }
 
@@ -2,11 +2,34 @@ package com.google.ar.core.examples.java.ml.classification
 
 import android.content.Context
 import android.graphics.Bitmap
+import android.graphics.PixelFormat
 import android.media.Image
-import com.novenosemestre.ai_lens.YuvToRgbConverter
+import com.novenosemestre.ai_lens.BufferKey
+import com.novenosemestre.ai_lens.BufferPool
+import com.novenosemestre.ai_lens.DetectionBatch
+import com.novenosemestre.ai_lens.TensorLayout
+import com.novenosemestre.ai_lens.TensorTransform
+import com.novenosemestre.ai_lens.YuvFrame
+import com.novenosemestre.ai_lens.YuvTensorConverter
+import com.novenosemestre.ai_lens.toYuvFrame
+import kotlin.math.max
+import kotlin.math.roundToInt
 
 abstract class ObjectDetector(val context: Context) {
-  val yuvConverter = YuvToRgbConverter(context)
+  companion object {
+    // The size and rotation of the blank frame used by warmUp: an ARCore CPU image, held in portrait.
+    private const val WARM_UP_WIDTH = 640
+    private const val WARM_UP_HEIGHT = 480
+    const val WARM_UP_ROTATION = 90
+  }
+
+  // Fused converters and their target bitmaps, keyed by analysis size.
+  private val tensorConverters = BufferPool(2) { key ->
+    YuvTensorConverter(key.width, key.height, TensorLayout.RGBA_UINT8)
+  }
+  private val analysisBitmaps = BufferPool(2) { key ->
+    Bitmap.createBitmap(key.width, key.height, Bitmap.Config.ARGB_8888)
+  }
 
   /**
    * Analyzes an image and returns a list of detected objects.
@@ -22,17 +45,74 @@ abstract class ObjectDetector(val context: Context) {
   abstract suspend fun analyze(image: Image, imageRotation: Int): List<DetectedObjectResult>
 
   /**
-   * Converts a YUV image to a Bitmap.
+   * Analyzes an image into a reusable batch instead of a list.
+   *
+   * The batch is cleared first. Detectors on the per-frame path override this to fill the batch without allocating
+   * per detection; the default implementation copies the results of [analyze].
+   *
+   * @param image The image to analyze. This is an android.media.Image object.
+   * @param imageRotation The rotation of the image in degrees. This is an integer.
+   * @param batch Receives the detected objects, with boxes and centers in the coordinates of [image].
+   */
+  open suspend fun analyze(image: Image, imageRotation: Int, batch: DetectionBatch) {
+    val results = analyze(image, imageRotation)
+    batch.clear()
+    results.forEach { batch.add(it) }
+  }
+
+  /**
+   * Prepares the detector for its first analysis, e.g. loads its model or opens its connection, so the first scan
+   * doesn't pay for it. Called once on a background thread when the activity is created; the default does nothing.
+   */
+  open suspend fun warmUp() {}
+
+  /**
+   * Returns a black frame of the size of the camera image, to run the conversions and models once in [warmUp].
+   */
+  protected fun blankCameraFrame(): YuvFrame {
+    val data = ByteArray(WARM_UP_WIDTH * WARM_UP_HEIGHT * 3 / 2)
+    // Neutral chroma, so the frame converts to black instead of green
+    data.fill(128.toByte(), WARM_UP_WIDTH * WARM_UP_HEIGHT, data.size)
+    return YuvFrame.fromNv21(data, WARM_UP_WIDTH, WARM_UP_HEIGHT)
+  }
+
+  /**
+   * Converts a YUV image to an upright, downscaled Bitmap in a single pass.
+   *
+   * The image is rotated by [imageRotation] and scaled so that its largest side is at most [maxDimension], keeping
+   * its aspect ratio. Neither the full resolution RGB image nor its rotated copy are created.
    *
-   * This function uses a YuvToRgbConverter to convert the image from YUV format to RGB format.
-   * The converted image is returned as a Bitmap.
+   * The returned bitmap is reused by the next call with the same output size, so callers must be done with it
+   * before converting another image.
    *
    * @param image The image to convert. This is an android.media.Image object in YUV format.
-   * @return The converted image as a Bitmap.
+   * @param imageRotation The rotation of the image in degrees.
+   * @param maxDimension The maximum width or height of the returned bitmap.
+   * @return The bitmap, and the transform that maps its coordinates back to [image].
+   */
+  fun convertYuvScaled(image: Image, imageRotation: Int, maxDimension: Int): Pair<Bitmap, TensorTransform> =
+    convertYuvScaled(image.toYuvFrame(), imageRotation, maxDimension)
+
+  /**
+   * Converts a YUV frame to an upright, downscaled Bitmap in a single pass, see [convertYuvScaled].
    */
-  fun convertYuv(image: Image): Bitmap {
-    return Bitmap.createBitmap(image.width, image.height, Bitmap.Config.ARGB_8888).apply {
-      yuvConverter.yuvToRgb(image, this)
-    }
+  @Synchronized
+  fun convertYuvScaled(frame: YuvFrame, imageRotation: Int, maxDimension: Int): Pair<Bitmap, TensorTransform> {
+    val swapsAxes = imageRotation == 90 || imageRotation == 270
+    val rotatedWidth = if (swapsAxes) frame.height else frame.width
+    val rotatedHeight = if (swapsAxes) frame.width else frame.height
+    val scale = minOf(1f, maxDimension.toFloat() / max(rotatedWidth, rotatedHeight))
+    val key = BufferKey(
+      max(1, (rotatedWidth * scale).roundToInt()),
+      max(1, (rotatedHeight * scale).roundToInt()),
+      PixelFormat.RGBA_8888
+    )
+
+    val converter = tensorConverters.acquire(key)
+    val transform = converter.convert(frame, imageRotation)
+    val bitmap = analysisBitmaps.acquire(key)
+    bitmap.copyPixelsFromBuffer(converter.buffer)
+    converter.buffer.rewind()
+    return bitmap to transform
   }
-}
\ No newline at end of file
+}
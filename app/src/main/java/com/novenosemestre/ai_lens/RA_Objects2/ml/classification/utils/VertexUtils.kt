@@ -1,6 +1,8 @@
 package com.google.ar.core.examples.java.ml.classification.utils
 
 import com.google.cloud.vision.v1.NormalizedVertex
+import com.novenosemestre.ai_lens.DetectionBatch
+import com.novenosemestre.ai_lens.TensorTransform
 
 object VertexUtils {
   /**
@@ -34,13 +36,143 @@ object VertexUtils {
     imageRotation: Int,
   ): Pair<Int, Int> {
     val (x, y) = this
-    return when (imageRotation) {
-      0 -> x to y
-      180 -> imageWidth - x to imageHeight - y
-      90 -> y to imageWidth - x
-      270 -> imageHeight - y to x
+    return rotateX(x, y, imageWidth, imageHeight, imageRotation) to rotateY(x, y, imageWidth, imageHeight, imageRotation)
+  }
+
+  /**
+   * The x coordinate of [rotateCoordinates], without allocating a Pair.
+   */
+  fun rotateX(x: Int, y: Int, imageWidth: Int, imageHeight: Int, imageRotation: Int): Int =
+    when (imageRotation) {
+      0 -> x
+      180 -> imageWidth - x
+      90 -> y
+      270 -> imageHeight - y
       else -> error("Invalid imageRotation $imageRotation")
     }
+
+  /**
+   * The y coordinate of [rotateCoordinates], without allocating a Pair.
+   */
+  fun rotateY(x: Int, y: Int, imageWidth: Int, imageHeight: Int, imageRotation: Int): Int =
+    when (imageRotation) {
+      0 -> y
+      180 -> imageHeight - y
+      90 -> imageWidth - x
+      270 -> x
+      else -> error("Invalid imageRotation $imageRotation")
+    }
+
+  /**
+   * Rotates the boxes and centers of a batch in place, like [rotateCoordinates]. The boxes stay ordered, i.e. left is
+   * still at most right and top at most bottom.
+   *
+   * @param imageWidth The width of the image.
+   * @param imageHeight The height of the image.
+   * @param imageRotation The rotation of the image in degrees. This should be one of the following: 0, 90, 180, 270.
+   */
+  fun DetectionBatch.rotateCoordinates(imageWidth: Int, imageHeight: Int, imageRotation: Int) {
+    if (imageRotation == 0) return
+    for (i in 0 until count) {
+      val x1 = rotateX(left[i], top[i], imageWidth, imageHeight, imageRotation)
+      val y1 = rotateY(left[i], top[i], imageWidth, imageHeight, imageRotation)
+      val x2 = rotateX(right[i], bottom[i], imageWidth, imageHeight, imageRotation)
+      val y2 = rotateY(right[i], bottom[i], imageWidth, imageHeight, imageRotation)
+      setGeometry(
+        i,
+        minOf(x1, x2),
+        minOf(y1, y2),
+        maxOf(x1, x2),
+        maxOf(y1, y2),
+        rotateX(centerX[i], centerY[i], imageWidth, imageHeight, imageRotation),
+        rotateY(centerX[i], centerY[i], imageWidth, imageHeight, imageRotation)
+      )
+    }
+  }
+
+  /**
+   * Maps coordinates from a tensor written by `YuvTensorConverter` back to the source image.
+   * The coordinates are first scaled to the rotated image, then rotated back with [rotateCoordinates].
+   *
+   * @param transform The transform returned when the tensor was written.
+   * @return A pair of integers representing the x and y coordinates in the source image.
+   */
+  fun Pair<Int, Int>.toImageCoordinates(transform: TensorTransform): Pair<Int, Int> {
+    val (x, y) = this
+    val scaled = (x * transform.scaleX).toInt() to (y * transform.scaleY).toInt()
+    return scaled.rotateCoordinates(transform.rotatedWidth, transform.rotatedHeight, transform.rotation)
+  }
+
+  /**
+   * Maps the boxes and centers of a batch in place, like [toImageCoordinates] maps a point.
+   *
+   * @param transform The transform returned when the tensor was written.
+   */
+  fun DetectionBatch.toImageCoordinates(transform: TensorTransform) {
+    val scaleX = transform.scaleX
+    val scaleY = transform.scaleY
+    for (i in 0 until count) {
+      setGeometry(
+        i,
+        (left[i] * scaleX).toInt(),
+        (top[i] * scaleY).toInt(),
+        (right[i] * scaleX).toInt(),
+        (bottom[i] * scaleY).toInt(),
+        (centerX[i] * scaleX).toInt(),
+        (centerY[i] * scaleY).toInt()
+      )
+    }
+    rotateCoordinates(transform.rotatedWidth, transform.rotatedHeight, transform.rotation)
+  }
+
+  /**
+   * Adds a bounding polygon of normalized vertices to a batch, without allocating: the box encloses the vertices and
+   * the center is their average, in absolute coordinates like [toAbsoluteCoordinates].
+   *
+   * @param imageWidth The width of the image.
+   * @param imageHeight The height of the image.
+   * @param score The score of the detection.
+   * @param classId The class id of the detection, see [DetectionBatch.classId].
+   * @return The index of the detection.
+   */
+  fun List<NormalizedVertex>.addTo(
+    batch: DetectionBatch,
+    imageWidth: Int,
+    imageHeight: Int,
+    score: Float,
+    classId: Int
+  ): Int {
+    var minX = Float.MAX_VALUE
+    var minY = Float.MAX_VALUE
+    var maxX = -Float.MAX_VALUE
+    var maxY = -Float.MAX_VALUE
+    var averageX = 0f
+    var averageY = 0f
+    for (index in indices) {
+      val vertex = get(index)
+      minX = minOf(minX, vertex.x)
+      minY = minOf(minY, vertex.y)
+      maxX = maxOf(maxX, vertex.x)
+      maxY = maxOf(maxY, vertex.y)
+      averageX += vertex.x / size
+      averageY += vertex.y / size
+    }
+    if (isEmpty()) {
+      minX = 0f
+      minY = 0f
+      maxX = 0f
+      maxY = 0f
+    }
+    return batch.add(
+      (minX * imageWidth).toInt(),
+      (minY * imageHeight).toInt(),
+      (maxX * imageWidth).toInt(),
+      (maxY * imageHeight).toInt(),
+      (averageX * imageWidth).toInt(),
+      (averageY * imageHeight).toInt(),
+      score,
+      classId
+    )
   }
 
   /**
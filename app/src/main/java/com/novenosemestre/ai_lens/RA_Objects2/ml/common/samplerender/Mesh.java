@@ -94,6 +94,11 @@ public class Mesh implements Closeable {
         GLES30.glEnableVertexAttribArray(i);
         GLError.maybeThrowGLException(
             "Failed to enable vertex buffer", "glEnableVertexAttribArray");
+        if (vertexBuffers[i].isPerInstance()) {
+          GLES30.glVertexAttribDivisor(i, 1);
+          GLError.maybeThrowGLException(
+              "Failed to make vertex buffer per-instance", "glVertexAttribDivisor");
+        }
       }
     } catch (Throwable t) {
       close();
@@ -165,21 +170,9 @@ public class Mesh implements Closeable {
    * @throws "GLException" If an OpenGL error occurs while performing the draw operation.
    */
   public void lowLevelDraw() {
-    if (vertexArrayId[0] == 0) {
-      throw new IllegalStateException("Tried to draw a freed Mesh");
-    }
-
-    GLES30.glBindVertexArray(vertexArrayId[0]);
-    GLError.maybeThrowGLException("Failed to bind vertex array object", "glBindVertexArray");
+    bindForDraw();
     if (indexBuffer == null) {
-      // Sanity check for debugging
-      int numberOfVertices = vertexBuffers[0].getNumberOfVertices();
-      for (int i = 1; i < vertexBuffers.length; ++i) {
-        if (vertexBuffers[i].getNumberOfVertices() != numberOfVertices) {
-          throw new IllegalStateException("Vertex buffers have mismatching numbers of vertices");
-        }
-      }
-      GLES30.glDrawArrays(primitiveMode.glesEnum, 0, numberOfVertices);
+      GLES30.glDrawArrays(primitiveMode.glesEnum, 0, getNumberOfVertices());
       GLError.maybeThrowGLException("Failed to draw vertex array object", "glDrawArrays");
     } else {
       GLES30.glDrawElements(
@@ -188,4 +181,55 @@ public class Mesh implements Closeable {
           "Failed to draw vertex array object with indices", "glDrawElements");
     }
   }
+
+  /**
+   * Performs a low-level instanced draw operation on the Mesh.
+   * The per-vertex buffers are drawn once per instance, with the per-instance buffers advancing once per instance,
+   * all in a single draw call. The per-instance buffers must hold at least instanceCount entries.
+   *
+   * @param instanceCount The number of instances to draw.
+   * @throws IllegalStateException If the vertex array ID is 0 or if any vertex buffers have a different number of vertices.
+   * @throws "GLException" If an OpenGL error occurs while performing the draw operation.
+   */
+  public void lowLevelDrawInstanced(int instanceCount) {
+    bindForDraw();
+    if (indexBuffer == null) {
+      GLES30.glDrawArraysInstanced(primitiveMode.glesEnum, 0, getNumberOfVertices(), instanceCount);
+      GLError.maybeThrowGLException(
+          "Failed to draw vertex array object instances", "glDrawArraysInstanced");
+    } else {
+      GLES30.glDrawElementsInstanced(
+          primitiveMode.glesEnum, indexBuffer.getSize(), GLES30.GL_UNSIGNED_INT, 0, instanceCount);
+      GLError.maybeThrowGLException(
+          "Failed to draw vertex array object instances with indices", "glDrawElementsInstanced");
+    }
+  }
+
+  private void bindForDraw() {
+    if (vertexArrayId[0] == 0) {
+      throw new IllegalStateException("Tried to draw a freed Mesh");
+    }
+
+    GLES30.glBindVertexArray(vertexArrayId[0]);
+    GLError.maybeThrowGLException("Failed to bind vertex array object", "glBindVertexArray");
+  }
+
+  /**
+   * Returns the number of vertices of the per-vertex buffers, checking that they all agree.
+   */
+  private int getNumberOfVertices() {
+    // Sanity check for debugging
+    int numberOfVertices = -1;
+    for (VertexBuffer vertexBuffer : vertexBuffers) {
+      if (vertexBuffer.isPerInstance()) {
+        continue;
+      }
+      if (numberOfVertices == -1) {
+        numberOfVertices = vertexBuffer.getNumberOfVertices();
+      } else if (vertexBuffer.getNumberOfVertices() != numberOfVertices) {
+        throw new IllegalStateException("Vertex buffers have mismatching numbers of vertices");
+      }
+    }
+    return Math.max(numberOfVertices, 0);
+  }
 }
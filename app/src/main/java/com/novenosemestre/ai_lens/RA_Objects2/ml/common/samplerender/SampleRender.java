@@ -83,6 +83,20 @@ public class SampleRender {
     mesh.lowLevelDraw();
   }
 
+  /**
+   * Draws instanceCount instances of the given Mesh with the given Shader in a single draw call.
+   * The per-instance vertex buffers of the Mesh must hold at least instanceCount entries.
+   *
+   * @param mesh The Mesh to draw.
+   * @param shader The Shader to draw the Mesh with.
+   * @param instanceCount The number of instances to draw.
+   */
+  public void drawInstanced(Mesh mesh, Shader shader, int instanceCount) {
+    useFramebuffer(/*framebuffer=*/ null);
+    shader.lowLevelUse();
+    mesh.lowLevelDrawInstanced(instanceCount);
+  }
+
    /**
    * Clears the framebuffer with the given color.
    * If the framebuffer is null, the default framebuffer is used.
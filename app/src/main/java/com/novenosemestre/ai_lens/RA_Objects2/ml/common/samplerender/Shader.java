@@ -11,7 +11,6 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -46,8 +45,8 @@ public class Shader implements Closeable {
   }
 
   private int programId = 0;
-  private final Map<Integer, Uniform> uniforms = new HashMap<>();
-  private int maxTextureUnit = 0;
+  private final UniformSlots<Texture> uniforms = new UniformSlots<>();
+  private final UniformSlots.Uploader<Texture> uniformUploader = new GlUniformUploader();
 
   private final Map<String, Integer> uniformLocations = new HashMap<>();
   private final Map<Integer, String> uniformNames = new HashMap<>();
@@ -226,18 +225,7 @@ public class Shader implements Closeable {
    * @return This Shader, for chaining calls.
    */
   public Shader setTexture(String name, Texture texture) {
-    // Special handling for Textures. If replacing an existing texture uniform, reuse the texture
-    // unit.
-    int location = getUniformLocation(name);
-    Uniform uniform = uniforms.get(location);
-    int textureUnit;
-    if (!(uniform instanceof UniformTexture)) {
-      textureUnit = maxTextureUnit++;
-    } else {
-      UniformTexture uniformTexture = (UniformTexture) uniform;
-      textureUnit = uniformTexture.getTextureUnit();
-    }
-    uniforms.put(location, new UniformTexture(textureUnit, texture));
+    uniforms.setTexture(getUniformLocation(name), texture);
     return this;
   }
 
@@ -248,8 +236,7 @@ public class Shader implements Closeable {
    * @return This Shader, for chaining calls.
    */
   public Shader setBool(String name, boolean v0) {
-    int[] values = {v0 ? 1 : 0};
-    uniforms.put(getUniformLocation(name), new UniformInt(values));
+    uniforms.setInt(getUniformLocation(name), v0 ? 1 : 0);
     return this;
   }
 
@@ -260,8 +247,7 @@ public class Shader implements Closeable {
    * @return This Shader, for chaining calls.
    */
   public Shader setInt(String name, int v0) {
-    int[] values = {v0};
-    uniforms.put(getUniformLocation(name), new UniformInt(values));
+    uniforms.setInt(getUniformLocation(name), v0);
     return this;
   }
 
@@ -272,8 +258,7 @@ public class Shader implements Closeable {
    * @return This Shader, for chaining calls.
    */
   public Shader setFloat(String name, float v0) {
-    float[] values = {v0};
-    uniforms.put(getUniformLocation(name), new Uniform1f(values));
+    uniforms.setFloat(getUniformLocation(name), v0);
     return this;
   }
 
@@ -288,14 +273,14 @@ public class Shader implements Closeable {
     if (values.length != 2) {
       throw new IllegalArgumentException("Value array length must be 2");
     }
-    uniforms.put(getUniformLocation(name), new Uniform2f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformSlots.Type.VEC2, values);
     return this;
   }
     public Shader setVec3(String name, float[] values) {
       if (values.length != 3) {
         throw new IllegalArgumentException("Value array length must be 3");
       }
-      uniforms.put(getUniformLocation(name), new Uniform3f(values.clone()));
+      uniforms.setFloats(getUniformLocation(name), UniformSlots.Type.VEC3, values);
       return this;
     }
 
@@ -311,7 +296,7 @@ public class Shader implements Closeable {
     if (values.length != 4) {
       throw new IllegalArgumentException("Value array length must be 4");
     }
-    uniforms.put(getUniformLocation(name), new Uniform4f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformSlots.Type.VEC4, values);
     return this;
   }
 
@@ -326,7 +311,7 @@ public class Shader implements Closeable {
     if (values.length != 4) {
       throw new IllegalArgumentException("Value array length must be 4 (2x2)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix2f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformSlots.Type.MAT2, values);
     return this;
   }
 
@@ -341,7 +326,7 @@ public class Shader implements Closeable {
     if (values.length != 9) {
       throw new IllegalArgumentException("Value array length must be 9 (3x3)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix3f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformSlots.Type.MAT3, values);
     return this;
   }
 
@@ -356,7 +341,7 @@ public class Shader implements Closeable {
     if (values.length != 16) {
       throw new IllegalArgumentException("Value array length must be 16 (4x4)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix4f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformSlots.Type.MAT4, values);
     return this;
   }
 
@@ -371,7 +356,7 @@ public class Shader implements Closeable {
     for (int i = 0; i < values.length; ++i) {
       intValues[i] = values[i] ? 1 : 0;
     }
-    uniforms.put(getUniformLocation(name), new UniformInt(intValues));
+    uniforms.setInts(getUniformLocation(name), intValues);
     return this;
   }
 
@@ -382,7 +367,7 @@ public class Shader implements Closeable {
    * @return This Shader, for chaining calls.
    */
   public Shader setIntArray(String name, int[] values) {
-    uniforms.put(getUniformLocation(name), new UniformInt(values.clone()));
+    uniforms.setInts(getUniformLocation(name), values);
     return this;
   }
 
@@ -393,7 +378,7 @@ public class Shader implements Closeable {
    * @return This Shader, for chaining calls.
    */
   public Shader setFloatArray(String name, float[] values) {
-    uniforms.put(getUniformLocation(name), new Uniform1f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformSlots.Type.FLOAT, values);
     return this;
   }
 
@@ -408,7 +393,7 @@ public class Shader implements Closeable {
     if (values.length % 2 != 0) {
       throw new IllegalArgumentException("Value array length must be divisible by 2");
     }
-    uniforms.put(getUniformLocation(name), new Uniform2f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformSlots.Type.VEC2, values);
     return this;
   }
 
@@ -423,7 +408,7 @@ public class Shader implements Closeable {
     if (values.length % 3 != 0) {
       throw new IllegalArgumentException("Value array length must be divisible by 3");
     }
-    uniforms.put(getUniformLocation(name), new Uniform3f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformSlots.Type.VEC3, values);
     return this;
   }
 
@@ -438,7 +423,7 @@ public class Shader implements Closeable {
     if (values.length % 4 != 0) {
       throw new IllegalArgumentException("Value array length must be divisible by 4");
     }
-    uniforms.put(getUniformLocation(name), new Uniform4f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformSlots.Type.VEC4, values);
     return this;
   }
 
@@ -453,7 +438,7 @@ public class Shader implements Closeable {
     if (values.length % 4 != 0) {
       throw new IllegalArgumentException("Value array length must be divisible by 4 (2x2)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix2f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformSlots.Type.MAT2, values);
     return this;
   }
 
@@ -468,7 +453,7 @@ public class Shader implements Closeable {
     if (values.length % 9 != 0) {
       throw new IllegalArgumentException("Values array length must be divisible by 9 (3x3)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix3f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformSlots.Type.MAT3, values);
     return this;
   }
 
@@ -483,7 +468,7 @@ public class Shader implements Closeable {
     if (values.length % 16 != 0) {
       throw new IllegalArgumentException("Value array length must be divisible by 16 (4x4)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix4f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformSlots.Type.MAT4, values);
     return this;
   }
 
@@ -491,7 +476,7 @@ public class Shader implements Closeable {
    * Applies the shader program and sets the uniforms.
    * If the program ID is 0, an IllegalStateException is thrown.
    * The shader program is used, the blend mode is set, the depth write mask is set, and the depth test is enabled or disabled.
-   * All non-texture uniforms are removed from the map after setting them, since they're stored as part of the program.
+   * Only the uniforms that changed since the last use are uploaded, since the others are stored as part of the program; textures are bound every time.
    * If a GLException occurs while setting a uniform, an IllegalArgumentException is thrown with the name of the uniform and the GLException.
    * After all uniforms are set, the active texture is set to TEXTURE0.
    * If a GLException occurs while setting the active texture, a warning is logged.
@@ -519,277 +504,93 @@ public class Shader implements Closeable {
       GLError.maybeThrowGLException("Failed to disable depth test", "glDisable");
     }
     try {
-      // Remove all non-texture uniforms from the map after setting them, since they're stored as
-      // part of the program.
-      ArrayList<Integer> obsoleteEntries = new ArrayList<>(uniforms.size());
-      for (Map.Entry<Integer, Uniform> entry : uniforms.entrySet()) {
-        try {
-          entry.getValue().use(entry.getKey());
-          if (!(entry.getValue() instanceof UniformTexture)) {
-            obsoleteEntries.add(entry.getKey());
-          }
-        } catch (GLException e) {
-          String name = uniformNames.get(entry.getKey());
-          throw new IllegalArgumentException("Error setting uniform `" + name + "'", e);
-        }
-      }
-      uniforms.keySet().removeAll(obsoleteEntries);
+      // Only the uniforms that changed since the last use are uploaded, since the others are
+      // stored as part of the program.
+      uniforms.upload(uniformUploader);
     } finally {
       GLES30.glActiveTexture(GLES30.GL_TEXTURE0);
       GLError.maybeLogGLError(Log.WARN, TAG, "Failed to set active texture", "glActiveTexture");
     }
   }
-   /**
-   * Interface representing a uniform to be used in a shader.
-   */
-  private static interface Uniform {
-    /**
-     * Method to use the uniform at a given location.
-     * @param location The location to use the uniform at.
-     */
-    public void use(int location);
-  }
-
-  /**
-   * Class representing a texture uniform.
-   */
-  private static class UniformTexture implements Uniform {
-    private final int textureUnit;
-    private final Texture texture;
-
-    /**
-     * Constructor for the UniformTexture class.
-     * @param textureUnit The texture unit for this UniformTexture.
-     * @param texture The Texture for this UniformTexture.
-     */
-    public UniformTexture(int textureUnit, Texture texture) {
-      this.textureUnit = textureUnit;
-      this.texture = texture;
-    }
-
-    /**
-     * Getter for the texture unit.
-     * @return The texture unit.
-     */
-    public int getTextureUnit() {
-      return textureUnit;
-    }
-
-    /**
-     * Method to use the texture uniform at a given location.
-     * @param location The location to use the texture uniform at.
-     */
-    @Override
-    public void use(int location) {
-      if (texture.getTextureId() == 0) {
-        throw new IllegalStateException("Tried to draw with freed texture");
-      }
-      GLES30.glActiveTexture(GLES30.GL_TEXTURE0 + textureUnit);
-      GLError.maybeThrowGLException("Failed to set active texture", "glActiveTexture");
-      GLES30.glBindTexture(texture.getTarget().glesEnum, texture.getTextureId());
-      GLError.maybeThrowGLException("Failed to bind texture", "glBindTexture");
-      GLES30.glUniform1i(location, textureUnit);
-      GLError.maybeThrowGLException("Failed to set shader texture uniform", "glUniform1i");
-    }
-  }
-
-  /**
-   * Class representing an integer uniform.
-   */
-  private static class UniformInt implements Uniform {
-    private final int[] values;
-
-    /**
-     * Constructor for the UniformInt class.
-     * @param values The integer values for this UniformInt.
-     */
-    public UniformInt(int[] values) {
-      this.values = values;
-    }
-
-    /**
-     * Method to use the integer uniform at a given location.
-     * @param location The location to use the integer uniform at.
-     */
-    @Override
-    public void use(int location) {
-      GLES30.glUniform1iv(location, values.length, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform 1i", "glUniform1iv");
-    }
-  }
-
-  /**
-   * Class representing a float uniform.
-   */
-  private static class Uniform1f implements Uniform {
-    private final float[] values;
-
-    /**
-     * Constructor for the Uniform1f class.
-     * @param values The float values for this Uniform1f.
-     */
-    public Uniform1f(float[] values) {
-      this.values = values;
-    }
-
-    /**
-     * Method to use the float uniform at a given location.
-     * @param location The location to use the float uniform at.
-     */
-    @Override
-    public void use(int location) {
-      GLES30.glUniform1fv(location, values.length, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform 1f", "glUniform1fv");
-    }
-  }
-
-  /**
-   * Class representing a 2D vector uniform.
-   */
-  private static class Uniform2f implements Uniform {
-    private final float[] values;
-
-    /**
-     * Constructor for the Uniform2f class.
-     * @param values The 2D vector values for this Uniform2f.
-     */
-    public Uniform2f(float[] values) {
-      this.values = values;
-    }
-
-    /**
-     * Method to use the 2D vector uniform at a given location.
-     * @param location The location to use the 2D vector uniform at.
-     */
-    @Override
-    public void use(int location) {
-      GLES30.glUniform2fv(location, values.length / 2, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform 2f", "glUniform2fv");
-    }
-  }
-
-  /**
-   * Class representing a 3D vector uniform.
-   */
-  private static class Uniform3f implements Uniform {
-    private final float[] values;
-
-    /**
-     * Constructor for the Uniform3f class.
-     * @param values The 3D vector values for this Uniform3f.
-     */
-    public Uniform3f(float[] values) {
-      this.values = values;
-    }
-
-    /**
-     * Method to use the 3D vector uniform at a given location.
-     * @param location The location to use the 3D vector uniform at.
-     */
-    @Override
-    public void use(int location) {
-      GLES30.glUniform3fv(location, values.length / 3, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform 3f", "glUniform3fv");
-    }
-  }
-
   /**
-   * Class representing a 4D vector uniform.
+   * Uploads the uniform slots with glUniform calls, naming the uniform in the error if one fails.
    */
-  private static class Uniform4f implements Uniform {
-    private final float[] values;
-
-    /**
-     * Constructor for the Uniform4f class.
-     * @param values The 4D vector values for this Uniform4f.
-     */
-    public Uniform4f(float[] values) {
-      this.values = values;
-    }
-
-    /**
-     * Method to use the 4D vector uniform at a given location.
-     * @param location The location to use the 4D vector uniform at.
-     */
+  private class GlUniformUploader implements UniformSlots.Uploader<Texture> {
     @Override
-    public void use(int location) {
-      GLES30.glUniform4fv(location, values.length / 4, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform 4f", "glUniform4fv");
-    }
-  }
-
-  /**
-   * Class representing a 2x2 matrix uniform.
-   */
-  private static class UniformMatrix2f implements Uniform {
-    private final float[] values;
-
-    /**
-     * Constructor for the UniformMatrix2f class.
-     * @param values The 2x2 matrix values for this UniformMatrix2f.
-     */
-    public UniformMatrix2f(float[] values) {
-      this.values = values;
+    public void uploadInts(int location, int[] values, int length) {
+      try {
+        GLES30.glUniform1iv(location, length, values, 0);
+        GLError.maybeThrowGLException("Failed to set shader uniform 1i", "glUniform1iv");
+      } catch (GLException e) {
+        throw uniformError(location, e);
+      }
     }
 
-    /**
-     * Method to use the 2x2 matrix uniform at a given location.
-     * @param location The location to use the 2x2 matrix uniform at.
-     */
     @Override
-    public void use(int location) {
-      GLES30.glUniformMatrix2fv(location, values.length / 4, /*transpose=*/ false, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform matrix 2f", "glUniformMatrix2fv");
-    }
-  }
-
-  /**
-   * Class representing a 3x3 matrix uniform.
-   */
-  private static class UniformMatrix3f implements Uniform {
-    private final float[] values;
-
-    /**
-     * Constructor for the UniformMatrix3f class.
-     * @param values The 3x3 matrix values for this UniformMatrix3f.
-     */
-    public UniformMatrix3f(float[] values) {
-      this.values = values;
+    public void uploadFloats(UniformSlots.Type type, int location, float[] values, int length) {
+      try {
+        switch (type) {
+          case FLOAT:
+            GLES30.glUniform1fv(location, length, values, 0);
+            GLError.maybeThrowGLException("Failed to set shader uniform 1f", "glUniform1fv");
+            break;
+          case VEC2:
+            GLES30.glUniform2fv(location, length / 2, values, 0);
+            GLError.maybeThrowGLException("Failed to set shader uniform 2f", "glUniform2fv");
+            break;
+          case VEC3:
+            GLES30.glUniform3fv(location, length / 3, values, 0);
+            GLError.maybeThrowGLException("Failed to set shader uniform 3f", "glUniform3fv");
+            break;
+          case VEC4:
+            GLES30.glUniform4fv(location, length / 4, values, 0);
+            GLError.maybeThrowGLException("Failed to set shader uniform 4f", "glUniform4fv");
+            break;
+          case MAT2:
+            GLES30.glUniformMatrix2fv(location, length / 4, /*transpose=*/ false, values, 0);
+            GLError.maybeThrowGLException(
+                "Failed to set shader uniform matrix 2f", "glUniformMatrix2fv");
+            break;
+          case MAT3:
+            GLES30.glUniformMatrix3fv(location, length / 9, /*transpose=*/ false, values, 0);
+            GLError.maybeThrowGLException(
+                "Failed to set shader uniform matrix 3f", "glUniformMatrix3fv");
+            break;
+          case MAT4:
+            GLES30.glUniformMatrix4fv(location, length / 16, /*transpose=*/ false, values, 0);
+            GLError.maybeThrowGLException(
+                "Failed to set shader uniform matrix 4f", "glUniformMatrix4fv");
+            break;
+          default:
+            throw new IllegalArgumentException("Not a float uniform type: " + type);
+        }
+      } catch (GLException e) {
+        throw uniformError(location, e);
+      }
     }
 
-    /**
-     * Method to use the 3x3 matrix uniform at a given location.
-     * @param location The location to use the 3x3 matrix uniform at.
-     */
     @Override
-    public void use(int location) {
-      GLES30.glUniformMatrix3fv(location, values.length / 9, /*transpose=*/ false, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform matrix 3f", "glUniformMatrix3fv");
-    }
-  }
-
-  /**
-   * Class representing a 4x4 matrix uniform.
-   */
-  private static class UniformMatrix4f implements Uniform {
-    private final float[] values;
-
-    /**
-     * Constructor for the UniformMatrix4f class.
-     * @param values The 4x4 matrix values for this UniformMatrix4f.
-     */
-    public UniformMatrix4f(float[] values) {
-      this.values = values;
+    public void bindTexture(int location, int textureUnit, Texture texture, boolean unitChanged) {
+      if (texture.getTextureId() == 0) {
+        throw new IllegalStateException("Tried to draw with freed texture");
+      }
+      try {
+        GLES30.glActiveTexture(GLES30.GL_TEXTURE0 + textureUnit);
+        GLError.maybeThrowGLException("Failed to set active texture", "glActiveTexture");
+        GLES30.glBindTexture(texture.getTarget().glesEnum, texture.getTextureId());
+        GLError.maybeThrowGLException("Failed to bind texture", "glBindTexture");
+        if (unitChanged) {
+          GLES30.glUniform1i(location, textureUnit);
+          GLError.maybeThrowGLException("Failed to set shader texture uniform", "glUniform1i");
+        }
+      } catch (GLException e) {
+        throw uniformError(location, e);
+      }
     }
 
-    /**
-     * Method to use the 4x4 matrix uniform at a given location.
-     * @param location The location to use the 4x4 matrix uniform at.
-     */
-    @Override
-    public void use(int location) {
-      GLES30.glUniformMatrix4fv(location, values.length / 16, /*transpose=*/ false, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform matrix 4f", "glUniformMatrix4fv");
+    private IllegalArgumentException uniformError(int location, GLException e) {
+      String name = uniformNames.get(location);
+      return new IllegalArgumentException("Error setting uniform `" + name + "'", e);
     }
   }
 
@@ -0,0 +1,243 @@
+package com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender;
+
+import java.util.ArrayList;
+
+/**
+ * The uniform values of a {@link Shader}, held in one preallocated slot per uniform location.
+ *
+ * <p>Setting a uniform writes its values in place into the slot, and marks the slot dirty only if
+ * they changed; {@link #upload} then uploads the dirty slots only, since the values of the others
+ * are still stored in the program. Once every uniform of a shader has been set once, setting and
+ * uploading them allocates nothing.
+ *
+ * <p>Texture slots are bound on every upload, as the texture units are shared by every shader, but
+ * their texture unit is only uploaded when it is assigned.
+ *
+ * @param <T> The type of the textures.
+ */
+public final class UniformSlots<T> {
+
+  /** The type of a uniform, which selects the glUniform function that uploads it. */
+  public enum Type {
+    INT,
+    FLOAT,
+    VEC2,
+    VEC3,
+    VEC4,
+    MAT2,
+    MAT3,
+    MAT4,
+    TEXTURE
+  }
+
+  /** Uploads the slots to the program. */
+  public interface Uploader<T> {
+    /**
+     * Uploads an integer uniform.
+     * @param location The location of the uniform.
+     * @param values The values of the uniform, of which only the first {@code length} are used.
+     * @param length The number of values.
+     */
+    void uploadInts(int location, int[] values, int length);
+
+    /**
+     * Uploads a float uniform.
+     * @param type The type of the uniform.
+     * @param location The location of the uniform.
+     * @param values The values of the uniform, of which only the first {@code length} are used.
+     * @param length The number of values.
+     */
+    void uploadFloats(Type type, int location, float[] values, int length);
+
+    /**
+     * Binds the texture of a texture uniform.
+     * @param location The location of the uniform.
+     * @param textureUnit The texture unit of the uniform.
+     * @param texture The texture to bind.
+     * @param unitChanged Whether the texture unit of the uniform has to be uploaded.
+     */
+    void bindTexture(int location, int textureUnit, T texture, boolean unitChanged);
+  }
+
+  /** The value of one uniform location. */
+  private static final class Slot<T> {
+    final int location;
+    Type type;
+    int length;
+    float[] floats;
+    int[] ints;
+    T texture;
+    int textureUnit;
+    boolean dirty;
+
+    Slot(int location) {
+      this.location = location;
+    }
+  }
+
+  // The slots in the order they were created. A shader has few uniforms, so a slot is looked up by
+  // scanning them rather than by hashing a boxed location.
+  private final ArrayList<Slot<T>> slots = new ArrayList<>();
+  private int maxTextureUnit = 0;
+
+  /**
+   * Sets a uniform of a single integer.
+   * @param location The location of the uniform.
+   * @param value The new value.
+   */
+  public void setInt(int location, int value) {
+    Slot<T> slot = slot(location);
+    if (slot.type != Type.INT || slot.length != 1 || slot.ints[0] != value) {
+      ensureInts(slot, 1);
+      slot.type = Type.INT;
+      slot.ints[0] = value;
+      slot.dirty = true;
+    }
+  }
+
+  /**
+   * Sets an integer uniform, or an array of them.
+   * @param location The location of the uniform.
+   * @param values The new values, copied into the slot.
+   */
+  public void setInts(int location, int[] values) {
+    Slot<T> slot = slot(location);
+    if (slot.type != Type.INT || !equals(slot.ints, slot.length, values)) {
+      ensureInts(slot, values.length);
+      slot.type = Type.INT;
+      System.arraycopy(values, 0, slot.ints, 0, values.length);
+      slot.dirty = true;
+    }
+  }
+
+  /**
+   * Sets a uniform of a single float.
+   * @param location The location of the uniform.
+   * @param value The new value.
+   */
+  public void setFloat(int location, float value) {
+    Slot<T> slot = slot(location);
+    if (slot.type != Type.FLOAT || slot.length != 1 || slot.floats[0] != value) {
+      ensureFloats(slot, 1);
+      slot.type = Type.FLOAT;
+      slot.floats[0] = value;
+      slot.dirty = true;
+    }
+  }
+
+  /**
+   * Sets a float, vector or matrix uniform, or an array of them.
+   * @param location The location of the uniform.
+   * @param type The type of the uniform, one of the float types.
+   * @param values The new values, copied into the slot.
+   */
+  public void setFloats(int location, Type type, float[] values) {
+    if (type == Type.INT || type == Type.TEXTURE) {
+      throw new IllegalArgumentException("Not a float uniform type: " + type);
+    }
+    Slot<T> slot = slot(location);
+    if (slot.type != type || !equals(slot.floats, slot.length, values)) {
+      ensureFloats(slot, values.length);
+      slot.type = type;
+      System.arraycopy(values, 0, slot.floats, 0, values.length);
+      slot.dirty = true;
+    }
+  }
+
+  /**
+   * Sets a texture uniform. If replacing an existing texture uniform, the texture unit is reused.
+   * @param location The location of the uniform.
+   * @param texture The new texture.
+   */
+  public void setTexture(int location, T texture) {
+    Slot<T> slot = slot(location);
+    if (slot.type != Type.TEXTURE) {
+      slot.type = Type.TEXTURE;
+      slot.textureUnit = maxTextureUnit++;
+      slot.dirty = true;
+    }
+    slot.texture = texture;
+  }
+
+  /**
+   * Uploads the dirty slots and binds every texture.
+   * @param uploader Uploads the slots to the program.
+   * @return The number of uniform values uploaded, texture units excluded.
+   */
+  public int upload(Uploader<T> uploader) {
+    int uploaded = 0;
+    for (int i = 0; i < slots.size(); ++i) {
+      Slot<T> slot = slots.get(i);
+      if (slot.type == Type.TEXTURE) {
+        uploader.bindTexture(slot.location, slot.textureUnit, slot.texture, slot.dirty);
+      } else if (slot.dirty && slot.type == Type.INT) {
+        uploader.uploadInts(slot.location, slot.ints, slot.length);
+        uploaded++;
+      } else if (slot.dirty) {
+        uploader.uploadFloats(slot.type, slot.location, slot.floats, slot.length);
+        uploaded++;
+      }
+      // Cleared once uploaded: a slot whose upload throws is uploaded again next time.
+      slot.dirty = false;
+    }
+    return uploaded;
+  }
+
+  /**
+   * Returns the number of slots, one per uniform location set so far.
+   */
+  public int size() {
+    return slots.size();
+  }
+
+  private Slot<T> slot(int location) {
+    for (int i = 0; i < slots.size(); ++i) {
+      Slot<T> slot = slots.get(i);
+      if (slot.location == location) {
+        return slot;
+      }
+    }
+    Slot<T> slot = new Slot<>(location);
+    slots.add(slot);
+    return slot;
+  }
+
+  private static void ensureInts(Slot<?> slot, int length) {
+    if (slot.ints == null || slot.ints.length < length) {
+      slot.ints = new int[length];
+    }
+    slot.length = length;
+  }
+
+  private static void ensureFloats(Slot<?> slot, int length) {
+    if (slot.floats == null || slot.floats.length < length) {
+      slot.floats = new float[length];
+    }
+    slot.length = length;
+  }
+
+  private static boolean equals(int[] stored, int length, int[] values) {
+    if (stored == null || length != values.length) {
+      return false;
+    }
+    for (int i = 0; i < length; ++i) {
+      if (stored[i] != values[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean equals(float[] stored, int length, float[] values) {
+    if (stored == null || length != values.length) {
+      return false;
+    }
+    for (int i = 0; i < length; ++i) {
+      // Compare the bits, so that a NaN equals itself
+      if (Float.floatToRawIntBits(stored[i]) != Float.floatToRawIntBits(values[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
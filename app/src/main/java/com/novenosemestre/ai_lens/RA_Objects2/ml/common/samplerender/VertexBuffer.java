@@ -9,6 +9,7 @@ import java.nio.FloatBuffer;
 public class VertexBuffer implements Closeable {
   private final GpuBuffer buffer;
   private final int numberOfEntriesPerVertex;
+  private final boolean perInstance;
 
    /**
    * Constructor for the VertexBuffer class.
@@ -22,6 +23,23 @@ public class VertexBuffer implements Closeable {
    * @throws IllegalArgumentException If the entries are not null and the limit of the entries is not divisible by the number of entries per vertex.
    */
   public VertexBuffer(SampleRender render, int numberOfEntriesPerVertex, FloatBuffer entries) {
+    this(render, numberOfEntriesPerVertex, entries, /*perInstance=*/ false);
+  }
+
+  /**
+   * Constructor for the VertexBuffer class.
+   * Initializes the VertexBuffer like {@link #VertexBuffer(SampleRender, int, FloatBuffer)}. A per-instance buffer
+   * holds one entry per instance of an instanced draw instead of one entry per vertex, see
+   * {@link Mesh#lowLevelDrawInstanced(int)}.
+   *
+   * @param render The SampleRender instance associated with this VertexBuffer.
+   * @param numberOfEntriesPerVertex The number of entries per vertex, or per instance, for this VertexBuffer.
+   * @param entries The FloatBuffer of entries for this VertexBuffer.
+   * @param perInstance Whether the entries advance once per instance instead of once per vertex.
+   * @throws IllegalArgumentException If the entries are not null and the limit of the entries is not divisible by the number of entries per vertex.
+   */
+  public VertexBuffer(
+      SampleRender render, int numberOfEntriesPerVertex, FloatBuffer entries, boolean perInstance) {
     if (entries != null && entries.limit() % numberOfEntriesPerVertex != 0) {
       throw new IllegalArgumentException(
           "If non-null, vertex buffer data must be divisible by the number of data points per"
@@ -29,6 +47,7 @@ public class VertexBuffer implements Closeable {
     }
 
     this.numberOfEntriesPerVertex = numberOfEntriesPerVertex;
+    this.perInstance = perInstance;
     buffer = new GpuBuffer(GLES30.GL_ARRAY_BUFFER, GpuBuffer.FLOAT_SIZE, entries);
   }
 
@@ -80,6 +99,17 @@ public class VertexBuffer implements Closeable {
     return numberOfEntriesPerVertex;
   }
 
+  /**
+   * Returns whether the entries of this VertexBuffer advance once per instance.
+   * This method is package-private, meaning it can only be accessed within the same package.
+   *
+   * @return True for a per-instance buffer, false for a per-vertex buffer.
+   */
+  /* package-private */
+  boolean isPerInstance() {
+    return perInstance;
+  }
+
   /**
    * Returns the number of vertices of this VertexBuffer.
    * This method is package-private, meaning it can only be accessed within the same package.
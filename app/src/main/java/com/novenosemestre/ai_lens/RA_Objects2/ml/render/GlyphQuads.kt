@@ -0,0 +1,138 @@
+package com.google.ar.core.examples.java.ml.render
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+
+/**
+ * The glyphs of the labels to draw in one frame, laid out with an [SdfFont] into per-instance vertex data, so that
+ * every label is drawn with a single instanced draw call on the font atlas.
+ *
+ * Each glyph instance has the origin of its label in world space, the rectangle of its quad in the plane of the label,
+ * and the region of its distance field in the atlas. The buffers are reused from frame to frame and only grow, so a
+ * steady amount of text allocates nothing.
+ *
+ * @param initialCapacity The number of glyphs the buffers hold before they need to grow.
+ */
+class GlyphQuads(initialCapacity: Int = 256) {
+  companion object {
+    /** The number of floats per instance in [Drawer.draw]'s origins buffer. */
+    const val ORIGIN_SIZE = 3
+
+    /** The number of floats per instance in [Drawer.draw]'s rects buffer. */
+    const val RECT_SIZE = 4
+
+    /** The number of floats per instance in [Drawer.draw]'s regions buffer. */
+    const val REGION_SIZE = 4
+
+    private fun floatBuffer(floats: Int): FloatBuffer =
+      ByteBuffer.allocateDirect(floats * 4).order(ByteOrder.nativeOrder()).asFloatBuffer()
+  }
+
+  /**
+   * Issues the draw of the glyphs.
+   */
+  fun interface Drawer {
+    /**
+     * Draws [count] glyph instances. The buffers are direct, positioned at 0 and limited to the instances.
+     *
+     * @param origins The origin of the label of each instance: x, y, z in world space.
+     * @param rects The quad of each instance, from the label origin: left, bottom, right, top in meters, y up.
+     * @param regions The atlas region of each instance: u0, v0, u1, v1, v0 being the top row.
+     * @param count The number of instances.
+     */
+    fun draw(origins: FloatBuffer, rects: FloatBuffer, regions: FloatBuffer, count: Int)
+  }
+
+  init {
+    require(initialCapacity >= 1) { "Invalid initialCapacity $initialCapacity" }
+  }
+
+  private var capacity = initialCapacity
+  private var origins = floatBuffer(initialCapacity * ORIGIN_SIZE)
+  private var rects = floatBuffer(initialCapacity * RECT_SIZE)
+  private var regions = floatBuffer(initialCapacity * REGION_SIZE)
+
+  /** The number of glyphs added since the last [clear]. */
+  var count = 0
+    private set
+
+  /**
+   * Removes every glyph. The buffers are kept.
+   */
+  fun clear() {
+    count = 0
+    origins.clear()
+    rects.clear()
+    regions.clear()
+  }
+
+  /**
+   * Lays out a label on a single line, centered on its origin, and adds its glyphs. Characters without a glyph in the
+   * font are skipped.
+   *
+   * @param font The font of the label.
+   * @param text The text of the label.
+   * @param x The x coordinate of the label origin, in world space.
+   * @param y The y coordinate of the label origin, in world space.
+   * @param z The z coordinate of the label origin, in world space.
+   * @param emSize The size of an em in world space.
+   * @return The number of glyphs added.
+   */
+  fun addText(font: SdfFont, text: CharSequence, x: Float, y: Float, z: Float, emSize: Float): Int {
+    // Center the line horizontally, and the font height vertically
+    var pen = -font.measure(text) / 2
+    val baseline = (font.descent - font.ascent) / 2
+    var added = 0
+    for (index in text.indices) {
+      val glyph = font.glyph(text[index]) ?: continue
+      if (!glyph.isBlank) {
+        if (count == capacity) grow()
+        origins.put(x).put(y).put(z)
+        rects
+          .put((pen + glyph.left) * emSize)
+          .put((baseline + glyph.bottom) * emSize)
+          .put((pen + glyph.right) * emSize)
+          .put((baseline + glyph.top) * emSize)
+        regions.put(glyph.u0).put(glyph.v0).put(glyph.u1).put(glyph.v1)
+        count++
+        added++
+      }
+      pen += glyph.advance
+    }
+    return added
+  }
+
+  /**
+   * Draws every glyph with one call to [drawer], if there is any.
+   *
+   * @return The number of draw calls.
+   */
+  fun draw(drawer: Drawer): Int {
+    if (count == 0) return 0
+    // Hand the buffers over positioned at 0, then go back to appending
+    val originsEnd = origins.position()
+    val rectsEnd = rects.position()
+    val regionsEnd = regions.position()
+    origins.flip()
+    rects.flip()
+    regions.flip()
+    try {
+      drawer.draw(origins, rects, regions, count)
+    } finally {
+      origins.limit(origins.capacity()).position(originsEnd)
+      rects.limit(rects.capacity()).position(rectsEnd)
+      regions.limit(regions.capacity()).position(regionsEnd)
+    }
+    return 1
+  }
+
+  private fun grow() {
+    capacity *= 2
+    origins = floatBuffer(capacity * ORIGIN_SIZE).put(origins.flip() as FloatBuffer)
+    rects = floatBuffer(capacity * RECT_SIZE).put(rects.flip() as FloatBuffer)
+    regions = floatBuffer(capacity * REGION_SIZE).put(regions.flip() as FloatBuffer)
+  }
+
+  override fun toString(): String = "GlyphQuads(count=$count)"
+}
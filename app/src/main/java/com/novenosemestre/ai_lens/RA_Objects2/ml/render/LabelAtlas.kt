@@ -0,0 +1,161 @@
+package com.google.ar.core.examples.java.ml.render
+
+/**
+ * Decides where the label bitmaps of a [TextTextureCache] go in its atlas pages, within a budget of GPU memory.
+ *
+ * Each page is packed by a [ShelfPacker]. A label that fits in no page opens a new page while the pages stay within
+ * [maxBytes]; past that, the least recently drawn labels are evicted until it fits, and a page left empty is released
+ * so that its memory goes back to the budget. Labels drawn in the current frame are never evicted.
+ *
+ * The atlas holds no textures: [releasePage] is called when the texture of a page should be closed, and the caller
+ * creates the texture of a page the first time a region lands on it.
+ *
+ * @param pageSize The width and height of a page, in pixels.
+ * @param maxBytes The GPU memory the pages may take, see [pageBytes].
+ * @param releasePage Called with the index of a page that no longer holds any label.
+ */
+class LabelAtlas(
+  val pageSize: Int = DEFAULT_PAGE_SIZE,
+  val maxBytes: Long = pageBytes(DEFAULT_PAGE_SIZE) * DEFAULT_MAX_PAGES,
+  private val releasePage: (Int) -> Unit = {}
+) {
+  companion object {
+    const val DEFAULT_PAGE_SIZE = 512
+    const val DEFAULT_MAX_PAGES = 4
+
+    /**
+     * The GPU memory of an RGBA page with its full mipmap chain, which adds a third to the base level.
+     */
+    fun pageBytes(pageSize: Int): Long = pageSize.toLong() * pageSize * 4 * 4 / 3
+  }
+
+  init {
+    require(pageSize > 0) { "Invalid pageSize $pageSize" }
+    require(maxBytes >= pageBytes(pageSize)) { "maxBytes $maxBytes can't hold a single page" }
+  }
+
+  // The packer of each page, or null for a released page whose index can be reused.
+  private val pages = ArrayList<ShelfPacker?>()
+
+  // The rectangle, region and last drawn frame of each label id. Grow with the label ids.
+  private var rects = arrayOfNulls<PackedRect>(0)
+  private var regions = arrayOfNulls<AtlasRegion>(0)
+  private var lastDrawn = LongArray(0)
+
+  // The current frame, see nextFrame.
+  private var frame = 0L
+
+  /** The number of pages holding labels. */
+  var pageCount = 0
+    private set
+
+  /** The GPU memory taken by the pages. */
+  val gpuBytes: Long
+    get() = pageCount * pageBytes(pageSize)
+
+  /** The number of labels in the atlas. */
+  var labelCount = 0
+    private set
+
+  /** The number of labels evicted so far. */
+  var evictions = 0L
+    private set
+
+  /**
+   * Returns the region of a label in the atlas, or null if it isn't there, and marks the label as drawn in the current
+   * frame.
+   */
+  fun find(labelId: Int): AtlasRegion? {
+    val region = if (labelId < regions.size) regions[labelId] else null
+    if (region != null) lastDrawn[labelId] = frame
+    return region
+  }
+
+  /**
+   * Finds room for the bitmap of a label that isn't in the atlas, and marks the label as drawn in the current frame.
+   *
+   * @param labelId The id of the label.
+   * @param width The width of the bitmap, in pixels.
+   * @param height The height of the bitmap, in pixels.
+   * @return The region of the bitmap, or null if it is larger than a page or if the budget is taken by the labels drawn
+   *   in the current frame.
+   */
+  fun allocate(labelId: Int, width: Int, height: Int): AtlasRegion? {
+    require(find(labelId) == null) { "Label $labelId is already in the atlas" }
+    if (width > pageSize || height > pageSize) return null
+    if (labelId >= regions.size) {
+      val size = maxOf(labelId + 1, regions.size * 2)
+      rects = rects.copyOf(size)
+      regions = regions.copyOf(size)
+      lastDrawn = lastDrawn.copyOf(size)
+    }
+
+    while (true) {
+      for (page in pages.indices) {
+        val rect = pages[page]?.allocate(width, height) ?: continue
+        return place(labelId, page, rect)
+      }
+      if (gpuBytes + pageBytes(pageSize) <= maxBytes) {
+        val page = pages.indexOf(null).takeIf { it >= 0 } ?: pages.size.also { pages.add(null) }
+        val packer = ShelfPacker(pageSize, pageSize)
+        pages[page] = packer
+        pageCount++
+        return place(labelId, page, checkNotNull(packer.allocate(width, height)))
+      }
+      if (!evictLeastRecentlyDrawn()) return null
+    }
+  }
+
+  /**
+   * Starts a new frame: the labels found or allocated so far become candidates for eviction.
+   */
+  fun nextFrame() {
+    frame++
+  }
+
+  private fun place(labelId: Int, page: Int, rect: PackedRect): AtlasRegion {
+    val size = pageSize.toFloat()
+    val region = AtlasRegion(
+      page,
+      rect.x / size,
+      rect.y / size,
+      (rect.x + rect.width) / size,
+      (rect.y + rect.height) / size,
+      rect.width,
+      rect.height
+    )
+    rects[labelId] = rect
+    regions[labelId] = region
+    lastDrawn[labelId] = frame
+    labelCount++
+    return region
+  }
+
+  // Evicts the label drawn the longest time ago, releasing its page if it is left empty. Returns false if every label
+  // was drawn in the current frame.
+  private fun evictLeastRecentlyDrawn(): Boolean {
+    var victim = -1
+    for (labelId in regions.indices) {
+      if (regions[labelId] == null || lastDrawn[labelId] == frame) continue
+      if (victim < 0 || lastDrawn[labelId] < lastDrawn[victim]) victim = labelId
+    }
+    if (victim < 0) return false
+
+    val page = checkNotNull(regions[victim]).page
+    val packer = checkNotNull(pages[page])
+    packer.free(checkNotNull(rects[victim]))
+    rects[victim] = null
+    regions[victim] = null
+    labelCount--
+    evictions++
+    if (packer.isEmpty) {
+      pages[page] = null
+      pageCount--
+      releasePage(page)
+    }
+    return true
+  }
+
+  override fun toString(): String =
+    "LabelAtlas(labels=$labelCount, pages=$pageCount, gpuBytes=$gpuBytes/$maxBytes, evictions=$evictions)"
+}
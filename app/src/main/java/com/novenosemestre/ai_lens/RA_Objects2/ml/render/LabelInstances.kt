@@ -0,0 +1,172 @@
+package com.google.ar.core.examples.java.ml.render
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+
+/**
+ * Where a label bitmap lies in the atlas pages of a [TextTextureCache].
+ *
+ * @property page The index of the atlas page.
+ * @property u0 The left texture coordinate.
+ * @property v0 The texture coordinate of the top row of the bitmap.
+ * @property u1 The right texture coordinate.
+ * @property v1 The texture coordinate of the bottom row of the bitmap.
+ * @property width The width of the bitmap, in pixels.
+ * @property height The height of the bitmap, in pixels.
+ */
+class AtlasRegion(
+  val page: Int,
+  val u0: Float,
+  val v0: Float,
+  val u1: Float,
+  val v1: Float,
+  val width: Int,
+  val height: Int
+) {
+  override fun toString(): String = "AtlasRegion(page=$page, ${width}x$height at ($u0, $v0))"
+}
+
+/**
+ * The labels to draw in one frame, packed into per-instance vertex data so that all the labels of an atlas page are
+ * drawn with a single instanced draw call.
+ *
+ * Each label instance has an origin in world space, the region of its bitmap in the atlas, and its half size in
+ * meters. The buffers are reused from frame to frame and only grow, so a steady number of labels allocates nothing.
+ *
+ * @param initialCapacity The number of labels the buffers hold before they need to grow.
+ */
+class LabelInstances(initialCapacity: Int = 32) {
+  companion object {
+    /** The number of floats per instance in [Drawer.draw]'s origins buffer. */
+    const val ORIGIN_SIZE = 3
+
+    /** The number of floats per instance in [Drawer.draw]'s regions buffer. */
+    const val REGION_SIZE = 4
+
+    /** The number of floats per instance in [Drawer.draw]'s sizes buffer. */
+    const val SIZE_SIZE = 2
+
+    private fun floatBuffer(floats: Int): FloatBuffer =
+      ByteBuffer.allocateDirect(floats * 4).order(ByteOrder.nativeOrder()).asFloatBuffer()
+  }
+
+  /**
+   * Issues the draw of the instances of one atlas page.
+   */
+  fun interface Drawer {
+    /**
+     * Draws [count] instances. The buffers are direct, positioned at 0 and limited to the instances of [page].
+     *
+     * @param page The atlas page of every instance.
+     * @param origins The origin of each instance: x, y, z in world space.
+     * @param regions The atlas region of each instance: u0, v0, u1, v1.
+     * @param sizes The half size of each instance: width, height in meters.
+     * @param count The number of instances.
+     */
+    fun draw(page: Int, origins: FloatBuffer, regions: FloatBuffer, sizes: FloatBuffer, count: Int)
+  }
+
+  init {
+    require(initialCapacity >= 1) { "Invalid initialCapacity $initialCapacity" }
+  }
+
+  // The instances in the order they were added
+  private var pages = IntArray(initialCapacity)
+  private var data = FloatArray(initialCapacity * (ORIGIN_SIZE + REGION_SIZE + SIZE_SIZE))
+
+  // The instances of one page at a time, as handed to the drawer
+  private var origins = floatBuffer(initialCapacity * ORIGIN_SIZE)
+  private var regions = floatBuffer(initialCapacity * REGION_SIZE)
+  private var sizes = floatBuffer(initialCapacity * SIZE_SIZE)
+
+  /** The number of labels added since the last [clear]. */
+  var count = 0
+    private set
+
+  /**
+   * Removes every label. The buffers are kept.
+   */
+  fun clear() {
+    count = 0
+  }
+
+  /**
+   * Adds a label.
+   *
+   * @param region The bitmap of the label.
+   * @param x The x coordinate of the label origin, in world space.
+   * @param y The y coordinate of the label origin, in world space.
+   * @param z The z coordinate of the label origin, in world space.
+   * @param metersPerPixel The size of a bitmap pixel in world space.
+   */
+  fun add(region: AtlasRegion, x: Float, y: Float, z: Float, metersPerPixel: Float) {
+    if (count == pages.size) grow()
+    val index = count++
+    pages[index] = region.page
+    var offset = index * (ORIGIN_SIZE + REGION_SIZE + SIZE_SIZE)
+    data[offset++] = x
+    data[offset++] = y
+    data[offset++] = z
+    data[offset++] = region.u0
+    data[offset++] = region.v0
+    data[offset++] = region.u1
+    data[offset++] = region.v1
+    data[offset++] = region.width * metersPerPixel / 2
+    data[offset] = region.height * metersPerPixel / 2
+  }
+
+  /**
+   * Draws every label, with one call to [drawer] per atlas page that has labels.
+   *
+   * @return The number of draw calls.
+   */
+  fun draw(drawer: Drawer): Int {
+    var draws = 0
+    var remaining = count
+    var page = -1
+    while (remaining > 0) {
+      // The next page with labels, in increasing order
+      page = nextPage(page)
+      origins.clear()
+      regions.clear()
+      sizes.clear()
+      var pageCount = 0
+      for (index in 0 until count) {
+        if (pages[index] != page) continue
+        val offset = index * (ORIGIN_SIZE + REGION_SIZE + SIZE_SIZE)
+        origins.put(data, offset, ORIGIN_SIZE)
+        regions.put(data, offset + ORIGIN_SIZE, REGION_SIZE)
+        sizes.put(data, offset + ORIGIN_SIZE + REGION_SIZE, SIZE_SIZE)
+        pageCount++
+      }
+      origins.flip()
+      regions.flip()
+      sizes.flip()
+      drawer.draw(page, origins, regions, sizes, pageCount)
+      draws++
+      remaining -= pageCount
+    }
+    return draws
+  }
+
+  private fun nextPage(after: Int): Int {
+    var next = Int.MAX_VALUE
+    for (index in 0 until count) {
+      val page = pages[index]
+      if (page in (after + 1) until next) next = page
+    }
+    return next
+  }
+
+  private fun grow() {
+    val capacity = pages.size * 2
+    pages = pages.copyOf(capacity)
+    data = data.copyOf(capacity * (ORIGIN_SIZE + REGION_SIZE + SIZE_SIZE))
+    origins = floatBuffer(capacity * ORIGIN_SIZE)
+    regions = floatBuffer(capacity * REGION_SIZE)
+    sizes = floatBuffer(capacity * SIZE_SIZE)
+  }
+
+  override fun toString(): String = "LabelInstances(count=$count)"
+}
@@ -7,11 +7,15 @@ import com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender.Shader
 import com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender.VertexBuffer
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
+import kotlinx.coroutines.CoroutineScope
 
 /**
- * Draws a label. See [draw].
+ * Draws the labels of a frame: each label is added with [add], then [draw] draws all of them with one instanced draw
+ * call per atlas page of the [TextTextureCache].
+ *
+ * @param scope The scope in which the label bitmaps are rasterized.
  */
-class LabelRender {
+class LabelRender(scope: CoroutineScope) {
  /**
   * Companion object for the LabelRender class.
   * It contains constants and buffers used for rendering labels.
@@ -23,8 +27,11 @@ class LabelRender {
     // Size of the coordinates buffer.
     val COORDS_BUFFER_SIZE = 2 * 4 * 4
 
+    // Size of a label bitmap pixel in world space: a 256 pixel wide label is 30cm wide.
+    const val METERS_PER_PIXEL = 0.3f / 256
+
     /**
-     * Buffer for normalized device coordinates (NDC) of a quad.
+     * Buffer for the corners of a label quad, scaled by the half size of each label in the shader.
      * The quad is defined by four 2D points.
      */
     val NDC_QUAD_COORDS_BUFFER =
@@ -33,10 +40,10 @@ class LabelRender {
       ).asFloatBuffer().apply {
         put(
           floatArrayOf(
-            /*0:*/ -1.5f, -1.5f,
-            /*1:*/ 1.5f, -1.5f,
-            /*2:*/ -1.5f, 1.5f,
-            /*3:*/ 1.5f, 1.5f,
+            /*0:*/ -1f, -1f,
+            /*1:*/ 1f, -1f,
+            /*2:*/ -1f, 1f,
+            /*3:*/ 1f, 1f,
           )
         )
       }
@@ -61,7 +68,10 @@ class LabelRender {
   }
 
   // Cache for text textures.
-  val cache = TextTextureCache()
+  val cache = TextTextureCache(scope)
+
+  // The labels added since the last draw.
+  val instances = LabelInstances()
 
   // Mesh for rendering.
   lateinit var mesh: Mesh
@@ -69,6 +79,26 @@ class LabelRender {
   // Shader for rendering.
   lateinit var shader: Shader
 
+  // Per-instance vertex buffers: origin, atlas region and half size of each label.
+  private lateinit var originBuffer: VertexBuffer
+  private lateinit var regionBuffer: VertexBuffer
+  private lateinit var sizeBuffer: VertexBuffer
+
+  // The position of the camera, written by each draw.
+  private val cameraPosition = FloatArray(3)
+
+  // The render of the current draw, read by drawPage.
+  private var currentRender: SampleRender? = null
+
+  // Draws the labels of one atlas page.
+  private val drawPage = LabelInstances.Drawer { page, origins, regions, sizes, count ->
+    originBuffer.set(origins)
+    regionBuffer.set(regions)
+    sizeBuffer.set(sizes)
+    shader.setTexture("uTexture", cache.page(page))
+    checkNotNull(currentRender).drawInstanced(mesh, shader, count)
+  }
+
   /**
    * Called when the surface is created.
    * It initializes the shader and the mesh.
@@ -84,41 +114,59 @@ class LabelRender {
       .setDepthTest(false)
       .setDepthWrite(false)
 
+    originBuffer = VertexBuffer(render, LabelInstances.ORIGIN_SIZE, null, true)
+    regionBuffer = VertexBuffer(render, LabelInstances.REGION_SIZE, null, true)
+    sizeBuffer = VertexBuffer(render, LabelInstances.SIZE_SIZE, null, true)
     val vertexBuffers = arrayOf(
       VertexBuffer(render, 2, NDC_QUAD_COORDS_BUFFER),
       VertexBuffer(render, 2, SQUARE_TEX_COORDS_BUFFER),
+      originBuffer,
+      regionBuffer,
+      sizeBuffer,
     )
     mesh = Mesh(render, Mesh.PrimitiveMode.TRIANGLE_STRIP, null, vertexBuffers)
   }
 
-  // Origin of the label.
-  val labelOrigin = FloatArray(3)
+  /**
+   * Adds a label to draw in this frame. A label whose text isn't in the atlas yet is drawn as a placeholder until its
+   * bitmap is uploaded, and skipped if even the placeholder isn't there yet.
+   * The label will rotate to face the camera around the Y-axis.
+   *
+   * @param pose The pose where the label will be drawn.
+   * @param labelId The id of the label to be drawn, see [com.novenosemestre.ai_lens.LabelRegistry].
+   */
+  fun add(pose: Pose, labelId: Int) {
+    val region = cache.get(labelId) ?: return
+    instances.add(region, pose.tx(), pose.ty(), pose.tz(), METERS_PER_PIXEL)
+  }
 
   /**
-   * Draws a label quad with text at a given pose.
-   * The label will rotate to face the camera pose around the Y-axis.
+   * Draws the labels added since the last draw, with one instanced draw call per atlas page, then uploads the label
+   * bitmaps rasterized in the meantime, within the upload budget of a frame.
    *
    * @param render The SampleRender object for rendering.
    * @param viewProjectionMatrix The view projection matrix.
-   * @param pose The pose where the label will be drawn.
    * @param cameraPose The pose of the camera.
-   * @param label The text to be drawn.
+   * @return The number of draw calls.
    */
-  fun draw(
-    render: SampleRender,
-    viewProjectionMatrix: FloatArray,
-    pose: Pose,
-    cameraPose: Pose,
-    label: String
-  ) {
-    labelOrigin[0] = pose.tx()
-    labelOrigin[1] = pose.ty()
-    labelOrigin[2] = pose.tz()
-    shader
-      .setMat4("u_ViewProjection", viewProjectionMatrix)
-      .setVec3("u_LabelOrigin", labelOrigin)
-      .setVec3("u_CameraPos", cameraPose.translation)
-      .setTexture("uTexture", cache.get(render, label))
-    render.draw(mesh, shader)
+  fun draw(render: SampleRender, viewProjectionMatrix: FloatArray, cameraPose: Pose): Int {
+    try {
+      if (instances.count == 0) return 0
+      cameraPose.getTranslation(cameraPosition, 0)
+      shader
+        .setMat4("u_ViewProjection", viewProjectionMatrix)
+        .setVec3("u_CameraPos", cameraPosition)
+      currentRender = render
+      try {
+        return instances.draw(drawPage)
+      } finally {
+        currentRender = null
+        instances.clear()
+      }
+    } finally {
+      // Uploads may evict labels, but not the ones drawn in this frame
+      cache.uploadPending(render)
+      cache.nextFrame()
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,137 @@
+package com.google.ar.core.examples.java.ml.render
+
+import kotlin.math.sqrt
+
+/**
+ * A glyph of an [SdfFont]: its metrics, in ems, and where its distance field lies in the font atlas.
+ *
+ * The quad of the glyph includes the spread of its distance field, so it is a bit larger than the ink it shows.
+ *
+ * @property advance How far the pen moves after the glyph.
+ * @property left The left of the quad, from the pen position.
+ * @property bottom The bottom of the quad, from the baseline, y up.
+ * @property right The right of the quad, from the pen position.
+ * @property top The top of the quad, from the baseline, y up.
+ * @property u0 The left texture coordinate.
+ * @property v0 The texture coordinate of the top row of the distance field.
+ * @property u1 The right texture coordinate.
+ * @property v1 The texture coordinate of the bottom row of the distance field.
+ */
+class SdfGlyph(
+  val advance: Float,
+  val left: Float = 0f,
+  val bottom: Float = 0f,
+  val right: Float = 0f,
+  val top: Float = 0f,
+  val u0: Float = 0f,
+  val v0: Float = 0f,
+  val u1: Float = 0f,
+  val v1: Float = 0f
+) {
+  /** Whether the glyph only moves the pen, like a space. */
+  val isBlank: Boolean
+    get() = left >= right || bottom >= top
+}
+
+/**
+ * A font baked once into a single atlas of signed distance fields, one per glyph of a contiguous range of characters.
+ *
+ * A distance field keeps text sharp at any scale, so any string made of the baked characters can be drawn at any
+ * distance from the same atlas, with no texture upload; see [GlyphQuads] for the layout.
+ *
+ * @param ascent The height of the font above the baseline, in ems.
+ * @param descent The depth of the font below the baseline, in ems.
+ * @param firstChar The character of glyphs[0].
+ * @param glyphs The glyph of each character from [firstChar], or null for a character that wasn't baked.
+ */
+class SdfFont(
+  val ascent: Float,
+  val descent: Float,
+  private val firstChar: Char,
+  private val glyphs: Array<SdfGlyph?>
+) {
+  companion object {
+    /**
+     * Computes the signed distance field of a coverage mask.
+     *
+     * Each output byte maps the distance from the pixel to the nearest edge of the mask, clamped to [spread] pixels,
+     * from 0 (far outside) to 255 (far inside), the edge itself being at 128. The nearest pixel of the other side is
+     * looked up among the offsets within [spread], nearest first, which is fast enough for the glyph sizes of a font
+     * baked once.
+     *
+     * @param coverage The coverage of each pixel, from 0 to 255, row by row. A pixel is inside from 128.
+     * @param width The width of the mask.
+     * @param height The height of the mask.
+     * @param spread The distance, in pixels, mapped to the full range on each side of the edge.
+     * @return The distance field, row by row, as unsigned bytes.
+     */
+    fun distanceField(coverage: IntArray, width: Int, height: Int, spread: Int): ByteArray {
+      require(coverage.size >= width * height) { "coverage holds ${coverage.size} pixels, not ${width * height}" }
+      require(spread >= 1) { "Invalid spread $spread" }
+
+      // The offsets within the spread, sorted by distance
+      val offsets = ArrayList<IntArray>()
+      for (dy in -spread..spread) {
+        for (dx in -spread..spread) {
+          if (dx * dx + dy * dy <= spread * spread && (dx != 0 || dy != 0)) offsets.add(intArrayOf(dx, dy))
+        }
+      }
+      offsets.sortBy { it[0] * it[0] + it[1] * it[1] }
+
+      val field = ByteArray(width * height)
+      for (y in 0 until height) {
+        for (x in 0 until width) {
+          val inside = coverage[y * width + x] >= 128
+          var distance = spread.toFloat()
+          for (offset in offsets) {
+            val ox = x + offset[0]
+            val oy = y + offset[1]
+            // Outside of the mask counts as outside of the glyph
+            val otherInside = ox in 0 until width && oy in 0 until height && coverage[oy * width + ox] >= 128
+            if (otherInside != inside) {
+              // The edge lies half way between the two pixel centers
+              distance = sqrt((offset[0] * offset[0] + offset[1] * offset[1]).toFloat()) - 0.5f
+              break
+            }
+          }
+          val signed = if (inside) distance else -distance
+          val value = (128 + signed * 127 / spread).toInt().coerceIn(0, 255)
+          field[y * width + x] = value.toByte()
+        }
+      }
+      return field
+    }
+  }
+
+  /** The height of a line, in ems. */
+  val lineHeight: Float
+    get() = ascent + descent
+
+  /**
+   * Returns the glyph of a character, or null if it wasn't baked.
+   */
+  fun glyph(char: Char): SdfGlyph? = glyphs.getOrNull(char - firstChar)
+
+  /**
+   * Whether every character of a text has a glyph.
+   */
+  fun canRender(text: CharSequence): Boolean {
+    for (index in text.indices) {
+      if (glyph(text[index]) == null) return false
+    }
+    return true
+  }
+
+  /**
+   * Returns the width of a text on a single line, in ems. Characters without a glyph are skipped.
+   */
+  fun measure(text: CharSequence): Float {
+    var width = 0f
+    for (index in text.indices) {
+      width += glyph(text[index])?.advance ?: 0f
+    }
+    return width
+  }
+
+  override fun toString(): String = "SdfFont(${glyphs.count { it != null }} glyphs from '$firstChar')"
+}
@@ -0,0 +1,248 @@
+package com.google.ar.core.examples.java.ml.render
+
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.graphics.Paint
+import android.graphics.Rect
+import android.graphics.Typeface
+import android.opengl.GLES30
+import com.google.ar.core.Pose
+import com.novenosemestre.ai_lens.LabelRegistry
+import com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender.GLError
+import com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender.Mesh
+import com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender.SampleRender
+import com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender.Shader
+import com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender.Texture
+import com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender.VertexBuffer
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Draws the labels of a frame as text, glyph by glyph, from a signed distance field font baked once when the surface
+ * is created: each label is added with [add], then [draw] draws all of them with a single instanced draw call.
+ *
+ * Unlike [LabelRender], a new label costs no bitmap and no texture upload, and stays sharp at any distance. Labels with
+ * characters outside of the baked range are refused by [add] and are left to [LabelRender].
+ *
+ * @param labels Resolves the label ids to the text to draw.
+ */
+class SdfLabelRender(private val labels: LabelRegistry = LabelRegistry.shared) {
+  companion object {
+    // Tag for logging.
+    private const val TAG = "SdfLabelRender"
+
+    // The baked characters: printable ASCII.
+    private const val FIRST_CHAR = ' '
+    private const val LAST_CHAR = '~'
+
+    // Size of the font when baked, distance covered by the fields on each side of the edges, and size of the atlas,
+    // all in pixels.
+    private const val BAKE_SIZE = 32f
+    private const val SPREAD = 4
+    private const val ATLAS_SIZE = 512
+
+    // Size of an em in world space, the same as the text of a LabelRender bitmap.
+    const val EM_METERS = 26 * LabelRender.METERS_PER_PIXEL
+
+    // Colors of the text and of its outline, as in the LabelRender bitmaps, and outline width in distance field units.
+    private val TEXT_COLOR = floatArrayOf(0xea / 255f, 0x43 / 255f, 0x35 / 255f, 1f)
+    private val OUTLINE_COLOR = floatArrayOf(0f, 0f, 0f, 1f)
+    private const val OUTLINE_WIDTH = 0.15f
+
+    // The corners of a glyph quad, as fractions of its rectangle.
+    private val QUAD_CORNERS_BUFFER =
+      ByteBuffer.allocateDirect(2 * 4 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer().apply {
+        put(
+          floatArrayOf(
+            /*0:*/ 0f, 0f,
+            /*1:*/ 1f, 0f,
+            /*2:*/ 0f, 1f,
+            /*3:*/ 1f, 1f,
+          )
+        )
+      }
+  }
+
+  // The glyphs added since the last draw.
+  val glyphs = GlyphQuads()
+
+  /** The baked font, available once the surface is created. */
+  lateinit var font: SdfFont
+    private set
+
+  // The distance fields of the font.
+  private lateinit var atlas: Texture
+
+  // Mesh for rendering.
+  lateinit var mesh: Mesh
+
+  // Shader for rendering.
+  lateinit var shader: Shader
+
+  // Per-instance vertex buffers: label origin, quad and atlas region of each glyph.
+  private lateinit var originBuffer: VertexBuffer
+  private lateinit var rectBuffer: VertexBuffer
+  private lateinit var regionBuffer: VertexBuffer
+
+  // The position of the camera, written by each draw.
+  private val cameraPosition = FloatArray(3)
+
+  // The render of the current draw, read by drawGlyphs.
+  private var currentRender: SampleRender? = null
+
+  // Draws the glyphs.
+  private val drawGlyphs = GlyphQuads.Drawer { origins, rects, regions, count ->
+    originBuffer.set(origins)
+    rectBuffer.set(rects)
+    regionBuffer.set(regions)
+    checkNotNull(currentRender).drawInstanced(mesh, shader, count)
+  }
+
+  /**
+   * Called when the surface is created.
+   * It bakes the font, and initializes the shader and the mesh.
+   *
+   * @param render The SampleRender object for rendering.
+   */
+  fun onSurfaceCreated(render: SampleRender) {
+    atlas = Texture(render, Texture.Target.TEXTURE_2D, Texture.WrapMode.CLAMP_TO_EDGE, /*useMipmaps=*/ false)
+    font = bakeFont(atlas)
+
+    shader = Shader.createFromAssets(render, "shaders/label_sdf.vert", "shaders/label_sdf.frag", null)
+      .setBlend(
+        Shader.BlendFactor.ONE, // ALPHA (src)
+        Shader.BlendFactor.ONE_MINUS_SRC_ALPHA // ALPHA (dest)
+      )
+      .setDepthTest(false)
+      .setDepthWrite(false)
+      .setTexture("uTexture", atlas)
+      .setVec4("u_Color", TEXT_COLOR)
+      .setVec4("u_OutlineColor", OUTLINE_COLOR)
+      .setFloat("u_OutlineWidth", OUTLINE_WIDTH)
+
+    originBuffer = VertexBuffer(render, GlyphQuads.ORIGIN_SIZE, null, true)
+    rectBuffer = VertexBuffer(render, GlyphQuads.RECT_SIZE, null, true)
+    regionBuffer = VertexBuffer(render, GlyphQuads.REGION_SIZE, null, true)
+    val vertexBuffers = arrayOf(
+      VertexBuffer(render, 2, QUAD_CORNERS_BUFFER),
+      originBuffer,
+      rectBuffer,
+      regionBuffer,
+    )
+    mesh = Mesh(render, Mesh.PrimitiveMode.TRIANGLE_STRIP, null, vertexBuffers)
+  }
+
+  /**
+   * Adds a label to draw in this frame, if the font has every character of its text.
+   * The label will rotate to face the camera around the Y-axis.
+   *
+   * @param pose The pose where the label will be drawn.
+   * @param labelId The id of the label to be drawn, see [LabelRegistry].
+   * @return False if the label can't be drawn with the font.
+   */
+  fun add(pose: Pose, labelId: Int): Boolean {
+    val text = labels.label(labelId)
+    if (!font.canRender(text)) return false
+    glyphs.addText(font, text, pose.tx(), pose.ty(), pose.tz(), EM_METERS)
+    return true
+  }
+
+  /**
+   * Draws the labels added since the last draw, with one instanced draw call.
+   *
+   * @param render The SampleRender object for rendering.
+   * @param viewProjectionMatrix The view projection matrix.
+   * @param cameraPose The pose of the camera.
+   * @return The number of draw calls.
+   */
+  fun draw(render: SampleRender, viewProjectionMatrix: FloatArray, cameraPose: Pose): Int {
+    if (glyphs.count == 0) return 0
+    cameraPose.getTranslation(cameraPosition, 0)
+    shader
+      .setMat4("u_ViewProjection", viewProjectionMatrix)
+      .setVec3("u_CameraPos", cameraPosition)
+    currentRender = render
+    try {
+      return glyphs.draw(drawGlyphs)
+    } finally {
+      currentRender = null
+      glyphs.clear()
+    }
+  }
+
+  /**
+   * Renders each character with Canvas, turns it into a distance field, packs the fields into the atlas and uploads
+   * it, once.
+   *
+   * @param texture The texture receiving the atlas.
+   * @return The font.
+   */
+  private fun bakeFont(texture: Texture): SdfFont {
+    val paint = Paint().apply {
+      textSize = BAKE_SIZE
+      isAntiAlias = true
+      typeface = Typeface.DEFAULT_BOLD
+    }
+    val packer = ShelfPacker(ATLAS_SIZE, ATLAS_SIZE)
+    val pixels = ByteArray(ATLAS_SIZE * ATLAS_SIZE)
+    val bounds = Rect()
+    val glyphs = arrayOfNulls<SdfGlyph>(LAST_CHAR - FIRST_CHAR + 1)
+
+    for (char in FIRST_CHAR..LAST_CHAR) {
+      val string = char.toString()
+      val advance = paint.measureText(string) / BAKE_SIZE
+      paint.getTextBounds(string, 0, 1, bounds)
+      if (bounds.isEmpty) {
+        glyphs[char - FIRST_CHAR] = SdfGlyph(advance)
+        continue
+      }
+
+      // The glyph, with room for its distance field around it
+      val width = bounds.width() + 2 * SPREAD
+      val height = bounds.height() + 2 * SPREAD
+      val coverage = IntArray(width * height)
+      Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8).apply {
+        eraseColor(0)
+        Canvas(this).drawText(string, SPREAD - bounds.left.toFloat(), SPREAD - bounds.top.toFloat(), paint)
+        getPixels(coverage, 0, width, 0, 0, width, height)
+        recycle()
+      }
+      for (index in coverage.indices) coverage[index] = coverage[index] ushr 24
+      val field = SdfFont.distanceField(coverage, width, height, SPREAD)
+
+      val rect = checkNotNull(packer.allocate(width, height)) { "The font atlas is full at '$char'" }
+      for (row in 0 until height) {
+        System.arraycopy(field, row * width, pixels, (rect.y + row) * ATLAS_SIZE + rect.x, width)
+      }
+      val size = ATLAS_SIZE.toFloat()
+      glyphs[char - FIRST_CHAR] = SdfGlyph(
+        advance,
+        left = (bounds.left - SPREAD) / BAKE_SIZE,
+        bottom = -(bounds.bottom + SPREAD) / BAKE_SIZE,
+        right = (bounds.right + SPREAD) / BAKE_SIZE,
+        top = -(bounds.top - SPREAD) / BAKE_SIZE,
+        u0 = rect.x / size,
+        v0 = rect.y / size,
+        u1 = (rect.x + width) / size,
+        v1 = (rect.y + height) / size
+      )
+    }
+
+    GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, texture.textureId)
+    GLError.maybeThrowGLException("Failed to bind texture", "glBindTexture")
+    GLES30.glTexImage2D(
+      GLES30.GL_TEXTURE_2D,
+      0,
+      GLES30.GL_R8,
+      ATLAS_SIZE,
+      ATLAS_SIZE,
+      0,
+      GLES30.GL_RED,
+      GLES30.GL_UNSIGNED_BYTE,
+      ByteBuffer.allocateDirect(pixels.size).put(pixels).rewind()
+    )
+    GLError.maybeThrowGLException("Failed to populate texture data", "glTexImage2D")
+
+    return SdfFont(-paint.ascent() / BAKE_SIZE, paint.descent() / BAKE_SIZE, FIRST_CHAR, glyphs)
+  }
+}
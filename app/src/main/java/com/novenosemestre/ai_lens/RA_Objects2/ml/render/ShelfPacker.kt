@@ -0,0 +1,132 @@
+package com.google.ar.core.examples.java.ml.render
+
+/**
+ * A rectangle placed by a [ShelfPacker], in pixels from the top left corner of the page.
+ */
+class PackedRect(val x: Int, val y: Int, val width: Int, val height: Int) {
+  override fun toString(): String = "PackedRect($x, $y, ${width}x$height)"
+}
+
+/**
+ * Packs rectangles of similar heights, such as text lines, into a page of fixed size.
+ *
+ * The page is split into horizontal shelves stacked from the top. A rectangle goes on the shelf whose height wastes
+ * the least space, in the first free span wide enough; a new shelf as tall as the rectangle is opened below the last
+ * one when no shelf fits. Freed rectangles give their span back to their shelf, so rectangles can come and go, and
+ * empty shelves at the bottom are closed so their height can be reused by a shelf of another height.
+ *
+ * @param width The width of the page, in pixels.
+ * @param height The height of the page, in pixels.
+ */
+class ShelfPacker(val width: Int, val height: Int) {
+  companion object {
+    // A shelf may be this much taller than a rectangle placed on it, as a fraction of the rectangle height.
+    private const val MAX_SHELF_WASTE = 0.5f
+  }
+
+  init {
+    require(width > 0 && height > 0) { "Invalid page ${width}x$height" }
+  }
+
+  private class Shelf(val y: Int, val height: Int, width: Int) {
+    // The free spans of the shelf, as x and width pairs sorted by x.
+    val free = arrayListOf(0, width)
+    var used = 0
+  }
+
+  private val shelves = ArrayList<Shelf>()
+
+  /** The number of pixels covered by the rectangles in place. */
+  var usedArea = 0L
+    private set
+
+  /** Whether no rectangle is in place. */
+  val isEmpty: Boolean
+    get() = usedArea == 0L
+
+  // The top of the next shelf.
+  private val nextShelfY: Int
+    get() = shelves.lastOrNull()?.let { it.y + it.height } ?: 0
+
+  /**
+   * Places a rectangle.
+   *
+   * @return The rectangle, or null if it doesn't fit on the page.
+   */
+  fun allocate(width: Int, height: Int): PackedRect? {
+    require(width > 0 && height > 0) { "Invalid rectangle ${width}x$height" }
+    if (width > this.width || height > this.height) return null
+
+    var best: Shelf? = null
+    var bestSpan = -1
+    for (shelf in shelves) {
+      if (shelf.height < height || shelf.height > height * (1 + MAX_SHELF_WASTE)) continue
+      if (best != null && shelf.height >= best.height) continue
+      val span = findSpan(shelf, width)
+      if (span >= 0) {
+        best = shelf
+        bestSpan = span
+      }
+    }
+    if (best == null) {
+      if (nextShelfY + height > this.height) return null
+      best = Shelf(nextShelfY, height, this.width)
+      shelves.add(best)
+      bestSpan = 0
+    }
+    return take(best, bestSpan, width, height)
+  }
+
+  /**
+   * Frees a rectangle returned by [allocate].
+   */
+  fun free(rect: PackedRect) {
+    val shelf = shelves.firstOrNull { it.y == rect.y } ?: throw IllegalArgumentException("Unknown $rect")
+    val free = shelf.free
+    // Insert the span in x order, then merge it with its neighbors
+    var index = 0
+    while (index < free.size && free[index] < rect.x) index += 2
+    free.add(index, rect.width)
+    free.add(index, rect.x)
+    if (index + 2 < free.size && free[index] + free[index + 1] == free[index + 2]) {
+      free[index + 1] += free[index + 3]
+      free.removeAt(index + 2)
+      free.removeAt(index + 2)
+    }
+    if (index >= 2 && free[index - 2] + free[index - 1] == free[index]) {
+      free[index - 1] += free[index + 1]
+      free.removeAt(index)
+      free.removeAt(index)
+    }
+    shelf.used -= rect.width
+    usedArea -= rect.width.toLong() * rect.height
+
+    // Close the empty shelves at the bottom
+    while (shelves.isNotEmpty() && shelves.last().used == 0) shelves.removeAt(shelves.lastIndex)
+  }
+
+  // Returns the index in shelf.free of the first span at least width wide, or -1.
+  private fun findSpan(shelf: Shelf, width: Int): Int {
+    for (index in 0 until shelf.free.size step 2) {
+      if (shelf.free[index + 1] >= width) return index
+    }
+    return -1
+  }
+
+  private fun take(shelf: Shelf, span: Int, width: Int, height: Int): PackedRect {
+    val x = shelf.free[span]
+    val remaining = shelf.free[span + 1] - width
+    if (remaining == 0) {
+      shelf.free.removeAt(span)
+      shelf.free.removeAt(span)
+    } else {
+      shelf.free[span] = x + width
+      shelf.free[span + 1] = remaining
+    }
+    shelf.used += width
+    usedArea += width.toLong() * height
+    return PackedRect(x, shelf.y, width, height)
+  }
+
+  override fun toString(): String = "ShelfPacker(${width}x$height, shelves=${shelves.size}, used=$usedArea)"
+}
@@ -5,66 +5,231 @@ import android.graphics.Canvas
 import android.graphics.Paint
 import android.graphics.Typeface
 import android.opengl.GLES30
+import android.util.Log
+import com.novenosemestre.ai_lens.LabelRegistry
 import com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender.GLError
 import com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender.SampleRender
 import com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender.Texture
 import java.nio.ByteBuffer
+import kotlin.math.ceil
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.launch
 
-class TextTextureCache {
+/**
+ * Renders each label once into a few shared atlas pages, indexed by label id, so drawing a label neither hashes its
+ * text nor binds a texture of its own: every label of an atlas page is drawn by the same instanced draw call.
+ *
+ * The bitmaps are measured to fit their text and packed by a [LabelAtlas], which keeps the pages within [maxBytes] of
+ * GPU memory by evicting the least recently drawn labels; an evicted label is rendered again the next time it is drawn.
+ *
+ * Rendering a label takes two phases so that a new label never stalls the render loop: its bitmap is rasterized in
+ * the background, then [uploadPending] uploads the finished bitmaps on the GL thread within a time budget per frame.
+ * Meanwhile, the label is drawn as a placeholder.
+ *
+ * @param scope The scope of the rasterizations.
+ * @param labels Resolves the label ids to the text to render.
+ * @param maxBytes The GPU memory the atlas pages may take.
+ * @param uploadBudgetNanos The time the uploads of a frame may take.
+ */
+@OptIn(ExperimentalCoroutinesApi::class)
+class TextTextureCache(
+  private val scope: CoroutineScope,
+  private val labels: LabelRegistry = LabelRegistry.shared,
+  maxBytes: Long = LabelAtlas.pageBytes(PAGE_SIZE) * LabelAtlas.DEFAULT_MAX_PAGES,
+  uploadBudgetNanos: Long = UploadQueue.DEFAULT_BUDGET_NANOS
+) {
   companion object {
     private const val TAG = "TextTextureCache"
+
+    // Text drawn while a label is being rasterized.
+    private const val PLACEHOLDER = "\u2026"
+
+    // Size of an atlas page.
+    const val PAGE_SIZE = LabelAtlas.DEFAULT_PAGE_SIZE
+
+    // Transparent border around each bitmap, so that neighbors don't bleed into each other in the smaller mipmaps.
+    private const val PADDING = 4
+  }
+
+  // The texture of each atlas page, or null for a page that holds no label.
+  private val pages = ArrayList<Texture?>()
+
+  private val atlas = LabelAtlas(PAGE_SIZE, maxBytes) { page ->
+    pages[page]?.close()
+    pages[page] = null
+  }
+
+  // The bitmaps rasterized in the background, waiting to be uploaded.
+  private val uploads = UploadQueue<Bitmap>(uploadBudgetNanos)
+
+  // Rasterizes one bitmap at a time, as the paints are shared.
+  private val rasterizer: CoroutineDispatcher = Dispatchers.Default.limitedParallelism(1)
+
+  // The id of the placeholder text, itself rendered like any label.
+  private val placeholderId = labels.id(PLACEHOLDER)
+
+  // The pixels of the bitmap being uploaded. Only grows.
+  private var uploadBuffer: ByteBuffer = ByteBuffer.allocateDirect(0)
+
+  // The pages written by the uploads of the current frame, whose mipmaps are generated once the uploads are done.
+  private var dirtyPages = BooleanArray(0)
+
+  // The render of the current upload, read by uploadBitmap.
+  private var currentRender: SampleRender? = null
+
+  // Uploads a bitmap.
+  private val uploadBitmap = UploadQueue.Uploader<Bitmap> { labelId, bitmap ->
+    uploadRegion(checkNotNull(currentRender), labelId, bitmap)
   }
 
-  private val cacheMap = mutableMapOf<String, Texture>()
+  /** The GPU memory taken by the atlas pages. */
+  val gpuBytes: Long
+    get() = atlas.gpuBytes
+
+  /**
+   * Retrieves the atlas region of a label. A label that isn't in the atlas yet is rasterized in the background, and the
+   * placeholder is returned meanwhile.
+   *
+   * @param labelId The id of the label to be rendered, see [LabelRegistry].
+   * @return The region of the label or of the placeholder, or null if neither is in the atlas yet.
+   */
+  fun get(labelId: Int): AtlasRegion? {
+    atlas.find(labelId)?.let { return it }
+    request(labelId)
+    if (labelId == placeholderId) return null
+    // The placeholder is rendered like any label, the first time it is needed
+    return atlas.find(placeholderId).also { if (it == null) request(placeholderId) }
+  }
 
   /**
-   * Retrieves a texture from the cache or generates a new one if it doesn't exist.
+   * Uploads the bitmaps rasterized since the last call, within the upload budget of a frame. Called once per frame on
+   * the GL thread, after the labels of the frame are drawn.
    *
    * @param render The SampleRender object for rendering.
-   * @param string The string to be rendered as a texture.
-   * @return The texture corresponding to the input string.
+   * @return The number of labels uploaded.
    */
-  fun get(render: SampleRender, string: String): Texture {
-    return cacheMap.computeIfAbsent(string) {
-      generateTexture(render, string)
+  fun uploadPending(render: SampleRender): Int {
+    currentRender = render
+    try {
+      val uploaded = uploads.drain(uploadBitmap)
+      generateDirtyMipmaps()
+      if (uploaded > 0) Log.d(TAG, "Uploaded $uploaded labels in ${uploads.lastFrameNanos / 1000}us, $uploads")
+      return uploaded
+    } finally {
+      currentRender = null
     }
   }
 
   /**
-   * Generates a texture from a string.
-   *
-   * This function creates a new texture, generates a bitmap from the input string, and populates the texture with the bitmap data.
-   * It also generates mipmaps for the texture.
+   * Returns an atlas page returned in an [AtlasRegion].
+   */
+  fun page(index: Int): Texture = checkNotNull(pages[index]) { "Atlas page $index was released" }
+
+  /**
+   * Ends the frame: the labels drawn so far become candidates for eviction.
+   */
+  fun nextFrame() {
+    atlas.nextFrame()
+  }
+
+  /**
+   * Starts the rasterization of a label in the background, unless it is already pending.
+   */
+  private fun request(labelId: Int) {
+    if (!uploads.request(labelId)) return
+    val string = labels.label(labelId)
+    scope.launch(rasterizer) {
+      val bitmap = try {
+        generateBitmapFromString(string)
+      } catch (e: RuntimeException) {
+        Log.e(TAG, "Failed to rasterize label $string", e)
+        null
+      }
+      uploads.offer(labelId, bitmap)
+    }
+  }
+
+  /**
+   * Uploads the bitmap of a label into the atlas. The label is dropped if there is no room for it, and rasterized
+   * again the next time it is drawn.
    *
    * @param render The SampleRender object for rendering.
-   * @param string The string to be rendered as a texture.
-   * @return The generated texture.
+   * @param labelId The id of the label.
+   * @param bitmap The bitmap of the label, recycled once uploaded.
    */
-  private fun generateTexture(render: SampleRender, string: String): Texture {
-    val texture = Texture(render, Texture.Target.TEXTURE_2D, Texture.WrapMode.CLAMP_TO_EDGE)
+  private fun uploadRegion(render: SampleRender, labelId: Int, bitmap: Bitmap) {
+    try {
+      val region = atlas.allocate(labelId, bitmap.width, bitmap.height) ?: return
+      while (region.page >= pages.size) pages.add(null)
+      val texture = pages[region.page] ?: createPage(render).also { pages[region.page] = it }
+
+      if (uploadBuffer.capacity() < bitmap.byteCount) {
+        uploadBuffer = ByteBuffer.allocateDirect(maxOf(bitmap.byteCount, uploadBuffer.capacity() * 2))
+      }
+      val buffer = uploadBuffer
+      buffer.clear().limit(bitmap.byteCount)
+      bitmap.copyPixelsToBuffer(buffer)
+      buffer.rewind()
 
-    val bitmap = generateBitmapFromString(string)
-    val buffer = ByteBuffer.allocateDirect(bitmap.byteCount)
-    bitmap.copyPixelsToBuffer(buffer)
-    buffer.rewind()
+      GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, texture.textureId)
+      GLError.maybeThrowGLException("Failed to bind texture", "glBindTexture")
+      GLES30.glTexSubImage2D(
+        GLES30.GL_TEXTURE_2D,
+        0,
+        Math.round(region.u0 * PAGE_SIZE),
+        Math.round(region.v0 * PAGE_SIZE),
+        bitmap.width,
+        bitmap.height,
+        GLES30.GL_RGBA,
+        GLES30.GL_UNSIGNED_BYTE,
+        buffer
+      )
+      GLError.maybeThrowGLException("Failed to populate texture data", "glTexSubImage2D")
+      if (region.page >= dirtyPages.size) dirtyPages = dirtyPages.copyOf(maxOf(region.page + 1, dirtyPages.size * 2))
+      dirtyPages[region.page] = true
+    } finally {
+      bitmap.recycle()
+    }
+  }
+
+  /**
+   * Regenerates the mipmaps of the pages written since the last call, once per page however many labels it received.
+   */
+  private fun generateDirtyMipmaps() {
+    for (page in dirtyPages.indices) {
+      if (!dirtyPages[page]) continue
+      dirtyPages[page] = false
+      // A page may have been released by an eviction after it was written
+      val texture = pages.getOrNull(page) ?: continue
+      GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, texture.textureId)
+      GLError.maybeThrowGLException("Failed to bind texture", "glBindTexture")
+      GLES30.glGenerateMipmap(GLES30.GL_TEXTURE_2D)
+      GLError.maybeThrowGLException("Failed to generate mipmaps", "glGenerateMipmap")
+    }
+  }
 
+  /**
+   * Creates an empty, transparent atlas page.
+   */
+  private fun createPage(render: SampleRender): Texture {
+    val texture = Texture(render, Texture.Target.TEXTURE_2D, Texture.WrapMode.CLAMP_TO_EDGE)
     GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, texture.textureId)
     GLError.maybeThrowGLException("Failed to bind texture", "glBindTexture")
     GLES30.glTexImage2D(
       GLES30.GL_TEXTURE_2D,
       0,
       GLES30.GL_RGBA8,
-      bitmap.width,
-      bitmap.height,
+      PAGE_SIZE,
+      PAGE_SIZE,
       0,
       GLES30.GL_RGBA,
       GLES30.GL_UNSIGNED_BYTE,
-      buffer
+      ByteBuffer.allocateDirect(PAGE_SIZE * PAGE_SIZE * 4)
     )
     GLError.maybeThrowGLException("Failed to populate texture data", "glTexImage2D")
-    GLES30.glGenerateMipmap(GLES30.GL_TEXTURE_2D)
-    GLError.maybeThrowGLException("Failed to generate mipmaps", "glGenerateMipmap")
-
     return texture
   }
 
@@ -88,23 +253,27 @@ class TextTextureCache {
   /**
    * Generates a bitmap from a string.
    *
-   * This function creates a new bitmap, sets its color to transparent, and draws the input string onto it.
-   * The string is drawn twice: once for the stroke and once for the text itself.
+   * This function creates a new bitmap just large enough for the string, its stroke and a transparent border, and
+   * draws the string onto it. The string is drawn twice: once for the stroke and once for the text itself.
    *
    * @param string The string to be rendered as a bitmap.
    * @return The generated bitmap.
    */
   private fun generateBitmapFromString(string: String): Bitmap {
-    val w = 256
-    val h = 256
+    val stroke = strokePaint.strokeWidth
+    val w = minOf(ceil(strokePaint.measureText(string) + stroke).toInt() + 2 * PADDING, PAGE_SIZE)
+    val h = ceil(textPaint.descent() - textPaint.ascent() + stroke).toInt() + 2 * PADDING
+    val baseline = PADDING + stroke / 2 - textPaint.ascent()
     return Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888).apply {
       eraseColor(0)
 
       Canvas(this).apply {
-        drawText(string, w / 2f, h / 2f, strokePaint)
+        drawText(string, w / 2f, baseline, strokePaint)
 
-        drawText(string, w / 2f, h / 2f, textPaint)
+        drawText(string, w / 2f, baseline, textPaint)
       }
     }
   }
-}
\ No newline at end of file
+
+  override fun toString(): String = "TextTextureCache($atlas, $uploads)"
+}
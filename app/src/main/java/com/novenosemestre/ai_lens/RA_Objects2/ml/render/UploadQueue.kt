@@ -0,0 +1,117 @@
+package com.google.ar.core.examples.java.ml.render
+
+import java.util.concurrent.ConcurrentLinkedQueue
+
+/**
+ * Hands the label bitmaps rasterized in the background over to the GL thread, which uploads them under a time budget
+ * per frame so that a burst of new labels is spread over several frames instead of stalling one.
+ *
+ * The GL thread [request]s a label, which tells whether it should be rasterized, and [drain]s the queue once per frame;
+ * the background [offer]s the bitmaps. Only [offer] may be called off the GL thread.
+ *
+ * @param budgetNanos The time the uploads of a frame may take. At least one upload happens per frame, so a single
+ *   upload longer than the budget doesn't stall the queue.
+ * @param clock Returns the time in nanoseconds.
+ */
+class UploadQueue<T : Any>(
+  val budgetNanos: Long = DEFAULT_BUDGET_NANOS,
+  private val clock: () -> Long = System::nanoTime
+) {
+  companion object {
+    // About an eighth of a frame at 30 fps.
+    const val DEFAULT_BUDGET_NANOS = 4_000_000L
+  }
+
+  /**
+   * Uploads an item on the GL thread.
+   */
+  fun interface Uploader<T> {
+    /**
+     * Uploads [item], rasterized for label [id].
+     */
+    fun upload(id: Int, item: T)
+  }
+
+  private class Entry<T>(val id: Int, val item: T?)
+
+  private val ready = ConcurrentLinkedQueue<Entry<T>>()
+
+  // The labels requested and not uploaded yet, by id. Only touched by the GL thread.
+  private var pending = BooleanArray(0)
+
+  /** The number of labels requested and not uploaded yet. */
+  var pendingCount = 0
+    private set
+
+  /** The number of items uploaded by the last [drain]. */
+  var lastFrameUploads = 0
+    private set
+
+  /** The time taken by the last [drain], in nanoseconds. */
+  var lastFrameNanos = 0L
+    private set
+
+  /** The longest time taken by a [drain] so far, in nanoseconds. */
+  var maxFrameNanos = 0L
+    private set
+
+  /** The number of items uploaded so far. */
+  var uploads = 0L
+    private set
+
+  /**
+   * Whether a label was requested and not uploaded yet.
+   */
+  fun isPending(id: Int): Boolean = id < pending.size && pending[id]
+
+  /**
+   * Marks a label as pending.
+   *
+   * @return True if the label wasn't pending yet, so its rasterization should be started.
+   */
+  fun request(id: Int): Boolean {
+    if (isPending(id)) return false
+    if (id >= pending.size) pending = pending.copyOf(maxOf(id + 1, pending.size * 2))
+    pending[id] = true
+    pendingCount++
+    return true
+  }
+
+  /**
+   * Queues the rasterization of a label for upload. May be called from any thread.
+   *
+   * @param id The id of the label.
+   * @param item The rasterized label, or null if the rasterization failed, in which case the label is no longer
+   *   pending and may be requested again.
+   */
+  fun offer(id: Int, item: T?) {
+    ready.add(Entry(id, item))
+  }
+
+  /**
+   * Uploads the queued items, in the order they were offered, until the budget of the frame is spent.
+   *
+   * @return The number of items uploaded.
+   */
+  fun drain(uploader: Uploader<T>): Int {
+    val start = clock()
+    var uploaded = 0
+    while (uploaded == 0 || clock() - start < budgetNanos) {
+      val entry = ready.poll() ?: break
+      pending[entry.id] = false
+      pendingCount--
+      val item = entry.item ?: continue
+      uploader.upload(entry.id, item)
+      uploaded++
+    }
+    lastFrameUploads = uploaded
+    lastFrameNanos = if (uploaded == 0) 0L else clock() - start
+    maxFrameNanos = maxOf(maxFrameNanos, lastFrameNanos)
+    uploads += uploaded
+    return uploaded
+  }
+
+  override fun toString(): String =
+    "UploadQueue(pending=$pendingCount, uploads=$uploads, last=$lastFrameUploads in ${lastFrameNanos / 1000}us, " +
+      "max=${maxFrameNanos / 1000}us)"
+}
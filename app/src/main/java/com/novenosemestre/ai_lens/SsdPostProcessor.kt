@@ -0,0 +1,84 @@
+package com.novenosemestre.ai_lens
+
+/**
+ * The raw outputs of an SSD detection model (TFLite_Detection_PostProcess), copied into primitive arrays.
+ *
+ * Boxes are stored as 4 floats per detection in the model order: top, left, bottom, right, normalized to [0, 1].
+ *
+ * @param maxDetections The number of detections the model outputs.
+ */
+class SsdOutput(val maxDetections: Int) {
+  /** The boxes, 4 floats per detection. */
+  val locations = FloatArray(maxDetections * 4)
+
+  /** The class index of each detection, as a float, like the model outputs it. */
+  val classes = FloatArray(maxDetections)
+
+  /** The score of each detection. */
+  val scores = FloatArray(maxDetections)
+
+  /** The number of valid detections, at most [maxDetections]. */
+  var count = 0
+}
+
+/**
+ * The detections kept by [SsdPostProcessor], as parallel primitive arrays. Entries past [count] are stale.
+ *
+ * @param capacity The maximum number of detections.
+ */
+class SsdDetections(val capacity: Int) {
+  val left = FloatArray(capacity)
+  val top = FloatArray(capacity)
+  val right = FloatArray(capacity)
+  val bottom = FloatArray(capacity)
+  val classIds = IntArray(capacity)
+  val scores = FloatArray(capacity)
+
+  /** The number of detections. */
+  var count = 0
+}
+
+/**
+ * Turns the raw [SsdOutput] of a detection model into [SsdDetections]: drops low scores and unknown classes, clamps the
+ * boxes to the image and scales them to the target size. Nothing is allocated, so it can run on every frame.
+ *
+ * @param scoreThreshold The minimum score of a kept detection.
+ * @param classCount The number of labels; detections with a class index outside [0, classCount) are dropped.
+ */
+class SsdPostProcessor(
+  val scoreThreshold: Float = 0.5f,
+  val classCount: Int = Int.MAX_VALUE
+) {
+
+  /**
+   * Decodes the model output.
+   *
+   * @param output The raw model output.
+   * @param width The width the normalized boxes are scaled to.
+   * @param height The height the normalized boxes are scaled to.
+   * @param detections Receives the kept detections, in the model order (highest score first).
+   * @return The number of kept detections.
+   */
+  fun process(output: SsdOutput, width: Float, height: Float, detections: SsdDetections): Int {
+    val locations = output.locations
+    val count = minOf(output.count, output.maxDetections)
+    var kept = 0
+    for (i in 0 until count) {
+      if (kept == detections.capacity) break
+      val score = output.scores[i]
+      if (score < scoreThreshold) continue
+      val classId = output.classes[i].toInt()
+      if (classId < 0 || classId >= classCount) continue
+      val box = i * 4
+      detections.top[kept] = locations[box].coerceIn(0f, 1f) * height
+      detections.left[kept] = locations[box + 1].coerceIn(0f, 1f) * width
+      detections.bottom[kept] = locations[box + 2].coerceIn(0f, 1f) * height
+      detections.right[kept] = locations[box + 3].coerceIn(0f, 1f) * width
+      detections.classIds[kept] = classId
+      detections.scores[kept] = score
+      kept++
+    }
+    detections.count = kept
+    return kept
+  }
+}
@@ -0,0 +1,163 @@
+package com.novenosemestre.ai_lens
+
+import android.content.Context
+import android.os.SystemClock
+import org.tensorflow.lite.Interpreter
+import org.tensorflow.lite.support.common.FileUtil
+import java.io.Closeable
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+
+/**
+ * A TFLite SSD detection model, loaded once and shared by every screen that runs it.
+ *
+ * The model file is memory-mapped once and run by a single [Interpreter] with XNNPACK and a fixed number of CPU
+ * threads. Input and output tensors are backed by direct buffers allocated when the session is created, and
+ * [run] copies the outputs into the caller's [SsdOutput] arrays, so running the model doesn't allocate.
+ *
+ * Get a session with [acquire] and [close] it when done; the interpreter is released when the last user closes it.
+ * An interpreter runs one inference at a time, so callers that run the model in parallel (e.g. tiled detection)
+ * acquire one session per parallel lane, each in its own slot.
+ */
+class TfLiteDetectorSession private constructor(
+  private val key: Pair<String, Int>,
+  context: Context,
+  threadCount: Int
+) : Closeable {
+  companion object {
+    /** The SSD MobileNet v1 model bundled with the app. */
+    const val SSD_MOBILENET_MODEL = "ssd_mobilenet_v1_1_metadata_1.tflite"
+
+    private val sessions = HashMap<Pair<String, Int>, TfLiteDetectorSession>()
+
+    /**
+     * Returns the session for a model, loading the model if no other screen holds it.
+     *
+     * @param context Any context, only used to read the model from the assets.
+     * @param modelPath The path of the model in the assets.
+     * @param threadCount The number of CPU threads used by the interpreter. Ignored when the session already exists.
+     * @param slot Selects one of several independent sessions of the same model, which can run at the same time.
+     */
+    @JvmStatic
+    fun acquire(
+      context: Context,
+      modelPath: String = SSD_MOBILENET_MODEL,
+      threadCount: Int = Runtime.getRuntime().availableProcessors().coerceIn(1, 4),
+      slot: Int = 0
+    ): TfLiteDetectorSession = synchronized(sessions) {
+      val key = modelPath to slot
+      val session = sessions.getOrPut(key) {
+        TfLiteDetectorSession(key, context.applicationContext, threadCount)
+      }
+      session.references++
+      session
+    }
+  }
+
+  // Guarded by the sessions map.
+  private var references = 0
+
+  private val interpreter = Interpreter(
+    FileUtil.loadMappedFile(context, key.first),
+    Interpreter.Options()
+      .setNumThreads(threadCount)
+      .setUseXNNPACK(true)
+  )
+
+  /** The width of the model input, in pixels. */
+  val inputWidth: Int
+
+  /** The height of the model input, in pixels. */
+  val inputHeight: Int
+
+  /** The number of detections the model outputs. */
+  val maxDetections: Int
+
+  /**
+   * A preallocated input tensor, for callers that don't write the input into their own direct buffer.
+   */
+  val inputBuffer: ByteBuffer
+
+  private val locationsBuffer: ByteBuffer
+  private val classesBuffer: ByteBuffer
+  private val scoresBuffer: ByteBuffer
+  private val countBuffer: ByteBuffer
+
+  // Float views of the output buffers, created once.
+  private val locations: FloatBuffer
+  private val classes: FloatBuffer
+  private val scores: FloatBuffer
+
+  private val inputs = arrayOfNulls<Any>(1)
+  private val outputs: Map<Int, Any>
+
+  /** The duration of the last call to [run], in milliseconds. */
+  @Volatile
+  var lastInferenceMillis = 0L
+    private set
+
+  init {
+    val inputShape = interpreter.getInputTensor(0).shape()
+    inputHeight = inputShape[1]
+    inputWidth = inputShape[2]
+    maxDetections = interpreter.getOutputTensor(2).shape()[1]
+    inputBuffer = allocate(interpreter.getInputTensor(0).numBytes())
+    locationsBuffer = allocate(interpreter.getOutputTensor(0).numBytes())
+    classesBuffer = allocate(interpreter.getOutputTensor(1).numBytes())
+    scoresBuffer = allocate(interpreter.getOutputTensor(2).numBytes())
+    countBuffer = allocate(interpreter.getOutputTensor(3).numBytes())
+    locations = locationsBuffer.asFloatBuffer()
+    classes = classesBuffer.asFloatBuffer()
+    scores = scoresBuffer.asFloatBuffer()
+    outputs = hashMapOf(0 to locationsBuffer, 1 to classesBuffer, 2 to scoresBuffer, 3 to countBuffer)
+  }
+
+  private fun allocate(bytes: Int) = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder())
+
+  /**
+   * Creates an output holder sized for this model.
+   */
+  fun newOutput() = SsdOutput(maxDetections)
+
+  /**
+   * Runs the model.
+   *
+   * @param input The input tensor, e.g. [inputBuffer] or `YuvTensorConverter.buffer`. It must be a direct buffer in
+   * native order, of the size of the model input.
+   * @param output Receives the outputs. Create it with [newOutput].
+   */
+  @Synchronized
+  fun run(input: ByteBuffer = inputBuffer, output: SsdOutput) {
+    val startMillis = SystemClock.elapsedRealtime()
+    input.rewind()
+    locationsBuffer.rewind()
+    classesBuffer.rewind()
+    scoresBuffer.rewind()
+    countBuffer.rewind()
+    inputs[0] = input
+    interpreter.runForMultipleInputsOutputs(inputs, outputs)
+
+    locations.rewind()
+    locations.get(output.locations, 0, minOf(output.locations.size, maxDetections * 4))
+    classes.rewind()
+    classes.get(output.classes, 0, minOf(output.classes.size, maxDetections))
+    scores.rewind()
+    scores.get(output.scores, 0, minOf(output.scores.size, maxDetections))
+    output.count = countBuffer.getFloat(0).toInt().coerceIn(0, minOf(output.maxDetections, maxDetections))
+    lastInferenceMillis = SystemClock.elapsedRealtime() - startMillis
+  }
+
+  /**
+   * Releases this user's reference. The interpreter is closed when no screen holds the session anymore.
+   */
+  override fun close() {
+    synchronized(sessions) {
+      if (--references > 0) return
+      sessions.remove(key)
+    }
+    synchronized(this) {
+      interpreter.close()
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package com.novenosemestre.ai_lens
+
+import kotlin.math.abs
+import kotlin.math.ln
+import kotlin.math.roundToInt
+
+/**
+ * A rectangle of a frame, in the coordinates of the rotated (upright) frame.
+ */
+class Tile(val left: Int, val top: Int, val width: Int, val height: Int) {
+  override fun toString(): String = "Tile($left, $top, ${width}x$height)"
+}
+
+/**
+ * Cuts frames into a grid of overlapping tiles, so that small objects keep enough pixels when each tile is scaled
+ * down to the model input.
+ *
+ * Neighbouring tiles overlap by [overlap] of their size, so an object on a tile edge is whole in at least one tile
+ * unless it is larger than the overlap. With [includeFullFrame], the whole frame is added as a last tile, which keeps
+ * the objects larger than a tile.
+ *
+ * @param columns The number of tile columns.
+ * @param rows The number of tile rows.
+ * @param overlap The overlap of neighbouring tiles, as a fraction of the tile size, in [0, 1).
+ * @param includeFullFrame Whether the whole frame is also a tile. Ignored for a 1x1 grid.
+ */
+class TileGrid(
+  val columns: Int,
+  val rows: Int,
+  val overlap: Float = 0.2f,
+  val includeFullFrame: Boolean = true
+) {
+  companion object {
+    /** The largest grid picked by [forTileCount]; beyond that the tiles get too small for the overlap to help. */
+    const val MAX_TILES = 9
+
+    // The largest tile aspect ratio picked by forTileCount, as the log of the ratio: 2:1.
+    private val MAX_SKEW = ln(2f)
+
+    /**
+     * The number of tiles to run in parallel on this device: one per core, keeping one core for the camera and the
+     * UI.
+     */
+    fun defaultTileCount(cores: Int = Runtime.getRuntime().availableProcessors()): Int =
+      (cores - 1).coerceIn(1, MAX_TILES)
+
+    /**
+     * Picks the grid with the most tiles, at most [tileCount], whose tiles are the closest to square for a frame of
+     * the given size: models take square inputs, so square tiles are scaled the same way in both directions. Grids
+     * whose tiles are more than twice as long as wide are never picked.
+     *
+     * @param tileCount The maximum number of grid tiles, not counting the full frame.
+     * @param width The width of the rotated frame.
+     * @param height The height of the rotated frame.
+     */
+    fun forTileCount(
+      tileCount: Int,
+      width: Int,
+      height: Int,
+      overlap: Float = 0.2f,
+      includeFullFrame: Boolean = true
+    ): TileGrid {
+      require(tileCount >= 1) { "Invalid tileCount $tileCount" }
+      var bestColumns = 1
+      var bestRows = 1
+      var bestSkew = Float.MAX_VALUE
+      for (columns in 1..tileCount) {
+        for (rows in 1..tileCount / columns) {
+          // Log of the tile aspect ratio: 0 for square tiles, the same penalty for too wide and too tall.
+          val skew = abs(ln((width.toFloat() / columns) / (height.toFloat() / rows)))
+          val cells = columns * rows
+          if (cells > 1 && skew > MAX_SKEW) continue
+          if (cells > bestColumns * bestRows || (cells == bestColumns * bestRows && skew < bestSkew)) {
+            bestColumns = columns
+            bestRows = rows
+            bestSkew = skew
+          }
+        }
+      }
+      return TileGrid(bestColumns, bestRows, overlap, includeFullFrame)
+    }
+  }
+
+  init {
+    require(columns >= 1 && rows >= 1) { "Invalid grid ${columns}x$rows" }
+    require(overlap >= 0f && overlap < 1f) { "Invalid overlap $overlap" }
+  }
+
+  /** The number of tiles per frame, including the full frame. */
+  val tileCount: Int
+    get() = columns * rows + if (hasFullFrame) 1 else 0
+
+  private val hasFullFrame: Boolean
+    get() = includeFullFrame && columns * rows > 1
+
+  private var tiles = emptyList<Tile>()
+  private var lastWidth = -1
+  private var lastHeight = -1
+
+  /**
+   * Returns the tiles of a frame, row by row, then the full frame if included. The list is reused while the frame size
+   * doesn't change.
+   *
+   * @param width The width of the rotated frame.
+   * @param height The height of the rotated frame.
+   */
+  @Synchronized
+  fun tiles(width: Int, height: Int): List<Tile> {
+    if (width != lastWidth || height != lastHeight) {
+      val tileWidth = tileSize(width, columns)
+      val tileHeight = tileSize(height, rows)
+      val grid = ArrayList<Tile>(tileCount)
+      for (row in 0 until rows) {
+        for (column in 0 until columns) {
+          val left = offset(column, columns, width, tileWidth)
+          val top = offset(row, rows, height, tileHeight)
+          grid.add(Tile(left, top, tileWidth, tileHeight))
+        }
+      }
+      if (hasFullFrame) grid.add(Tile(0, 0, width, height))
+      tiles = grid
+      lastWidth = width
+      lastHeight = height
+    }
+    return tiles
+  }
+
+  // n tiles of size s overlapping by overlap * s cover n * s - (n - 1) * overlap * s pixels.
+  private fun tileSize(size: Int, count: Int): Int =
+    (size / (count - (count - 1) * overlap)).roundToInt().coerceIn(1, size)
+
+  // Spreads the tiles evenly, the last one ending on the frame edge.
+  private fun offset(index: Int, count: Int, size: Int, tileSize: Int): Int =
+    if (count == 1) 0 else (index.toLong() * (size - tileSize) / (count - 1)).toInt()
+
+  override fun toString(): String = "TileGrid(${columns}x$rows, overlap=$overlap, tiles=$tileCount)"
+}
@@ -0,0 +1,131 @@
+package com.novenosemestre.ai_lens
+
+import java.io.Closeable
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ForkJoinPool
+
+/**
+ * Runs a detector on overlapping tiles of a high resolution frame in parallel, and merges the results.
+ *
+ * Each tile is handed to [detectTile] together with a worker, which holds whatever a single inference needs
+ * exclusively (e.g. a model interpreter and its input tensor). Tiles run on a fork-join pool with one thread per
+ * worker, so at most `workers.size` inferences run at once. The boxes of every tile are mapped back to the frame and
+ * merged with class-aware [NonMaxSuppression], which also removes the duplicates found in the overlaps.
+ *
+ * Tile, merge and pool buffers are allocated once per tile layout, so a steady stream of frames of the same size
+ * allocates almost nothing.
+ *
+ * @param grid How frames are cut into tiles.
+ * @param workers The per-inference state. Their number bounds the parallelism.
+ * @param maxDetectionsPerTile The maximum number of detections [detectTile] writes per tile.
+ * @param detectTile Detects the objects of one tile: reads the tile region of the rotated frame and writes the boxes,
+ * normalized to the tile, into the detections. Called on the pool threads.
+ * @param nms Merges the detections of all tiles.
+ */
+class TiledDetector<W : Any>(
+  val grid: TileGrid,
+  workers: List<W>,
+  private val maxDetectionsPerTile: Int,
+  private val detectTile: (worker: W, frame: YuvFrame, rotation: Int, tile: Tile, detections: SsdDetections) -> Unit,
+  private val nms: NonMaxSuppression = NonMaxSuppression()
+) : Closeable {
+  init {
+    require(workers.isNotEmpty()) { "At least one worker is needed" }
+  }
+
+  private val pool = ForkJoinPool(workers.size)
+  private val freeWorkers = ArrayBlockingQueue<W>(workers.size).apply { addAll(workers) }
+
+  // Per tile layout: the detections of each tile, their concatenation, and the task of each tile.
+  private var tiles = emptyList<Tile>()
+  private var tileDetections = emptyList<SsdDetections>()
+  private var merged = SsdDetections(0)
+  private var tasks = emptyList<Callable<Unit>>()
+
+  // The frame being detected, read by the tasks.
+  private var frame: YuvFrame? = null
+  private var rotation = 0
+
+  /** The duration of the last call to [detect], in nanoseconds. */
+  @Volatile
+  var lastDetectNanos = 0L
+    private set
+
+  /**
+   * Detects the objects of a frame.
+   *
+   * @param frame The frame.
+   * @param rotation The clockwise rotation that makes the frame upright, in degrees. Tiles are cut from the upright
+   * frame.
+   * @param output Receives the merged detections, normalized to the upright frame, highest score first.
+   * @return The number of detections in [output].
+   */
+  @Synchronized
+  fun detect(frame: YuvFrame, rotation: Int, output: SsdDetections): Int {
+    val startNanos = System.nanoTime()
+    val swapsAxes = rotation == 90 || rotation == 270
+    val rotatedWidth = if (swapsAxes) frame.height else frame.width
+    val rotatedHeight = if (swapsAxes) frame.width else frame.height
+    prepare(grid.tiles(rotatedWidth, rotatedHeight))
+
+    this.frame = frame
+    this.rotation = rotation
+    try {
+      pool.invokeAll(tasks).forEach { it.get() }
+    } catch (e: ExecutionException) {
+      throw e.cause ?: e
+    } finally {
+      this.frame = null
+    }
+
+    // Tile coordinates -> normalized frame coordinates
+    var count = 0
+    for (t in tiles.indices) {
+      val tile = tiles[t]
+      val detections = tileDetections[t]
+      for (i in 0 until detections.count) {
+        merged.left[count] = (tile.left + detections.left[i] * tile.width) / rotatedWidth
+        merged.top[count] = (tile.top + detections.top[i] * tile.height) / rotatedHeight
+        merged.right[count] = (tile.left + detections.right[i] * tile.width) / rotatedWidth
+        merged.bottom[count] = (tile.top + detections.bottom[i] * tile.height) / rotatedHeight
+        merged.classIds[count] = detections.classIds[i]
+        merged.scores[count] = detections.scores[i]
+        count++
+      }
+    }
+    merged.count = count
+    val kept = nms.apply(merged, output)
+    lastDetectNanos = System.nanoTime() - startNanos
+    return kept
+  }
+
+  private fun prepare(layout: List<Tile>) {
+    if (layout === tiles) return
+    tiles = layout
+    tileDetections = List(layout.size) { SsdDetections(maxDetectionsPerTile) }
+    merged = SsdDetections(layout.size * maxDetectionsPerTile)
+    tasks = List(layout.size) { index -> Callable { runTile(index) } }
+  }
+
+  private fun runTile(index: Int) {
+    val worker = freeWorkers.take()
+    try {
+      val detections = tileDetections[index]
+      detections.count = 0
+      detectTile(worker, checkNotNull(frame), rotation, tiles[index], detections)
+    } finally {
+      freeWorkers.put(worker)
+    }
+  }
+
+  /**
+   * Stops the pool threads. The workers are not closed.
+   */
+  override fun close() {
+    pool.shutdown()
+  }
+
+  override fun toString(): String = "TiledDetector($grid, workers=${pool.parallelism})"
+}
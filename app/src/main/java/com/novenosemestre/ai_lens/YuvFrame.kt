@@ -0,0 +1,99 @@
+package com.novenosemestre.ai_lens
+
+import java.nio.ByteBuffer
+
+/**
+ * A single plane of a YUV_420_888 image.
+ *
+ * This mirrors [android.media.Image.Plane] so that the conversion code does not depend on the Android framework
+ * and can run on a plain JVM. Only absolute reads are performed on [buffer], so its position is never changed.
+ *
+ * @property buffer The bytes of the plane.
+ * @property rowStride The distance in bytes between the start of two consecutive rows.
+ * @property pixelStride The distance in bytes between two consecutive samples of the same row.
+ */
+class YuvPlane(val buffer: ByteBuffer, val rowStride: Int, val pixelStride: Int)
+
+/**
+ * A YUV_420_888 frame described by its three planes.
+ *
+ * The chroma planes are subsampled by two in both directions, as mandated by the YUV_420_888 format.
+ *
+ * @property width The width of the frame in pixels.
+ * @property height The height of the frame in pixels.
+ * @property y The luma plane.
+ * @property u The Cb chroma plane.
+ * @property v The Cr chroma plane.
+ */
+class YuvFrame(
+  val width: Int,
+  val height: Int,
+  val y: YuvPlane,
+  val u: YuvPlane,
+  val v: YuvPlane
+) {
+  companion object {
+    /**
+     * Wraps a NV21 array, such as the output of [toNv21], as a frame. The array is not copied.
+     *
+     * @param data The NV21 bytes: the luma plane, then the chroma samples interleaved as V, U.
+     * @param width The width of the frame, even.
+     * @param height The height of the frame, even.
+     */
+    fun fromNv21(data: ByteArray, width: Int, height: Int): YuvFrame {
+      val lumaSize = width * height
+      require(data.size >= lumaSize * 3 / 2) { "Input buffer too small for ${width}x$height NV21" }
+      return YuvFrame(
+        width,
+        height,
+        YuvPlane(ByteBuffer.wrap(data), width, 1),
+        YuvPlane(ByteBuffer.wrap(data, lumaSize + 1, lumaSize / 2 - 1).slice(), width, 2),
+        YuvPlane(ByteBuffer.wrap(data, lumaSize, lumaSize / 2).slice(), width, 2)
+      )
+    }
+  }
+
+  /**
+   * The number of pixels in the frame.
+   */
+  val pixelCount: Int
+    get() = width * height
+
+  /**
+   * Repacks the frame into a NV21 byte array.
+   *
+   * The luma plane is copied row by row, followed by the chroma samples interleaved as V, U.
+   * Rows are read with absolute offsets, so row and pixel strides of any layout are supported.
+   *
+   * @param output The array to store the result in. It must hold at least `pixelCount * 3 / 2` bytes.
+   */
+  fun toNv21(output: ByteArray) {
+    require(output.size >= pixelCount * 3 / 2) { "Output buffer too small for ${width}x$height NV21" }
+
+    var outputOffset = 0
+    val yBuffer = y.buffer.duplicate()
+    for (row in 0 until height) {
+      if (y.pixelStride == 1) {
+        yBuffer.position(row * y.rowStride)
+        yBuffer.get(output, outputOffset, width)
+        outputOffset += width
+      } else {
+        val rowStart = row * y.rowStride
+        for (col in 0 until width) {
+          output[outputOffset++] = y.buffer.get(rowStart + col * y.pixelStride)
+        }
+      }
+    }
+
+    val chromaWidth = width / 2
+    val chromaHeight = height / 2
+    for (row in 0 until chromaHeight) {
+      val uRowStart = row * u.rowStride
+      val vRowStart = row * v.rowStride
+      for (col in 0 until chromaWidth) {
+        output[outputOffset++] = v.buffer.get(vRowStart + col * v.pixelStride)
+        output[outputOffset++] = u.buffer.get(uRowStart + col * u.pixelStride)
+      }
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package com.novenosemestre.ai_lens
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * The memory layout of the tensor written by [YuvTensorConverter].
+ *
+ * @property bytesPerPixel The number of bytes used by one pixel.
+ */
+enum class TensorLayout(val bytesPerPixel: Int) {
+  /** Three unsigned bytes per pixel, R G B. Matches quantized TFLite models. */
+  RGB_UINT8(3),
+
+  /** Three floats per pixel, R G B, normalized with the converter's mean and standard deviation. */
+  RGB_FLOAT32(12),
+
+  /** Four unsigned bytes per pixel, R G B A. Matches `Bitmap.copyPixelsFromBuffer` for ARGB_8888 bitmaps. */
+  RGBA_UINT8(4)
+}
+
+/**
+ * Describes how the coordinates of a tensor written by [YuvTensorConverter] relate to the source image.
+ *
+ * A point in the tensor is first scaled to the rotated image, of size [rotatedWidth] x [rotatedHeight], then rotated
+ * back by [rotation] into the source image. See `VertexUtils.toImageCoordinates`.
+ *
+ * @property rotation The clockwise rotation applied to the source image, in degrees.
+ * @property rotatedWidth The width of the source image after rotation.
+ * @property rotatedHeight The height of the source image after rotation.
+ * @property tensorWidth The width of the tensor.
+ * @property tensorHeight The height of the tensor.
+ */
+data class TensorTransform(
+  val rotation: Int,
+  val rotatedWidth: Int,
+  val rotatedHeight: Int,
+  val tensorWidth: Int,
+  val tensorHeight: Int
+) {
+  /** Horizontal scale from tensor to rotated image coordinates. */
+  val scaleX: Float
+    get() = rotatedWidth.toFloat() / tensorWidth
+
+  /** Vertical scale from tensor to rotated image coordinates. */
+  val scaleY: Float
+    get() = rotatedHeight.toFloat() / tensorHeight
+}
+
+/**
+ * Converts, rotates and downscales a [YuvFrame] into a model input tensor in a single pass.
+ *
+ * Every tensor pixel is sampled (nearest neighbour, at the pixel center) straight from the YUV planes and converted
+ * with [YuvToArgbKernel.yuvToArgb], so no full resolution ARGB bitmap or rotated copy is ever created. The output is
+ * written into [buffer], a direct buffer that is allocated once and reused for every frame.
+ *
+ * @param width The width of the tensor.
+ * @param height The height of the tensor.
+ * @param layout The memory layout of the tensor.
+ * @param mean The value subtracted from each channel, 0-255 scale. Only used by [TensorLayout.RGB_FLOAT32].
+ * @param std The value each channel is divided by after subtracting [mean]. Only used by [TensorLayout.RGB_FLOAT32].
+ */
+class YuvTensorConverter(
+  val width: Int,
+  val height: Int,
+  val layout: TensorLayout = TensorLayout.RGB_UINT8,
+  private val mean: Float = 0f,
+  private val std: Float = 255f
+) {
+  init {
+    require(width > 0 && height > 0) { "Invalid tensor size ${width}x$height" }
+  }
+
+  /**
+   * The tensor, in native byte order. Its content is replaced by every call to [convert].
+   */
+  val buffer: ByteBuffer =
+    ByteBuffer.allocateDirect(width * height * layout.bytesPerPixel).order(ByteOrder.nativeOrder())
+
+  // Sample positions in the rotated image for every tensor column and row, recomputed when the region changes.
+  private val sampleX = IntArray(width)
+  private val sampleY = IntArray(height)
+  private var lastLeft = -1
+  private var lastTop = -1
+  private var lastRegionWidth = -1
+  private var lastRegionHeight = -1
+
+  /**
+   * Fills [buffer] with the rotated and downscaled frame.
+   *
+   * @param frame The frame to convert.
+   * @param rotation The clockwise rotation to apply, in degrees. One of 0, 90, 180, 270.
+   * @return The transform that maps tensor coordinates back to the frame.
+   */
+  fun convert(frame: YuvFrame, rotation: Int): TensorTransform {
+    val swapsAxes = when (rotation) {
+      0, 180 -> false
+      90, 270 -> true
+      else -> error("Invalid imageRotation $rotation")
+    }
+    val rotatedWidth = if (swapsAxes) frame.height else frame.width
+    val rotatedHeight = if (swapsAxes) frame.width else frame.height
+    convertRegion(frame, rotation, 0, 0, rotatedWidth, rotatedHeight)
+    return TensorTransform(rotation, rotatedWidth, rotatedHeight, width, height)
+  }
+
+  /**
+   * Fills [buffer] with a region of the rotated frame, scaled to the tensor size. This is how a frame is cut into
+   * tiles without copying it.
+   *
+   * @param frame The frame to convert.
+   * @param rotation The clockwise rotation to apply, in degrees. One of 0, 90, 180, 270.
+   * @param left The left edge of the region, in the rotated frame.
+   * @param top The top edge of the region, in the rotated frame.
+   * @param regionWidth The width of the region.
+   * @param regionHeight The height of the region.
+   */
+  fun convertRegion(frame: YuvFrame, rotation: Int, left: Int, top: Int, regionWidth: Int, regionHeight: Int) {
+    val swapsAxes = when (rotation) {
+      0, 180 -> false
+      90, 270 -> true
+      else -> error("Invalid imageRotation $rotation")
+    }
+    val rotatedWidth = if (swapsAxes) frame.height else frame.width
+    val rotatedHeight = if (swapsAxes) frame.width else frame.height
+    require(left >= 0 && top >= 0 && regionWidth > 0 && regionHeight > 0 &&
+      left + regionWidth <= rotatedWidth && top + regionHeight <= rotatedHeight) {
+      "Region $left,$top ${regionWidth}x$regionHeight outside of the ${rotatedWidth}x$rotatedHeight frame"
+    }
+    if (left != lastLeft || top != lastTop || regionWidth != lastRegionWidth || regionHeight != lastRegionHeight) {
+      for (x in 0 until width) sampleX[x] = left + ((2 * x + 1) * regionWidth) / (2 * width)
+      for (y in 0 until height) sampleY[y] = top + ((2 * y + 1) * regionHeight) / (2 * height)
+      lastLeft = left
+      lastTop = top
+      lastRegionWidth = regionWidth
+      lastRegionHeight = regionHeight
+    }
+
+    val y = frame.y
+    val u = frame.u
+    val v = frame.v
+    var offset = 0
+    for (ty in 0 until height) {
+      val ry = sampleY[ty]
+      for (tx in 0 until width) {
+        val rx = sampleX[tx]
+        // Rotated image -> source frame, the inverse of rotating the frame clockwise.
+        val sx: Int
+        val sy: Int
+        when (rotation) {
+          0 -> { sx = rx; sy = ry }
+          90 -> { sx = ry; sy = frame.height - 1 - rx }
+          180 -> { sx = frame.width - 1 - rx; sy = frame.height - 1 - ry }
+          else -> { sx = frame.width - 1 - ry; sy = rx }
+        }
+        val argb = YuvToArgbKernel.yuvToArgb(
+          y.buffer.get(sy * y.rowStride + sx * y.pixelStride).toInt() and 0xff,
+          u.buffer.get((sy shr 1) * u.rowStride + (sx shr 1) * u.pixelStride).toInt() and 0xff,
+          v.buffer.get((sy shr 1) * v.rowStride + (sx shr 1) * v.pixelStride).toInt() and 0xff
+        )
+        offset = write(offset, argb)
+      }
+    }
+    buffer.rewind()
+  }
+
+  /**
+   * Writes one pixel at [offset] and returns the offset of the next pixel.
+   */
+  private fun write(offset: Int, argb: Int): Int {
+    val r = (argb shr 16) and 0xff
+    val g = (argb shr 8) and 0xff
+    val b = argb and 0xff
+    when (layout) {
+      TensorLayout.RGB_UINT8 -> {
+        buffer.put(offset, r.toByte())
+        buffer.put(offset + 1, g.toByte())
+        buffer.put(offset + 2, b.toByte())
+      }
+      TensorLayout.RGB_FLOAT32 -> {
+        buffer.putFloat(offset, (r - mean) / std)
+        buffer.putFloat(offset + 4, (g - mean) / std)
+        buffer.putFloat(offset + 8, (b - mean) / std)
+      }
+      TensorLayout.RGBA_UINT8 -> {
+        buffer.put(offset, r.toByte())
+        buffer.put(offset + 1, g.toByte())
+        buffer.put(offset + 2, b.toByte())
+        buffer.put(offset + 3, 0xff.toByte())
+      }
+    }
+    return offset + layout.bytesPerPixel
+  }
+}
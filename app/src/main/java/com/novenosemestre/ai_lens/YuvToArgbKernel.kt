@@ -0,0 +1,129 @@
+package com.novenosemestre.ai_lens
+
+import java.io.Closeable
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * Converts [YuvFrame]s to packed ARGB_8888 pixels on the CPU.
+ *
+ * The conversion uses the same BT.601 limited range fixed-point math as `ScriptIntrinsicYuvToRGB`, so the output
+ * matches the former RenderScript path pixel for pixel. Planes are read directly with their row and pixel strides,
+ * without repacking them into an intermediate NV21 buffer first.
+ *
+ * When [threadCount] is greater than one, the rows of the frame are split into bands that are converted in parallel.
+ * The calling thread converts the first band itself.
+ *
+ * @param threadCount The number of threads used for a conversion, including the calling thread.
+ */
+class YuvToArgbKernel(
+  val threadCount: Int = Runtime.getRuntime().availableProcessors().coerceIn(1, MAX_THREADS)
+) : Closeable {
+  companion object {
+    private const val MAX_THREADS = 4
+
+    // Frames with fewer rows per band than this are converted on the calling thread only.
+    private const val MIN_ROWS_PER_BAND = 16
+
+    /**
+     * Converts a single YUV sample to an opaque ARGB pixel.
+     *
+     * @param y The luma sample, 0-255.
+     * @param u The Cb sample, 0-255.
+     * @param v The Cr sample, 0-255.
+     * @return The pixel packed as `0xAARRGGBB`.
+     */
+    fun yuvToArgb(y: Int, u: Int, v: Int): Int {
+      val yy = (y - 16) * 298
+      val uu = u - 128
+      val vv = v - 128
+      val r = clamp((yy + 409 * vv + 128) shr 8)
+      val g = clamp((yy - 100 * uu - 208 * vv + 128) shr 8)
+      val b = clamp((yy + 516 * uu + 128) shr 8)
+      return (0xff shl 24) or (r shl 16) or (g shl 8) or b
+    }
+
+    private fun clamp(value: Int): Int = if (value < 0) 0 else if (value > 255) 255 else value
+  }
+
+  init {
+    require(threadCount >= 1) { "threadCount must be at least 1, got $threadCount" }
+  }
+
+  private val executor: ExecutorService? = if (threadCount > 1) {
+    Executors.newFixedThreadPool(threadCount - 1) { runnable ->
+      Thread(runnable, "YuvToArgbKernel").apply { isDaemon = true }
+    }
+  } else {
+    null
+  }
+
+  /**
+   * Converts a frame and stores the ARGB pixels row by row in [output].
+   *
+   * @param frame The frame to convert.
+   * @param output The array to store the result in. It must hold at least [YuvFrame.pixelCount] values.
+   */
+  fun convert(frame: YuvFrame, output: IntArray) {
+    require(output.size >= frame.pixelCount) { "Output buffer too small for ${frame.width}x${frame.height}" }
+
+    val executor = executor
+    // Bands always start on an even row so that each band starts on a new chroma row.
+    val rowsPerBand = ((frame.height + threadCount - 1) / threadCount + 1) and 1.inv()
+    if (executor == null || rowsPerBand < MIN_ROWS_PER_BAND) {
+      convertRows(frame, output, 0, frame.height)
+      return
+    }
+
+    val tasks = ArrayList<Callable<Unit>>(threadCount - 1)
+    var start = rowsPerBand
+    while (start < frame.height) {
+      val bandStart = start
+      val bandEnd = minOf(bandStart + rowsPerBand, frame.height)
+      tasks.add(Callable { convertRows(frame, output, bandStart, bandEnd) })
+      start = bandEnd
+    }
+    val futures = tasks.map { executor.submit(it) }
+    convertRows(frame, output, 0, minOf(rowsPerBand, frame.height))
+    futures.forEach { it.get() }
+  }
+
+  /**
+   * Converts the rows `[startRow, endRow)` of a frame.
+   */
+  private fun convertRows(frame: YuvFrame, output: IntArray, startRow: Int, endRow: Int) {
+    val width = frame.width
+    val yBuffer = frame.y.buffer
+    val uBuffer = frame.u.buffer
+    val vBuffer = frame.v.buffer
+    val yRowStride = frame.y.rowStride
+    val yPixelStride = frame.y.pixelStride
+    val uRowStride = frame.u.rowStride
+    val uPixelStride = frame.u.pixelStride
+    val vRowStride = frame.v.rowStride
+    val vPixelStride = frame.v.pixelStride
+
+    for (row in startRow until endRow) {
+      val yRowStart = row * yRowStride
+      val uRowStart = (row shr 1) * uRowStride
+      val vRowStart = (row shr 1) * vRowStride
+      var outputOffset = row * width
+      for (col in 0 until width) {
+        val chromaCol = col shr 1
+        output[outputOffset++] = yuvToArgb(
+          yBuffer.get(yRowStart + col * yPixelStride).toInt() and 0xff,
+          uBuffer.get(uRowStart + chromaCol * uPixelStride).toInt() and 0xff,
+          vBuffer.get(vRowStart + chromaCol * vPixelStride).toInt() and 0xff
+        )
+      }
+    }
+  }
+
+  /**
+   * Stops the worker threads. The kernel must not be used afterwards.
+   */
+  override fun close() {
+    executor?.shutdown()
+  }
+}
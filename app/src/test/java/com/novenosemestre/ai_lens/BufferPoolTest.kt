@@ -0,0 +1,88 @@
+package com.novenosemestre.ai_lens
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+/**
+ * Checks the reuse, eviction and counters of [BufferPool].
+ */
+class BufferPoolTest {
+
+    private val camera = BufferKey(640, 480, 35)
+    private val preview = BufferKey(1920, 1080, 35)
+    private val gallery = BufferKey(4000, 3000, 35)
+
+    private fun pool(capacity: Int) = BufferPool(capacity) { key -> IntArray(key.width) }
+
+    @Test
+    fun sameKey_returnsTheSameBuffer() {
+        val pool = pool(2)
+
+        val first = pool.acquire(camera)
+        val second = pool.acquire(BufferKey(640, 480, 35))
+
+        assertSame(first, second)
+        assertEquals(1L, pool.allocations)
+        assertEquals(1L, pool.reuses)
+        assertEquals(1, pool.size)
+    }
+
+    @Test
+    fun differentFormat_getsItsOwnBuffer() {
+        val pool = pool(2)
+
+        assertNotSame(pool.acquire(camera), pool.acquire(camera.copy(format = 17)))
+        assertEquals(2L, pool.allocations)
+    }
+
+    @Test
+    fun beyondCapacity_evictsTheLeastRecentlyUsedBuffer() {
+        val pool = pool(2)
+        val cameraBuffer = pool.acquire(camera)
+        val previewBuffer = pool.acquire(preview)
+        // The camera buffer is now the most recently used
+        pool.acquire(camera)
+
+        pool.acquire(gallery)
+
+        assertEquals(2, pool.size)
+        assertEquals(1L, pool.evictions)
+        assertSame(cameraBuffer, pool.acquire(camera))
+        assertNotSame(previewBuffer, pool.acquire(preview))
+        assertEquals(2L, pool.evictions)
+    }
+
+    @Test
+    fun counters_addUp() {
+        val pool = pool(1)
+
+        repeat(3) { pool.acquire(camera) }
+        pool.acquire(preview)
+        pool.acquire(camera)
+
+        assertEquals(3L, pool.allocations)
+        assertEquals(2L, pool.reuses)
+        assertEquals(2L, pool.evictions)
+        assertEquals("BufferPool(size=1/1, reuses=2, allocations=3, evictions=2)", pool.toString())
+    }
+
+    @Test
+    fun clear_dropsTheBuffersButKeepsTheCounters() {
+        val pool = pool(2)
+        val buffer = pool.acquire(camera)
+
+        pool.clear()
+
+        assertEquals(0, pool.size)
+        assertNotSame(buffer, pool.acquire(camera))
+        assertEquals(2L, pool.allocations)
+        assertEquals(0L, pool.evictions)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun zeroCapacity_isRejected() {
+        pool(0)
+    }
+}
@@ -0,0 +1,54 @@
+package com.novenosemestre.ai_lens
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+/**
+ * Checks the storage of [DetectionBatch].
+ */
+class DetectionBatchTest {
+
+    @Test
+    fun add_storesBoxCenterScoreAndLabel() {
+        val batch = DetectionBatch()
+
+        val index = batch.add(10, 20, 30, 60, 0.7f, batch.classId("Cup"))
+
+        assertEquals(0, index)
+        assertEquals(1, batch.count)
+        assertEquals(20, batch.centerX[0])
+        assertEquals(40, batch.centerY[0])
+        assertEquals(0.7f, batch.scores[0], 0f)
+        assertEquals("Cup", batch.labelAt(0))
+    }
+
+    @Test
+    fun classIds_areStableAcrossClear() {
+        val batch = DetectionBatch()
+        val cup = batch.classId("Cup")
+        val plant = batch.classId("Plant")
+
+        batch.clear()
+
+        assertEquals(0, batch.count)
+        assertEquals(cup, batch.classId("Cup"))
+        assertEquals(plant, batch.classId("Plant"))
+        assertEquals("Plant", batch.label(plant))
+    }
+
+    @Test
+    fun arrays_growAndAreReusedAfterClear() {
+        val batch = DetectionBatch(initialCapacity = 2)
+        val id = batch.classId("Cup")
+        repeat(5) { batch.add(it, it, it + 1, it + 1, 0.5f, id) }
+        assertEquals(5, batch.count)
+        assertEquals(4, batch.left[4])
+
+        val scores = batch.scores
+        batch.clear()
+        repeat(5) { batch.add(it, it, it + 1, it + 1, 0.5f, id) }
+
+        assertSame(scores, batch.scores)
+    }
+}
@@ -0,0 +1,71 @@
+package com.novenosemestre.ai_lens
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.nio.ByteBuffer
+import kotlin.random.Random
+
+/**
+ * Feeds synthetic luma planes to [FrameGate].
+ */
+class FrameGateTest {
+
+    private val width = 320
+    private val height = 240
+
+    private fun noisePlane(seed: Int): YuvPlane {
+        val bytes = ByteArray(width * height).also { Random(seed).nextBytes(it) }
+        return YuvPlane(ByteBuffer.wrap(bytes), width, 1)
+    }
+
+    private fun flatPlane(value: Int): YuvPlane {
+        val bytes = ByteArray(width * height) { value.toByte() }
+        return YuvPlane(ByteBuffer.wrap(bytes), width, 1)
+    }
+
+    @Test
+    fun sharpNewFrame_isAccepted() {
+        val gate = FrameGate()
+        assertEquals(FrameGate.Decision.ACCEPT, gate.evaluate(noisePlane(1), width, height))
+        assertEquals(1L, gate.accepted)
+    }
+
+    @Test
+    fun sameFrameTwice_isSkippedAsUnchanged() {
+        val gate = FrameGate()
+        gate.evaluate(noisePlane(1), width, height)
+        assertEquals(FrameGate.Decision.SKIP_UNCHANGED, gate.evaluate(noisePlane(1), width, height))
+        assertEquals(1L, gate.skippedUnchanged)
+    }
+
+    @Test
+    fun differentFrame_isAccepted() {
+        val gate = FrameGate()
+        gate.evaluate(noisePlane(1), width, height)
+        assertEquals(FrameGate.Decision.ACCEPT, gate.evaluate(noisePlane(2), width, height))
+        assertEquals(2L, gate.accepted)
+    }
+
+    @Test
+    fun flatFrame_isSkippedAsBlurry() {
+        val gate = FrameGate()
+        assertEquals(FrameGate.Decision.SKIP_BLURRY, gate.evaluate(flatPlane(128), width, height))
+        assertEquals(1L, gate.skippedBlurry)
+        assertEquals(0f, gate.lastSharpness, 0f)
+    }
+
+    @Test
+    fun reset_acceptsSameFrameAgain() {
+        val gate = FrameGate()
+        gate.evaluate(noisePlane(1), width, height)
+        gate.reset()
+        assertEquals(FrameGate.Decision.ACCEPT, gate.evaluate(noisePlane(1), width, height))
+    }
+
+    @Test
+    fun zeroThresholds_acceptEverything() {
+        val gate = FrameGate(FrameGate.Config(minChange = 0f, minSharpness = 0f))
+        assertEquals(FrameGate.Decision.ACCEPT, gate.evaluate(flatPlane(10), width, height))
+        assertEquals(FrameGate.Decision.ACCEPT, gate.evaluate(flatPlane(10), width, height))
+    }
+}
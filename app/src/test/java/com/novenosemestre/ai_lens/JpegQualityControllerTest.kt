@@ -0,0 +1,55 @@
+package com.novenosemestre.ai_lens
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Drives [JpegQualityController] with a fake encoder whose output size grows with the quality.
+ */
+class JpegQualityControllerTest {
+
+    // About 4 KB per quality point, like a busy 1024 pixel frame.
+    private fun encodedSize(quality: Int) = quality * 4_000
+
+    @Test
+    fun overBudget_lowersTheQualityUntilItFits() {
+        val controller = JpegQualityController(budgetBytes = 200_000)
+
+        var attempts = 1
+        while (controller.onEncoded(encodedSize(controller.quality))) attempts++
+
+        assertTrue(encodedSize(controller.quality) <= 200_000)
+        assertEquals(50, controller.quality)
+        assertEquals(5, attempts)
+    }
+
+    @Test
+    fun farOverBudget_takesBiggerSteps() {
+        val controller = JpegQualityController(budgetBytes = 100_000)
+
+        assertTrue(controller.onEncoded(300_000))
+        assertEquals(70, controller.quality)
+    }
+
+    @Test
+    fun atMinimumQuality_theImageIsSentAnyway() {
+        val controller = JpegQualityController(budgetBytes = 1_000, minQuality = 40)
+
+        while (controller.onEncoded(50_000)) Unit
+
+        assertEquals(40, controller.quality)
+        assertFalse(controller.onEncoded(50_000))
+    }
+
+    @Test
+    fun wellUnderBudget_raisesTheQualityForTheNextImage() {
+        val controller = JpegQualityController(budgetBytes = 200_000, maxQuality = 90)
+        while (controller.onEncoded(encodedSize(controller.quality))) Unit
+        val lowered = controller.quality
+
+        assertFalse(controller.onEncoded(50_000))
+        assertEquals(lowered + 5, controller.quality)
+    }
+}
@@ -0,0 +1,64 @@
+package com.novenosemestre.ai_lens
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Test
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+/**
+ * Checks the interning of [LabelRegistry].
+ */
+class LabelRegistryTest {
+
+    @Test
+    fun id_isStablePerLabel() {
+        val registry = LabelRegistry()
+
+        val cup = registry.id("Cup")
+        val plant = registry.id("Plant")
+
+        assertNotEquals(cup, plant)
+        assertEquals(cup, registry.id(String(charArrayOf('C', 'u', 'p'))))
+        assertEquals("Plant", registry.label(plant))
+        assertEquals(2, registry.size)
+    }
+
+    @Test
+    fun load_mapsModelClassesAndReadsTheFileOnce() {
+        val registry = LabelRegistry()
+        // Labels returned by a detector before the model labels were loaded
+        val person = registry.id("person")
+        var opened = 0
+        val open = {
+            opened++
+            "???\nperson\n\nbicycle\n".byteInputStream()
+        }
+
+        val ids = registry.load("labels.txt", open)
+
+        assertEquals(3, ids.size)
+        assertEquals("???", registry.label(ids[0]))
+        assertEquals(person, ids[1])
+        assertEquals("bicycle", registry.label(ids[2]))
+        assertArrayEquals(ids, registry.load("labels.txt", open))
+        assertEquals(1, opened)
+    }
+
+    @Test
+    fun concurrentRegistration_givesEachLabelOneId() {
+        val registry = LabelRegistry()
+        val labels = List(500) { "label$it" }
+        val executor = Executors.newFixedThreadPool(4)
+        try {
+            val results = executor.invokeAll(List(4) { Callable { labels.map { registry.id(it) } } }).map { it.get() }
+
+            results.forEach { assertEquals(results[0], it) }
+            assertEquals(labels.size, registry.size)
+            labels.forEachIndexed { index, label -> assertEquals(label, registry.label(results[0][index])) }
+        } finally {
+            executor.shutdown()
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.novenosemestre.ai_lens
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Checks [NonMaxSuppression] on hand-made boxes.
+ */
+class NonMaxSuppressionTest {
+
+    private fun detections(vararg boxes: FloatArray): SsdDetections {
+        val detections = SsdDetections(boxes.size)
+        boxes.forEachIndexed { i, box ->
+            detections.left[i] = box[0]
+            detections.top[i] = box[1]
+            detections.right[i] = box[2]
+            detections.bottom[i] = box[3]
+            detections.classIds[i] = box[4].toInt()
+            detections.scores[i] = box[5]
+        }
+        detections.count = boxes.size
+        return detections
+    }
+
+    // left, top, right, bottom, class, score
+    private fun box(vararg values: Float) = values
+
+    @Test
+    fun overlappingBoxesOfOneClass_keepTheBestScore() {
+        val input = detections(
+            box(0f, 0f, 10f, 10f, 1f, 0.6f),
+            box(1f, 1f, 11f, 11f, 1f, 0.9f),
+            box(50f, 50f, 60f, 60f, 1f, 0.7f)
+        )
+        val output = SsdDetections(3)
+
+        assertEquals(2, NonMaxSuppression().apply(input, output))
+        assertEquals(listOf(0.9f, 0.7f), listOf(output.scores[0], output.scores[1]))
+        assertEquals(1f, output.left[0], 0f)
+    }
+
+    @Test
+    fun differentClasses_neverSuppressEachOther() {
+        val input = detections(
+            box(0f, 0f, 10f, 10f, 1f, 0.9f),
+            box(0f, 0f, 10f, 10f, 2f, 0.8f)
+        )
+
+        assertEquals(2, NonMaxSuppression().apply(input, SsdDetections(2)))
+    }
+
+    @Test
+    fun partialBoxInsideAWholeOne_isADuplicate() {
+        // An object cut by a tile edge: the partial box has a low IoU with the whole one but lies inside it.
+        val input = detections(
+            box(0f, 0f, 100f, 40f, 3f, 0.9f),
+            box(60f, 0f, 100f, 40f, 3f, 0.7f)
+        )
+
+        assertEquals(1, NonMaxSuppression(iouThreshold = 0.5f).apply(input, SsdDetections(2)))
+        val iouOnly = NonMaxSuppression(iouThreshold = 0.5f, containmentThreshold = 1.1f)
+        assertEquals(2, iouOnly.apply(input, SsdDetections(2)))
+    }
+
+    @Test
+    fun output_keepsTheHighestScoresWhenFull() {
+        val input = detections(
+            box(0f, 0f, 1f, 1f, 1f, 0.5f),
+            box(10f, 10f, 11f, 11f, 1f, 0.8f),
+            box(20f, 20f, 21f, 21f, 1f, 0.7f)
+        )
+        val output = SsdDetections(2)
+
+        NonMaxSuppression().apply(input, output)
+
+        assertEquals(listOf(0.8f, 0.7f), listOf(output.scores[0], output.scores[1]))
+    }
+}
@@ -0,0 +1,89 @@
+package com.novenosemestre.ai_lens
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.nio.ByteBuffer
+
+/**
+ * Checks [Nv21Resampler] on small synthetic frames whose samples encode their own position.
+ */
+class Nv21ResamplerTest {
+
+    // Luma is 10 * row + column, chroma U is 100 + 10 * row + column and V is 200 + 10 * row + column.
+    private fun frame(width: Int, height: Int): YuvFrame {
+        val y = ByteArray(width * height) { (10 * (it / width) + it % width).toByte() }
+        val u = ByteArray(width * height / 4) { (100 + 10 * (it / (width / 2)) + it % (width / 2)).toByte() }
+        val v = ByteArray(width * height / 4) { (200 + 10 * (it / (width / 2)) + it % (width / 2)).toByte() }
+        return YuvFrame(
+            width,
+            height,
+            YuvPlane(ByteBuffer.wrap(y), width, 1),
+            YuvPlane(ByteBuffer.wrap(u), width / 2, 1),
+            YuvPlane(ByteBuffer.wrap(v), width / 2, 1)
+        )
+    }
+
+    private fun Nv21Resampler.luma(x: Int, y: Int) = data[y * width + x].toInt() and 0xff
+
+    @Test
+    fun noRotation_copiesTheFrameAsNv21() {
+        val resampler = Nv21Resampler()
+        resampler.resample(frame(4, 2), 0, 4)
+
+        assertEquals(4, resampler.width)
+        assertEquals(2, resampler.height)
+        assertEquals(listOf(0, 1, 2, 3, 10, 11, 12, 13), (0 until 8).map { resampler.data[it].toInt() and 0xff })
+        // V then U, for each of the two chroma blocks.
+        assertEquals(listOf(200, 100, 201, 101), (8 until 12).map { resampler.data[it].toInt() and 0xff })
+    }
+
+    @Test
+    fun rotation90_turnsTheFrameClockwise() {
+        val resampler = Nv21Resampler()
+        val transform = resampler.resample(frame(4, 2), 90, 4)
+
+        assertEquals(2, resampler.width)
+        assertEquals(4, resampler.height)
+        assertEquals(TensorTransform(90, 2, 4, 2, 4), transform)
+        // The bottom left pixel of the frame ends up top left.
+        assertEquals(10, resampler.luma(0, 0))
+        assertEquals(0, resampler.luma(1, 0))
+        assertEquals(13, resampler.luma(0, 3))
+    }
+
+    @Test
+    fun largeFrame_isDownscaledToEvenSides() {
+        val resampler = Nv21Resampler()
+        resampler.resample(frame(64, 48), 0, 21)
+
+        assertEquals(20, resampler.width)
+        assertEquals(16, resampler.height)
+    }
+
+    @Test
+    fun region_isCroppedFromTheRotatedFrame() {
+        val resampler = Nv21Resampler()
+        // The rotated 2x4 image is [[10, 0], [11, 1], [12, 2], [13, 3]]; take its two middle rows.
+        resampler.resampleRegion(frame(4, 2), 90, 0, 1, 2, 3, 4)
+
+        assertEquals(2, resampler.width)
+        assertEquals(2, resampler.height)
+        assertEquals(listOf(11, 1, 12, 2), (0 until 4).map { resampler.data[it].toInt() and 0xff })
+    }
+
+    @Test
+    fun largeRegion_isDownscaled() {
+        val resampler = Nv21Resampler()
+        resampler.resampleRegion(frame(64, 48), 0, 16, 8, 56, 28, 10)
+
+        assertEquals(10, resampler.width)
+        assertEquals(4, resampler.height)
+        // The first sample is taken at the center of the first 4x4 block of the region.
+        assertEquals(10 * 10 + 18, resampler.luma(0, 0))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun regionOutsideOfTheImage_isRejected() {
+        Nv21Resampler().resampleRegion(frame(4, 2), 0, 2, 0, 6, 2, 4)
+    }
+}
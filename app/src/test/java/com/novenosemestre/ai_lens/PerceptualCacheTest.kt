@@ -0,0 +1,90 @@
+package com.novenosemestre.ai_lens
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+/**
+ * Checks the lookups, expiry and tiers of [PerceptualCache] with a fake clock.
+ */
+class PerceptualCacheTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private var now = 1_000_000L
+
+    private object StringCodec : PerceptualCache.Codec<String> {
+        override fun encode(value: String, output: DataOutputStream) = output.writeUTF(value)
+        override fun decode(input: DataInputStream): String = input.readUTF()
+    }
+
+    private fun cache(capacity: Int = 4, disk: Boolean = false) = PerceptualCache(
+        capacity = capacity,
+        maxDistance = 4,
+        ttlMillis = 10_000,
+        diskTier = if (disk) PerceptualCache.DiskTier(folder.root, StringCodec) else null,
+        clock = { now }
+    )
+
+    @Test
+    fun nearbyHash_hitsAndFarHash_misses() {
+        val cache = cache()
+        cache.put(0b1111L, 1, "cup", costMillis = 800)
+
+        assertEquals("cup", cache.get(0b0111L, 1))
+        assertNull(cache.get(0b1111L shl 20 or 0xf0f0L, 1))
+        assertNull(cache.get(0b1111L, 2))
+        assertEquals(1L, cache.memoryHits)
+        assertEquals(2L, cache.misses)
+        assertEquals(800L, cache.savedMillis)
+        assertEquals(1f / 3, cache.hitRate, 1e-6f)
+    }
+
+    @Test
+    fun closestEntry_wins() {
+        val cache = cache()
+        cache.put(0b0000L, 0, "far")
+        cache.put(0b0111L, 0, "near")
+
+        assertEquals("near", cache.get(0b1111L, 0))
+    }
+
+    @Test
+    fun expiredEntry_misses() {
+        val cache = cache()
+        cache.put(42L, 0, "cup", costMillis = 800)
+        now += 10_000
+
+        assertNull(cache.get(42L, 0))
+    }
+
+    @Test
+    fun leastRecentlyUsedEntry_isEvicted() {
+        val cache = cache(capacity = 2)
+        cache.put(0x0L, 0, "a", 0)
+        cache.put(0xff00L, 0, "b", 0)
+        cache.get(0x0L, 0)
+        cache.put(0xff0000L, 0, "c", 0)
+
+        assertEquals("a", cache.get(0x0L, 0))
+        assertNull(cache.get(0xff00L, 0))
+    }
+
+    @Test
+    fun diskTier_survivesANewCache() {
+        cache(disk = true).put(0x1234L, 7, "lamp", costMillis = 1200)
+
+        val restarted = cache(disk = true)
+
+        assertEquals("lamp", restarted.get(0x1235L, 7))
+        assertEquals(1L, restarted.diskHits)
+        assertEquals(1200L, restarted.savedMillis)
+    }
+
+    private fun PerceptualCache<String>.put(hash: Long, tag: Int, value: String) = put(hash, tag, value, 0)
+}
@@ -0,0 +1,48 @@
+package com.novenosemestre.ai_lens
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+import kotlin.math.sin
+import kotlin.random.Random
+
+/**
+ * Hashes synthetic luma planes with [PerceptualHash].
+ */
+class PerceptualHashTest {
+
+    private val width = 320
+    private val height = 240
+
+    private fun plane(luma: (Int, Int) -> Int): YuvPlane {
+        val bytes = ByteArray(width * height) { luma(it % width, it / width).coerceIn(0, 255).toByte() }
+        return YuvPlane(ByteBuffer.wrap(bytes), width, 1)
+    }
+
+    private fun scene(x: Int, y: Int) = (128 + 100 * sin(x / 23.0) * sin(y / 17.0)).toInt()
+
+    @Test
+    fun sameScene_withNoiseAndBrightnessChange_hashesClose() {
+        val random = Random(3)
+        val original = PerceptualHash.dHash(plane(::scene), width, height)
+        val noisy = PerceptualHash.dHash(plane { x, y -> scene(x, y) + 15 + random.nextInt(-4, 5) }, width, height)
+
+        assertTrue(PerceptualHash.distance(original, noisy) <= 4)
+    }
+
+    @Test
+    fun differentScene_hashesFar() {
+        val original = PerceptualHash.dHash(plane(::scene), width, height)
+        val other = PerceptualHash.dHash(plane { x, y -> scene(y, x + 90) }, width, height)
+
+        assertTrue(PerceptualHash.distance(original, other) > 12)
+    }
+
+    @Test
+    fun distance_countsDifferentBits() {
+        assertEquals(0, PerceptualHash.distance(0x5aL, 0x5aL))
+        assertEquals(64, PerceptualHash.distance(0L, -1L))
+        assertEquals(2, PerceptualHash.distance(0b1010L, 0b0110L))
+    }
+}
@@ -0,0 +1,106 @@
+package com.novenosemestre.ai_lens.RA_Objects
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Runs [DetectionPipeline] with plain integer "frames" and "detections".
+ */
+class DetectionPipelineTest {
+
+    private class Box(var value: Int = 0)
+
+    @Test
+    fun submittedFrame_isInferredAndDrawn() {
+        val drawn = CountDownLatch(1)
+        var drawnValue = 0
+        DetectionPipeline(
+            List(3) { Box() },
+            List(3) { Box() },
+            { frame, detection -> detection.value = frame.value * 2 },
+            { detection -> drawnValue = detection.value; drawn.countDown() },
+            { e -> throw AssertionError(e) }
+        ).use { pipeline ->
+            val packet = pipeline.acquireFrame()!!
+            packet.value.value = 21
+            pipeline.submit(packet)
+
+            assertTrue(drawn.await(5, TimeUnit.SECONDS))
+            assertEquals(42, drawnValue)
+            assertEquals(1L, pipeline.stats.capturedFrames.get())
+            assertEquals(0L, pipeline.stats.droppedFrames.get())
+        }
+    }
+
+    @Test
+    fun framesSubmittedDuringInference_keepOnlyTheNewest() {
+        val inferenceStarted = CountDownLatch(1)
+        val releaseInference = CountDownLatch(1)
+        val drawnValues = mutableListOf<Int>()
+        val firstDrawn = CountDownLatch(1)
+        val allDrawn = CountDownLatch(2)
+        DetectionPipeline(
+            List(3) { Box() },
+            List(3) { Box() },
+            { frame, detection ->
+                inferenceStarted.countDown()
+                releaseInference.await()
+                // Otherwise the detection of frame 3 may replace that of frame 1 before the overlay takes it
+                if (frame.value != 1) firstDrawn.await()
+                detection.value = frame.value
+            },
+            { detection ->
+                synchronized(drawnValues) { drawnValues.add(detection.value) }
+                firstDrawn.countDown()
+                allDrawn.countDown()
+            },
+            { e -> throw AssertionError(e) }
+        ).use { pipeline ->
+            pipeline.submit(pipeline.acquireFrame()!!.also { it.value.value = 1 })
+            assertTrue(inferenceStarted.await(5, TimeUnit.SECONDS))
+
+            // The model is busy: frames 2 and 3 wait in the hand-off, where 3 replaces 2.
+            for (value in 2..3) {
+                pipeline.submit(pipeline.acquireFrame()!!.also { it.value.value = value })
+            }
+            releaseInference.countDown()
+
+            assertTrue(allDrawn.await(5, TimeUnit.SECONDS))
+            assertEquals(listOf(1, 3), synchronized(drawnValues) { drawnValues.toList() })
+            assertEquals(1L, pipeline.stats.droppedFrames.get())
+        }
+    }
+
+    @Test
+    fun failedInference_isReportedAndItsBuffersRecycled() {
+        val errors = mutableListOf<Throwable>()
+        val drawn = CountDownLatch(1)
+        var drawnValue = 0
+        DetectionPipeline(
+            List(3) { Box() },
+            List(3) { Box() },
+            { frame, detection ->
+                if (frame.value < 0) throw IllegalStateException("bad frame ${frame.value}")
+                detection.value = frame.value
+            },
+            { detection -> drawnValue = detection.value; drawn.countDown() },
+            { e -> synchronized(errors) { errors.add(e) } }
+        ).use { pipeline ->
+            // Fail more frames than there are buffers: each failure must give its buffers back.
+            repeat(5) { index ->
+                pipeline.submit(pipeline.acquireFrame()!!.also { it.value.value = -1 - index })
+                val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+                while (synchronized(errors) { errors.size } <= index && System.nanoTime() < deadline) Thread.sleep(1)
+            }
+            pipeline.submit(pipeline.acquireFrame()!!.also { it.value.value = 7 })
+
+            assertTrue(drawn.await(5, TimeUnit.SECONDS))
+            assertEquals(7, drawnValue)
+            assertEquals(5, synchronized(errors) { errors.size })
+            assertTrue(synchronized(errors) { errors.all { it is IllegalStateException } })
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.novenosemestre.ai_lens.RA_Objects
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Drives [LatestFrameProcessor] with integer frames, finishing them by hand, and a synthetic clock.
+ */
+class LatestFrameProcessorTest {
+
+    private var nowMillis = 0L
+
+    // The frames started, and how to finish each of them.
+    private val started = mutableListOf<Int>()
+    private val finishers = mutableListOf<() -> Unit>()
+
+    private fun processor() = LatestFrameProcessor<Int>({ nowMillis }) { frame, done ->
+        started.add(frame)
+        finishers.add(done)
+    }
+
+    @Test
+    fun idleProcessor_startsTheFrameRightAway() {
+        val processor = processor()
+
+        processor.submit(1)
+
+        assertEquals(listOf(1), started)
+        assertTrue(processor.isRunning)
+    }
+
+    @Test
+    fun framesSubmittedWhileBusy_keepOnlyTheNewest() {
+        val processor = processor()
+        processor.submit(1)
+
+        processor.submit(2)
+        processor.submit(3)
+        assertEquals(listOf(1), started)
+
+        finishers[0]()
+        assertEquals(listOf(1, 3), started)
+        assertEquals(3L, processor.submittedFrames.get())
+        assertEquals(1L, processor.droppedFrames.get())
+        assertEquals(1L, processor.processedFrames.get())
+    }
+
+    @Test
+    fun lastFrameDone_leavesTheProcessorIdle() {
+        val processor = processor()
+        processor.submit(1)
+
+        finishers[0]()
+
+        assertFalse(processor.isRunning)
+        processor.submit(2)
+        assertEquals(listOf(1, 2), started)
+    }
+
+    @Test
+    fun latency_isMeasuredFromStartToDone() {
+        val processor = processor()
+        processor.submit(1)
+        nowMillis += 100
+        finishers[0]()
+
+        assertEquals(100L, processor.lastLatencyMillis)
+        assertEquals(100f, processor.averageLatencyMillis, 0f)
+
+        processor.submit(2)
+        nowMillis += 200
+        finishers[1]()
+
+        assertEquals(200L, processor.lastLatencyMillis)
+        assertEquals(110f, processor.averageLatencyMillis, 0.001f)
+    }
+
+    @Test
+    fun clear_dropsThePendingFrame() {
+        val processor = processor()
+        processor.submit(1)
+        processor.submit(2)
+
+        processor.clear()
+        finishers[0]()
+
+        assertEquals(listOf(1), started)
+        assertFalse(processor.isRunning)
+    }
+
+    @Test
+    fun synchronousProcessing_handlesEveryFrame() {
+        val processed = mutableListOf<Int>()
+        val processor = LatestFrameProcessor<Int>({ nowMillis }) { frame, done ->
+            processed.add(frame)
+            done()
+        }
+
+        for (frame in 1..5) processor.submit(frame)
+
+        assertEquals(listOf(1, 2, 3, 4, 5), processed)
+        assertEquals(0L, processor.droppedFrames.get())
+        assertFalse(processor.isRunning)
+    }
+
+    @Test
+    fun concurrentSubmits_neverRunTwoFramesAtOnce() {
+        val submitters = Executors.newFixedThreadPool(4)
+        val completer = Executors.newSingleThreadExecutor()
+        var inFlight = 0
+        var maxInFlight = 0
+        val lock = Any()
+        val processor = LatestFrameProcessor<Int> { _, done ->
+            synchronized(lock) { maxInFlight = maxOf(maxInFlight, ++inFlight) }
+            completer.execute {
+                synchronized(lock) { inFlight-- }
+                done()
+            }
+        }
+
+        val submitted = CountDownLatch(4)
+        repeat(4) {
+            submitters.execute {
+                repeat(1000) { processor.submit(it) }
+                submitted.countDown()
+            }
+        }
+        assertTrue(submitted.await(5, TimeUnit.SECONDS))
+        // The last pending frame is always processed, so every frame ends up processed or dropped
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (processor.processedFrames.get() + processor.droppedFrames.get() < 4000 && System.nanoTime() < deadline) {
+            Thread.sleep(1)
+        }
+        submitters.shutdown()
+        completer.shutdown()
+
+        assertEquals(1, synchronized(lock) { maxInFlight })
+        assertEquals(4000L, processor.submittedFrames.get())
+        assertEquals(4000L, processor.processedFrames.get() + processor.droppedFrames.get())
+    }
+}
@@ -0,0 +1,98 @@
+package com.google.ar.core.examples.java.ml
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Drives [AnalysisScheduler] with a synthetic clock.
+ */
+class AnalysisSchedulerTest {
+
+    /** Runs an analysis from [startMillis] taking [latencyMillis]. */
+    private fun AnalysisScheduler.run(startMillis: Long, latencyMillis: Long) {
+        assertTrue(tryStart(startMillis))
+        finish(startMillis + latencyMillis)
+    }
+
+    @Test
+    fun firstAnalysis_isDueImmediately() {
+        val scheduler = AnalysisScheduler()
+
+        assertTrue(scheduler.isDue(0))
+        assertEquals(100L, scheduler.intervalMillis)
+    }
+
+    @Test
+    fun interval_followsTheAnalyzerLatency() {
+        val fast = AnalysisScheduler(minIntervalMillis = 100, maxIntervalMillis = 2000, idleRatio = 0.5f)
+        fast.run(0, 50)
+        // Half of 50 ms is below the minimum
+        assertEquals(100L, fast.intervalMillis)
+
+        val slow = AnalysisScheduler(minIntervalMillis = 100, maxIntervalMillis = 2000, idleRatio = 0.5f)
+        slow.run(0, 1200)
+        assertEquals(600L, slow.intervalMillis)
+        assertFalse(slow.isDue(1200 + 599))
+        assertTrue(slow.isDue(1200 + 600))
+
+        val slowest = AnalysisScheduler(minIntervalMillis = 100, maxIntervalMillis = 2000, idleRatio = 0.5f)
+        slowest.run(0, 10_000)
+        assertEquals(2000L, slowest.intervalMillis)
+    }
+
+    @Test
+    fun throttle_lengthensTheInterval() {
+        val scheduler = AnalysisScheduler(minIntervalMillis = 100, maxIntervalMillis = 2000)
+        scheduler.run(0, 200)
+
+        scheduler.throttleMillis = 3000
+        assertEquals(3000L, scheduler.intervalMillis)
+        assertFalse(scheduler.isDue(200 + 2999))
+        assertTrue(scheduler.isDue(200 + 3000))
+
+        scheduler.throttleMillis = 0
+        assertEquals(100L, scheduler.intervalMillis)
+    }
+
+    @Test
+    fun busy_allowsASingleAnalysisInFlight() {
+        val scheduler = AnalysisScheduler()
+
+        assertTrue(scheduler.tryStart(0))
+        assertTrue(scheduler.isBusy)
+        assertFalse(scheduler.tryStart(10))
+        assertFalse(scheduler.isDue(10_000))
+
+        scheduler.finish(100)
+        assertFalse(scheduler.isBusy)
+        assertTrue(scheduler.tryStart(150))
+    }
+
+    @Test
+    fun cancel_backsOffForTheMinimumInterval() {
+        val scheduler = AnalysisScheduler(minIntervalMillis = 100)
+
+        assertTrue(scheduler.tryStart(1000))
+        scheduler.cancel(1000)
+
+        assertFalse(scheduler.isBusy)
+        assertFalse(scheduler.isDue(1001))
+        assertFalse(scheduler.isDue(1099))
+        assertTrue(scheduler.isDue(1100))
+        // A cancelled analysis records no latency
+        assertEquals(0f, scheduler.averageLatencyMillis, 0f)
+    }
+
+    @Test
+    fun analysisFps_followsTheStartPeriod() {
+        val scheduler = AnalysisScheduler()
+        assertEquals(0f, scheduler.analysisFps, 0f)
+
+        scheduler.run(0, 100)
+        scheduler.run(250, 100)
+
+        assertEquals(4f, scheduler.analysisFps, 0.001f)
+    }
+}
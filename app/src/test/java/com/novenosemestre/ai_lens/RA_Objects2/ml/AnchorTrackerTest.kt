@@ -0,0 +1,163 @@
+package com.google.ar.core.examples.java.ml
+
+import com.novenosemestre.ai_lens.LabelRegistry
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Feeds [AnchorTracker] detections at synthetic world positions.
+ */
+class AnchorTrackerTest {
+
+    /** Stands in for an ARCore anchor, whose position ARCore may refine. */
+    private class FakeAnchor(val id: Int, var x: Float, var y: Float, var z: Float) {
+        var detached = false
+    }
+
+    private val labels = LabelRegistry()
+
+    private var nextId = 0
+
+    private fun tracker(confidentThreshold: Float = 0.8f) = AnchorTracker<FakeAnchor>(
+        confidentThreshold = confidentThreshold,
+        position = { anchor, out ->
+            out[0] = anchor.x
+            out[1] = anchor.y
+            out[2] = anchor.z
+        },
+        release = { it.detached = true }
+    )
+
+    /** Records a detection, creating an anchor at its position if it matches no track. */
+    private fun AnchorTracker<FakeAnchor>.detect(label: String, confidence: Float, x: Float, y: Float, z: Float) =
+        observe(labels.id(label), confidence, x, y, z) { FakeAnchor(nextId++, x, y, z) }
+
+    @Test
+    fun repeatedDetections_reuseTheAnchor() {
+        val tracker = tracker()
+
+        val first = tracker.detect("Cup", 0.6f, 1f, 0f, -2f)
+        // The same object seen again from another viewpoint, a few centimeters away
+        val second = tracker.detect("Cup", 0.9f, 1.05f, 0.02f, -1.97f)
+
+        assertSame(first, second)
+        assertEquals(1, tracker.size)
+        assertEquals(1, nextId)
+        assertEquals(2, second!!.detections)
+        // 0.6 + 0.3 * (0.9 - 0.6)
+        assertEquals(0.69f, second.confidence, 1e-5f)
+    }
+
+    @Test
+    fun distantDetections_createTracks() {
+        val tracker = tracker()
+
+        tracker.detect("Cup", 0.8f, 0f, 0f, -1f)
+        tracker.detect("Cup", 0.8f, 0.5f, 0f, -1f)
+        tracker.detect("Plant", 0.8f, 0f, 1f, -1f)
+
+        assertEquals(3, tracker.size)
+        assertEquals(3L, tracker.createdTracks)
+    }
+
+    @Test
+    fun refinedAnchor_isMatchedAtItsCurrentPosition() {
+        val tracker = tracker()
+        val track = tracker.detect("Cup", 0.8f, 0f, 0f, -1f)!!
+
+        // ARCore moves the anchor as it learns the scene
+        track.anchor.x = 0.5f
+
+        assertSame(track, tracker.detect("Cup", 0.8f, 0.52f, 0f, -1f))
+        assertNotSame(track, tracker.detect("Cup", 0.8f, 0f, 0f, -1f))
+        assertEquals(2, tracker.size)
+    }
+
+    @Test
+    fun contradictingDetections_relabelTheTrack() {
+        val tracker = tracker()
+        val track = tracker.detect("Bottle", 0.5f, 0f, 0f, -1f)!!
+
+        // A contradiction only lowers the confidence: 0.5 * 0.7
+        tracker.detect("Vase", 0.2f, 0.01f, 0f, -1f)
+        assertEquals(labels.id("Bottle"), track.labelId)
+        assertEquals(0.35f, track.confidence, 1e-5f)
+
+        // The second one in a row, stronger than the lowered confidence, relabels the track
+        tracker.detect("Vase", 0.7f, 0f, 0.01f, -1f)
+        assertEquals(labels.id("Vase"), track.labelId)
+        assertEquals(0.7f, track.confidence, 1e-5f)
+        assertEquals(1, tracker.size)
+    }
+
+    @Test
+    fun singleContradiction_keepsTheLabel() {
+        val tracker = tracker()
+        val track = tracker.detect("Bottle", 0.5f, 0f, 0f, -1f)!!
+
+        tracker.detect("Vase", 0.99f, 0f, 0f, -1f)
+
+        assertEquals(labels.id("Bottle"), track.labelId)
+        assertEquals(0.35f, track.confidence, 1e-5f)
+    }
+
+    @Test
+    fun interruptedContradictions_keepTheLabel() {
+        val tracker = tracker()
+        val track = tracker.detect("Bottle", 0.5f, 0f, 0f, -1f)!!
+
+        // An agreeing detection in between
+        tracker.detect("Vase", 0.9f, 0f, 0f, -1f)
+        tracker.detect("Bottle", 0.5f, 0f, 0f, -1f)
+        tracker.detect("Vase", 0.9f, 0f, 0f, -1f)
+        assertEquals(labels.id("Bottle"), track.labelId)
+
+        // Contradictions that disagree with each other
+        tracker.detect("Jar", 0.9f, 0f, 0f, -1f)
+        tracker.detect("Vase", 0.9f, 0f, 0f, -1f)
+        assertEquals(labels.id("Bottle"), track.labelId)
+    }
+
+    @Test
+    fun sameLabel_isPreferredOverACloserTrack() {
+        val tracker = tracker()
+        val cup = tracker.detect("Cup", 0.8f, 0.1f, 0f, -1f)
+        tracker.detect("Saucer", 0.8f, 0f, 0f, -1f)
+
+        assertSame(cup, tracker.detect("Cup", 0.8f, 0.02f, 0f, -1f))
+    }
+
+    @Test
+    fun confidentTracks_needEnoughAgreeingDetections() {
+        val tracker = tracker(confidentThreshold = 0.8f)
+        tracker.detect("Chair", 0.7f, 0f, 0f, -2f)
+        assertTrue(tracker.confidentTracks().isEmpty())
+
+        repeat(5) { tracker.detect("Chair", 0.95f, 0f, 0f, -2f) }
+
+        assertEquals(listOf("Chair"), tracker.confidentTracks().map { labels.label(it.labelId) })
+    }
+
+    @Test
+    fun failedAnchor_createsNoTrack() {
+        val tracker = tracker()
+
+        assertNull(tracker.observe(labels.id("Cup"), 0.8f, 0f, 0f, -1f) { null })
+        assertEquals(0, tracker.size)
+    }
+
+    @Test
+    fun clear_releasesTheAnchors() {
+        val tracker = tracker()
+        val anchors = listOf(0f, 1f).map { x -> tracker.detect("Cup", 0.8f, x, 0f, -1f)!!.anchor }
+
+        tracker.clear()
+
+        assertEquals(0, tracker.size)
+        assertTrue(anchors.all { it.detached })
+    }
+}
@@ -0,0 +1,61 @@
+package com.google.ar.core.examples.java.ml
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Feeds [ColdStartStats] a synthetic startup timeline.
+ */
+class ColdStartStatsTest {
+
+    @Test
+    fun firstAnalysis_isKeptOutOfTheSteadyState() {
+        val stats = ColdStartStats(startMillis = 1_000)
+
+        assertTrue(stats.onAnalysis(2_000, 2_900, detections = 2))
+        assertFalse(stats.onAnalysis(3_000, 3_100, detections = 2))
+        assertFalse(stats.onAnalysis(4_000, 4_100, detections = 1))
+
+        assertEquals(900L, stats.firstAnalysisMillis)
+        assertEquals(100f, stats.steadyStateMillis, 1e-3f)
+        assertEquals(3, stats.analyses)
+    }
+
+    @Test
+    fun timeToFirstDetection_waitsForAnAnalysisWithDetections() {
+        val stats = ColdStartStats(startMillis = 1_000)
+
+        assertTrue(stats.onAnalysis(2_000, 2_500, detections = 0))
+        assertEquals(-1L, stats.timeToFirstDetectionMillis)
+        assertFalse(stats.onAnalysis(3_000, 3_200, detections = 0))
+
+        assertTrue(stats.onAnalysis(4_000, 4_200, detections = 3))
+        assertEquals(3_200L, stats.timeToFirstDetectionMillis)
+
+        // Later detections don't move it
+        assertFalse(stats.onAnalysis(5_000, 5_200, detections = 3))
+        assertEquals(3_200L, stats.timeToFirstDetectionMillis)
+    }
+
+    @Test
+    fun warmUp_isComparedWithTheFirstAnalysis() {
+        val early = ColdStartStats(startMillis = 1_000)
+        early.onWarmUpTask("ML Kit", 600)
+        early.onWarmUpTask("Cloud Vision", 1_400)
+        early.onWarmUpFinished(2_500)
+        early.onAnalysis(3_000, 3_100, detections = 1)
+
+        assertEquals(1_500L, early.warmUpMillis)
+        assertTrue(early.warmBeforeFirstAnalysis)
+        assertEquals(mapOf("ML Kit" to 600L, "Cloud Vision" to 1_400L), early.warmUpTasks())
+
+        // A scan started before the warm-up was done
+        val late = ColdStartStats(startMillis = 1_000)
+        late.onAnalysis(1_200, 2_000, detections = 1)
+        late.onWarmUpFinished(2_500)
+
+        assertFalse(late.warmBeforeFirstAnalysis)
+    }
+}
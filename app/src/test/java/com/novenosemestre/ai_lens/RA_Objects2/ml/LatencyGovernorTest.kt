@@ -0,0 +1,129 @@
+package com.google.ar.core.examples.java.ml
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Drives [LatencyGovernor] with a synthetic clock.
+ */
+class LatencyGovernorTest {
+
+    private var nowMillis = 0L
+
+    /** Renders frames [frameMillis] apart for [durationMillis]. */
+    private fun LatencyGovernor.render(frameMillis: Long, durationMillis: Long) {
+        val end = nowMillis + durationMillis
+        while (nowMillis < end) {
+            nowMillis += frameMillis
+            onFrame(nowMillis)
+        }
+    }
+
+    @Test
+    fun framesOnTime_keepTheBestLevel() {
+        val governor = LatencyGovernor()
+
+        governor.render(33, 10_000)
+
+        assertEquals(0, governor.levelIndex)
+        assertEquals(0L, governor.levelChanges)
+        assertTrue(governor.level.cloudAllowed)
+        assertEquals(640, governor.level.maxDimension)
+    }
+
+    @Test
+    fun slowFrames_degradeOneLevelAtATime() {
+        val governor = LatencyGovernor(degradeAfterMillis = 500)
+        governor.render(33, 1_000)
+
+        // 20 fps, the frame time average crosses the budget within a few frames
+        governor.render(50, 700)
+        assertEquals(1, governor.levelIndex)
+
+        governor.render(50, 500)
+        assertEquals(2, governor.levelIndex)
+
+        governor.render(50, 10_000)
+        assertEquals(LatencyGovernor.DEFAULT_LEVELS.lastIndex, governor.levelIndex)
+        assertFalse(governor.level.cloudAllowed)
+        assertEquals(320, governor.level.maxDimension)
+    }
+
+    @Test
+    fun fastFrames_recoverSlowerThanTheyDegrade() {
+        val governor = LatencyGovernor(degradeAfterMillis = 500, recoverAfterMillis = 3000)
+        governor.render(33, 1_000)
+        governor.render(50, 10_000)
+        val degraded = governor.levelIndex
+
+        // Frames are on time again, but the level holds until they stayed so long enough
+        governor.render(33, 2_500)
+        assertEquals(degraded, governor.levelIndex)
+
+        governor.render(33, 3_000)
+        assertEquals(degraded - 1, governor.levelIndex)
+
+        governor.render(33, 60_000)
+        assertEquals(0, governor.levelIndex)
+    }
+
+    @Test
+    fun framesCloseToTheLimit_holdTheLevel() {
+        // Budget is 33.3ms, over budget above 38.3ms, within budget below 35.8ms
+        val governor = LatencyGovernor(targetFps = 30f, tolerance = 0.15f)
+        governor.render(33, 1_000)
+        governor.render(50, 10_000)
+        val degraded = governor.levelIndex
+
+        governor.render(37, 60_000)
+
+        assertEquals(degraded, governor.levelIndex)
+    }
+
+    @Test
+    fun pauses_areNotSlowFrames() {
+        val governor = LatencyGovernor()
+        governor.render(33, 1_000)
+
+        // The activity is paused for a few seconds
+        governor.render(5_000, 20_000)
+        governor.render(33, 1_000)
+
+        assertEquals(0, governor.levelIndex)
+        assertEquals(33f, governor.averageFrameMillis, 1f)
+    }
+
+    @Test
+    fun interval_followsTheAnalyzerLatencyAndTheDutyCycle() {
+        val governor = LatencyGovernor(
+            levels = listOf(
+                LatencyGovernor.Level(dutyCycle = 1f, maxDimension = 640, cloudAllowed = true),
+                LatencyGovernor.Level(dutyCycle = 0.25f, maxDimension = 320, cloudAllowed = false)
+            )
+        )
+        governor.onAnalysis(200)
+
+        // Analyses may run back to back
+        assertEquals(0L, governor.intervalMillis)
+
+        governor.render(33, 1_000)
+        governor.render(50, 10_000)
+
+        // In flight a quarter of the time: 200ms of analysis, then 600ms of pause
+        assertEquals(1, governor.levelIndex)
+        assertEquals(600L, governor.intervalMillis)
+    }
+
+    @Test
+    fun interval_isCapped() {
+        val governor = LatencyGovernor(
+            levels = listOf(LatencyGovernor.Level(dutyCycle = 0.01f, maxDimension = 320, cloudAllowed = false))
+        )
+
+        governor.onAnalysis(1_000)
+
+        assertEquals(LatencyGovernor.MAX_INTERVAL_MILLIS, governor.intervalMillis)
+    }
+}
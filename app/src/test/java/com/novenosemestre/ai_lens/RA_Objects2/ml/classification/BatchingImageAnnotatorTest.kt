@@ -0,0 +1,125 @@
+package com.google.ar.core.examples.java.ml.classification
+
+import com.google.cloud.vision.v1.AnnotateImageRequest
+import com.google.cloud.vision.v1.AnnotateImageResponse
+import com.google.cloud.vision.v1.BatchAnnotateImagesResponse
+import com.google.cloud.vision.v1.Image
+import com.google.cloud.vision.v1.LocalizedObjectAnnotation
+import com.google.protobuf.ByteString
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.IOException
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+
+/**
+ * Runs [BatchingImageAnnotator] in front of a stand-in for Cloud Vision that names each image after its content.
+ */
+class BatchingImageAnnotatorTest {
+
+    private class StandInVision : ImageAnnotator {
+        val calls = CopyOnWriteArrayList<List<AnnotateImageRequest>>()
+
+        override fun batchAnnotate(requests: List<AnnotateImageRequest>): BatchAnnotateImagesResponse {
+            calls.add(requests)
+            val responses = requests.map { request ->
+                AnnotateImageResponse.newBuilder()
+                    .addLocalizedObjectAnnotations(
+                        LocalizedObjectAnnotation.newBuilder().setName(request.image.content.toStringUtf8())
+                    )
+                    .build()
+            }
+            return BatchAnnotateImagesResponse.newBuilder().addAllResponses(responses).build()
+        }
+    }
+
+    private fun request(name: String) = AnnotateImageRequest.newBuilder()
+        .setImage(Image.newBuilder().setContent(ByteString.copyFromUtf8(name)))
+        .build()
+
+    private val AnnotateImageResponse.name: String
+        get() = localizedObjectAnnotationsList.single().name
+
+    @Test
+    fun requestsWithinTheWindow_shareOneCall() {
+        val vision = StandInVision()
+        BatchingImageAnnotator(vision, windowMillis = 200).use { batcher ->
+            val responses = listOf("cup", "shoe", "lamp").map { name -> batcher.submit(null) { request(name) } }
+
+            assertEquals(listOf("cup", "shoe", "lamp"), responses.map { it.get(5, TimeUnit.SECONDS).name })
+            assertEquals(1, vision.calls.size)
+            assertEquals(3, vision.calls.single().size)
+        }
+    }
+
+    @Test
+    fun sameKeyInFlight_isCoalesced() {
+        val vision = StandInVision()
+        BatchingImageAnnotator(vision, windowMillis = 200).use { batcher ->
+            var built = 0
+            val first = batcher.submit(42L) { built++; request("cup") }
+            val second = batcher.submit(42L) { built++; request("cup") }
+
+            assertSame(first, second)
+            assertEquals("cup", second.get(5, TimeUnit.SECONDS).name)
+            assertEquals(1, built)
+            assertEquals(1, vision.calls.single().size)
+            assertEquals(1L, batcher.coalescedRequests.get())
+        }
+    }
+
+    @Test
+    fun fullBatch_isSentWithoutWaitingForTheWindow() {
+        val vision = StandInVision()
+        BatchingImageAnnotator(vision, windowMillis = 60_000, maxBatchSize = 4).use { batcher ->
+            val responses = List(4) { batcher.submit(null) { request("item$it") } }
+
+            assertEquals("item3", responses.last().get(5, TimeUnit.SECONDS).name)
+            assertEquals(1, vision.calls.size)
+        }
+    }
+
+    @Test
+    fun concurrentCallers_areBatchedAndGetTheirOwnResponses() {
+        val vision = StandInVision()
+        BatchingImageAnnotator(vision, windowMillis = 300).use { batcher ->
+            val start = CountDownLatch(1)
+            val names = List(8) { "object$it" }
+            val results = CopyOnWriteArrayList<Pair<String, String>>()
+            val threads = names.map { name ->
+                Thread {
+                    start.await()
+                    val response = batcher.batchAnnotate(listOf(request(name))).responsesList.single()
+                    results.add(name to response.name)
+                }.apply { start() }
+            }
+            start.countDown()
+            threads.forEach { it.join(5_000) }
+
+            assertEquals(8, results.size)
+            assertTrue(results.all { (asked, answered) -> asked == answered })
+            assertTrue("Expected fewer calls than callers, got ${vision.calls.size}", vision.calls.size < 8)
+        }
+    }
+
+    @Test
+    fun failedCall_failsEveryRequestOfTheBatch() {
+        BatchingImageAnnotator({ throw IOException("unavailable") }, windowMillis = 100).use { batcher ->
+            val responses = listOf("cup", "shoe").map { name -> batcher.submit(name) { request(name) } }
+
+            for (response in responses) {
+                try {
+                    response.get(5, TimeUnit.SECONDS)
+                    fail("Expected the call to fail")
+                } catch (e: ExecutionException) {
+                    assertTrue(e.cause is IOException)
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.google.ar.core.examples.java.ml.classification
+
+import com.google.cloud.vision.v1.AnnotateImageRequest
+import com.google.cloud.vision.v1.AnnotateImageResponse
+import com.google.cloud.vision.v1.BatchAnnotateImagesResponse
+import com.google.cloud.vision.v1.EntityAnnotation
+import com.google.cloud.vision.v1.LocalizedObjectAnnotation
+import com.google.rpc.Status
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.IOException
+
+/**
+ * Runs [CloudEscalation] against a local stand-in for Cloud Vision.
+ */
+class CloudEscalationTest {
+
+    /**
+     * Answers like Cloud Vision: each crop is "encoded" as its local label (or "?"), and the stand-in looks the
+     * answer up by that content.
+     */
+    private class StandInVision(private val answers: Map<String, AnnotateImageResponse>) : ImageAnnotator {
+        val calls = mutableListOf<List<AnnotateImageRequest>>()
+
+        override fun batchAnnotate(requests: List<AnnotateImageRequest>): BatchAnnotateImagesResponse {
+            calls.add(requests)
+            val responses = requests.map { answers[it.image.content.toStringUtf8()] ?: AnnotateImageResponse.getDefaultInstance() }
+            return BatchAnnotateImagesResponse.newBuilder().addAllResponses(responses).build()
+        }
+    }
+
+    private fun encode(detection: LocalDetection) = (detection.label ?: "?${detection.left}").toByteArray()
+
+    private fun objectAnswer(name: String, score: Float) = AnnotateImageResponse.newBuilder()
+        .addLocalizedObjectAnnotations(LocalizedObjectAnnotation.newBuilder().setName(name).setScore(score))
+        .build()
+
+    private fun labelAnswer(description: String, score: Float) = AnnotateImageResponse.newBuilder()
+        .addLabelAnnotations(EntityAnnotation.newBuilder().setDescription(description).setScore(score))
+        .build()
+
+    private val mug = LocalDetection(0, 0, 10, 10, "Home good", 0.9f)
+    private val unlabeled = LocalDetection(20, 20, 40, 60, null, 0f)
+    private val unsure = LocalDetection(100, 100, 200, 120, "Fashion good", 0.3f)
+
+    @Test
+    fun confidentObjects_stayOnDevice() {
+        val vision = StandInVision(emptyMap())
+        val escalation = CloudEscalation(vision)
+
+        val results = escalation.resolve(listOf(mug), ::encode)
+
+        assertEquals(listOf(DetectedObjectResult(0.9f, "Home good", 5 to 5)), results)
+        assertEquals(0, vision.calls.size)
+        assertEquals(1L, escalation.localObjects.get())
+    }
+
+    @Test
+    fun uncertainObjects_areEscalatedInOneCallAndMerged() {
+        val vision = StandInVision(
+            mapOf(
+                "?20" to objectAnswer("Coffee cup", 0.8f),
+                "Fashion good" to labelAnswer("Sneaker", 0.7f)
+            )
+        )
+        val escalation = CloudEscalation(vision)
+
+        val results = escalation.resolve(listOf(mug, unlabeled, unsure), ::encode)
+
+        assertEquals(
+            listOf(
+                DetectedObjectResult(0.9f, "Home good", 5 to 5),
+                DetectedObjectResult(0.8f, "Coffee cup", 30 to 40),
+                DetectedObjectResult(0.7f, "Sneaker", 150 to 110)
+            ),
+            results
+        )
+        assertEquals(1, vision.calls.size)
+        assertEquals(2, vision.calls.single().size)
+        assertEquals(2L, escalation.escalatedObjects.get())
+    }
+
+    @Test
+    fun unansweredObjects_keepTheirLocalLabelOrAreDropped() {
+        val error = AnnotateImageResponse.newBuilder().setError(Status.newBuilder().setCode(8)).build()
+        val vision = StandInVision(mapOf("Fashion good" to error))
+        val escalation = CloudEscalation(vision)
+
+        val results = escalation.resolve(listOf(unlabeled, unsure), ::encode)
+
+        assertEquals(listOf(DetectedObjectResult(0.3f, "Fashion good", 150 to 110)), results)
+    }
+
+    @Test
+    fun failedCall_fallsBackToLocalLabels() {
+        val escalation = CloudEscalation({ throw IOException("unavailable") })
+
+        val results = escalation.resolve(listOf(mug, unlabeled, unsure), ::encode)
+
+        assertEquals(listOf("Home good", "Fashion good"), results.map { it.label })
+        assertEquals(1L, escalation.failedCalls.get())
+    }
+
+    @Test
+    fun escalations_areCappedToOneCall() {
+        val vision = StandInVision(emptyMap())
+        val escalation = CloudEscalation(vision)
+        val detections = List(20) { LocalDetection(it, 0, it + 1, 1, null, 0f) }
+
+        escalation.resolve(detections, ::encode)
+
+        assertEquals(ImageAnnotator.MAX_IMAGES_PER_CALL, vision.calls.single().size)
+    }
+
+    @Test
+    fun knownObjects_skipTheCloud() {
+        val vision = StandInVision(mapOf("?20" to objectAnswer("Coffee cup", 0.8f)))
+        val escalation = CloudEscalation(vision)
+
+        val results = escalation.resolve(listOf(mug, unlabeled, unsure), ::encode) { detection ->
+            if (detection === unsure) "Sneaker" to 0.9f else null
+        }
+
+        assertEquals(listOf("Home good", "Coffee cup", "Sneaker"), results.map { it.label })
+        assertEquals(listOf("?20"), vision.calls.single().map { it.image.content.toStringUtf8() })
+        assertEquals(1L, escalation.knownObjects.get())
+        assertEquals(1L, escalation.localObjects.get())
+    }
+}
@@ -0,0 +1,63 @@
+package com.google.ar.core.examples.java.ml.classification.utils
+
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.addTo
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.calculateAverage
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.rotateCoordinates
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.toAbsoluteCoordinates
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.toImageCoordinates
+import com.google.cloud.vision.v1.NormalizedVertex
+import com.novenosemestre.ai_lens.DetectionBatch
+import com.novenosemestre.ai_lens.TensorTransform
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Checks that the in-place [DetectionBatch] transforms agree with the Pair based ones.
+ */
+class VertexUtilsTest {
+
+    private val polygon = listOf(
+        NormalizedVertex.newBuilder().setX(0.21f).setY(0.34f).build(),
+        NormalizedVertex.newBuilder().setX(0.58f).setY(0.34f).build(),
+        NormalizedVertex.newBuilder().setX(0.58f).setY(0.71f).build(),
+        NormalizedVertex.newBuilder().setX(0.21f).setY(0.71f).build(),
+    )
+
+    private fun DetectionBatch.center(index: Int) = centerX[index] to centerY[index]
+
+    @Test
+    fun polygonInBatch_matchesThePairPath() {
+        for (rotation in listOf(0, 90, 180, 270)) {
+            val batch = DetectionBatch()
+            polygon.addTo(batch, 1080, 1920, 0.9f, batch.classId("Cup"))
+            batch.rotateCoordinates(1080, 1920, rotation)
+
+            val expected = polygon.calculateAverage().toAbsoluteCoordinates(1080, 1920)
+                .rotateCoordinates(1080, 1920, rotation)
+            assertEquals("rotation $rotation", expected, batch.center(0))
+        }
+    }
+
+    @Test
+    fun rotatedBoxes_stayOrdered() {
+        val batch = DetectionBatch()
+        batch.add(100, 200, 300, 600, 0.9f, batch.classId("Cup"))
+
+        batch.rotateCoordinates(1080, 1920, 90)
+
+        assertEquals(listOf(200, 780, 600, 980), listOf(batch.left[0], batch.top[0], batch.right[0], batch.bottom[0]))
+    }
+
+    @Test
+    fun tensorBatch_matchesThePairPath() {
+        for (rotation in listOf(0, 90, 180, 270)) {
+            val transform = TensorTransform(rotation, 1080, 1920, 300, 300)
+            val batch = DetectionBatch()
+            batch.add(40, 60, 120, 180, 0.9f, batch.classId("Cup"))
+
+            batch.toImageCoordinates(transform)
+
+            assertEquals("rotation $rotation", (80 to 120).toImageCoordinates(transform), batch.center(0))
+        }
+    }
+}
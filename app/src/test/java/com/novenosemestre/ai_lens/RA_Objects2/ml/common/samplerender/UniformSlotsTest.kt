@@ -0,0 +1,111 @@
+package com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Checks what [UniformSlots] uploads against an uploader that records the calls instead of issuing them.
+ */
+class UniformSlotsTest {
+
+    private class RecordingUploader : UniformSlots.Uploader<String> {
+        val calls = ArrayList<String>()
+        var lastFloats = FloatArray(0)
+
+        override fun uploadInts(location: Int, values: IntArray, length: Int) {
+            calls.add("ints $location ${values.take(length)}")
+        }
+
+        override fun uploadFloats(type: UniformSlots.Type, location: Int, values: FloatArray, length: Int) {
+            calls.add("$type $location")
+            lastFloats = values.copyOf(length)
+        }
+
+        override fun bindTexture(location: Int, textureUnit: Int, texture: String, unitChanged: Boolean) {
+            calls.add("texture $location unit $textureUnit $texture${if (unitChanged) " unit changed" else ""}")
+        }
+    }
+
+    private val uploader = RecordingUploader()
+
+    @Test
+    fun unchangedValues_areUploadedOnce() {
+        val slots = UniformSlots<String>()
+        val matrix = FloatArray(16) { it.toFloat() }
+
+        slots.setFloats(4, UniformSlots.Type.MAT4, matrix)
+        assertEquals(1, slots.upload(uploader))
+        slots.setFloats(4, UniformSlots.Type.MAT4, matrix.clone())
+        assertEquals(0, slots.upload(uploader))
+
+        assertEquals(listOf("MAT4 4"), uploader.calls)
+    }
+
+    @Test
+    fun values_areCopiedIntoTheSlot() {
+        val slots = UniformSlots<String>()
+        val vector = floatArrayOf(1f, 2f, 3f)
+
+        slots.setFloats(0, UniformSlots.Type.VEC3, vector)
+        // Changing the caller's array after the set doesn't change the uniform
+        vector[0] = 9f
+        slots.upload(uploader)
+
+        assertArrayEquals(floatArrayOf(1f, 2f, 3f), uploader.lastFloats, 0f)
+    }
+
+    @Test
+    fun changedValues_areUploadedAgain() {
+        val slots = UniformSlots<String>()
+        slots.setFloat(1, 0.5f)
+        slots.setInt(2, 3)
+        slots.upload(uploader)
+
+        slots.setFloat(1, 0.25f)
+        slots.setInt(2, 3)
+
+        assertEquals(1, slots.upload(uploader))
+        assertEquals(listOf("FLOAT 1", "ints 2 [3]", "FLOAT 1"), uploader.calls)
+        assertEquals(2, slots.size())
+    }
+
+    @Test
+    fun textures_areBoundOnEveryUpload() {
+        val slots = UniformSlots<String>()
+        slots.setTexture(7, "page0")
+        slots.setTexture(8, "other")
+        slots.upload(uploader)
+
+        // Replacing the texture reuses the texture unit
+        slots.setTexture(7, "page1")
+        slots.upload(uploader)
+
+        assertEquals(
+            listOf(
+                "texture 7 unit 0 page0 unit changed",
+                "texture 8 unit 1 other unit changed",
+                "texture 7 unit 0 page1",
+                "texture 8 unit 1 other",
+            ),
+            uploader.calls
+        )
+    }
+
+    @Test
+    fun arrayOfAnotherLength_replacesTheValues() {
+        val slots = UniformSlots<String>()
+        slots.setFloats(0, UniformSlots.Type.VEC2, floatArrayOf(1f, 2f, 3f, 4f))
+        slots.upload(uploader)
+
+        slots.setFloats(0, UniformSlots.Type.VEC2, floatArrayOf(1f, 2f))
+        slots.upload(uploader)
+
+        assertArrayEquals(floatArrayOf(1f, 2f), uploader.lastFloats, 0f)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun intType_isNotAFloatType() {
+        UniformSlots<String>().setFloats(0, UniformSlots.Type.INT, floatArrayOf(1f))
+    }
+}
@@ -0,0 +1,87 @@
+package com.google.ar.core.examples.java.ml.render
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.nio.FloatBuffer
+
+class GlyphQuadsTest {
+
+    // 'a' is half an em wide with a quad a bit larger than its advance, 'b' is a space
+    private val font = SdfFont(
+        ascent = 0.75f,
+        descent = 0.25f,
+        firstChar = 'a',
+        glyphs = arrayOf(SdfGlyph(0.5f, -0.1f, -0.1f, 0.6f, 0.6f, 0.25f, 0f, 0.5f, 0.125f), SdfGlyph(0.25f))
+    )
+
+    private class Draw(val origins: FloatArray, val rects: FloatArray, val regions: FloatArray, val count: Int)
+
+    private val draws = ArrayList<Draw>()
+    private val drawer = GlyphQuads.Drawer { origins, rects, regions, count ->
+        draws.add(Draw(origins.toArray(), rects.toArray(), regions.toArray(), count))
+    }
+
+    private fun FloatBuffer.toArray() = FloatArray(remaining()).also { duplicate().get(it) }
+
+    @Test
+    fun text_isCenteredOnItsOrigin() {
+        val quads = GlyphQuads()
+
+        assertEquals(2, quads.addText(font, "aa", 1f, 2f, 3f, emSize = 2f))
+        quads.draw(drawer)
+
+        val draw = draws.single()
+        assertEquals(2, draw.count)
+        assertArrayEquals(floatArrayOf(1f, 2f, 3f, 1f, 2f, 3f), draw.origins, 0f)
+        // The line is 1 em wide, and its baseline 0.25 em below the middle of the font height
+        assertArrayEquals(
+            floatArrayOf(
+                (-0.5f - 0.1f) * 2, (-0.25f - 0.1f) * 2, (-0.5f + 0.6f) * 2, (-0.25f + 0.6f) * 2,
+                (0f - 0.1f) * 2, (-0.25f - 0.1f) * 2, (0f + 0.6f) * 2, (-0.25f + 0.6f) * 2,
+            ),
+            draw.rects,
+            1e-6f
+        )
+        assertArrayEquals(floatArrayOf(0.25f, 0f, 0.5f, 0.125f, 0.25f, 0f, 0.5f, 0.125f), draw.regions, 0f)
+    }
+
+    @Test
+    fun blankAndMissingGlyphs_takeNoQuad() {
+        val quads = GlyphQuads()
+
+        assertEquals(1, quads.addText(font, "bza", 0f, 0f, 0f, emSize = 1f))
+        quads.draw(drawer)
+
+        // The space moves the pen, the missing 'z' doesn't
+        val rects = draws.single().rects
+        assertEquals(-0.375f + 0.25f - 0.1f, rects[0], 1e-6f)
+    }
+
+    @Test
+    fun severalLabels_takeOneDrawCall() {
+        val quads = GlyphQuads(initialCapacity = 2)
+        repeat(10) { quads.addText(font, "aaa", it.toFloat(), 0f, 0f, emSize = 1f) }
+
+        assertEquals(1, quads.draw(drawer))
+
+        assertEquals(30, draws.single().count)
+        assertEquals(30 * GlyphQuads.ORIGIN_SIZE, draws.single().origins.size)
+        assertEquals(9f, draws.single().origins[29 * GlyphQuads.ORIGIN_SIZE], 0f)
+    }
+
+    @Test
+    fun clear_startsANewFrame() {
+        val quads = GlyphQuads()
+        quads.addText(font, "aa", 0f, 0f, 0f, emSize = 1f)
+        quads.draw(drawer)
+        quads.clear()
+
+        assertEquals(0, quads.draw(drawer))
+        quads.addText(font, "a", 5f, 0f, 0f, emSize = 1f)
+        quads.draw(drawer)
+
+        assertEquals(2, draws.size)
+        assertArrayEquals(floatArrayOf(5f, 0f, 0f), draws[1].origins, 0f)
+    }
+}
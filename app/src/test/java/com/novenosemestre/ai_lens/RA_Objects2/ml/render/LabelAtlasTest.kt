@@ -0,0 +1,70 @@
+package com.google.ar.core.examples.java.ml.render
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class LabelAtlasTest {
+
+    private val pageBytes = LabelAtlas.pageBytes(128)
+
+    @Test
+    fun labels_arePackedIntoOnePage() {
+        val atlas = LabelAtlas(pageSize = 128, maxBytes = pageBytes)
+
+        val regions = (0 until 8).map { atlas.allocate(it, 60, 30)!! }
+
+        assertEquals(1, atlas.pageCount)
+        assertEquals(pageBytes, atlas.gpuBytes)
+        assertEquals(listOf(0f, 60 / 128f), regions.take(2).map { it.u0 })
+        assertSame(regions[3], atlas.find(3))
+    }
+
+    @Test
+    fun overBudget_evictsTheLeastRecentlyDrawnLabel() {
+        val atlas = LabelAtlas(pageSize = 128, maxBytes = pageBytes)
+        repeat(8) { atlas.allocate(it, 60, 30)!! }
+        atlas.nextFrame()
+        // Every label but 5 is drawn again
+        repeat(8) { if (it != 5) atlas.find(it) }
+        atlas.nextFrame()
+        repeat(8) { if (it != 5) atlas.find(it) }
+
+        val region = atlas.allocate(8, 60, 30)
+
+        assertNotNull(region)
+        assertNull(atlas.find(5))
+        assertEquals(1L, atlas.evictions)
+        assertEquals(8, atlas.labelCount)
+    }
+
+    @Test
+    fun emptiedPage_isReleased() {
+        val released = ArrayList<Int>()
+        val atlas = LabelAtlas(pageSize = 128, maxBytes = pageBytes * 2) { released.add(it) }
+        repeat(4) { atlas.allocate(it, 128, 32)!! }
+        atlas.nextFrame()
+        repeat(4) { atlas.allocate(4 + it, 128, 32)!! }
+        atlas.nextFrame()
+        repeat(4) { atlas.find(4 + it) }
+
+        // The labels of page 0 are evicted to make room, and its texture is released before it is reused
+        val region = atlas.allocate(8, 128, 128)!!
+
+        assertEquals(listOf(0), released)
+        assertEquals(0, region.page)
+        assertEquals(2, atlas.pageCount)
+    }
+
+    @Test
+    fun labelsOfTheCurrentFrame_areNeverEvicted() {
+        val atlas = LabelAtlas(pageSize = 128, maxBytes = pageBytes)
+        repeat(4) { atlas.allocate(it, 128, 32)!! }
+
+        assertNull(atlas.allocate(4, 128, 32))
+        assertEquals(0L, atlas.evictions)
+        assertNull(atlas.allocate(5, 129, 1))
+    }
+}
@@ -0,0 +1,98 @@
+package com.google.ar.core.examples.java.ml.render
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+import java.nio.FloatBuffer
+
+/**
+ * Checks the batching of [LabelInstances] against a drawer that records the draw calls instead of issuing them.
+ */
+class LabelInstancesTest {
+
+    private class Draw(val page: Int, val origins: FloatArray, val regions: FloatArray, val sizes: FloatArray)
+
+    private class RecordingDrawer : LabelInstances.Drawer {
+        val draws = ArrayList<Draw>()
+        val buffers = ArrayList<FloatBuffer>()
+
+        override fun draw(page: Int, origins: FloatBuffer, regions: FloatBuffer, sizes: FloatBuffer, count: Int) {
+            assertEquals(count * LabelInstances.ORIGIN_SIZE, origins.remaining())
+            assertEquals(count * LabelInstances.REGION_SIZE, regions.remaining())
+            assertEquals(count * LabelInstances.SIZE_SIZE, sizes.remaining())
+            draws.add(Draw(page, origins.toArray(), regions.toArray(), sizes.toArray()))
+            buffers.add(origins)
+        }
+
+        private fun FloatBuffer.toArray() = FloatArray(remaining()).also { duplicate().get(it) }
+    }
+
+    private fun region(page: Int, u0: Float = 0f) = AtlasRegion(page, u0, 0f, u0 + 0.25f, 0.0625f, 256, 64)
+
+    @Test
+    fun labelsOfOnePage_takeOneDrawCall() {
+        val instances = LabelInstances()
+        repeat(50) { instances.add(region(0), it.toFloat(), 0f, -1f, 0.01f) }
+        val drawer = RecordingDrawer()
+
+        assertEquals(1, instances.draw(drawer))
+
+        assertEquals(1, drawer.draws.size)
+        assertEquals(50 * LabelInstances.ORIGIN_SIZE, drawer.draws[0].origins.size)
+    }
+
+    @Test
+    fun labelsOfSeveralPages_takeOneDrawCallPerPage() {
+        val instances = LabelInstances()
+        instances.add(region(1), 1f, 0f, 0f, 0.01f)
+        instances.add(region(0), 2f, 0f, 0f, 0.01f)
+        instances.add(region(1), 3f, 0f, 0f, 0.01f)
+        val drawer = RecordingDrawer()
+
+        assertEquals(2, instances.draw(drawer))
+
+        assertEquals(listOf(0, 1), drawer.draws.map { it.page })
+        assertArrayEquals(floatArrayOf(2f, 0f, 0f), drawer.draws[0].origins, 0f)
+        assertArrayEquals(floatArrayOf(1f, 0f, 0f, 3f, 0f, 0f), drawer.draws[1].origins, 0f)
+    }
+
+    @Test
+    fun instanceData_holdsTheRegionAndTheHalfSize() {
+        val instances = LabelInstances()
+        instances.add(region(0, u0 = 0.5f), 0.1f, 0.2f, -1f, 0.3f / 256)
+        val drawer = RecordingDrawer()
+
+        instances.draw(drawer)
+
+        val draw = drawer.draws.single()
+        assertArrayEquals(floatArrayOf(0.1f, 0.2f, -1f), draw.origins, 0f)
+        assertArrayEquals(floatArrayOf(0.5f, 0f, 0.75f, 0.0625f), draw.regions, 0f)
+        // A 256x64 bitmap at 0.3m per 256 pixels: 30cm x 7.5cm
+        assertArrayEquals(floatArrayOf(0.15f, 0.0375f), draw.sizes, 1e-6f)
+    }
+
+    @Test
+    fun noLabels_noDrawCall() {
+        val drawer = RecordingDrawer()
+
+        assertEquals(0, LabelInstances().draw(drawer))
+        assertEquals(0, drawer.draws.size)
+    }
+
+    @Test
+    fun buffers_areReusedAcrossFrames() {
+        val instances = LabelInstances(initialCapacity = 4)
+        val drawer = RecordingDrawer()
+
+        repeat(3) {
+            instances.clear()
+            repeat(10) { instances.add(region(0), it.toFloat(), 0f, 0f, 0.01f) }
+            instances.draw(drawer)
+        }
+
+        // The buffers grew during the first frame only
+        assertSame(drawer.buffers[1], drawer.buffers[2])
+        assertEquals(10, instances.count)
+    }
+}
@@ -0,0 +1,66 @@
+package com.google.ar.core.examples.java.ml.render
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SdfFontTest {
+
+    private val font = SdfFont(
+        ascent = 0.8f,
+        descent = 0.2f,
+        firstChar = 'a',
+        glyphs = arrayOf(SdfGlyph(0.5f, 0f, 0f, 0.5f, 0.5f), SdfGlyph(0.25f), null)
+    )
+
+    private fun value(byte: Byte) = byte.toInt() and 0xff
+
+    @Test
+    fun distanceField_isHalfwayOnTheEdgeAndGrowsInside() {
+        // A 4 pixel wide square in the middle of a 12x12 mask
+        val coverage = IntArray(12 * 12) { if (it % 12 in 4..7 && it / 12 in 4..7) 255 else 0 }
+
+        val field = SdfFont.distanceField(coverage, 12, 12, spread = 4)
+
+        val row = (0 until 12).map { value(field[6 * 12 + it]) }
+        // Pixels next to the edge are half a pixel away from it, on either side: 127 / 8 from 128
+        assertEquals(112, row[3])
+        assertEquals(143, row[4])
+        // Deeper inside, further away
+        assertTrue(row[5] > row[4])
+        // Beyond the spread, clamped
+        assertEquals(1, value(field[0]))
+        // Symmetric
+        assertEquals(row.reversed(), row)
+    }
+
+    @Test
+    fun emptyMask_isFarOutsideEverywhere() {
+        val field = SdfFont.distanceField(IntArray(16), 4, 4, spread = 2)
+
+        assertTrue(field.all { value(it) == 1 })
+    }
+
+    @Test
+    fun glyphs_areLookedUpFromTheFirstChar() {
+        assertEquals(0.5f, font.glyph('a')!!.advance)
+        assertTrue(font.glyph('b')!!.isBlank)
+        assertNull(font.glyph('c'))
+        assertNull(font.glyph('A'))
+    }
+
+    @Test
+    fun canRender_requiresEveryCharacter() {
+        assertTrue(font.canRender("abba"))
+        assertTrue(font.canRender(""))
+        assertFalse(font.canRender("abc"))
+    }
+
+    @Test
+    fun measure_sumsTheAdvances() {
+        assertEquals(1.25f, font.measure("aba"), 1e-6f)
+        assertEquals(1f, font.lineHeight, 1e-6f)
+    }
+}
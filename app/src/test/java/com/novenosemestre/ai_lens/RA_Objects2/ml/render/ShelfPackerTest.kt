@@ -0,0 +1,70 @@
+package com.google.ar.core.examples.java.ml.render
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ShelfPackerTest {
+
+    @Test
+    fun rectanglesOfOneHeight_shareAShelf() {
+        val packer = ShelfPacker(256, 256)
+
+        val first = packer.allocate(100, 30)!!
+        val second = packer.allocate(100, 30)!!
+        val third = packer.allocate(100, 30)!!
+
+        assertEquals(0, first.x)
+        assertEquals(100, second.x)
+        assertEquals(first.y, second.y)
+        // The third one doesn't fit in what remains of the first shelf
+        assertEquals(30, third.y)
+        assertEquals(0, third.x)
+    }
+
+    @Test
+    fun muchShorterRectangle_opensItsOwnShelf() {
+        val packer = ShelfPacker(256, 256)
+        packer.allocate(50, 60)!!
+
+        val short = packer.allocate(50, 20)!!
+
+        assertEquals(60, short.y)
+    }
+
+    @Test
+    fun fullPage_returnsNull() {
+        val packer = ShelfPacker(100, 100)
+        repeat(10) { packer.allocate(100, 10)!! }
+
+        assertNull(packer.allocate(10, 10))
+        assertNull(packer.allocate(101, 1))
+    }
+
+    @Test
+    fun freedSpan_isReused() {
+        val packer = ShelfPacker(100, 100)
+        val rects = (0 until 10).map { packer.allocate(100, 10)!! }
+
+        packer.free(rects[4])
+
+        val reused = packer.allocate(60, 10)!!
+        assertEquals(40, reused.y)
+        assertEquals(0, reused.x)
+        // The rest of the span is still free
+        assertEquals(60, packer.allocate(40, 8)!!.x)
+    }
+
+    @Test
+    fun freeingEverything_emptiesThePage() {
+        val packer = ShelfPacker(100, 100)
+        val rects = listOf(packer.allocate(30, 40)!!, packer.allocate(30, 40)!!, packer.allocate(30, 60)!!)
+
+        rects.forEach { packer.free(it) }
+
+        assertTrue(packer.isEmpty)
+        // The shelves are gone, so the full height is available again
+        assertEquals(0, packer.allocate(100, 100)!!.y)
+    }
+}
@@ -0,0 +1,86 @@
+package com.google.ar.core.examples.java.ml.render
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Checks the upload budget of [UploadQueue] against a clock that each upload advances by a fixed time.
+ */
+class UploadQueueTest {
+
+    private var now = 0L
+    private val uploaded = ArrayList<String>()
+
+    // Each upload takes 1ms
+    private val uploader = UploadQueue.Uploader<String> { _, item ->
+        uploaded.add(item)
+        now += 1_000_000L
+    }
+
+    private fun queue() = UploadQueue<String>(budgetNanos = 3_000_000L) { now }
+
+    @Test
+    fun request_startsEachLabelOnce() {
+        val queue = queue()
+
+        assertTrue(queue.request(7))
+        assertFalse(queue.request(7))
+        assertTrue(queue.isPending(7))
+        assertEquals(1, queue.pendingCount)
+    }
+
+    @Test
+    fun drain_stopsWhenTheBudgetIsSpent() {
+        val queue = queue()
+        repeat(5) {
+            queue.request(it)
+            queue.offer(it, "label $it")
+        }
+
+        assertEquals(3, queue.drain(uploader))
+        assertEquals(3_000_000L, queue.lastFrameNanos)
+        assertEquals(2, queue.pendingCount)
+        assertFalse(queue.isPending(0))
+        assertTrue(queue.isPending(3))
+
+        // The next frame picks up the rest, in order
+        assertEquals(2, queue.drain(uploader))
+        assertEquals((0 until 5).map { "label $it" }, uploaded)
+        assertEquals(5L, queue.uploads)
+        assertEquals(3_000_000L, queue.maxFrameNanos)
+    }
+
+    @Test
+    fun drain_uploadsAtLeastOneItemPerFrame() {
+        val queue = UploadQueue<String>(budgetNanos = 1L) { now }
+        repeat(2) {
+            queue.request(it)
+            queue.offer(it, "label $it")
+        }
+
+        assertEquals(1, queue.drain(uploader))
+        assertEquals(1, queue.drain(uploader))
+    }
+
+    @Test
+    fun failedRasterization_canBeRequestedAgain() {
+        val queue = queue()
+        queue.request(1)
+        queue.offer(1, null)
+
+        assertEquals(0, queue.drain(uploader))
+
+        assertFalse(queue.isPending(1))
+        assertTrue(queue.request(1))
+    }
+
+    @Test
+    fun emptyQueue_takesNoTime() {
+        val queue = queue()
+
+        assertEquals(0, queue.drain(uploader))
+        assertEquals(0L, queue.lastFrameNanos)
+    }
+}
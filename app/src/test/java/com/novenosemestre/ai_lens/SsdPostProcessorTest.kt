@@ -0,0 +1,109 @@
+package com.novenosemestre.ai_lens
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Checks [SsdPostProcessor] on hand-built model outputs.
+ */
+class SsdPostProcessorTest {
+
+    /** Builds an output from (top, left, bottom, right, class, score) rows. */
+    private fun output(vararg rows: FloatArray): SsdOutput {
+        val output = SsdOutput(rows.size + 2)
+        rows.forEachIndexed { i, row ->
+            row.copyInto(output.locations, i * 4, 0, 4)
+            output.classes[i] = row[4]
+            output.scores[i] = row[5]
+        }
+        output.count = rows.size
+        return output
+    }
+
+    private fun row(top: Float, left: Float, bottom: Float, right: Float, classId: Int, score: Float) =
+        floatArrayOf(top, left, bottom, right, classId.toFloat(), score)
+
+    @Test
+    fun lowScores_areDropped() {
+        val output = output(
+            row(0f, 0f, 1f, 1f, 1, 0.9f),
+            row(0f, 0f, 1f, 1f, 2, 0.49f),
+            row(0f, 0f, 1f, 1f, 3, 0.5f)
+        )
+        val detections = SsdDetections(10)
+
+        val kept = SsdPostProcessor(scoreThreshold = 0.5f).process(output, 1f, 1f, detections)
+
+        assertEquals(2, kept)
+        assertEquals(2, detections.count)
+        assertEquals(listOf(1, 3), (0 until kept).map { detections.classIds[it] })
+        assertEquals(0.9f, detections.scores[0], 0f)
+        assertEquals(0.5f, detections.scores[1], 0f)
+    }
+
+    @Test
+    fun classIndices_areTruncatedAndOutOfRangeOnesDropped() {
+        val output = output(
+            row(0f, 0f, 1f, 1f, -1, 0.9f),
+            row(0f, 0f, 1f, 1f, 0, 0.9f),
+            row(0f, 0f, 1f, 1f, 4, 0.9f),
+            row(0f, 0f, 1f, 1f, 5, 0.9f)
+        )
+        output.classes[1] = 2.7f
+        val detections = SsdDetections(10)
+
+        SsdPostProcessor(classCount = 5).process(output, 1f, 1f, detections)
+
+        assertEquals(listOf(2, 4), (0 until detections.count).map { detections.classIds[it] })
+    }
+
+    @Test
+    fun boxes_areReorderedClampedAndScaled() {
+        val output = output(row(0.25f, 0.1f, 0.75f, 0.5f, 0, 0.9f), row(-0.2f, -0.1f, 1.5f, 1.2f, 0, 0.9f))
+        val detections = SsdDetections(10)
+
+        SsdPostProcessor().process(output, 640f, 480f, detections)
+
+        assertEquals(64f, detections.left[0], 0.001f)
+        assertEquals(120f, detections.top[0], 0.001f)
+        assertEquals(320f, detections.right[0], 0.001f)
+        assertEquals(360f, detections.bottom[0], 0.001f)
+        // Clamped to the image
+        assertEquals(0f, detections.left[1], 0f)
+        assertEquals(0f, detections.top[1], 0f)
+        assertEquals(640f, detections.right[1], 0f)
+        assertEquals(480f, detections.bottom[1], 0f)
+    }
+
+    @Test
+    fun capacity_capsTheKeptDetections() {
+        val output = output(
+            row(0f, 0f, 1f, 1f, 1, 0.9f),
+            row(0f, 0f, 1f, 1f, 2, 0.8f),
+            row(0f, 0f, 1f, 1f, 3, 0.7f)
+        )
+        val detections = SsdDetections(2)
+
+        val kept = SsdPostProcessor().process(output, 1f, 1f, detections)
+
+        assertEquals(2, kept)
+        assertEquals(listOf(1, 2), (0 until kept).map { detections.classIds[it] })
+    }
+
+    @Test
+    fun count_limitsTheReadDetectionsAndResetsTheOutput() {
+        val output = output(row(0f, 0f, 1f, 1f, 1, 0.9f), row(0f, 0f, 1f, 1f, 2, 0.9f))
+        val detections = SsdDetections(10)
+        SsdPostProcessor().process(output, 1f, 1f, detections)
+        assertEquals(2, detections.count)
+
+        output.count = 1
+        SsdPostProcessor().process(output, 1f, 1f, detections)
+        assertEquals(1, detections.count)
+
+        // A count past maxDetections only reads the detections the model output
+        output.count = 100
+        SsdPostProcessor(scoreThreshold = 0f).process(output, 1f, 1f, detections)
+        assertEquals(output.maxDetections, detections.count)
+    }
+}
@@ -0,0 +1,150 @@
+package com.novenosemestre.ai_lens
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Runs [TiledDetector] and [TileGrid] with stand-in tile detectors.
+ */
+class TiledDetectorTest {
+
+    private fun frame(width: Int, height: Int): YuvFrame {
+        val data = ByteArray(width * height * 3 / 2)
+        return YuvFrame.fromNv21(data, width, height)
+    }
+
+    @Test
+    fun grid_coversTheFrameWithOverlaps() {
+        val grid = TileGrid(columns = 3, rows = 2, overlap = 0.2f, includeFullFrame = false)
+
+        val tiles = grid.tiles(1280, 960)
+
+        assertEquals(6, tiles.size)
+        assertEquals(0, tiles.first().left)
+        assertEquals(1280, tiles[2].left + tiles[2].width)
+        assertEquals(960, tiles.last().top + tiles.last().height)
+        // Neighbours overlap by about a fifth of a tile
+        val overlap = tiles[0].left + tiles[0].width - tiles[1].left
+        assertEquals(tiles[0].width / 5f, overlap.toFloat(), 2f)
+    }
+
+    @Test
+    fun grid_forTileCount_prefersSquareTiles() {
+        val landscape = TileGrid.forTileCount(6, 1280, 720)
+        assertEquals(3, landscape.columns)
+        assertEquals(2, landscape.rows)
+
+        val portrait = TileGrid.forTileCount(6, 720, 1280)
+        assertEquals(2, portrait.columns)
+        assertEquals(3, portrait.rows)
+
+        // 5 tiles can't make a better grid than 2x2
+        assertEquals(4, TileGrid.forTileCount(5, 1000, 1000, includeFullFrame = false).tileCount)
+        assertEquals(1, TileGrid.forTileCount(1, 1000, 1000).tileCount)
+    }
+
+    @Test
+    fun defaultTileCount_followsTheCores() {
+        assertEquals(1, TileGrid.defaultTileCount(1))
+        assertEquals(3, TileGrid.defaultTileCount(4))
+        assertEquals(TileGrid.MAX_TILES, TileGrid.defaultTileCount(64))
+    }
+
+    @Test
+    fun boxes_areMappedToTheFrameAndMerged() {
+        // A 200x100 frame in two 120x100 tiles overlapping on x in [80, 120), plus the full frame.
+        val grid = TileGrid(columns = 2, rows = 1, overlap = 0.333f)
+        // One object at x in [90, 110), y in [40, 60): every tile sees it whole.
+        val detector = TiledDetector(grid, listOf(Unit, Unit), 4, { _, _, _, tile, detections ->
+            detections.left[0] = (90f - tile.left) / tile.width
+            detections.top[0] = (40f - tile.top) / tile.height
+            detections.right[0] = (110f - tile.left) / tile.width
+            detections.bottom[0] = (60f - tile.top) / tile.height
+            detections.classIds[0] = 7
+            detections.scores[0] = if (tile.width == 200) 0.6f else 0.9f
+            detections.count = 1
+        })
+        val output = SsdDetections(10)
+
+        val count = detector.detect(frame(200, 100), 0, output)
+        detector.close()
+
+        assertEquals(1, count)
+        assertEquals(0.9f, output.scores[0], 0f)
+        assertEquals(0.45f, output.left[0], 1e-3f)
+        assertEquals(0.4f, output.top[0], 1e-3f)
+        assertEquals(0.55f, output.right[0], 1e-3f)
+        assertEquals(0.6f, output.bottom[0], 1e-3f)
+    }
+
+    @Test
+    fun tiles_useTheRotatedFrame() {
+        val tiles = Collections.synchronizedList(mutableListOf<Tile>())
+        val detector = TiledDetector(TileGrid(1, 2, includeFullFrame = false), listOf(Unit), 1, { _, _, _, tile, _ ->
+            tiles.add(tile)
+        })
+
+        detector.detect(frame(200, 100), 90, SsdDetections(1))
+        detector.close()
+
+        // Upright, the frame is 100x200 and cut into a top and a bottom tile
+        assertEquals(2, tiles.size)
+        assertTrue(tiles.all { it.width == 100 })
+    }
+
+    @Test
+    fun tiles_runInParallelOnePerWorker() {
+        val workers = listOf("a", "b", "c")
+        // Every tile waits for the others: this only finishes if the three run at the same time.
+        val started = CountDownLatch(3)
+        val busy = Collections.synchronizedSet(mutableSetOf<String>())
+        val detector = TiledDetector(TileGrid(3, 1, includeFullFrame = false), workers, 1, { worker, _, _, _, _ ->
+            assertTrue("$worker used twice at once", busy.add(worker))
+            started.countDown()
+            assertTrue(started.await(5, TimeUnit.SECONDS))
+            busy.remove(worker)
+        })
+
+        detector.detect(frame(300, 100), 0, SsdDetections(1))
+        detector.close()
+    }
+
+    @Test
+    fun fromNv21_wrapsThePlanes() {
+        val data = ByteArray(4 * 2 * 3 / 2) { it.toByte() }
+        val frame = YuvFrame.fromNv21(data, 4, 2)
+
+        assertEquals(5, frame.y.buffer.get(5).toInt())
+        // V U V U after the 8 luma bytes
+        assertEquals(8, frame.v.buffer.get(0).toInt())
+        assertEquals(9, frame.u.buffer.get(0).toInt())
+        assertEquals(11, frame.u.buffer.get(2).toInt())
+        assertEquals(ByteBuffer.wrap(data).get(10), frame.v.buffer.get(2))
+    }
+
+    @Test
+    fun convertRegion_samplesOnlyTheTile() {
+        // Luma is the column index, chroma is neutral, so the red channel grows from left to right
+        val width = 64
+        val height = 16
+        val data = ByteArray(width * height * 3 / 2) { i ->
+            if (i < width * height) (i % width * 4).toByte() else 128.toByte()
+        }
+        val frame = YuvFrame.fromNv21(data, width, height)
+        val converter = YuvTensorConverter(4, 4, TensorLayout.RGB_UINT8)
+
+        converter.convertRegion(frame, 0, 32, 0, 32, 16)
+        val tileRed = converter.buffer.get(0).toInt() and 0xff
+        converter.convert(frame, 0)
+        val frameRed = converter.buffer.get(0).toInt() and 0xff
+
+        // The first tensor column samples x = 36 in the tile and x = 8 in the whole frame
+        assertEquals(YuvToArgbKernel.yuvToArgb(144, 128, 128) shr 16 and 0xff, tileRed)
+        assertEquals(YuvToArgbKernel.yuvToArgb(32, 128, 128) shr 16 and 0xff, frameRed)
+    }
+}
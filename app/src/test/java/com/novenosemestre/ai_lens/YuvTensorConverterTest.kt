@@ -0,0 +1,116 @@
+package com.novenosemestre.ai_lens
+
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.toImageCoordinates
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+
+/**
+ * Checks the rotation and scaling of [YuvTensorConverter] on a dark frame with a single bright pixel, and that
+ * [TensorTransform] maps the tensor back onto the frame.
+ */
+class YuvTensorConverterTest {
+
+    private val frameWidth = 8
+    private val frameHeight = 4
+
+    // A dark NV21 frame with neutral chroma, bright at (x, y).
+    private fun markedFrame(x: Int, y: Int): YuvFrame {
+        val data = ByteArray(frameWidth * frameHeight * 3 / 2)
+        data.fill(16, 0, frameWidth * frameHeight)
+        data.fill(128.toByte(), frameWidth * frameHeight, data.size)
+        data[y * frameWidth + x] = 235.toByte()
+        val lumaSize = frameWidth * frameHeight
+        return YuvFrame(
+            frameWidth,
+            frameHeight,
+            YuvPlane(ByteBuffer.wrap(data), frameWidth, 1),
+            YuvPlane(ByteBuffer.wrap(data, lumaSize + 1, lumaSize / 2 - 1).slice(), frameWidth, 2),
+            YuvPlane(ByteBuffer.wrap(data, lumaSize, lumaSize / 2).slice(), frameWidth, 2)
+        )
+    }
+
+    // The tensor pixel with the brightest red channel.
+    private fun YuvTensorConverter.brightest(): Pair<Int, Int> {
+        var best = 0 to 0
+        var bestRed = -1
+        for (ty in 0 until height) {
+            for (tx in 0 until width) {
+                val red = buffer.get((ty * width + tx) * layout.bytesPerPixel).toInt() and 0xff
+                if (red > bestRed) {
+                    bestRed = red
+                    best = tx to ty
+                }
+            }
+        }
+        return best
+    }
+
+    private fun converterFor(rotation: Int): YuvTensorConverter {
+        val swapsAxes = rotation == 90 || rotation == 270
+        return if (swapsAxes) {
+            YuvTensorConverter(frameHeight, frameWidth)
+        } else {
+            YuvTensorConverter(frameWidth, frameHeight)
+        }
+    }
+
+    // Converts at full size and checks where the marked pixel lands, and that it maps back onto itself.
+    private fun checkRotation(rotation: Int, expectedX: Int, expectedY: Int) {
+        val markX = 1
+        val markY = 2
+        val converter = converterFor(rotation)
+        val transform = converter.convert(markedFrame(markX, markY), rotation)
+
+        val (tx, ty) = converter.brightest()
+        assertEquals("x at $rotation", expectedX, tx)
+        assertEquals("y at $rotation", expectedY, ty)
+        // Coordinates are continuous: the point lands on the pixel, its far edges included.
+        val (x, y) = (tx to ty).toImageCoordinates(transform)
+        assertTrue("$x,$y back from $rotation", x in markX..markX + 1 && y in markY..markY + 1)
+    }
+
+    @Test
+    fun rotation0_keepsThePixel() = checkRotation(0, 1, 2)
+
+    @Test
+    fun rotation90_turnsClockwise() = checkRotation(90, frameHeight - 1 - 2, 1)
+
+    @Test
+    fun rotation180_flipsBothAxes() = checkRotation(180, frameWidth - 1 - 1, frameHeight - 1 - 2)
+
+    @Test
+    fun rotation270_turnsCounterClockwise() = checkRotation(270, 2, frameWidth - 1 - 1)
+
+    @Test
+    fun rotation90_returnsTheTransform() {
+        val transform = YuvTensorConverter(2, 4).convert(markedFrame(0, 0), 90)
+
+        assertEquals(TensorTransform(90, frameHeight, frameWidth, 2, 4), transform)
+        assertEquals(2f, transform.scaleX, 0f)
+        assertEquals(2f, transform.scaleY, 0f)
+    }
+
+    @Test
+    fun downscaledTensor_mapsBackOntoTheSampledPixel() {
+        // Each tensor pixel samples the bottom right pixel of a 2x2 block, (5, 3) for tensor pixel (2, 1).
+        val converter = YuvTensorConverter(frameWidth / 2, frameHeight / 2)
+        val transform = converter.convert(markedFrame(5, 3), 0)
+
+        assertEquals(2 to 1, converter.brightest())
+        assertEquals(4 to 2, (2 to 1).toImageCoordinates(transform))
+    }
+
+    @Test
+    fun layouts_writeTheSameColor() {
+        val frame = markedFrame(0, 0)
+        val rgb = YuvTensorConverter(frameWidth, frameHeight, TensorLayout.RGB_UINT8)
+        val rgba = YuvTensorConverter(frameWidth, frameHeight, TensorLayout.RGBA_UINT8)
+        rgb.convert(frame, 0)
+        rgba.convert(frame, 0)
+
+        for (channel in 0 until 3) assertEquals(rgb.buffer.get(channel), rgba.buffer.get(channel))
+        assertEquals(0xff.toByte(), rgba.buffer.get(3))
+    }
+}
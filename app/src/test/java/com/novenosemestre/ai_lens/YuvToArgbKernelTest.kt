@@ -0,0 +1,134 @@
+package com.novenosemestre.ai_lens
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+import kotlin.random.Random
+
+/**
+ * Checks [YuvToArgbKernel] against the former NV21 + `ScriptIntrinsicYuvToRGB` path using synthetic planes.
+ */
+class YuvToArgbKernelTest {
+
+    private val width = 64
+    private val height = 48
+
+    private val random = Random(42)
+    private val luma = ByteArray(width * height).also { random.nextBytes(it) }
+    private val cb = ByteArray(width * height / 4).also { random.nextBytes(it) }
+    private val cr = ByteArray(width * height / 4).also { random.nextBytes(it) }
+
+    /**
+     * Builds a frame with three separate planes, padding every row up to [rowPadding] extra bytes.
+     */
+    private fun planarFrame(rowPadding: Int): YuvFrame {
+        val yRowStride = width + rowPadding
+        val chromaRowStride = width / 2 + rowPadding
+        return YuvFrame(
+            width, height,
+            plane(luma, width, height, yRowStride, 1),
+            plane(cb, width / 2, height / 2, chromaRowStride, 1),
+            plane(cr, width / 2, height / 2, chromaRowStride, 1)
+        )
+    }
+
+    /**
+     * Builds a frame whose chroma planes share one interleaved VU buffer, like most camera HALs produce.
+     */
+    private fun semiPlanarFrame(rowPadding: Int): YuvFrame {
+        val rowStride = width + rowPadding
+        val vu = ByteArray(rowStride * height / 2)
+        for (row in 0 until height / 2) {
+            for (col in 0 until width / 2) {
+                vu[row * rowStride + col * 2] = cr[row * width / 2 + col]
+                vu[row * rowStride + col * 2 + 1] = cb[row * width / 2 + col]
+            }
+        }
+        val vBuffer = ByteBuffer.wrap(vu)
+        val uBuffer = ByteBuffer.wrap(vu, 1, vu.size - 1).slice()
+        return YuvFrame(
+            width, height,
+            plane(luma, width, height, rowStride, 1),
+            YuvPlane(uBuffer, rowStride, 2),
+            YuvPlane(vBuffer, rowStride, 2)
+        )
+    }
+
+    private fun plane(samples: ByteArray, w: Int, h: Int, rowStride: Int, pixelStride: Int): YuvPlane {
+        val bytes = ByteArray(rowStride * h)
+        for (row in 0 until h) {
+            for (col in 0 until w) {
+                bytes[row * rowStride + col * pixelStride] = samples[row * w + col]
+            }
+        }
+        return YuvPlane(ByteBuffer.wrap(bytes), rowStride, pixelStride)
+    }
+
+    /**
+     * Reference conversion: repack to NV21, then apply the RenderScript intrinsic math on every pixel.
+     */
+    private fun referenceArgb(frame: YuvFrame): IntArray {
+        val nv21 = ByteArray(frame.pixelCount * 3 / 2)
+        frame.toNv21(nv21)
+        val out = IntArray(frame.pixelCount)
+        for (row in 0 until height) {
+            for (col in 0 until width) {
+                val y = nv21[row * width + col].toInt() and 0xff
+                val chroma = frame.pixelCount + (row / 2) * width + (col / 2) * 2
+                val v = nv21[chroma].toInt() and 0xff
+                val u = nv21[chroma + 1].toInt() and 0xff
+                val yy = 1.164f * (y - 16)
+                val r = (yy + 1.596f * (v - 128)).toInt().coerceIn(0, 255)
+                val g = (yy - 0.391f * (u - 128) - 0.813f * (v - 128)).toInt().coerceIn(0, 255)
+                val b = (yy + 2.018f * (u - 128)).toInt().coerceIn(0, 255)
+                out[row * width + col] = (0xff shl 24) or (r shl 16) or (g shl 8) or b
+            }
+        }
+        return out
+    }
+
+    private fun convert(frame: YuvFrame, threads: Int): IntArray {
+        val out = IntArray(frame.pixelCount)
+        YuvToArgbKernel(threads).use { it.convert(frame, out) }
+        return out
+    }
+
+    @Test
+    fun planarFrame_matchesReferenceWithinRounding() {
+        val frame = planarFrame(rowPadding = 0)
+        val expected = referenceArgb(frame)
+        val actual = convert(frame, threads = 1)
+        for (i in expected.indices) {
+            for (shift in intArrayOf(0, 8, 16)) {
+                val e = (expected[i] shr shift) and 0xff
+                val a = (actual[i] shr shift) and 0xff
+                assertTrue("Pixel $i channel $shift: expected $e, got $a", Math.abs(e - a) <= 2)
+            }
+        }
+    }
+
+    @Test
+    fun strideLayouts_produceIdenticalPixels() {
+        val expected = convert(planarFrame(rowPadding = 0), threads = 1)
+        assertArrayEquals(expected, convert(planarFrame(rowPadding = 16), threads = 1))
+        assertArrayEquals(expected, convert(semiPlanarFrame(rowPadding = 0), threads = 1))
+        assertArrayEquals(expected, convert(semiPlanarFrame(rowPadding = 32), threads = 1))
+    }
+
+    @Test
+    fun parallelConversion_matchesSingleThreaded() {
+        val frame = semiPlanarFrame(rowPadding = 8)
+        assertArrayEquals(convert(frame, threads = 1), convert(frame, threads = 3))
+    }
+
+    @Test
+    fun toNv21_interleavesChromaAsVu() {
+        val nv21 = ByteArray(width * height * 3 / 2)
+        semiPlanarFrame(rowPadding = 4).toNv21(nv21)
+        assertArrayEquals(luma, nv21.copyOfRange(0, width * height))
+        assertEquals(cr[0], nv21[width * height])
+        assertEquals(cb[0], nv21[width * height + 1])
+    }
+}
@@ -0,0 +1,58 @@
+plugins {
+    id("org.jetbrains.kotlin.jvm")
+    id("me.champeau.jmh")
+}
+
+// A JVM module can't depend on the Android application module, so the Android-free sources measured here are
+// compiled straight from :app. Keep this list limited to files that only use the JDK and the dependencies below.
+kotlin {
+    sourceSets["main"].kotlin.apply {
+        srcDir("../app/src/main/java")
+        include(
+            "com/novenosemestre/ai_lens/YuvFrame.kt",
+            "com/novenosemestre/ai_lens/YuvToArgbKernel.kt",
+            "com/novenosemestre/ai_lens/YuvTensorConverter.kt",
+            "com/novenosemestre/ai_lens/BufferPool.kt",
+            "com/novenosemestre/ai_lens/FrameGate.kt",
+            "com/novenosemestre/ai_lens/Nv21Resampler.kt",
+            "com/novenosemestre/ai_lens/SsdPostProcessor.kt",
+            "com/novenosemestre/ai_lens/NonMaxSuppression.kt",
+            "com/novenosemestre/ai_lens/TileGrid.kt",
+            "com/novenosemestre/ai_lens/TiledDetector.kt",
+            "com/novenosemestre/ai_lens/LabelRegistry.kt",
+            "com/novenosemestre/ai_lens/DetectionBatch.kt",
+            "com/novenosemestre/ai_lens/RA_Objects2/ml/classification/DetectedObjectResult.kt",
+            "com/novenosemestre/ai_lens/RA_Objects2/ml/classification/utils/VertexUtils.kt",
+            "com/novenosemestre/ai_lens/RA_Objects2/ml/render/LabelInstances.kt",
+            "com/novenosemestre/ai_lens/ImageSearchHandler/SearchResultParser.kt",
+            "com/novenosemestre/ai_lens/PlacesMaps/model/PlaceGeometry.kt",
+        )
+    }
+}
+
+sourceSets["main"].java.apply {
+    srcDir("../app/src/main/java")
+    include("com/novenosemestre/ai_lens/RA_Objects2/ml/common/samplerender/UniformSlots.java")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+dependencies {
+    // NormalizedVertex, used by VertexUtils.
+    implementation("com.google.api.grpc:proto-google-cloud-vision-v1:3.41.0")
+    // org.json is part of the Android platform, so it has to be provided here.
+    implementation("org.json:json:20231013")
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // Report bytes/op next to the timings so allocation regressions show up.
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
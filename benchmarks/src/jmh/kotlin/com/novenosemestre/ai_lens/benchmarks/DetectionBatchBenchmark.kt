@@ -0,0 +1,103 @@
+package com.novenosemestre.ai_lens.benchmarks
+
+import com.google.ar.core.examples.java.ml.classification.DetectedObjectResult
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.addTo
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.calculateAverage
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.rotateCoordinates
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.toAbsoluteCoordinates
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.toImageCoordinates
+import com.google.cloud.vision.v1.NormalizedVertex
+import com.novenosemestre.ai_lens.DetectionBatch
+import com.novenosemestre.ai_lens.TensorTransform
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Compares collecting the detections of one analysis as a `List<DetectedObjectResult>`, the way the detectors used to,
+ * with filling a reused [DetectionBatch]. Divide `gc.alloc.rate.norm` by [detections] for the bytes per detection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class DetectionBatchBenchmark {
+    @Param("4", "32")
+    var detections = 4
+
+    private val labels = arrayOf("Home good", "Fashion good", "Food", "Plant", "Place")
+    private val transform = TensorTransform(90, 1080, 1920, 360, 640)
+
+    // ML Kit like boxes, in the upright analysis bitmap.
+    private lateinit var boxes: IntArray
+    private lateinit var scores: FloatArray
+
+    // Cloud Vision like bounding polygons, normalized.
+    private lateinit var polygons: List<List<NormalizedVertex>>
+
+    private val batch = DetectionBatch()
+
+    @Setup
+    fun setUp() {
+        val random = Random(42)
+        boxes = IntArray(detections * 4)
+        scores = FloatArray(detections) { random.nextFloat() }
+        polygons = List(detections) { i ->
+            val left = random.nextInt(300)
+            val top = random.nextInt(560)
+            boxes[i * 4] = left
+            boxes[i * 4 + 1] = top
+            boxes[i * 4 + 2] = left + 60
+            boxes[i * 4 + 3] = top + 80
+            val x = left / 360f
+            val y = top / 640f
+            listOf(
+                NormalizedVertex.newBuilder().setX(x).setY(y).build(),
+                NormalizedVertex.newBuilder().setX(x + 0.1f).setY(y).build(),
+                NormalizedVertex.newBuilder().setX(x + 0.1f).setY(y + 0.1f).build(),
+                NormalizedVertex.newBuilder().setX(x).setY(y + 0.1f).build(),
+            )
+        }
+        // Warm the batch up to its steady state size.
+        localBatch()
+    }
+
+    @Benchmark
+    fun localList(): List<DetectedObjectResult> = List(detections) { i ->
+        val center = (boxes[i * 4] + boxes[i * 4 + 2]) / 2 to (boxes[i * 4 + 1] + boxes[i * 4 + 3]) / 2
+        DetectedObjectResult(scores[i], labels[i % labels.size], center.toImageCoordinates(transform))
+    }
+
+    @Benchmark
+    fun localBatch(): DetectionBatch {
+        batch.clear()
+        for (i in 0 until detections) {
+            val classId = batch.classId(labels[i % labels.size])
+            batch.add(boxes[i * 4], boxes[i * 4 + 1], boxes[i * 4 + 2], boxes[i * 4 + 3], scores[i], classId)
+        }
+        batch.toImageCoordinates(transform)
+        return batch
+    }
+
+    @Benchmark
+    fun cloudList(): List<DetectedObjectResult> = polygons.mapIndexed { i, polygon ->
+        val center = polygon.calculateAverage().toAbsoluteCoordinates(1080, 1920).rotateCoordinates(1080, 1920, 90)
+        DetectedObjectResult(scores[i], labels[i % labels.size], center)
+    }
+
+    @Benchmark
+    fun cloudBatch(): DetectionBatch {
+        batch.clear()
+        for (i in polygons.indices) {
+            polygons[i].addTo(batch, 1080, 1920, scores[i], batch.classId(labels[i % labels.size]))
+        }
+        batch.rotateCoordinates(1080, 1920, 90)
+        return batch
+    }
+}
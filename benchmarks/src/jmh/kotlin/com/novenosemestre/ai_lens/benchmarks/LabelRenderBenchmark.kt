@@ -0,0 +1,109 @@
+package com.novenosemestre.ai_lens.benchmarks
+
+import com.google.ar.core.examples.java.ml.render.AtlasRegion
+import com.google.ar.core.examples.java.ml.render.LabelInstances
+import com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender.UniformSlots
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Measures the CPU time `LabelRender` spends per frame against the number of labels on screen.
+ *
+ * GLES can't run on the JVM, so both paths stop where the driver would take over: [perLabelDraws] reproduces the former
+ * loop of one `LabelRender.draw` per label (four uniforms set through [UniformMap], one draw each), [instancedDraw]
+ * follows the current `LabelRender.draw` step by step: the labels are packed with [LabelInstances], the camera position
+ * is copied into a preallocated array, the uniforms are set by name into [UniformSlots] as `Shader` does, and each
+ * atlas page sets its texture and uploads the slots before its draw, as `SampleRender.drawInstanced` does. With
+ * `-prof gc`, [instancedDraw] should report about 0 B/op. The driver cost of each draw call comes on top of these
+ * figures, and only the per-label path pays it once per label.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class LabelRenderBenchmark {
+    @Param("1", "10", "50", "200")
+    var labelCount = 1
+
+    private val uniformMap = UniformMap()
+    private val slots = UniformSlots<Any>()
+    private val uploader = CountingUploader()
+    private val instances = LabelInstances()
+    private val viewProjection = FloatArray(16) { it.toFloat() }
+    private val cameraPosition = floatArrayOf(0f, 1.4f, 0f)
+    private val labelOrigin = FloatArray(3)
+
+    // Stands for the camera Pose, whose getTranslation copies into the array it is given.
+    private val cameraTranslation = floatArrayOf(0.1f, 1.4f, -0.2f)
+    private val drawCameraPosition = FloatArray(3)
+
+    // The uniform locations `Shader` looks up by name before setting a slot.
+    private val uniformLocations = hashMapOf("u_ViewProjection" to 0, "u_CameraPos" to 2, "uTexture" to 3)
+
+    private lateinit var positions: FloatArray
+    private lateinit var regions: Array<AtlasRegion>
+    private var drawCalls = 0
+    private var uploadedFloats = 0
+
+    // LabelRender.drawPage: the instance buffers, the texture of the page, then SampleRender.drawInstanced.
+    private val drawer = LabelInstances.Drawer { page, origins, regions, sizes, _ ->
+        uploadedFloats += origins.remaining() + regions.remaining() + sizes.remaining()
+        slots.setTexture(uniformLocations.getValue("uTexture"), pages[page])
+        slots.upload(uploader)
+        drawCalls++
+    }
+
+    // The atlas page textures.
+    private val pages = Array(2) { Any() }
+
+    @Setup
+    fun setUp() {
+        val random = Random(42)
+        positions = FloatArray(labelCount * 3) { random.nextFloat() * 4f - 2f }
+        regions = Array(labelCount) { i ->
+            AtlasRegion(i % pages.size, i % 4 * 0.25f, i / 4 % 16 * 0.0625f, 0f, 0f, 256, 64)
+        }
+    }
+
+    /**
+     * One draw call per label, each with its own uniforms and texture.
+     */
+    @Benchmark
+    fun perLabelDraws(): Int {
+        for (i in 0 until labelCount) {
+            labelOrigin[0] = positions[i * 3]
+            labelOrigin[1] = positions[i * 3 + 1]
+            labelOrigin[2] = positions[i * 3 + 2]
+            uniformMap.setMat4(0, viewProjection)
+            uniformMap.setVec3(1, labelOrigin)
+            uniformMap.setVec3(2, cameraPosition)
+            uniformMap.setTexture(3)
+            uniformMap.lowLevelUse()
+            drawCalls++
+        }
+        return drawCalls + uniformMap.uploadedFloats
+    }
+
+    /**
+     * Every label in one instanced draw call per atlas page, as `LabelRender.add` and `LabelRender.draw` do.
+     */
+    @Benchmark
+    fun instancedDraw(): Int {
+        for (i in 0 until labelCount) {
+            instances.add(regions[i], positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2], 0.3f / 256)
+        }
+        cameraTranslation.copyInto(drawCameraPosition)
+        slots.setFloats(uniformLocations.getValue("u_ViewProjection"), UniformSlots.Type.MAT4, viewProjection)
+        slots.setFloats(uniformLocations.getValue("u_CameraPos"), UniformSlots.Type.VEC3, drawCameraPosition)
+        instances.draw(drawer)
+        instances.clear()
+        return drawCalls + uploadedFloats + uploader.uploadedFloats + uploader.textureBinds
+    }
+}
@@ -0,0 +1,31 @@
+package com.novenosemestre.ai_lens.benchmarks
+
+import com.novenosemestre.ai_lens.PlacesMaps.model.PlaceGeometry
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures `Place.getPositionVector`, which runs for every nearby place on every sensor update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class PlaceGeometryBenchmark {
+    private val position = FloatArray(3)
+    private var azimuth = 0.7f
+
+    @Benchmark
+    fun heading(): Double = PlaceGeometry.heading(14.6349, -90.5069, 14.6412, -90.5133)
+
+    @Benchmark
+    fun positionVector(): FloatArray {
+        val heading = PlaceGeometry.heading(14.6349, -90.5069, 14.6412, -90.5133)
+        PlaceGeometry.position(azimuth, heading, position)
+        return position
+    }
+}
@@ -0,0 +1,56 @@
+package com.novenosemestre.ai_lens.benchmarks
+
+import com.novenosemestre.ai_lens.ImageSearchHandler.SearchResult
+import com.novenosemestre.ai_lens.ImageSearchHandler.SearchResultParser
+import org.json.JSONArray
+import org.json.JSONObject
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures parsing of a Custom Search API page of ten results, the size returned by every request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class SearchResultParserBenchmark {
+    private lateinit var responseJson: String
+    private lateinit var response: JSONObject
+
+    @Setup
+    fun setUp() {
+        val items = JSONArray()
+        for (i in 0 until 10) {
+            items.put(
+                JSONObject()
+                    .put("title", "Wireless headphones model $i")
+                    .put("link", "https://www.example.com/products/$i")
+                    .put("snippet", "Noise cancelling over-ear headphones with 30 hour battery life, item $i.")
+                    .put(
+                        "pagemap",
+                        JSONObject().put(
+                            "cse_thumbnail",
+                            JSONArray().put(JSONObject().put("src", "https://img.example.com/$i.jpg"))
+                        )
+                    )
+            )
+        }
+        response = JSONObject().put("items", items)
+        responseJson = response.toString()
+    }
+
+    @Benchmark
+    fun parse(): List<SearchResult> = SearchResultParser.parse(response)
+
+    /**
+     * Includes the JSON decoding Volley performs before handing the response over.
+     */
+    @Benchmark
+    fun decodeAndParse(): List<SearchResult> = SearchResultParser.parse(JSONObject(responseJson))
+}
@@ -0,0 +1,125 @@
+package com.novenosemestre.ai_lens.benchmarks
+
+import com.novenosemestre.ai_lens.RA_Objects2.ml.common.samplerender.UniformSlots
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+private class UniformMatrix(val values: FloatArray)
+private class UniformVector(val values: FloatArray)
+private class UniformTexture(val textureUnit: Int)
+
+/**
+ * Reproduces the former uniform bookkeeping of `Shader` without the GL calls: every setter cloned the value and boxed
+ * it in a new uniform object keyed by location, and every `lowLevelUse` collected the non-texture entries into a new
+ * list and removed them.
+ */
+internal class UniformMap {
+    val uniforms = HashMap<Int, Any>()
+    var uploadedFloats = 0
+
+    fun setMat4(location: Int, values: FloatArray) {
+        uniforms[location] = UniformMatrix(values.clone())
+    }
+
+    fun setVec3(location: Int, values: FloatArray) {
+        uniforms[location] = UniformVector(values.clone())
+    }
+
+    fun setTexture(location: Int) {
+        val existing = uniforms[location]
+        uniforms[location] = UniformTexture((existing as? UniformTexture)?.textureUnit ?: 0)
+    }
+
+    fun lowLevelUse() {
+        val obsoleteEntries = ArrayList<Int>(uniforms.size)
+        for ((location, uniform) in uniforms) {
+            when (uniform) {
+                is UniformMatrix -> uploadedFloats += uniform.values.size
+                is UniformVector -> uploadedFloats += uniform.values.size
+            }
+            if (uniform !is UniformTexture) obsoleteEntries.add(location)
+        }
+        uniforms.keys.removeAll(obsoleteEntries)
+    }
+}
+
+/**
+ * Stands in for the glUniform calls of `Shader` when uploading [UniformSlots].
+ */
+internal class CountingUploader : UniformSlots.Uploader<Any> {
+    var uploadedFloats = 0
+    var textureBinds = 0
+
+    override fun uploadInts(location: Int, values: IntArray, length: Int) {
+        uploadedFloats += length
+    }
+
+    override fun uploadFloats(type: UniformSlots.Type, location: Int, values: FloatArray, length: Int) {
+        uploadedFloats += length
+    }
+
+    override fun bindTexture(location: Int, textureUnit: Int, texture: Any, unitChanged: Boolean) {
+        textureBinds++
+    }
+}
+
+/**
+ * Measures the uniform bookkeeping `Shader` does for every draw, with the four uniforms of a label: a matrix, two
+ * vectors and a texture.
+ *
+ * `Shader` calls GLES on every path, so it can't run on the JVM. [UniformMap] reproduces its former bookkeeping, and
+ * [UniformSlots] is the one it uses now; in steady state the latter should report 0 B/op with `-prof gc`.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class ShaderUniformBenchmark {
+
+    private val uniformMap = UniformMap()
+    private val slots = UniformSlots<Any>()
+    private val uploader = CountingUploader()
+    private val texture = Any()
+    private val viewProjection = FloatArray(16) { it.toFloat() }
+    private val labelOrigin = floatArrayOf(0.1f, 0.2f, -1f)
+    private val cameraPosition = floatArrayOf(0f, 1.4f, 0f)
+
+    @Setup
+    fun setUp() {
+        // The first use creates the slots, as the first frame does
+        drawLabelSlots()
+    }
+
+    /**
+     * One draw with the former bookkeeping: four uniforms set, then the draw.
+     */
+    @Benchmark
+    fun drawLabel(): Int {
+        uniformMap.setMat4(0, viewProjection)
+        uniformMap.setVec3(1, labelOrigin)
+        uniformMap.setVec3(2, cameraPosition)
+        uniformMap.setTexture(3)
+        uniformMap.lowLevelUse()
+        return uniformMap.uploadedFloats
+    }
+
+    /**
+     * One draw with the uniform slots, the values changing from draw to draw as they do across frames.
+     */
+    @Benchmark
+    fun drawLabelSlots(): Int {
+        viewProjection[12] += 1f
+        labelOrigin[0] += 1f
+        slots.setFloats(0, UniformSlots.Type.MAT4, viewProjection)
+        slots.setFloats(1, UniformSlots.Type.VEC3, labelOrigin)
+        slots.setFloats(2, UniformSlots.Type.VEC3, cameraPosition)
+        slots.setTexture(3, texture)
+        slots.upload(uploader)
+        return uploader.uploadedFloats + uploader.textureBinds
+    }
+}
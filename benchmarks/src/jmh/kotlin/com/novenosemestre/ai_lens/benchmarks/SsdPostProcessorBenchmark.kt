@@ -0,0 +1,53 @@
+package com.novenosemestre.ai_lens.benchmarks
+
+import com.novenosemestre.ai_lens.SsdDetections
+import com.novenosemestre.ai_lens.SsdOutput
+import com.novenosemestre.ai_lens.SsdPostProcessor
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Measures the post-processing of the SSD model outputs that runs after every inference in `TfLiteDetectorSession`
+ * users, on synthetic outputs. Inference itself needs the TFLite native library and isn't measured here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class SsdPostProcessorBenchmark {
+    @Param("10", "100")
+    var maxDetections = 10
+
+    private lateinit var output: SsdOutput
+    private lateinit var detections: SsdDetections
+    private val postProcessor = SsdPostProcessor(scoreThreshold = 0.5f, classCount = 91)
+
+    @Setup
+    fun setUp() {
+        val random = Random(42)
+        output = SsdOutput(maxDetections)
+        for (i in 0 until maxDetections) {
+            val top = random.nextFloat() * 0.8f
+            val left = random.nextFloat() * 0.8f
+            output.locations[i * 4] = top
+            output.locations[i * 4 + 1] = left
+            output.locations[i * 4 + 2] = top + 0.2f
+            output.locations[i * 4 + 3] = left + 0.2f
+            output.classes[i] = random.nextInt(91).toFloat()
+            // Scores sorted high to low, like the model outputs them.
+            output.scores[i] = 1f - i.toFloat() / maxDetections
+        }
+        output.count = maxDetections
+        detections = SsdDetections(maxDetections)
+    }
+
+    @Benchmark
+    fun process(): Int = postProcessor.process(output, 1920f, 1080f, detections)
+}
@@ -0,0 +1,84 @@
+package com.novenosemestre.ai_lens.benchmarks
+
+import com.novenosemestre.ai_lens.SsdDetections
+import com.novenosemestre.ai_lens.TensorLayout
+import com.novenosemestre.ai_lens.Tile
+import com.novenosemestre.ai_lens.TileGrid
+import com.novenosemestre.ai_lens.TiledDetector
+import com.novenosemestre.ai_lens.YuvFrame
+import com.novenosemestre.ai_lens.YuvTensorConverter
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Measures the latency of tiled detection on a 1280x960 frame against the number of tiles, one worker per tile.
+ *
+ * The TFLite model needs its native library, so each tile runs the real tile conversion (`convertRegion` to a 300x300
+ * tensor) followed by a stand-in inference: a fixed amount of arithmetic over the tensor, costing about as much per
+ * tile as a small SSD model on one core. Compare the scores with the available cores: past one tile per core the
+ * latency grows with the tile count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+open class TiledDetectorBenchmark {
+    @Param("1", "2", "4", "6")
+    var tileCount = 1
+
+    class Worker {
+        val converter = YuvTensorConverter(300, 300, TensorLayout.RGB_UINT8)
+        var checksum = 0
+    }
+
+    private lateinit var frame: YuvFrame
+    private lateinit var detector: TiledDetector<Worker>
+    private val detections = SsdDetections(10)
+
+    @Setup
+    fun setUp() {
+        val width = 1280
+        val height = 960
+        frame = YuvFrame.fromNv21(Random(42).nextBytes(width * height * 3 / 2), width, height)
+        val grid = TileGrid.forTileCount(tileCount, width, height, includeFullFrame = false)
+        detector = TiledDetector(grid, List(grid.tileCount) { Worker() }, 10, ::detectTile)
+    }
+
+    @TearDown
+    fun tearDown() {
+        detector.close()
+    }
+
+    private fun detectTile(worker: Worker, frame: YuvFrame, rotation: Int, tile: Tile, detections: SsdDetections) {
+        worker.converter.convertRegion(frame, rotation, tile.left, tile.top, tile.width, tile.height)
+        val tensor = worker.converter.buffer
+        var sum = 0
+        repeat(INFERENCE_PASSES) { pass ->
+            for (i in 0 until tensor.capacity()) sum = sum * 31 + (tensor.get(i).toInt() xor pass)
+        }
+        worker.checksum = sum
+        // One detection in the middle of the tile
+        detections.left[0] = 0.4f
+        detections.top[0] = 0.4f
+        detections.right[0] = 0.6f
+        detections.bottom[0] = 0.6f
+        detections.classIds[0] = 1
+        detections.scores[0] = 0.8f
+        detections.count = 1
+    }
+
+    @Benchmark
+    fun detect(): Int = detector.detect(frame, 90, detections)
+
+    private companion object {
+        const val INFERENCE_PASSES = 8
+    }
+}
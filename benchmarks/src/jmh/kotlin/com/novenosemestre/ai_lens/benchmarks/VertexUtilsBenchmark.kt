@@ -0,0 +1,59 @@
+package com.novenosemestre.ai_lens.benchmarks
+
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.calculateAverage
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.rotateCoordinates
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.toAbsoluteCoordinates
+import com.google.ar.core.examples.java.ml.classification.utils.VertexUtils.toImageCoordinates
+import com.google.cloud.vision.v1.NormalizedVertex
+import com.novenosemestre.ai_lens.TensorTransform
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the coordinate transforms applied to every detection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class VertexUtilsBenchmark {
+    private lateinit var boundingPoly: List<NormalizedVertex>
+    private lateinit var center: NormalizedVertex
+    private val pixel = 412 to 733
+    private val transform = TensorTransform(90, 1080, 1920, 300, 300)
+
+    @Setup
+    fun setUp() {
+        boundingPoly = listOf(
+            NormalizedVertex.newBuilder().setX(0.21f).setY(0.34f).build(),
+            NormalizedVertex.newBuilder().setX(0.58f).setY(0.34f).build(),
+            NormalizedVertex.newBuilder().setX(0.58f).setY(0.71f).build(),
+            NormalizedVertex.newBuilder().setX(0.21f).setY(0.71f).build(),
+        )
+        center = boundingPoly.calculateAverage()
+    }
+
+    @Benchmark
+    fun calculateAverage(): NormalizedVertex = boundingPoly.calculateAverage()
+
+    @Benchmark
+    fun toAbsoluteCoordinates(): Pair<Int, Int> = center.toAbsoluteCoordinates(1080, 1920)
+
+    @Benchmark
+    fun rotateCoordinates(): Pair<Int, Int> = pixel.rotateCoordinates(1080, 1920, 90)
+
+    /**
+     * The whole Cloud Vision mapping: polygon center, absolute coordinates, rotation.
+     */
+    @Benchmark
+    fun cloudVisionCenterToImage(): Pair<Int, Int> =
+        boundingPoly.calculateAverage().toAbsoluteCoordinates(1080, 1920).rotateCoordinates(1080, 1920, 90)
+
+    @Benchmark
+    fun tensorToImageCoordinates(): Pair<Int, Int> = (150 to 150).toImageCoordinates(transform)
+}
@@ -0,0 +1,111 @@
+package com.novenosemestre.ai_lens.benchmarks
+
+import com.novenosemestre.ai_lens.FrameGate
+import com.novenosemestre.ai_lens.Nv21Resampler
+import com.novenosemestre.ai_lens.TensorLayout
+import com.novenosemestre.ai_lens.YuvFrame
+import com.novenosemestre.ai_lens.YuvPlane
+import com.novenosemestre.ai_lens.YuvTensorConverter
+import com.novenosemestre.ai_lens.YuvToArgbKernel
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Measures the per-frame image work on a fake 1920x1080 camera frame laid out like most camera HALs deliver it:
+ * a padded luma plane and interleaved VU chroma planes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class YuvConversionBenchmark {
+    private val width = 1920
+    private val height = 1080
+    private val rowStride = 1984
+
+    private lateinit var frame: YuvFrame
+    private lateinit var nv21: ByteArray
+    private lateinit var argb: IntArray
+    private lateinit var singleThreadKernel: YuvToArgbKernel
+    private lateinit var parallelKernel: YuvToArgbKernel
+    private lateinit var tensorConverter: YuvTensorConverter
+    private lateinit var frameGate: FrameGate
+    private lateinit var uploadResampler: Nv21Resampler
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        val random = Random(7)
+        val luma = ByteBuffer.allocateDirect(rowStride * height)
+        val chroma = ByteBuffer.allocateDirect(rowStride * height / 2)
+        repeat(luma.capacity()) { luma.put(it, random.nextInt(256).toByte()) }
+        repeat(chroma.capacity()) { chroma.put(it, random.nextInt(256).toByte()) }
+        val u = chroma.duplicate().apply { position(1) }.slice()
+        frame = YuvFrame(
+            width, height,
+            YuvPlane(luma, rowStride, 1),
+            YuvPlane(u, rowStride, 2),
+            YuvPlane(chroma, rowStride, 2)
+        )
+        nv21 = ByteArray(width * height * 3 / 2)
+        argb = IntArray(width * height)
+        singleThreadKernel = YuvToArgbKernel(1)
+        parallelKernel = YuvToArgbKernel()
+        tensorConverter = YuvTensorConverter(300, 300, TensorLayout.RGB_UINT8)
+        frameGate = FrameGate(FrameGate.Config(minChange = 0f, minSharpness = 0f))
+        uploadResampler = Nv21Resampler()
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+        singleThreadKernel.close()
+        parallelKernel.close()
+    }
+
+    /**
+     * The plane repacking formerly done by `YuvToRgbConverter.imageToByteArray` before the RenderScript intrinsic.
+     */
+    @Benchmark
+    fun repackNv21(): ByteArray {
+        frame.toNv21(nv21)
+        return nv21
+    }
+
+    @Benchmark
+    fun convertArgbSingleThread(): IntArray {
+        singleThreadKernel.convert(frame, argb)
+        return argb
+    }
+
+    @Benchmark
+    fun convertArgbParallel(): IntArray {
+        parallelKernel.convert(frame, argb)
+        return argb
+    }
+
+    @Benchmark
+    fun convertRotatedTensor300(): ByteBuffer {
+        tensorConverter.convert(frame, 90)
+        return tensorConverter.buffer
+    }
+
+    /**
+     * The YUV stage of `CloudUploadEncoder`, before the JPEG compression done by the platform.
+     */
+    @Benchmark
+    fun resampleUploadNv21(): ByteArray {
+        uploadResampler.resample(frame, 90, 1024)
+        return uploadResampler.data
+    }
+
+    @Benchmark
+    fun evaluateFrameGate(): FrameGate.Decision = frameGate.evaluate(frame.y, width, height)
+}
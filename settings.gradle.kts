@@ -18,4 +18,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "AI-Lens"
 include(":app")
+include(":benchmarks")
  
\ No newline at end of file